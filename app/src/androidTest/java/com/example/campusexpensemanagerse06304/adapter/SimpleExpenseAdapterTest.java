@@ -0,0 +1,115 @@
+package com.example.campusexpensemanagerse06304.adapter;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.campusexpensemanagerse06304.R;
+import com.example.campusexpensemanagerse06304.model.Expense;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rows rebound when a re-read list with one row inserted and one deleted is submitted, as the
+ * expense screens do after a data change.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SimpleExpenseAdapterTest {
+    private Instrumentation instrumentation;
+    private CountingAdapter adapter;
+    private RecyclerView recyclerView;
+
+    // Counts onBindViewHolder calls
+    private static final class CountingAdapter extends SimpleExpenseAdapter {
+        int binds;
+
+        CountingAdapter(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ExpenseViewHolder holder, int position) {
+            binds++;
+            super.onBindViewHolder(holder, position);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = new ContextThemeWrapper(instrumentation.getTargetContext(),
+                R.style.Theme_CampusExpenseManagerSE06304);
+        instrumentation.runOnMainSync(() -> {
+            adapter = new CountingAdapter(context);
+            recyclerView = new RecyclerView(context);
+            recyclerView.setLayoutManager(new LinearLayoutManager(context));
+            recyclerView.setItemAnimator(null); // Bind counts only, no change animations
+            recyclerView.setAdapter(adapter);
+        });
+    }
+
+    @Test
+    public void insertAndDeleteRebindOnlyTheInsertedRow() throws InterruptedException {
+        List<Expense> loaded = new ArrayList<>();
+        for (int id = 1; id <= 5; id++) {
+            loaded.add(expense(id));
+        }
+        submit(loaded);
+        assertEquals(5, adapter.binds);
+
+        // Fresh objects, as a re-read returns: row 6 inserted after row 2, row 4 deleted
+        List<Expense> reread = new ArrayList<>();
+        for (int id : new int[]{1, 2, 6, 3, 5}) {
+            reread.add(expense(id));
+        }
+        adapter.binds = 0;
+        submit(reread);
+        assertEquals(1, adapter.binds);
+        assertEquals(5, adapter.getItemCount());
+        assertEquals(6, adapter.getCurrentList().get(2).getId());
+    }
+
+    private static Expense expense(int id) {
+        Expense expense = new Expense();
+        expense.setId(id);
+        expense.setUserId(1);
+        expense.setCategoryId(2);
+        expense.setCategoryName("Food");
+        expense.setCategoryColor("#4CAF50");
+        expense.setAmountCents(100L * id);
+        expense.setDescription("Expense " + id);
+        expense.setDate(LocalDate.of(2024, 5, id));
+        expense.setPaymentMethod("Cash");
+        return expense;
+    }
+
+    // Submit a list, wait for the diff to be dispatched, then lay out every row
+    private void submit(List<Expense> expenses) throws InterruptedException {
+        CountDownLatch committed = new CountDownLatch(1);
+        instrumentation.runOnMainSync(() -> adapter.submitList(expenses, committed::countDown));
+        assertTrue("diff not dispatched", committed.await(5, TimeUnit.SECONDS));
+        instrumentation.runOnMainSync(() -> {
+            // Tall enough to show every row, so none is left unbound off screen
+            recyclerView.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(10000, View.MeasureSpec.EXACTLY));
+            recyclerView.layout(0, 0, 1080, 10000);
+        });
+    }
+}
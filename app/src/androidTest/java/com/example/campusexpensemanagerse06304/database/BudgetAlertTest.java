@@ -0,0 +1,223 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Budget alert levels recorded in budget_alerts as expenses are written: a 100.00 food budget,
+ * warned at 80% and exceeded at 100%.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BudgetAlertTest {
+    private static final String DB_NAME = "budget_alert_test.db";
+    private static final int USER_ID = 1;
+    private static final int CATEGORY_ID = 2;
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private Context context;
+    private ExpenseDb db;
+    private StubListener listener;
+    private int budgetId;
+
+    private static final class StubListener implements BudgetAlertListener {
+        int frequencyHours;
+        final List<BudgetAlert> alerts = new ArrayList<>();
+
+        @Override
+        public boolean areNotificationsEnabled() {
+            return true;
+        }
+
+        @Override
+        public double getWarningThreshold() {
+            return 0.8;
+        }
+
+        @Override
+        public double getExceededThreshold() {
+            return 1.0;
+        }
+
+        @Override
+        public int getWarningFrequency() {
+            return frequencyHours;
+        }
+
+        @Override
+        public void onBudgetAlert(BudgetAlert alert) {
+            alerts.add(alert);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        db = new ExpenseDb(context, DB_NAME);
+        db.getWritableDatabase().execSQL("INSERT INTO user (id, username, password, email) "
+                + "VALUES (?, 'student', 'secret', 'student@example.com')", new Object[]{USER_ID});
+        budgetId = (int) db.insertBudget(USER_ID, CATEGORY_ID, 10000, "monthly",
+                YearMonth.now().atDay(1), null);
+        assertTrue(budgetId > 0);
+
+        listener = new StubListener();
+        db.setBudgetAlertListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void alertsOnlyWhenLevelRises() {
+        addExpense(5000);
+        assertTrue(listener.alerts.isEmpty());
+
+        addExpense(3000);
+        assertEquals(1, listener.alerts.size());
+        BudgetAlert warning = listener.alerts.get(0);
+        assertEquals(BudgetAlert.Level.WARNING, warning.getLevel());
+        assertEquals(budgetId, warning.getBudgetId());
+        assertEquals(8000, warning.getSpentCents());
+        assertEquals(10000, warning.getBudgetCents());
+
+        // Still a warning, so nothing new
+        addExpense(500);
+        assertEquals(1, listener.alerts.size());
+
+        addExpense(2000);
+        assertEquals(2, listener.alerts.size());
+        assertEquals(BudgetAlert.Level.EXCEEDED, listener.alerts.get(1).getLevel());
+
+        addExpense(100);
+        assertEquals(2, listener.alerts.size());
+        assertEquals(BudgetAlert.Level.EXCEEDED.ordinal(), recordedLevel());
+    }
+
+    @Test
+    public void throttledCrossingIsNotRecorded() {
+        listener.frequencyHours = 24;
+        addExpense(8000);
+        assertEquals(1, listener.alerts.size());
+        long notifiedAt = notifiedAt();
+
+        // Exceeded within the frequency limit: no alert, and the warning stays recorded
+        addExpense(3000);
+        assertEquals(1, listener.alerts.size());
+        assertEquals(BudgetAlert.Level.WARNING.ordinal(), recordedLevel());
+        assertEquals(notifiedAt, notifiedAt());
+
+        // Once the limit allows it, the crossing is still there to be reported
+        listener.frequencyHours = 0;
+        List<BudgetAlert> reconciled = db.reconcileBudgetAlerts(USER_ID);
+        assertEquals(1, reconciled.size());
+        assertEquals(BudgetAlert.Level.EXCEEDED, reconciled.get(0).getLevel());
+        assertEquals(2, listener.alerts.size());
+        assertEquals(BudgetAlert.Level.EXCEEDED.ordinal(), recordedLevel());
+    }
+
+    @Test
+    public void dropToLowerLevelIsRecorded() {
+        listener.frequencyHours = 24;
+        long expenseId = addExpense(8000);
+        assertEquals(1, listener.alerts.size());
+        long notifiedAt = notifiedAt();
+
+        assertEquals(1, db.deleteExpense((int) expenseId));
+        assertEquals(BudgetAlert.Level.NONE.ordinal(), recordedLevel());
+        assertEquals(notifiedAt, notifiedAt());
+
+        // Crossing again inside the frequency limit is held back by the kept notified_at...
+        addExpense(8000);
+        assertEquals(1, listener.alerts.size());
+        assertEquals(BudgetAlert.Level.NONE.ordinal(), recordedLevel());
+
+        // ...and alerts again once the limit allows it, because the drop was recorded
+        listener.frequencyHours = 0;
+        addExpense(1);
+        assertEquals(2, listener.alerts.size());
+        assertEquals(BudgetAlert.Level.WARNING, listener.alerts.get(1).getLevel());
+    }
+
+    @Test
+    public void levelResetsEachMonthButNotifiedAtIsKept() {
+        listener.frequencyHours = 24;
+        long lastMonthAlert = System.currentTimeMillis() - 48 * HOUR;
+        recordAlert(YearMonth.now().minusMonths(1), BudgetAlert.Level.EXCEEDED, lastMonthAlert);
+
+        // Last month's EXCEEDED does not count, so a warning this month alerts
+        addExpense(8000);
+        assertEquals(1, listener.alerts.size());
+        assertEquals(BudgetAlert.Level.WARNING, listener.alerts.get(0).getLevel());
+        assertEquals(monthIndex(YearMonth.now()), recordedMonth());
+        assertEquals(BudgetAlert.Level.WARNING.ordinal(), recordedLevel());
+        assertTrue(notifiedAt() > lastMonthAlert);
+    }
+
+    @Test
+    public void newMonthCrossingIsThrottledByLastMonthsAlert() {
+        listener.frequencyHours = 24;
+        long lastMonthAlert = System.currentTimeMillis() - HOUR;
+        recordAlert(YearMonth.now().minusMonths(1), BudgetAlert.Level.WARNING, lastMonthAlert);
+
+        addExpense(8000);
+        assertTrue(listener.alerts.isEmpty());
+        assertEquals(monthIndex(YearMonth.now().minusMonths(1)), recordedMonth());
+        assertEquals(lastMonthAlert, notifiedAt());
+    }
+
+    private long addExpense(long cents) {
+        long id = db.insertExpense(USER_ID, CATEGORY_ID, cents, "Groceries", LocalDate.now(), "Cash", false, null);
+        assertTrue(id > 0);
+        return id;
+    }
+
+    private void recordAlert(YearMonth month, BudgetAlert.Level level, long notifiedAt) {
+        db.getWritableDatabase().execSQL("INSERT OR REPLACE INTO budget_alerts (budget_id, year_month, level, notified_at) "
+                + "VALUES (?, ?, ?, ?)", new Object[]{budgetId, monthIndex(month), level.ordinal(), notifiedAt});
+    }
+
+    private static int monthIndex(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private long recordedMonth() {
+        return alertColumn("year_month");
+    }
+
+    private long recordedLevel() {
+        return alertColumn("level");
+    }
+
+    private long notifiedAt() {
+        return alertColumn("notified_at");
+    }
+
+    private long alertColumn(String column) {
+        Cursor cursor = db.getReadableDatabase().rawQuery("SELECT " + column + " FROM budget_alerts WHERE budget_id = ?",
+                new String[]{String.valueOf(budgetId)});
+        try {
+            assertTrue("no budget_alerts row", cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
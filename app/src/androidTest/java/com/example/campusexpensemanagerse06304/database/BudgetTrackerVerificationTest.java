@@ -0,0 +1,167 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.campusexpensemanagerse06304.model.Expense;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every kind of expense write against a seeded budget tracker, checked against the database
+ * with verifyBudgetTracker after each step.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BudgetTrackerVerificationTest {
+    private static final String DB_NAME = "budget_tracker_test.db";
+    private static final int USER_ID = 1;
+    private static final int FOOD = 2;
+    private static final int TRANSPORT = 3;
+
+    private Context context;
+    private ExpenseDb db;
+    private BudgetTracker tracker;
+
+    // Enables budget evaluation inside each write, which reads usage before the tracker has the write
+    private static final class QuietListener implements BudgetAlertListener {
+        @Override
+        public boolean areNotificationsEnabled() {
+            return true;
+        }
+
+        @Override
+        public double getWarningThreshold() {
+            return 0.8;
+        }
+
+        @Override
+        public double getExceededThreshold() {
+            return 1.0;
+        }
+
+        @Override
+        public int getWarningFrequency() {
+            return 0;
+        }
+
+        @Override
+        public void onBudgetAlert(BudgetAlert alert) {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        db = new ExpenseDb(context, DB_NAME);
+        db.getWritableDatabase().execSQL("INSERT INTO user (id, username, password, email) "
+                + "VALUES (?, 'student', 'secret', 'student@example.com')", new Object[]{USER_ID});
+        assertTrue(db.insertBudget(USER_ID, FOOD, 50000, "monthly", YearMonth.now().atDay(1), null) > 0);
+        tracker = db.getBudgetTracker();
+        db.setBudgetAlertListener(new QuietListener());
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void trackerMatchesDatabaseAfterEveryWrite() {
+        LocalDate today = LocalDate.now();
+        LocalDate lastMonth = today.minusMonths(1);
+
+        BudgetTracker.Usage seeded = db.getBudgetUsage(USER_ID);
+        assertEquals(0, seeded.getTotalSpentCents());
+        assertEquals(1, tracker.getRebuildCount());
+        long rebuilds = tracker.getRebuildCount();
+
+        long coffee = db.insertExpense(USER_ID, FOOD, 450, "Coffee", today, "Cash", false, null);
+        assertTrue(coffee > 0);
+        assertTracked(450, 0);
+
+        ExpenseInsertResult lunch = db.insertExpenseWithinBudget(USER_ID, FOOD, 1200, "Lunch", today, "Card", false);
+        assertTrue(lunch.isInserted());
+        assertTracked(1650, 0);
+
+        // Amount change, then a move to another category, then out of the current month
+        assertEquals(1, db.updateExpense((int) coffee, FOOD, 500, "Coffee", today, "Cash"));
+        assertTracked(1700, 0);
+        assertEquals(1, db.updateExpense((int) coffee, TRANSPORT, 500, "Bus", today, "Cash"));
+        assertTracked(1200, 500);
+        assertEquals(1, db.updateExpense((int) coffee, TRANSPORT, 500, "Bus", lastMonth, "Cash"));
+        assertTracked(1200, 0);
+
+        assertEquals(1, db.deleteExpense((int) lunch.getId()));
+        assertTracked(0, 0);
+
+        long[] ids = db.insertExpenses(Arrays.asList(
+                expense(FOOD, 300, today), expense(TRANSPORT, 700, today), expense(FOOD, 900, lastMonth)));
+        for (long id : ids) {
+            assertTrue(id > 0);
+        }
+        assertTracked(300, 700);
+
+        // Bulk re-categorize of this month's rows
+        Expense snack = expense(TRANSPORT, 300, today);
+        snack.setId((int) ids[0]);
+        Expense taxi = expense(TRANSPORT, 800, today);
+        taxi.setId((int) ids[1]);
+        assertArrayEquals(new int[]{1, 1}, db.updateExpenses(Arrays.asList(snack, taxi)));
+        assertTracked(0, 1100);
+
+        assertArrayEquals(new int[]{1, 1}, db.deleteExpenses(new int[]{(int) ids[1], (int) ids[2]}));
+        assertTracked(0, 300);
+
+        // A write that matches no row leaves the tracker as it was
+        assertEquals(0, db.deleteExpense(-1));
+        assertTracked(0, 300);
+
+        assertTrue(tracker.getUpdateCount() > 0);
+        assertEquals(rebuilds, tracker.getRebuildCount());
+
+        // A repair drops every user; the next read seeds again from the rebuilt rollup
+        assertTrue(db.repairMonthlyTotals());
+        assertNull(tracker.get(USER_ID, YearMonth.now()));
+        assertEquals(300, db.getBudgetUsage(USER_ID).getTotalSpentCents());
+        assertEquals(rebuilds + 1, tracker.getRebuildCount());
+        assertTracked(0, 300);
+
+        assertEquals(0, tracker.getMismatchCount());
+    }
+
+    private static Expense expense(int categoryId, long cents, LocalDate date) {
+        Expense expense = new Expense();
+        expense.setUserId(USER_ID);
+        expense.setCategoryId(categoryId);
+        expense.setAmountCents(cents);
+        expense.setDescription("Batch");
+        expense.setDate(date);
+        expense.setPaymentMethod("Cash");
+        return expense;
+    }
+
+    private void assertTracked(long food, long transport) {
+        BudgetTracker.Usage usage = tracker.get(USER_ID, YearMonth.now());
+        assertNotNull("user dropped from the tracker", usage);
+        assertEquals(food, usage.getSpentCents(FOOD));
+        assertEquals(transport, usage.getSpentCents(TRANSPORT));
+        assertEquals(50000, usage.getBudget(FOOD).getAmountCents());
+
+        List<String> differences = db.verifyBudgetTracker(USER_ID);
+        assertTrue(differences.toString(), differences.isEmpty());
+    }
+}
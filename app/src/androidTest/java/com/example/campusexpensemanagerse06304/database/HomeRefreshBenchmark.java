@@ -0,0 +1,129 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times the queries SimpleHomeFragment.refreshData() runs (categories, budget usage and the
+ * ten newest expenses) against a 50k-expense database.
+ * "before" opens and closes a helper per query, as the fragments did before the shared
+ * connection; "after" uses one helper, cold and then warm. Figures are written to logcat
+ * under the HomeRefreshBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HomeRefreshBenchmark {
+    private static final String TAG = "HomeRefreshBenchmark";
+    private static final String DB_NAME = "home_refresh_benchmark.db";
+    private static final int EXPENSE_COUNT = 50_000;
+    private static final int USER_ID = 1;
+    private static final int RUNS = 10;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+
+        ExpenseDb seed = new ExpenseDb(context, DB_NAME);
+        SQLiteDatabase db = seed.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT INTO user (id, username, password, email) VALUES (?, 'bench', 'x', 'bench@example.com')",
+                    new Object[]{USER_ID});
+            SQLiteStatement insert = db.compileStatement("INSERT INTO expenses "
+                    + "(user_id, category_id, amount, description, date, payment_method, is_recurring) "
+                    + "VALUES (?, ?, ?, ?, ?, 'Cash', 0)");
+            long today = LocalDate.now().toEpochDay();
+            for (int i = 0; i < EXPENSE_COUNT; i++) {
+                insert.bindLong(1, USER_ID);
+                insert.bindLong(2, 1 + i % 9);
+                insert.bindLong(3, 100 + i % 5000);
+                insert.bindString(4, "Expense " + i);
+                insert.bindLong(5, today - i % 730);
+                insert.executeInsert();
+            }
+            insert.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        seed.close();
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void refreshData() {
+        long before = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            assertEquals(10, refreshPerCallHelpers());
+            before += SystemClock.elapsedRealtimeNanos() - start;
+        }
+
+        ExpenseDb shared = new ExpenseDb(context, DB_NAME);
+        try {
+            long start = SystemClock.elapsedRealtimeNanos();
+            assertEquals(10, refresh(shared));
+            long cold = SystemClock.elapsedRealtimeNanos() - start;
+
+            long warm = 0;
+            for (int run = 0; run < RUNS; run++) {
+                start = SystemClock.elapsedRealtimeNanos();
+                assertEquals(10, refresh(shared));
+                warm += SystemClock.elapsedRealtimeNanos() - start;
+            }
+
+            Log.d(TAG, EXPENSE_COUNT + " expenses: before " + millis(before / RUNS)
+                    + " ms, after cold " + millis(cold) + " ms, after warm " + millis(warm / RUNS) + " ms");
+        } finally {
+            shared.close();
+        }
+    }
+
+    // The three loads refreshData() starts, run back to back; returns the recent expense count
+    private static int refresh(ExpenseDb db) {
+        assertFalse(db.getAllCategories().isEmpty());
+        assertNotNull(db.getBudgetUsage(USER_ID));
+        return db.queryExpensePage(new ExpenseFilter(USER_ID), null, 10).getExpenses().size();
+    }
+
+    private int refreshPerCallHelpers() {
+        ExpenseDb categories = new ExpenseDb(context, DB_NAME);
+        assertFalse(categories.getAllCategories().isEmpty());
+        categories.close();
+
+        ExpenseDb usage = new ExpenseDb(context, DB_NAME);
+        assertNotNull(usage.getBudgetUsage(USER_ID));
+        usage.close();
+
+        ExpenseDb recent = new ExpenseDb(context, DB_NAME);
+        int count = recent.queryExpensePage(new ExpenseFilter(USER_ID), null, 10).getExpenses().size();
+        recent.close();
+        return count;
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.2f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Upgrades a database file of every historic version to the current one.
+ * The fixtures are built from the schema each version shipped with, written out here rather
+ * than taken from ExpenseDb, so a change to a migration step shows up as a failure.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+    private static final String DB_NAME = "migration_test.db";
+    private static final String FRESH_DB_NAME = "migration_test_fresh.db";
+    private static final int FIRST_VERSION = 1; // File created by the old UserDb helper only
+    private static final int LAST_HISTORIC_VERSION = 8;
+
+    private static final String[] TABLES = {"user", "categories", "expenses", "budgets", "recurring_expenses",
+            "total_budget", "monthly_category_totals", "budget_alerts",
+            "expense_versions"};
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        context.deleteDatabase(FRESH_DB_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DB_NAME);
+        context.deleteDatabase(FRESH_DB_NAME);
+    }
+
+    @Test
+    public void upgradeFromEveryVersion() {
+        for (int version = FIRST_VERSION; version <= LAST_HISTORIC_VERSION; version++) {
+            context.deleteDatabase(DB_NAME);
+            createFixture(version);
+
+            ExpenseDb expenseDb = new ExpenseDb(context, DB_NAME);
+            try {
+                SQLiteDatabase db = expenseDb.getWritableDatabase();
+                String from = "from v" + version + ": ";
+                assertEquals(from + "user rows", 1, count(db, "SELECT COUNT(*) FROM user"));
+                assertEquals(from + "categories", 9, count(db, "SELECT COUNT(*) FROM categories"));
+                assertSchemaMatchesFreshInstall(db, from);
+                assertEquals(from + "foreign key violations", 0, count(db, "SELECT COUNT(*) FROM pragma_foreign_key_check"));
+
+                if (version == FIRST_VERSION) {
+                    assertEquals(from + "expenses", 0, count(db, "SELECT COUNT(*) FROM expenses"));
+                    assertEquals(from + "monthly totals", 0, count(db, "SELECT COUNT(*) FROM monthly_category_totals"));
+                    continue;
+                }
+
+                assertEquals(from + "expenses", 3, count(db, "SELECT COUNT(*) FROM expenses"));
+                assertEquals(from + "expense rows",
+                        rows(1234, LocalDate.of(2024, 1, 15).toEpochDay(),
+                                10, LocalDate.of(2024, 1, 20).toEpochDay(),
+                                250, LocalDate.of(2024, 2, 1).toEpochDay()),
+                        longs(db, "SELECT amount, date FROM expenses ORDER BY id"));
+                assertEquals(from + "budget", rows(10000, LocalDate.of(2024, 1, 1).toEpochDay()),
+                        longs(db, "SELECT amount, start_date FROM budgets"));
+                assertEquals(from + "total budget", rows(50050, LocalDate.of(2024, 1, 1).toEpochDay()),
+                        longs(db, "SELECT amount, start_date FROM total_budget"));
+                assertEquals(from + "recurring expense", rows(999, LocalDate.of(2024, 3, 1).toEpochDay()),
+                        longs(db, "SELECT amount, next_charge FROM recurring_expenses"));
+                assertEquals(from + "expense storage types", rows(3, 3),
+                        longs(db, "SELECT SUM(typeof(amount) = 'integer'), SUM(typeof(date) = 'integer') FROM expenses"));
+
+                // Month index year * 12 + month - 1
+                assertEquals(from + "monthly totals",
+                        rows(1, 2, 2024 * 12, 1244, 2,
+                                1, 3, 2024 * 12 + 1, 250, 1),
+                        longs(db, "SELECT user_id, category_id, year_month, total, expense_count "
+                                + "FROM monthly_category_totals ORDER BY category_id"));
+
+                // The recreated triggers keep the rollup up to date
+                db.execSQL("DELETE FROM expenses WHERE amount = 10");
+                assertEquals(from + "totals after delete", rows(1234, 1),
+                        longs(db, "SELECT total, expense_count FROM monthly_category_totals WHERE category_id = 2"));
+                assertEquals(from + "expense version after delete", rows(1, 1),
+                        longs(db, "SELECT user_id, version FROM expense_versions"));
+            } finally {
+                expenseDb.close();
+            }
+        }
+    }
+
+    // Columns, indexes and triggers must be the same as a database created by onCreate
+    private void assertSchemaMatchesFreshInstall(SQLiteDatabase db, String from) {
+        ExpenseDb fresh = new ExpenseDb(context, FRESH_DB_NAME);
+        try {
+            SQLiteDatabase freshDb = fresh.getReadableDatabase();
+            for (String table : TABLES) {
+                assertEquals(from + table + " columns", columns(freshDb, table), columns(db, table));
+                assertEquals(from + table + " foreign keys", foreignKeys(freshDb, table), foreignKeys(db, table));
+            }
+            String objects = "SELECT type, name, tbl_name FROM sqlite_master "
+                    + "WHERE type IN ('index', 'trigger') AND name NOT LIKE 'sqlite_%' ORDER BY name";
+            assertEquals(from + "indexes and triggers", strings(freshDb, objects), strings(db, objects));
+        } finally {
+            fresh.close();
+        }
+    }
+
+    // Build a file as the app of the given version left it, with a few rows in every table
+    private void createFixture(int version) {
+        File file = context.getDatabasePath(DB_NAME);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            db.execSQL("CREATE TABLE user ( id INTEGER PRIMARY KEY AUTOINCREMENT, username VARCHAR(60) NOT NULL, "
+                    + "password VARCHAR(200) NOT NULL, email VARCHAR(60) NOT NULL, phone VARCHAR(30), role_id INTEGER, "
+                    + "created_at DATETIME, updated_at DATETIME, deleted_at DATETIME )");
+            db.execSQL("INSERT INTO user (id, username, password, email) VALUES (1, 'student', 'secret', 'student@example.com')");
+
+            if (version >= 2) {
+                String amount = version >= 6 ? "INTEGER" : "REAL";
+                String date = version >= 7 ? "INTEGER" : "DATE";
+                String user = version >= 5 ? "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, "
+                        : "user_id INTEGER NOT NULL, ";
+                db.execSQL("CREATE TABLE categories ( id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, "
+                        + "description TEXT, icon TEXT, color TEXT )");
+                db.execSQL("CREATE TABLE expenses ( id INTEGER PRIMARY KEY AUTOINCREMENT, " + user
+                        + "category_id INTEGER NOT NULL, amount " + amount + " NOT NULL, description TEXT, "
+                        + "date " + date + " NOT NULL, payment_method TEXT, is_recurring INTEGER DEFAULT 0, "
+                        + "recurring_expense_id INTEGER, created_at DATETIME, updated_at DATETIME )");
+                db.execSQL("CREATE TABLE budgets ( id INTEGER PRIMARY KEY AUTOINCREMENT, " + user
+                        + "category_id INTEGER NOT NULL, amount " + amount + " NOT NULL, period TEXT NOT NULL, "
+                        + "start_date " + date + " NOT NULL, end_date " + date + ", created_at DATETIME, updated_at DATETIME )");
+                db.execSQL("CREATE TABLE recurring_expenses ( id INTEGER PRIMARY KEY AUTOINCREMENT, " + user
+                        + "category_id INTEGER NOT NULL, amount " + amount + " NOT NULL, description TEXT, "
+                        + "frequency TEXT NOT NULL, start_date " + date + " NOT NULL, end_date " + date + ", "
+                        + "last_charged " + date + ", next_charge " + date + ", created_at DATETIME, updated_at DATETIME )");
+                db.execSQL("CREATE TABLE total_budget ( id INTEGER PRIMARY KEY AUTOINCREMENT, " + user
+                        + "amount " + amount + " NOT NULL, period TEXT NOT NULL, start_date " + date + " NOT NULL, "
+                        + "end_date " + date + ", created_at DATETIME, updated_at DATETIME )");
+                String[] names = {"Housing", "Food", "Transportation", "Entertainment", "Education", "Health",
+                        "Personal", "Utilities", "Other"};
+                for (String name : names) {
+                    db.execSQL("INSERT INTO categories (name, description) VALUES (?, ?)", new Object[]{name, name + " expenses"});
+                }
+
+                insertExpense(db, version, 2, 1234, LocalDate.of(2024, 1, 15));
+                insertExpense(db, version, 2, 10, LocalDate.of(2024, 1, 20));
+                insertExpense(db, version, 3, 250, LocalDate.of(2024, 2, 1));
+                LocalDate start = LocalDate.of(2024, 1, 1);
+                db.execSQL("INSERT INTO budgets (user_id, category_id, amount, period, start_date) VALUES (1, 2, ?, 'monthly', ?)",
+                        new Object[]{amount(version, 10000), date(version, start)});
+                db.execSQL("INSERT INTO total_budget (user_id, amount, period, start_date) VALUES (1, ?, 'monthly', ?)",
+                        new Object[]{amount(version, 50050), date(version, start)});
+                db.execSQL("INSERT INTO recurring_expenses (user_id, category_id, amount, frequency, start_date, next_charge) "
+                                + "VALUES (1, 4, ?, 'monthly', ?, ?)",
+                        new Object[]{amount(version, 999), date(version, start), date(version, LocalDate.of(2024, 3, 1))});
+            }
+
+            if (version >= 3) {
+                db.execSQL("CREATE INDEX idx_expenses_user_date ON expenses (user_id, date)");
+                db.execSQL("CREATE INDEX idx_expenses_user_category_date ON expenses (user_id, category_id, date)");
+                db.execSQL("CREATE INDEX idx_budgets_user_category ON budgets (user_id, category_id)");
+                db.execSQL("CREATE INDEX idx_recurring_user_next_charge ON recurring_expenses (user_id, next_charge)");
+            }
+            if (version >= 5) {
+                db.execSQL("CREATE INDEX idx_total_budget_user_period ON total_budget (user_id, period)");
+                db.execSQL("CREATE INDEX idx_user_username ON user (username, email)");
+            }
+
+            if (version >= 4) {
+                // Filled directly instead of through the triggers of the version; the upgrade
+                // recreates those
+                String month = version >= 7
+                        ? "(CAST(strftime('%Y', date + 2440587.5) AS INTEGER) * 12 + CAST(strftime('%m', date + 2440587.5) AS INTEGER) - 1)"
+                        : "substr(date, 1, 7)";
+                db.execSQL("CREATE TABLE monthly_category_totals ( user_id INTEGER NOT NULL, category_id INTEGER NOT NULL, "
+                        + "year_month " + (version >= 7 ? "INTEGER" : "TEXT") + " NOT NULL, "
+                        + "total " + (version >= 6 ? "INTEGER" : "REAL") + " NOT NULL DEFAULT 0, "
+                        + "expense_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (user_id, category_id, year_month) )");
+                db.execSQL("INSERT INTO monthly_category_totals SELECT user_id, category_id, " + month
+                        + ", SUM(amount), COUNT(*) FROM expenses GROUP BY user_id, category_id, " + month);
+            }
+
+            if (version >= 8) {
+                db.execSQL("CREATE TABLE budget_alerts ( budget_id INTEGER PRIMARY KEY REFERENCES budgets(id) "
+                        + "ON DELETE CASCADE, year_month INTEGER NOT NULL, level INTEGER NOT NULL DEFAULT 0, "
+                        + "notified_at INTEGER NOT NULL DEFAULT 0 )");
+            }
+
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static void insertExpense(SQLiteDatabase db, int version, int categoryId, long cents, LocalDate date) {
+        db.execSQL("INSERT INTO expenses (user_id, category_id, amount, description, date, payment_method) "
+                        + "VALUES (1, ?, ?, 'Fixture', ?, 'Cash')",
+                new Object[]{categoryId, amount(version, cents), date(version, date)});
+    }
+
+    // Dollars before version 6, cents after
+    private static Object amount(int version, long cents) {
+        return version >= 6 ? (Object) cents : (Object) (cents / 100.0);
+    }
+
+    // yyyy-MM-dd text before version 7, epoch days after
+    private static Object date(int version, LocalDate date) {
+        return version >= 7 ? (Object) date.toEpochDay() : date.toString();
+    }
+
+    private static long count(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<Long> rows(long... values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static List<Long> longs(SQLiteDatabase db, String sql) {
+        List<Long> values = new ArrayList<>();
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    values.add(cursor.getLong(i));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return values;
+    }
+
+    private static List<String> strings(SQLiteDatabase db, String sql) {
+        List<String> values = new ArrayList<>();
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    row.append(cursor.getString(i)).append('|');
+                }
+                values.add(row.toString());
+            }
+        } finally {
+            cursor.close();
+        }
+        return values;
+    }
+
+    // name|type|notnull|default|pk for each column
+    private static List<String> columns(SQLiteDatabase db, String table) {
+        return strings(db, "SELECT name, type, \"notnull\", dflt_value, pk FROM pragma_table_info('" + table + "')");
+    }
+
+    private static List<String> foreignKeys(SQLiteDatabase db, String table) {
+        return strings(db, "SELECT \"from\", \"table\", \"to\", on_delete FROM pragma_foreign_key_list('" + table + "')");
+    }
+}
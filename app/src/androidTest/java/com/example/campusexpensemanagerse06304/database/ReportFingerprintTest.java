@@ -0,0 +1,80 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Edits through updateExpense that leave counts and sums alone must still change the report
+ * fingerprint, or ReportGenerator hands out a cached report with the old rows.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReportFingerprintTest {
+    private static final String DB_NAME = "report_fingerprint_test.db";
+    private static final int USER_ID = 1;
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 10);
+
+    private Context context;
+    private ExpenseDb db;
+    private ExpenseFilter filter;
+    private int expenseId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        db = new ExpenseDb(context, DB_NAME);
+        db.getWritableDatabase().execSQL("INSERT INTO user (id, username, password, email) "
+                + "VALUES (?, 'student', 'secret', 'student@example.com')", new Object[]{USER_ID});
+        expenseId = (int) db.insertExpense(USER_ID, 2, 1250, "Lunch", DAY, "Cash", false, null);
+        assertTrue(expenseId > 0);
+
+        filter = new ExpenseFilter(USER_ID);
+        filter.setDateRange(DAY.withDayOfMonth(1), DAY.withDayOfMonth(31));
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void sameLengthDescriptionEditChangesFingerprint() {
+        String before = db.getReportFingerprint(filter);
+        assertEquals(1, db.updateExpense(expenseId, 2, 1250, "Pizza", DAY, "Cash"));
+        assertNotEquals(before, db.getReportFingerprint(filter));
+    }
+
+    @Test
+    public void offsettingDateAndCategoryEditChangesFingerprint() {
+        // date + category_id stays the same
+        String before = db.getReportFingerprint(filter);
+        assertEquals(1, db.updateExpense(expenseId, 3, 1250, "Lunch", DAY.minusDays(1), "Cash"));
+        assertNotEquals(before, db.getReportFingerprint(filter));
+    }
+
+    @Test
+    public void editsWithinOneSecondChangeFingerprint() {
+        assertEquals(1, db.updateExpense(expenseId, 2, 1250, "Pizza", DAY, "Cash"));
+        String first = db.getReportFingerprint(filter);
+        assertEquals(1, db.updateExpense(expenseId, 2, 1250, "Salad", DAY, "Cash"));
+        assertNotEquals(first, db.getReportFingerprint(filter));
+    }
+
+    @Test
+    public void unchangedDataKeepsFingerprint() {
+        assertEquals(db.getReportFingerprint(filter), db.getReportFingerprint(filter));
+        assertTrue(db.getReportFingerprint(filter).startsWith("1:1:"));
+    }
+}
@@ -5,6 +5,8 @@ import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -23,11 +25,15 @@ import android.widget.Toast;
 
 import com.example.campusexpensemanagerse06304.adapter.BudgetAdapter;
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.example.campusexpensemanagerse06304.model.Budget;
 import com.example.campusexpensemanagerse06304.model.Category;
+import com.example.campusexpensemanagerse06304.model.Money;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -47,7 +53,7 @@ public class BudgetFragment extends Fragment {
     private BudgetAdapter budgetAdapter;
     private List<Budget> budgetList;
     private List<Category> categoryList;
-    private ExpenseDb expenseDb;
+    private ExpenseRepository repository;
 
     private EditText etAmount;
     private Spinner spinnerCategory, spinnerPeriod;
@@ -83,8 +89,8 @@ public class BudgetFragment extends Fragment {
             mParam2 = getArguments().getString(ARG_PARAM2);
         }
 
-        // Initialize database helper
-        expenseDb = new ExpenseDb(getContext());
+        // Database work runs off the main thread
+        repository = ExpenseRepository.getInstance(requireContext());
 
         // Get the current user ID from the activity
         if (getActivity() != null) {
@@ -122,7 +128,7 @@ public class BudgetFragment extends Fragment {
         // Setup the recycler view
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         budgetList = new ArrayList<>();
-        budgetAdapter = new BudgetAdapter(getContext(), budgetList);
+        budgetAdapter = new BudgetAdapter(getContext());
         recyclerView.setAdapter(budgetAdapter);
 
         // Initialize the date displays
@@ -140,9 +146,6 @@ public class BudgetFragment extends Fragment {
         tvStartDate.setOnClickListener(view -> showStartDatePicker());
         tvEndDate.setOnClickListener(view -> showEndDatePicker());
 
-        // Setup category spinner
-        setupCategorySpinner();
-
         // Setup period spinner
         setupPeriodSpinner();
 
@@ -164,21 +167,32 @@ public class BudgetFragment extends Fragment {
             @Override
             public void onDeleteClick(int position) {
                 Budget budget = budgetAdapter.getItemAt(position);
-                expenseDb.deleteBudget(budget.getId());
-                loadBudgets();
-                Toast.makeText(getContext(), "Budget deleted", Toast.LENGTH_SHORT).show();
+                repository.write(getViewLifecycleOwner(), db -> db.deleteBudget(budget.getId()), result -> {
+                    loadBudgets();
+                    Toast.makeText(getContext(), "Budget deleted", Toast.LENGTH_SHORT).show();
+                });
             }
         });
 
-        // Load budgets
-        loadBudgets();
-
         return rootView;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        // Setup category spinner and load budgets
+        setupCategorySpinner();
+        loadBudgets();
+    }
+
     private void setupCategorySpinner() {
         // Load categories from the database
-        categoryList = expenseDb.getAllCategories();
+        repository.read(getViewLifecycleOwner(), ExpenseDb::getAllCategories, this::showCategories);
+    }
+
+    private void showCategories(List<Category> categories) {
+        categoryList = categories;
 
         // Create adapter for the spinner
         ArrayAdapter<Category> categoryAdapter = new ArrayAdapter<>(
@@ -237,9 +251,9 @@ public class BudgetFragment extends Fragment {
             return;
         }
 
-        double amount;
+        long amount;
         try {
-            amount = Double.parseDouble(etAmount.getText().toString());
+            amount = Money.parseCents(etAmount.getText().toString());
             if (amount <= 0) {
                 etAmount.setError("Amount must be greater than zero");
                 return;
@@ -261,53 +275,37 @@ public class BudgetFragment extends Fragment {
         String endDateStr = tvEndDate.getText().toString();
 
         // Save to database
-        long result = expenseDb.insertBudget(userId, categoryId, amount, period, startDateStr, endDateStr);
-
-        if (result != -1) {
-            Toast.makeText(getContext(), "Budget added successfully", Toast.LENGTH_SHORT).show();
-            // Clear input fields
-            etAmount.setText("");
-
-            // Hide add budget layout
-            addBudgetLayout.setVisibility(View.GONE);
-            fabAddBudget.setVisibility(View.VISIBLE);
-
-            // Refresh budgets list
-            loadBudgets();
-        } else {
-            Toast.makeText(getContext(), "Failed to add budget", Toast.LENGTH_SHORT).show();
-        }
+        repository.write(getViewLifecycleOwner(), db -> db.insertBudget(userId, categoryId, amount, period,
+                LocalDate.parse(startDateStr), LocalDate.parse(endDateStr)), result -> {
+            if (result != -1) {
+                Toast.makeText(getContext(), "Budget added successfully", Toast.LENGTH_SHORT).show();
+                // Clear input fields
+                etAmount.setText("");
+
+                // Hide add budget layout
+                addBudgetLayout.setVisibility(View.GONE);
+                fabAddBudget.setVisibility(View.VISIBLE);
+
+                // Refresh budgets list
+                loadBudgets();
+            } else {
+                Toast.makeText(getContext(), "Failed to add budget", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void loadBudgets() {
         if (userId != -1) {
-            // Load budgets from database
-            List<Budget> budgets = expenseDb.getBudgetsByUser(userId);
-
-            // Get current month in format YYYY-MM
-            Calendar cal = Calendar.getInstance();
-            String currentMonth = String.format(Locale.getDefault(), "%d-%02d",
-                    cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
-
-            // Add category information and spending data to budgets
-            for (Budget budget : budgets) {
-                for (Category category : categoryList) {
-                    if (category.getId() == budget.getCategoryId()) {
-                        budget.setCategoryName(category.getName());
-                        budget.setCategoryColor(category.getColor());
-                        break;
-                    }
-                }
-
-                // Get amount spent for this category in current month
-                double spent = expenseDb.getTotalExpensesByCategoryAndMonth(userId, budget.getCategoryId(), currentMonth);
-                budget.setSpent(spent);
-            }
-
-            // Update the adapter
-            budgetList.clear();
-            budgetList.addAll(budgets);
-            budgetAdapter.notifyDataSetChanged();
+            // Get current month
+            YearMonth currentMonth = YearMonth.now();
+
+            // Load budgets with category information and spending data in one query
+            repository.read(getViewLifecycleOwner(), db -> db.getBudgetStatusByMonth(userId, currentMonth), budgets -> {
+                // Update the adapter
+                budgetList.clear();
+                budgetList.addAll(budgets);
+                budgetAdapter.submitList(new ArrayList<>(budgetList));
+            });
         }
     }
 }
\ No newline at end of file
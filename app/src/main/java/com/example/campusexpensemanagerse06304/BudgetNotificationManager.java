@@ -13,18 +13,20 @@ import android.util.Log;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 
+import com.example.campusexpensemanagerse06304.database.BudgetAlert;
+import com.example.campusexpensemanagerse06304.database.BudgetAlertListener;
+import com.example.campusexpensemanagerse06304.database.BudgetTracker;
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
-import com.example.campusexpensemanagerse06304.model.Budget;
-import com.example.campusexpensemanagerse06304.model.Category;
+import com.example.campusexpensemanagerse06304.model.Money;
 
-import java.util.Calendar;
-import java.util.List;
 import java.util.Locale;
 
 /**
- * Enhanced Manager class for handling budget notifications with more user control
+ * Enhanced Manager class for handling budget notifications with more user control.
+ * Budgets are evaluated by ExpenseDb as expenses are written; this class supplies the
+ * thresholds from the preferences and turns the alerts into notifications.
  */
-public class BudgetNotificationManager {
+public class BudgetNotificationManager implements BudgetAlertListener {
     private static final String TAG = "BudgetNotification";
 
     // Notification channel constants
@@ -47,19 +49,40 @@ public class BudgetNotificationManager {
     private static final String KEY_WARNING_THRESHOLD = "warning_threshold";
     private static final String KEY_EXCEEDED_THRESHOLD = "exceeded_threshold";
     private static final String KEY_WARNING_FREQUENCY = "warning_frequency_hours";
-    private static final String KEY_LAST_NOTIFICATION_TIME = "last_notification_time_";
+    private static final String KEY_LAST_NOTIFICATION_TIME = "last_notification_time_"; // Old per-budget throttle keys, now in budget_alerts
 
     private Context context;
     private ExpenseDb expenseDb;
     private SharedPreferences prefs;
 
     public BudgetNotificationManager(Context context) {
-        this.context = context;
-        this.expenseDb = new ExpenseDb(context);
+        // Alerts arrive from database writes long after the screen that created this manager
+        this.context = context.getApplicationContext();
+        this.expenseDb = ExpenseDb.getInstance(context);
         this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
 
         // Create notification channels (required for Android 8.0+)
         createNotificationChannels();
+        removeOldThrottleKeys();
+
+        // Every instance reads the same preferences, so the latest one can take over
+        expenseDb.setBudgetAlertListener(this);
+    }
+
+    // Drop the per-budget throttle times kept in preferences before budget_alerts existed
+    private void removeOldThrottleKeys() {
+        SharedPreferences.Editor editor = null;
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith(KEY_LAST_NOTIFICATION_TIME)) {
+                if (editor == null) {
+                    editor = prefs.edit();
+                }
+                editor.remove(key);
+            }
+        }
+        if (editor != null) {
+            editor.apply();
+        }
     }
 
     /**
@@ -103,6 +126,7 @@ public class BudgetNotificationManager {
      * Check if user has notifications enabled in preferences
      * @return true if notifications are enabled, false otherwise
      */
+    @Override
     public boolean areNotificationsEnabled() {
         return prefs.getBoolean(KEY_NOTIFICATIONS_ENABLED, true); // Enabled by default
     }
@@ -149,6 +173,7 @@ public class BudgetNotificationManager {
      * Get the current warning threshold
      * @return Warning threshold (0.0 to 1.0)
      */
+    @Override
     public double getWarningThreshold() {
         return prefs.getFloat(KEY_WARNING_THRESHOLD, (float) DEFAULT_WARNING_THRESHOLD);
     }
@@ -157,6 +182,7 @@ public class BudgetNotificationManager {
      * Get the current exceeded threshold
      * @return Exceeded threshold (usually 1.0)
      */
+    @Override
     public double getExceededThreshold() {
         return prefs.getFloat(KEY_EXCEEDED_THRESHOLD, (float) DEFAULT_EXCEEDED_THRESHOLD);
     }
@@ -165,127 +191,57 @@ public class BudgetNotificationManager {
      * Get the minimum hours between warning notifications
      * @return Minimum hours between notifications
      */
+    @Override
     public int getWarningFrequency() {
         return prefs.getInt(KEY_WARNING_FREQUENCY, 24); // Default: 24 hours
     }
 
     /**
-     * Check budgets for a user and send notifications if needed
+     * Check budgets for a user and send notifications if needed.
+     * Writes already evaluate the categories they touch; this catches budgets that changed,
+     * a new month and alerts that were held back by the frequency limit, so once a day is enough.
      * @param userId User ID to check budgets for
      * @return Number of notifications sent (for testing/verification)
      */
     public int checkBudgetsAndNotify(int userId) {
         Log.d(TAG, "Checking budgets for user: " + userId);
-
-        // Skip checks if notifications are disabled
-        if (!areNotificationsEnabled()) {
-            Log.d(TAG, "Notifications are disabled in preferences");
-            return 0;
-        }
-
-        // Get current month in format YYYY-MM
-        Calendar cal = Calendar.getInstance();
-        String currentMonth = String.format(Locale.getDefault(), "%d-%02d",
-                cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
-
-        // Get all budgets for the user
-        List<Budget> budgets = expenseDb.getBudgetsByUser(userId);
-
-        // Get categories for names
-        List<Category> categories = expenseDb.getAllCategories();
-
-        // Keep track of how many notifications we send
-        int notificationsSent = 0;
-
-        // Check each budget
-        for (int i = 0; i < budgets.size(); i++) {
-            Budget budget = budgets.get(i);
-
-            // Get spent amount for this category this month
-            double spent = expenseDb.getTotalExpensesByCategoryAndMonth(
-                    userId, budget.getCategoryId(), currentMonth);
-
-            // Calculate percentage of budget used
-            double budgetAmount = budget.getAmount();
-            double percentage = budgetAmount > 0 ? spent / budgetAmount : 0;
-
-            // Find category name
-            String categoryName = "Unknown";
-            for (Category category : categories) {
-                if (category.getId() == budget.getCategoryId()) {
-                    categoryName = category.getName();
-                    break;
-                }
-            }
-
-            // Get threshold values from preferences
-            double warningThreshold = getWarningThreshold();
-            double exceededThreshold = getExceededThreshold();
-
-            // Get minimum notification frequency
-            int minHoursBetweenNotifications = getWarningFrequency();
-
-            // Check if we need to send notification
-            boolean shouldSendNotification = false;
-            boolean isCritical = false;
-            String notificationKey = KEY_LAST_NOTIFICATION_TIME + budget.getId();
-
-            // Check if budget is exceeded (over threshold)
-            if (percentage >= exceededThreshold) {
-                // For exceeded notifications, we consider it critical
-                isCritical = true;
-                shouldSendNotification = shouldSendNotification(notificationKey, minHoursBetweenNotifications);
-
-                // If notification should be sent
-                if (shouldSendNotification) {
-                    sendBudgetExceededNotification(userId, i, categoryName, spent, budgetAmount);
-                    notificationsSent++;
-
-                    // Update last notification time
-                    updateLastNotificationTime(notificationKey);
-                }
-            }
-            // Otherwise check if approaching warning threshold
-            else if (percentage >= warningThreshold) {
-                shouldSendNotification = shouldSendNotification(notificationKey, minHoursBetweenNotifications);
-
-                if (shouldSendNotification) {
-                    sendBudgetWarningNotification(userId, i, categoryName, spent, budgetAmount, percentage);
-                    notificationsSent++;
-
-                    // Update last notification time
-                    updateLastNotificationTime(notificationKey);
-                }
-            }
-        }
-
-        return notificationsSent;
+        Log.d(TAG, "Query cache: " + expenseDb.getCacheHitCount() + " hits, "
+                + expenseDb.getCacheMissCount() + " misses, "
+                + expenseDb.getCacheEvictionCount() + " evictions");
+
+        // The alerts read the budget tracker, so check it against the database first
+        BudgetTracker tracker = expenseDb.getBudgetTracker();
+        expenseDb.verifyBudgetTracker(userId);
+        Log.d(TAG, "Budget tracker: " + tracker.getRebuildCount() + " rebuilds, "
+                + tracker.getUpdateCount() + " updates, "
+                + tracker.getInvalidationCount() + " invalidations, "
+                + tracker.getMismatchCount() + " mismatches");
+
+        // Make sure the alerts come here, whichever manager registered last
+        expenseDb.setBudgetAlertListener(this);
+        return expenseDb.reconcileBudgetAlerts(userId).size();
     }
 
     /**
-     * Determine if we should send a notification based on frequency settings
+     * Show the notification for a threshold a budget has just crossed
      */
-    private boolean shouldSendNotification(String notificationKey, int minHoursBetweenNotifications) {
-        long lastNotificationTime = prefs.getLong(notificationKey, 0);
-        long currentTime = System.currentTimeMillis();
-        long minTimeBetweenNotifications = minHoursBetweenNotifications * 60 * 60 * 1000; // Convert to milliseconds
-
-        return (currentTime - lastNotificationTime) >= minTimeBetweenNotifications;
-    }
-
-    /**
-     * Update the last notification time for a budget
-     */
-    private void updateLastNotificationTime(String notificationKey) {
-        prefs.edit().putLong(notificationKey, System.currentTimeMillis()).apply();
+    @Override
+    public void onBudgetAlert(BudgetAlert alert) {
+        if (alert.getLevel() == BudgetAlert.Level.EXCEEDED) {
+            sendBudgetExceededNotification(alert.getUserId(), alert.getCategoryId(), alert.getCategoryName(),
+                    alert.getSpentCents(), alert.getBudgetCents());
+        } else if (alert.getLevel() == BudgetAlert.Level.WARNING) {
+            sendBudgetWarningNotification(alert.getUserId(), alert.getCategoryId(), alert.getCategoryName(),
+                    alert.getSpentCents(), alert.getBudgetCents(), alert.getPercentage());
+        }
     }
 
     /**
      * Send a notification when user approaches budget limit
      */
     private void sendBudgetWarningNotification(int userId, int notificationId,
-                                               String categoryName, double spent,
-                                               double budget, double percentage) {
+                                               String categoryName, long spent,
+                                               long budget, double percentage) {
         // Create intent to open the app
         Intent intent = new Intent(context, MenuActivity.class);
         intent.putExtra("ID_USER", userId);
@@ -301,8 +257,8 @@ public class BudgetNotificationManager {
         // Format the notification message
         String title = "Budget Alert: " + categoryName;
         String content = String.format(Locale.getDefault(),
-                "You've used %.1f%% of your %s budget ($%.2f of $%.2f)",
-                percentage * 100, categoryName, spent, budget);
+                "You've used %.1f%% of your %s budget (%s of %s)",
+                percentage * 100, categoryName, Money.format(spent), Money.format(budget));
 
         // Build notification with action buttons
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
@@ -340,8 +296,8 @@ public class BudgetNotificationManager {
      * Send a notification when user exceeds budget limit
      */
     private void sendBudgetExceededNotification(int userId, int notificationId,
-                                                String categoryName, double spent,
-                                                double budget) {
+                                                String categoryName, long spent,
+                                                long budget) {
         // Create intent to open the app
         Intent intent = new Intent(context, MenuActivity.class);
         intent.putExtra("ID_USER", userId);
@@ -357,8 +313,8 @@ public class BudgetNotificationManager {
         // Format the notification message
         String title = "Budget Exceeded: " + categoryName;
         String content = String.format(Locale.getDefault(),
-                "You've exceeded your %s budget! ($%.2f of $%.2f)",
-                categoryName, spent, budget);
+                "You've exceeded your %s budget! (%s of %s)",
+                categoryName, Money.format(spent), Money.format(budget));
 
         // Build notification with higher priority & actions
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CRITICAL_CHANNEL_ID)
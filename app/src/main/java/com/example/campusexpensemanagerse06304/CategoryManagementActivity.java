@@ -17,6 +17,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.campusexpensemanagerse06304.adapter.CategoryAdapter;
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.example.campusexpensemanagerse06304.model.Category;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
@@ -28,7 +29,7 @@ public class CategoryManagementActivity extends AppCompatActivity {
     private RecyclerView recyclerCategories;
     private CategoryAdapter categoryAdapter;
     private List<Category> categoryList;
-    private ExpenseDb expenseDb;
+    private ExpenseRepository repository;
     private FloatingActionButton fabAddCategory;
 
     @Override
@@ -46,12 +47,12 @@ public class CategoryManagementActivity extends AppCompatActivity {
         tvTitle.setText("Manage Categories");
         btnBack.setOnClickListener(v -> finish());
 
-        // Initialize database
-        expenseDb = new ExpenseDb(this);
+        // Initialize database; queries run off the main thread
+        repository = ExpenseRepository.getInstance(this);
 
         // Set up RecyclerView
         categoryList = new ArrayList<>();
-        categoryAdapter = new CategoryAdapter(this, categoryList);
+        categoryAdapter = new CategoryAdapter(this);
         recyclerCategories.setLayoutManager(new LinearLayoutManager(this));
         recyclerCategories.setAdapter(categoryAdapter);
 
@@ -59,12 +60,12 @@ public class CategoryManagementActivity extends AppCompatActivity {
         categoryAdapter.setOnItemClickListener(new CategoryAdapter.OnItemClickListener() {
             @Override
             public void onItemClick(int position) {
-                editCategory(categoryList.get(position));
+                editCategory(categoryAdapter.getItemAt(position));
             }
 
             @Override
             public void onDeleteClick(int position) {
-                deleteCategory(categoryList.get(position));
+                deleteCategory(categoryAdapter.getItemAt(position));
             }
         });
 
@@ -76,10 +77,11 @@ public class CategoryManagementActivity extends AppCompatActivity {
     }
 
     private void loadCategories() {
-        List<Category> categories = expenseDb.getAllCategories();
-        categoryList.clear();
-        categoryList.addAll(categories);
-        categoryAdapter.notifyDataSetChanged();
+        repository.read(this, ExpenseDb::getAllCategories, categories -> {
+            categoryList.clear();
+            categoryList.addAll(categories);
+            categoryAdapter.submitList(new ArrayList<>(categoryList));
+        });
     }
 
     private void showAddCategoryDialog() {
@@ -108,15 +110,15 @@ public class CategoryManagementActivity extends AppCompatActivity {
             String color = generateRandomColor();
 
             // Save to database
-            long result = expenseDb.insertCategory(name, description, "category", color);
-
-            if (result != -1) {
-                Toast.makeText(CategoryManagementActivity.this, "Category added successfully", Toast.LENGTH_SHORT).show();
-                loadCategories();
-                dialog.dismiss();
-            } else {
-                Toast.makeText(CategoryManagementActivity.this, "Failed to add category", Toast.LENGTH_SHORT).show();
-            }
+            repository.write(this, db -> db.insertCategory(name, description, "category", color), result -> {
+                if (result != -1) {
+                    Toast.makeText(CategoryManagementActivity.this, "Category added successfully", Toast.LENGTH_SHORT).show();
+                    loadCategories();
+                    dialog.dismiss();
+                } else {
+                    Toast.makeText(CategoryManagementActivity.this, "Failed to add category", Toast.LENGTH_SHORT).show();
+                }
+            });
         });
 
         btnCancel.setOnClickListener(v -> dialog.dismiss());
@@ -152,20 +154,18 @@ public class CategoryManagementActivity extends AppCompatActivity {
                 return;
             }
 
-            // Update category in database
-            category.setName(name);
-            category.setDescription(description);
-
-            // This would need a new method in ExpenseDb
-            boolean result = expenseDb.updateCategory(category);
-
-            if (result) {
-                Toast.makeText(CategoryManagementActivity.this, "Category updated successfully", Toast.LENGTH_SHORT).show();
-                loadCategories();
-                dialog.dismiss();
-            } else {
-                Toast.makeText(CategoryManagementActivity.this, "Failed to update category", Toast.LENGTH_SHORT).show();
-            }
+            // Update category in database; the writer thread gets its own copy
+            Category updated = new Category(category.getId(), name, description,
+                    category.getIcon(), category.getColor());
+            repository.write(this, db -> db.updateCategory(updated), result -> {
+                if (result) {
+                    Toast.makeText(CategoryManagementActivity.this, "Category updated successfully", Toast.LENGTH_SHORT).show();
+                    loadCategories();
+                    dialog.dismiss();
+                } else {
+                    Toast.makeText(CategoryManagementActivity.this, "Failed to update category", Toast.LENGTH_SHORT).show();
+                }
+            });
         });
 
         btnCancel.setOnClickListener(v -> dialog.dismiss());
@@ -179,14 +179,14 @@ public class CategoryManagementActivity extends AppCompatActivity {
                 .setMessage("Are you sure you want to delete this category? This will affect any expenses using this category.")
                 .setPositiveButton("Delete", (dialog, which) -> {
                     // Delete from database
-                    boolean result = expenseDb.deleteCategory(category.getId());
-
-                    if (result) {
-                        Toast.makeText(CategoryManagementActivity.this, "Category deleted successfully", Toast.LENGTH_SHORT).show();
-                        loadCategories();
-                    } else {
-                        Toast.makeText(CategoryManagementActivity.this, "Failed to delete category", Toast.LENGTH_SHORT).show();
-                    }
+                    repository.write(this, db -> db.deleteCategory(category.getId()), result -> {
+                        if (result) {
+                            Toast.makeText(CategoryManagementActivity.this, "Category deleted successfully", Toast.LENGTH_SHORT).show();
+                            loadCategories();
+                        } else {
+                            Toast.makeText(CategoryManagementActivity.this, "Failed to delete category", Toast.LENGTH_SHORT).show();
+                        }
+                    });
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
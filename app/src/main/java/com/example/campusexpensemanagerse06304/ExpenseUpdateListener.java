@@ -1,5 +0,0 @@
-package com.example.campusexpensemanagerse06304;
-
-public interface ExpenseUpdateListener {
-    void onExpenseUpdated();
-}
\ No newline at end of file
@@ -15,6 +15,8 @@ import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -22,11 +24,14 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.campusexpensemanagerse06304.adapter.ExpenseAdapter;
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.example.campusexpensemanagerse06304.model.Category;
 import com.example.campusexpensemanagerse06304.model.Expense;
+import com.example.campusexpensemanagerse06304.model.Money;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -46,7 +51,7 @@ public class ExpensesFragment extends Fragment {
     private ExpenseAdapter expenseAdapter;
     private List<Expense> expenseList;
     private List<Category> categoryList;
-    private ExpenseDb expenseDb;
+    private ExpenseRepository repository;
 
     private EditText etAmount, etDescription;
     private Spinner spinnerCategory, spinnerPaymentMethod;
@@ -80,8 +85,8 @@ public class ExpensesFragment extends Fragment {
             mParam2 = getArguments().getString(ARG_PARAM2);
         }
 
-        // Initialize database helper
-        expenseDb = new ExpenseDb(getContext());
+        // Database work runs off the main thread
+        repository = ExpenseRepository.getInstance(requireContext());
 
         // Get the current user ID from the activity
         if (getActivity() != null) {
@@ -117,7 +122,7 @@ public class ExpensesFragment extends Fragment {
         // Setup the recycler view
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         expenseList = new ArrayList<>();
-        expenseAdapter = new ExpenseAdapter(getContext(), expenseList);
+        expenseAdapter = new ExpenseAdapter(getContext());
         recyclerView.setAdapter(expenseAdapter);
 
         // Initialize the date display
@@ -133,9 +138,6 @@ public class ExpensesFragment extends Fragment {
         // Setup date picker
         tvDate.setOnClickListener(view -> showDatePicker());
 
-        // Setup category spinner
-        setupCategorySpinner();
-
         // Setup payment method spinner
         setupPaymentMethodSpinner();
 
@@ -146,15 +148,25 @@ public class ExpensesFragment extends Fragment {
             }
         });
 
-        // Load expenses
-        loadExpenses();
-
         return rootView;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        // Setup category spinner and load expenses
+        setupCategorySpinner();
+        loadExpenses();
+    }
+
     private void setupCategorySpinner() {
         // Load categories from the database
-        categoryList = expenseDb.getAllCategories();
+        repository.read(getViewLifecycleOwner(), ExpenseDb::getAllCategories, this::showCategories);
+    }
+
+    private void showCategories(List<Category> categories) {
+        categoryList = categories;
 
         // Create adapter for the spinner
         ArrayAdapter<Category> categoryAdapter = new ArrayAdapter<>(
@@ -200,9 +212,9 @@ public class ExpensesFragment extends Fragment {
             return;
         }
 
-        double amount;
+        long amount;
         try {
-            amount = Double.parseDouble(etAmount.getText().toString());
+            amount = Money.parseCents(etAmount.getText().toString());
             if (amount <= 0) {
                 etAmount.setError("Amount must be greater than zero");
                 return;
@@ -228,46 +240,52 @@ public class ExpensesFragment extends Fragment {
         String date = tvDate.getText().toString();
 
         // Save to database
-        long result = expenseDb.insertExpense(userId, categoryId, amount, description, date, paymentMethod, false, null);
-
-        if (result != -1) {
-            Toast.makeText(getContext(), "Expense added successfully", Toast.LENGTH_SHORT).show();
-            // Clear input fields
-            etAmount.setText("");
-            etDescription.setText("");
-            tvDate.setText(dateFormat.format(Calendar.getInstance().getTime()));
-
-            // Hide add expense layout
-            addExpenseLayout.setVisibility(View.GONE);
-            fabAddExpense.setVisibility(View.VISIBLE);
-
-            // Refresh expenses list
-            loadExpenses();
-        } else {
-            Toast.makeText(getContext(), "Failed to add expense", Toast.LENGTH_SHORT).show();
-        }
+        String finalDescription = description;
+        repository.write(getViewLifecycleOwner(), db -> db.insertExpense(userId, categoryId, amount, finalDescription,
+                LocalDate.parse(date), paymentMethod, false, null), result -> {
+            if (result != -1) {
+                Toast.makeText(getContext(), "Expense added successfully", Toast.LENGTH_SHORT).show();
+                // Clear input fields
+                etAmount.setText("");
+                etDescription.setText("");
+                tvDate.setText(dateFormat.format(Calendar.getInstance().getTime()));
+
+                // Hide add expense layout
+                addExpenseLayout.setVisibility(View.GONE);
+                fabAddExpense.setVisibility(View.VISIBLE);
+
+                // Refresh expenses list
+                loadExpenses();
+            } else {
+                Toast.makeText(getContext(), "Failed to add expense", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void loadExpenses() {
         if (userId != -1) {
-            // Load expenses from database
-            List<Expense> expenses = expenseDb.getExpensesByUser(userId);
-
-            // Add category information to expenses
-            for (Expense expense : expenses) {
-                for (Category category : categoryList) {
-                    if (category.getId() == expense.getCategoryId()) {
-                        expense.setCategoryName(category.getName());
-                        expense.setCategoryColor(category.getColor());
-                        break;
+            repository.read(getViewLifecycleOwner(), db -> {
+                // Load expenses from database
+                List<Expense> expenses = db.getExpensesByUser(userId);
+                List<Category> categories = db.getAllCategories();
+
+                // Add category information to expenses
+                for (Expense expense : expenses) {
+                    for (Category category : categories) {
+                        if (category.getId() == expense.getCategoryId()) {
+                            expense.setCategoryName(category.getName());
+                            expense.setCategoryColor(category.getColor());
+                            break;
+                        }
                     }
                 }
-            }
-
-            // Update the adapter
-            expenseList.clear();
-            expenseList.addAll(expenses);
-            expenseAdapter.notifyDataSetChanged();
+                return expenses;
+            }, expenses -> {
+                // Update the adapter
+                expenseList.clear();
+                expenseList.addAll(expenses);
+                expenseAdapter.submitList(new ArrayList<>(expenseList));
+            });
         }
     }
 }
\ No newline at end of file
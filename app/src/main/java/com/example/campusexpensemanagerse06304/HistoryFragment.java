@@ -4,6 +4,8 @@ import android.app.DatePickerDialog;
 import android.content.Intent;
 import android.os.Bundle;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -18,10 +20,16 @@ import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.campusexpensemanagerse06304.adapter.EndlessScrollListener;
 import com.example.campusexpensemanagerse06304.adapter.ExpenseAdapter;
+import com.example.campusexpensemanagerse06304.database.DataChange;
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
+import com.example.campusexpensemanagerse06304.database.ExpenseFilter;
+import com.example.campusexpensemanagerse06304.database.ExpensePage;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.example.campusexpensemanagerse06304.model.Category;
 import com.example.campusexpensemanagerse06304.model.Expense;
+import com.example.campusexpensemanagerse06304.model.Money;
 import com.github.mikephil.charting.charts.BarChart;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.data.BarData;
@@ -30,22 +38,22 @@ import com.github.mikephil.charting.data.BarEntry;
 import com.github.mikephil.charting.formatter.IndexAxisValueFormatter;
 import com.github.mikephil.charting.utils.ColorTemplate;
 
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 public class HistoryFragment extends Fragment {
 
     private static final String ARG_PARAM1 = "param1";
     private static final String ARG_PARAM2 = "param2";
+    private static final int PAGE_SIZE = 50;
 
     private String mParam1;
     private String mParam2;
@@ -59,12 +67,16 @@ public class HistoryFragment extends Fragment {
     private ExpenseAdapter historyAdapter;
     private List<Expense> filteredExpensesList;
     private List<Category> categoryList;
-    private ExpenseDb expenseDb;
+    private ExpenseRepository repository;
 
     private int userId;
     private Calendar startDate, endDate;
     private SimpleDateFormat dateFormat;
     private int selectedCategoryId = -1; // -1 means all categories
+    private ExpenseFilter currentFilter;
+    private String nextPageToken; // null once the last page is loaded
+    private ExpenseFilter loadedFilter; // Filter of the rows shown, null until its first page arrives
+    private Future<?> pageLoad; // Page being loaded, null when idle
 
     private String[] sortOptions = {"Date (Newest)", "Date (Oldest)", "Amount (Highest)", "Amount (Lowest)"};
 
@@ -89,8 +101,8 @@ public class HistoryFragment extends Fragment {
             mParam2 = getArguments().getString(ARG_PARAM2);
         }
 
-        // Initialize database helper
-        expenseDb = new ExpenseDb(getContext());
+        // Database work runs off the main thread
+        repository = ExpenseRepository.getInstance(requireContext());
 
         // Get the current user ID from the activity
         if (getActivity() != null) {
@@ -126,11 +138,20 @@ public class HistoryFragment extends Fragment {
         barChart = rootView.findViewById(R.id.barChartHistory);
 
         // Setup recycler view
-        recyclerHistory.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        recyclerHistory.setLayoutManager(layoutManager);
         filteredExpensesList = new ArrayList<>();
-        historyAdapter = new ExpenseAdapter(getContext(), filteredExpensesList);
+        historyAdapter = new ExpenseAdapter(getContext());
         recyclerHistory.setAdapter(historyAdapter);
 
+        // Load further pages as the user scrolls towards the end
+        recyclerHistory.addOnScrollListener(new EndlessScrollListener(layoutManager) {
+            @Override
+            public void onLoadMore() {
+                loadMoreExpenses();
+            }
+        });
+
         // Initialize the date displays
         tvStartDate.setText(dateFormat.format(startDate.getTime()));
         tvEndDate.setText(dateFormat.format(endDate.getTime()));
@@ -139,9 +160,6 @@ public class HistoryFragment extends Fragment {
         tvStartDate.setOnClickListener(v -> showStartDatePicker());
         tvEndDate.setOnClickListener(v -> showEndDatePicker());
 
-        // Setup category spinner
-        setupCategorySpinner();
-
         // Setup sort spinner
         setupSortBySpinner();
 
@@ -154,15 +172,16 @@ public class HistoryFragment extends Fragment {
         // Setup bar chart
         setupBarChart();
 
-        // Apply initial filters to load data
-        applyFilters();
-
         return rootView;
     }
 
     private void setupCategorySpinner() {
         // Load categories from the database
-        categoryList = expenseDb.getAllCategories();
+        repository.read(getViewLifecycleOwner(), ExpenseDb::getAllCategories, this::showCategories);
+    }
+
+    private void showCategories(List<Category> categories) {
+        categoryList = categories;
 
         // Add "All Categories" option
         List<Category> spinnerCategories = new ArrayList<>();
@@ -179,6 +198,14 @@ public class HistoryFragment extends Fragment {
 
         spinnerCategory.setAdapter(categoryAdapter);
 
+        // Keep the current selection when the list is reloaded
+        for (int i = 0; i < spinnerCategories.size(); i++) {
+            if (spinnerCategories.get(i).getId() == selectedCategoryId) {
+                spinnerCategory.setSelection(i);
+                break;
+            }
+        }
+
         // Set listener to update selected category
         spinnerCategory.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
@@ -254,127 +281,178 @@ public class HistoryFragment extends Fragment {
         barChart.setScaleEnabled(true);
     }
 
+    private void loadMoreExpenses() {
+        if (currentFilter == null || nextPageToken == null || pageLoad != null) {
+            return; // Nothing loaded yet, already at the last page, or a page is on its way
+        }
+
+        ExpenseFilter filter = currentFilter;
+        String pageToken = nextPageToken;
+        pageLoad = repository.read(getViewLifecycleOwner(),
+                db -> db.queryExpensePage(filter, pageToken, PAGE_SIZE),
+                page -> {
+                    pageLoad = null;
+                    appendPage(page);
+                });
+    }
+
+    private void appendPage(ExpensePage page) {
+        nextPageToken = page.getNextPageToken();
+
+        filteredExpensesList.addAll(page.getExpenses());
+        historyAdapter.submitList(new ArrayList<>(filteredExpensesList));
+    }
+
     private void applyFilters() {
         if (userId == -1) return;
 
-        // Get all expenses
-        List<Expense> allExpenses = expenseDb.getExpensesByUser(userId);
-        List<Expense> filteredExpenses = new ArrayList<>();
-
         // Filter by date range and category
         String startDateStr = tvStartDate.getText().toString();
         String endDateStr = tvEndDate.getText().toString();
 
         try {
-            Date filterStartDate = dateFormat.parse(startDateStr);
-            Date filterEndDate = dateFormat.parse(endDateStr);
-
-            for (Expense expense : allExpenses) {
-                // Check date range
-                if (expense.getDate().after(filterStartDate) &&
-                        expense.getDate().before(filterEndDate) ||
-                        expense.getDate().equals(filterStartDate) ||
-                        expense.getDate().equals(filterEndDate)) {
-
-                    // Check category filter
-                    if (selectedCategoryId == -1 || expense.getCategoryId() == selectedCategoryId) {
-                        // Add category information
-                        for (Category category : categoryList) {
-                            if (category.getId() == expense.getCategoryId()) {
-                                expense.setCategoryName(category.getName());
-                                expense.setCategoryColor(category.getColor());
-                                break;
-                            }
-                        }
-
-                        filteredExpenses.add(expense);
-                    }
-                }
-            }
+            LocalDate filterStartDate = LocalDate.parse(startDateStr);
+            LocalDate filterEndDate = LocalDate.parse(endDateStr);
 
-            // Apply sorting
-            int sortOption = spinnerSortBy.getSelectedItemPosition();
-            sortExpenses(filteredExpenses, sortOption);
+            // Filtering and sorting both run in the database query
+            ExpenseFilter filter = new ExpenseFilter(userId);
+            filter.setDateRange(filterStartDate, filterEndDate);
+            filter.setCategoryId(selectedCategoryId);
+            filter.setSortOrder(getSortOrder(spinnerSortBy.getSelectedItemPosition()));
+            loadFirstPage(filter);
 
-            // Update the adapter
-            filteredExpensesList.clear();
-            filteredExpensesList.addAll(filteredExpenses);
-            historyAdapter.notifyDataSetChanged();
+        } catch (DateTimeParseException e) {
+            Toast.makeText(getContext(), "Invalid date format", Toast.LENGTH_SHORT).show();
+        }
+    }
 
-            // Update total amount
-            double total = 0;
-            for (Expense expense : filteredExpenses) {
-                total += expense.getAmount();
-            }
-            tvTotalAmount.setText(String.format(Locale.getDefault(), "$%.2f", total));
-
-            // Show/hide no data message
-            if (filteredExpenses.isEmpty()) {
-                tvNoHistory.setVisibility(View.VISIBLE);
-                recyclerHistory.setVisibility(View.GONE);
-                barChart.setVisibility(View.GONE);
-            } else {
-                tvNoHistory.setVisibility(View.GONE);
-                recyclerHistory.setVisibility(View.VISIBLE);
-
-                // Update the bar chart
-                updateBarChart(filteredExpenses);
-            }
+    private void loadFirstPage(ExpenseFilter filter) {
+        if (pageLoad != null) {
+            pageLoad.cancel(false); // Results of a replaced filter must not be shown
+        }
+        currentFilter = filter; // Set now so changes made during the load re-run it
+
+        // The total and the chart cover every matching expense rather than the loaded page
+        pageLoad = repository.read(getViewLifecycleOwner(), db -> {
+            ExpensePage page = db.queryExpensePage(filter, null, PAGE_SIZE);
+            Map<String, Long> categoryTotals = page.getExpenses().isEmpty()
+                    ? null : db.getExpenseTotalsByCategory(filter);
+            return new FilterResult(page, db.getExpenseTotal(filter), categoryTotals);
+        }, result -> {
+            pageLoad = null;
+            loadedFilter = filter;
+            showFilterResult(result);
+        });
+    }
 
-        } catch (ParseException e) {
-            Toast.makeText(getContext(), "Invalid date format", Toast.LENGTH_SHORT).show();
+    // Re-read the rows already loaded with the totals, so a change is diffed in place and the
+    // scroll position is kept
+    private void reloadExpenses() {
+        if (loadedFilter != currentFilter) {
+            loadFirstPage(currentFilter); // The filter's first page has not arrived yet
+            return;
+        }
+
+        if (pageLoad != null) {
+            pageLoad.cancel(false); // Read before the change; the next scroll asks again
         }
+        ExpenseFilter filter = currentFilter;
+        String pageToken = nextPageToken;
+        pageLoad = repository.read(getViewLifecycleOwner(), db -> {
+            ExpensePage page = db.queryExpensesThrough(filter, pageToken);
+            Map<String, Long> categoryTotals = page.getExpenses().isEmpty()
+                    ? null : db.getExpenseTotalsByCategory(filter);
+            return new FilterResult(page, db.getExpenseTotal(filter), categoryTotals);
+        }, result -> {
+            pageLoad = null;
+            showFilterResult(result);
+        });
     }
 
-    private void sortExpenses(List<Expense> expenses, int sortOption) {
-        switch (sortOption) {
-            case 0: // Date (Newest)
-                Collections.sort(expenses, (e1, e2) -> e2.getDate().compareTo(e1.getDate()));
-                break;
-            case 1: // Date (Oldest)
-                Collections.sort(expenses, (e1, e2) -> e1.getDate().compareTo(e2.getDate()));
-                break;
-            case 2: // Amount (Highest)
-                Collections.sort(expenses, (e1, e2) -> Double.compare(e2.getAmount(), e1.getAmount()));
-                break;
-            case 3: // Amount (Lowest)
-                Collections.sort(expenses, (e1, e2) -> Double.compare(e1.getAmount(), e2.getAmount()));
-                break;
+    // Loaded pages of a filter with its total and per-category totals
+    private static final class FilterResult {
+        final ExpensePage page;
+        final long total;
+        final Map<String, Long> categoryTotals; // null when nothing matches
+
+        FilterResult(ExpensePage page, long total, Map<String, Long> categoryTotals) {
+            this.page = page;
+            this.total = total;
+            this.categoryTotals = categoryTotals;
         }
     }
 
-    private void updateBarChart(List<Expense> expenses) {
-        // Group expenses by category
-        Map<Integer, Double> categoryTotals = new HashMap<>();
-        Map<Integer, String> categoryNames = new HashMap<>();
+    private void showFilterResult(FilterResult result) {
+        ExpensePage page = result.page;
+        List<Expense> filteredExpenses = page.getExpenses();
+        nextPageToken = page.getNextPageToken();
+
+        // Update the adapter
+        filteredExpensesList.clear();
+        filteredExpensesList.addAll(filteredExpenses);
+        historyAdapter.submitList(new ArrayList<>(filteredExpensesList));
+
+        // Update total amount, summed over every matching expense rather than the loaded page
+        tvTotalAmount.setText(Money.format(result.total));
+
+        // Show/hide no data message
+        if (filteredExpenses.isEmpty()) {
+            tvNoHistory.setVisibility(View.VISIBLE);
+            recyclerHistory.setVisibility(View.GONE);
+            barChart.setVisibility(View.GONE);
+        } else {
+            tvNoHistory.setVisibility(View.GONE);
+            recyclerHistory.setVisibility(View.VISIBLE);
+
+            // Update the bar chart
+            updateBarChart(result.categoryTotals);
+        }
+    }
 
-        for (Expense expense : expenses) {
-            int categoryId = expense.getCategoryId();
-            double amount = expense.getAmount();
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        repository.getChangeBus().observe(getViewLifecycleOwner(), this::onDataChanged);
 
-            if (categoryTotals.containsKey(categoryId)) {
-                double currentTotal = categoryTotals.get(categoryId);
-                categoryTotals.put(categoryId, currentTotal + amount);
-            } else {
-                categoryTotals.put(categoryId, amount);
-            }
+        // Load the categories and apply initial filters to load data
+        setupCategorySpinner();
+        applyFilters();
+    }
 
-            if (!categoryNames.containsKey(categoryId)) {
-                categoryNames.put(categoryId, expense.getCategoryName());
-            }
+    // Re-read the applied filter's rows only when the change can alter its results
+    private void onDataChanged(DataChange change) {
+        boolean categoriesChanged = change.touches(DataChange.Table.CATEGORIES);
+        if (categoriesChanged) {
+            setupCategorySpinner();
+        }
+        if (currentFilter != null && (categoriesChanged || change.affects(currentFilter))) {
+            reloadExpenses();
+        }
+    }
+
+    private ExpenseFilter.SortOrder getSortOrder(int sortOption) {
+        switch (sortOption) {
+            case 1: // Date (Oldest)
+                return ExpenseFilter.SortOrder.DATE_OLDEST;
+            case 2: // Amount (Highest)
+                return ExpenseFilter.SortOrder.AMOUNT_HIGHEST;
+            case 3: // Amount (Lowest)
+                return ExpenseFilter.SortOrder.AMOUNT_LOWEST;
+            case 0: // Date (Newest)
+            default:
+                return ExpenseFilter.SortOrder.DATE_NEWEST;
         }
+    }
 
+    private void updateBarChart(Map<String, Long> categoryTotals) {
         // Convert to bar entries
         List<BarEntry> entries = new ArrayList<>();
         List<String> labels = new ArrayList<>();
         int index = 0;
 
-        for (Map.Entry<Integer, Double> entry : categoryTotals.entrySet()) {
-            int categoryId = entry.getKey();
-            double amount = entry.getValue();
-
-            entries.add(new BarEntry(index, (float) amount));
-            labels.add(categoryNames.get(categoryId));
+        for (Map.Entry<String, Long> entry : categoryTotals.entrySet()) {
+            entries.add(new BarEntry(index, (float) Money.toDollars(entry.getValue())));
+            labels.add(entry.getKey());
             index++;
         }
 
@@ -407,8 +485,14 @@ public class HistoryFragment extends Fragment {
 
         String reportInfo = "Report Period: " + startDateStr + " to " + endDateStr + "\n";
         reportInfo += "Total Expenses: " + totalAmount + "\n";
-        reportInfo += "Number of Transactions: " + filteredExpensesList.size();
-
-        Toast.makeText(getContext(), reportInfo, Toast.LENGTH_LONG).show();
+        if (currentFilter == null) {
+            Toast.makeText(getContext(), reportInfo + "Number of Transactions: 0", Toast.LENGTH_LONG).show();
+            return;
+        }
+        ExpenseFilter filter = currentFilter;
+        String periodInfo = reportInfo;
+        repository.read(getViewLifecycleOwner(), db -> db.getExpenseCount(filter), transactionCount ->
+                Toast.makeText(getContext(), periodInfo + "Number of Transactions: " + transactionCount,
+                        Toast.LENGTH_LONG).show());
     }
 }
\ No newline at end of file
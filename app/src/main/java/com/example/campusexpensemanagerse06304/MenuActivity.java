@@ -25,7 +25,7 @@ import androidx.fragment.app.Fragment;
 import androidx.viewpager2.widget.ViewPager2;
 
 import com.example.campusexpensemanagerse06304.adapter.ViewPagerAdapter;
-import com.example.campusexpensemanagerse06304.database.ExpenseDb;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.navigation.NavigationView;
 
@@ -206,16 +206,10 @@ public class MenuActivity extends AppCompatActivity implements NavigationView.On
                 } else if (position == 4) {
                     bottomNavigationView.getMenu().findItem(R.id.menu_setting).setChecked(true);
                 }
-
-                // Refresh the current fragment
-                Fragment currentFragment = viewPagerAdapter.getFragment(position);
-                if (currentFragment instanceof SimpleHomeFragment) {
-                    ((SimpleHomeFragment) currentFragment).refreshData();
-                }
             }
         });
 
-        // Start background budget checking service
+        // Start the background budget reconcile
         startBudgetChecking();
     }
 
@@ -229,7 +223,8 @@ public class MenuActivity extends AppCompatActivity implements NavigationView.On
     }
 
     /**
-     * Start periodic budget checking in background
+     * Start the daily budget reconcile in background.
+     * Expense writes evaluate their own budgets, so this only catches budget edits and a new month.
      */
     private void startBudgetChecking() {
         if (userId != -1) {
@@ -240,14 +235,11 @@ public class MenuActivity extends AppCompatActivity implements NavigationView.On
             // Create a new scheduled executor
             scheduler = Executors.newScheduledThreadPool(1);
 
-            // Schedule periodic checks (every 15 minutes)
+            // Schedule a daily reconcile, starting with an immediate one
             scheduler.scheduleAtFixedRate(() -> {
                 // Run notification check on background thread
                 checkBudgetsAndNotify();
-            }, 1, 15, TimeUnit.MINUTES);
-
-            // Do an immediate check
-            checkBudgetsAndNotify();
+            }, 0, 1, TimeUnit.DAYS);
         }
     }
 
@@ -310,14 +302,11 @@ public class MenuActivity extends AppCompatActivity implements NavigationView.On
     }
 
     private void initializeDatabase() {
-        ExpenseDb expenseDb = new ExpenseDb(this);
-
-        try {
-            // Force database creation
-            expenseDb.getWritableDatabase().close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        // Force database creation on the writer thread; the shared connection is kept open
+        ExpenseRepository.getInstance(this).write(this, db -> {
+            db.getWritableDatabase();
+            return null;
+        }, null);
     }
 
     /**
@@ -350,36 +339,4 @@ public class MenuActivity extends AppCompatActivity implements NavigationView.On
         return true;
     }
 
-    public void refreshAllDataFragments() {
-        Log.d(TAG, "Refreshing all data fragments");
-
-        // Get ViewPager adapter
-        ViewPagerAdapter adapter = getViewPagerAdapter();
-        if (adapter == null) return;
-
-        // Refresh home fragment
-        Fragment homeFragment = adapter.getFragment(0);
-        if (homeFragment instanceof RefreshableFragment) {
-            ((RefreshableFragment) homeFragment).refreshData();
-        }
-
-        // Refresh expenses fragment
-        Fragment expensesFragment = adapter.getFragment(1);
-        if (expensesFragment instanceof RefreshableFragment) {
-            ((RefreshableFragment) expensesFragment).refreshData();
-        }
-
-        // Refresh budget fragment
-        Fragment budgetFragment = adapter.getFragment(2);
-        if (budgetFragment instanceof RefreshableFragment) {
-            ((RefreshableFragment) budgetFragment).refreshData();
-        }
-
-        // Refresh history fragment
-        Fragment historyFragment = adapter.getFragment(3);
-        if (historyFragment instanceof RefreshableFragment) {
-            ((RefreshableFragment) historyFragment).refreshData();
-        }
-    }
-
 }
\ No newline at end of file
@@ -88,6 +88,18 @@ public class PdfStyleHelper {
         return cell;
     }
 
+    /**
+     * Creates a bold cell for a totals row, right aligned for amounts
+     */
+    public static PdfPCell createTotalCell(String text, boolean alignRight) {
+        PdfPCell cell = new PdfPCell(new Paragraph(text, SMALL_BOLD_FONT));
+        if (alignRight) {
+            cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        }
+        cell.setPadding(5);
+        return cell;
+    }
+
     /**
      * Creates a monetary value cell with color coding for positive/negative values
      */
@@ -23,12 +23,15 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.campusexpensemanagerse06304.adapter.RecurringExpenseAdapter;
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
-import com.example.campusexpensemanagerse06304.model.Budget;
+import com.example.campusexpensemanagerse06304.database.ExpenseInsertResult;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.example.campusexpensemanagerse06304.model.Category;
+import com.example.campusexpensemanagerse06304.model.Money;
 import com.example.campusexpensemanagerse06304.model.RecurringExpense;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -45,8 +48,8 @@ public class RecurringExpenseActivity extends AppCompatActivity {
     private RecyclerView recyclerRecurring;
     private RecurringExpenseAdapter recurringAdapter;
     private List<RecurringExpense> recurringList;
-    private List<Category> categoryList;
-    private ExpenseDb expenseDb;
+    private List<Category> categoryList = new ArrayList<>();
+    private ExpenseRepository repository;
     private int userId;
     private Calendar startDate, endDate;
     private SimpleDateFormat dateFormat;
@@ -57,8 +60,8 @@ public class RecurringExpenseActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_recurring_expense);
 
-        // Initialize database
-        expenseDb = new ExpenseDb(this);
+        // Initialize database; queries run off the main thread
+        repository = ExpenseRepository.getInstance(this);
 
         // Get user ID from intent
         userId = getIntent().getIntExtra("ID_USER", -1);
@@ -105,7 +108,7 @@ public class RecurringExpenseActivity extends AppCompatActivity {
 
         // Setup RecyclerView
         recurringList = new ArrayList<>();
-        recurringAdapter = new RecurringExpenseAdapter(this, recurringList);
+        recurringAdapter = new RecurringExpenseAdapter(this);
         recyclerRecurring.setLayoutManager(new LinearLayoutManager(this));
         recyclerRecurring.setAdapter(recurringAdapter);
 
@@ -143,14 +146,18 @@ public class RecurringExpenseActivity extends AppCompatActivity {
 
             @Override
             public void onDeleteClick(int position) {
-                RecurringExpense recurring = recurringList.get(position);
+                RecurringExpense recurring = recurringAdapter.getItemAt(position);
                 deleteRecurringExpense(recurring.getId());
             }
         });
     }
 
     private void loadCategories() {
-        categoryList = expenseDb.getAllCategories();
+        repository.read(this, ExpenseDb::getAllCategories, this::showCategories);
+    }
+
+    private void showCategories(List<Category> categories) {
+        categoryList = categories;
 
         // Create adapter for spinner
         ArrayAdapter<Category> adapter = new ArrayAdapter<>(
@@ -193,9 +200,9 @@ public class RecurringExpenseActivity extends AppCompatActivity {
             return;
         }
 
-        double amount;
+        long amount;
         try {
-            amount = Double.parseDouble(etAmount.getText().toString());
+            amount = Money.parseCents(etAmount.getText().toString());
             if (amount <= 0) {
                 etAmount.setError("Amount must be greater than zero");
                 return;
@@ -219,118 +226,124 @@ public class RecurringExpenseActivity extends AppCompatActivity {
         Category selectedCategory = (Category) spinnerCategory.getSelectedItem();
         int categoryId = selectedCategory.getId();
 
-        // Check if this category has a budget
-        if (!categoryHasBudget(categoryId)) {
-            // Show dialog to prompt user to set up a budget first
-            AlertDialog.Builder builder = new AlertDialog.Builder(this);
-            builder.setTitle("Budget Required");
-            builder.setMessage("This category doesn't have a budget yet. Would you like to set one up first?");
-
-            // Store the selected values in class variables so we can access them later
-            final double finalAmount = amount;
-            final String finalDescription = description;
-            final int finalCategoryId = categoryId;
-
-            builder.setPositiveButton("Set Budget", (dialog, which) -> {
-                try {
-                    // Navigate to budget screen using safer navigation
-                    Intent intent = new Intent(RecurringExpenseActivity.this, MenuActivity.class);
-                    intent.putExtra("ID_USER", userId);
-                    intent.putExtra("NAVIGATE_TO_BUDGET", true);
-                    intent.putExtra("CATEGORY_ID", finalCategoryId);
-                    intent.putExtra("CATEGORY_NAME", selectedCategory.getName());
-
-                    // Store these values in shared preferences so we can retrieve them when returning
-                    SharedPreferences prefs = getSharedPreferences("RecurringExpenseData", MODE_PRIVATE);
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putFloat("PENDING_AMOUNT", (float)finalAmount);
-                    editor.putString("PENDING_DESCRIPTION", finalDescription);
-                    editor.putInt("PENDING_CATEGORY_ID", finalCategoryId);
-                    editor.putString("PENDING_START_DATE", tvStartDate.getText().toString());
-                    editor.putString("PENDING_END_DATE", tvEndDate.getText().toString());
-                    editor.putInt("PENDING_FREQUENCY", spinnerFrequency.getSelectedItemPosition());
-                    editor.putBoolean("HAS_PENDING_DATA", true);
-                    editor.apply();
-
-                    // Start the activity
-                    startActivity(intent);
-                    // Finish so we don't have multiple instances of this activity
-                    // finish(); <- Don't finish, as we want to return to this screen
-                } catch (Exception e) {
-                    Log.e("RecurringExpense", "Error navigating to budget screen", e);
-                    Toast.makeText(RecurringExpenseActivity.this,
-                            "Error navigating to budget screen: " + e.getMessage(),
-                            Toast.LENGTH_LONG).show();
-                }
-            });
+        // Budgets are checked and the expense inserted in one transaction
+        proceedWithSavingRecurringExpense(categoryId, amount, description, false);
+    }
 
-            builder.setNegativeButton("Continue Anyway", (dialog, which) -> {
-                // Proceed with saving recurring expense
-                proceedWithSavingRecurringExpense(finalCategoryId, finalAmount, finalDescription);
-            });
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void showBudgetRequiredDialog(int categoryId, long amount, String description) {
+        // Get category name
+        String categoryName = categoryList.stream().filter(category -> category.getId() == categoryId).findFirst().map(Category::getName).orElse("Selected category");
 
-            builder.show();
-            return;
-        }
+        // Show dialog to prompt user to set up a budget first
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Budget Required");
+        builder.setMessage("This category doesn't have a budget yet. Would you like to set one up first?");
+
+        // Store the selected values in class variables so we can access them later
+        final long finalAmount = amount;
+        final String finalDescription = description;
+        final int finalCategoryId = categoryId;
+
+        builder.setPositiveButton("Set Budget", (dialog, which) -> {
+            try {
+                // Navigate to budget screen using safer navigation
+                Intent intent = new Intent(RecurringExpenseActivity.this, MenuActivity.class);
+                intent.putExtra("ID_USER", userId);
+                intent.putExtra("NAVIGATE_TO_BUDGET", true);
+                intent.putExtra("CATEGORY_ID", finalCategoryId);
+                intent.putExtra("CATEGORY_NAME", categoryName);
+
+                // Store these values in shared preferences so we can retrieve them when returning
+                SharedPreferences prefs = getSharedPreferences("RecurringExpenseData", MODE_PRIVATE);
+                SharedPreferences.Editor editor = prefs.edit();
+                editor.putLong("PENDING_AMOUNT_CENTS", finalAmount);
+                editor.putString("PENDING_DESCRIPTION", finalDescription);
+                editor.putInt("PENDING_CATEGORY_ID", finalCategoryId);
+                editor.putString("PENDING_START_DATE", tvStartDate.getText().toString());
+                editor.putString("PENDING_END_DATE", tvEndDate.getText().toString());
+                editor.putInt("PENDING_FREQUENCY", spinnerFrequency.getSelectedItemPosition());
+                editor.putBoolean("HAS_PENDING_DATA", true);
+                editor.apply();
 
-        // If category has budget, proceed with saving
-        proceedWithSavingRecurringExpense(categoryId, amount, description);
+                // Start the activity
+                startActivity(intent);
+                // Finish so we don't have multiple instances of this activity
+                // finish(); <- Don't finish, as we want to return to this screen
+            } catch (Exception e) {
+                Log.e("RecurringExpense", "Error navigating to budget screen", e);
+                Toast.makeText(RecurringExpenseActivity.this,
+                        "Error navigating to budget screen: " + e.getMessage(),
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+
+        builder.setNegativeButton("Continue Anyway", (dialog, which) -> {
+            // Proceed with saving recurring expense; the total budget is still checked
+            proceedWithSavingRecurringExpense(finalCategoryId, finalAmount, finalDescription, true);
+        });
+
+        builder.show();
     }
 
     // Extract the actual saving logic to a separate method
     @RequiresApi(api = Build.VERSION_CODES.O)
-    private void proceedWithSavingRecurringExpense(int categoryId, double amount, String description) {
-        // NEW CODE: Check if this expense would exceed the category budget
-        if (!expenseDb.checkCategoryBudgetBalance(userId, categoryId, amount)) {
-            // Show error dialog with budget details
-            showBudgetExceededDialog(categoryId, amount);
-            return;
-        }
-
+    private void proceedWithSavingRecurringExpense(int categoryId, long amount, String description,
+                                                   boolean allowWithoutBudget) {
         // Get selected frequency
         String frequency = frequencies[spinnerFrequency.getSelectedItemPosition()].toLowerCase();
 
         // Get dates
-        String startDateStr = tvStartDate.getText().toString();
+        LocalDate startDate = LocalDate.parse(tvStartDate.getText().toString());
         String endDateStr = tvEndDate.getText().toString();
+        LocalDate endDate = endDateStr.isEmpty() ? null : LocalDate.parse(endDateStr);
 
-        // Save to database
-        long result = expenseDb.insertRecurringExpense(userId, categoryId, amount, description,
-                frequency, startDateStr, endDateStr);
-
-        if (result != -1) {
-            Toast.makeText(this, "Recurring expense added successfully", Toast.LENGTH_SHORT).show();
-
-            // Clear form and hide it
-            clearForm();
-            formContainer.setVisibility(View.GONE);
-            fabAddRecurring.setVisibility(View.VISIBLE);
-
-            // Create initial expense
-            expenseDb.insertExpense(userId, categoryId, amount, description + " (Recurring)",
-                    startDateStr, "Automatic", true, (int)result);
+        // Save to database together with the initial expense, if it fits the budgets
+        repository.write(this, db -> db.insertRecurringExpenseWithinBudget(userId, categoryId, amount, description,
+                frequency, startDate, endDate, allowWithoutBudget),
+                result -> onRecurringExpenseSaved(result, categoryId, amount, description));
+    }
 
-            // Refresh the list
-            loadRecurringExpenses();
-        } else {
-            Toast.makeText(this, "Failed to add recurring expense", Toast.LENGTH_SHORT).show();
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void onRecurringExpenseSaved(ExpenseInsertResult result, int categoryId, long amount, String description) {
+        switch (result.getStatus()) {
+            case INSERTED:
+                Toast.makeText(this, "Recurring expense added successfully", Toast.LENGTH_SHORT).show();
+
+                // Clear form and hide it
+                clearForm();
+                formContainer.setVisibility(View.GONE);
+                fabAddRecurring.setVisibility(View.VISIBLE);
+
+                // Refresh the list
+                loadRecurringExpenses();
+                break;
+            case NO_CATEGORY_BUDGET:
+                showBudgetRequiredDialog(categoryId, amount, description);
+                break;
+            case OVER_CATEGORY_BUDGET:
+            case OVER_TOTAL_BUDGET:
+                // Show error dialog with budget details
+                showBudgetExceededDialog(categoryId, amount, result.getRemainingCents(),
+                        result.getStatus() == ExpenseInsertResult.Status.OVER_TOTAL_BUDGET);
+                break;
+            default:
+                Toast.makeText(this, "Failed to add recurring expense", Toast.LENGTH_SHORT).show();
+                break;
         }
     }
 
     // Add this new method to handle the budget exceeded dialog
-    private void showBudgetExceededDialog(int categoryId, double expenseAmount) {
+    private void showBudgetExceededDialog(int categoryId, long expenseAmount, long remainingBudget, boolean totalBudget) {
         // Get category name
         String categoryName = categoryList.stream().filter(category -> category.getId() == categoryId).findFirst().map(Category::getName).orElse("Selected category");
 
-        // Get remaining budget for this category
-        double remainingBudget = expenseDb.getRemainingCategoryBudget(userId, categoryId);
-
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Budget Limit Exceeded");
-        builder.setMessage("Adding this recurring expense of $" + String.format(Locale.getDefault(), "%.2f", expenseAmount) +
-                " would exceed your budget for " + categoryName + ".\n\n" +
-                "Remaining budget: $" + String.format(Locale.getDefault(), "%.2f", remainingBudget) + "\n\n" +
-                "Would you like to increase your budget for this category?");
+        builder.setMessage("Adding this recurring expense of " + Money.format(expenseAmount) +
+                " would exceed " + (totalBudget ? "your total monthly budget" : "your budget for " + categoryName) + ".\n\n" +
+                "Remaining budget: " + Money.format(remainingBudget) + "\n\n" +
+                "Would you like to increase this budget?");
 
         // Add buttons
         builder.setPositiveButton("Increase Budget", (dialog, which) -> {
@@ -344,7 +357,7 @@ public class RecurringExpenseActivity extends AppCompatActivity {
             // Store the expense data in shared preferences
             SharedPreferences prefs = getSharedPreferences("RecurringExpenseData", MODE_PRIVATE);
             SharedPreferences.Editor editor = prefs.edit();
-            editor.putFloat("PENDING_AMOUNT", (float)expenseAmount);
+            editor.putLong("PENDING_AMOUNT_CENTS", expenseAmount);
             editor.putString("PENDING_DESCRIPTION", etDescription.getText().toString().trim());
             editor.putInt("PENDING_CATEGORY_ID", categoryId);
             editor.putString("PENDING_START_DATE", tvStartDate.getText().toString());
@@ -379,20 +392,14 @@ public class RecurringExpenseActivity extends AppCompatActivity {
 
     private void loadRecurringExpenses() {
         if (userId != -1) {
-            // Get recurring expenses from database
-            List<RecurringExpense> recurring = expenseDb.getRecurringExpensesByUser(userId);
-
-            // Update UI based on results
-            if (recurring.isEmpty()) {
-                tvNoRecurring.setVisibility(View.VISIBLE);
-                recyclerRecurring.setVisibility(View.GONE);
-            } else {
-                tvNoRecurring.setVisibility(View.GONE);
-                recyclerRecurring.setVisibility(View.VISIBLE);
+            repository.read(this, db -> {
+                // Get recurring expenses from database
+                List<RecurringExpense> recurring = db.getRecurringExpensesByUser(userId);
 
                 // Add category info to recurring expenses
+                List<Category> categories = db.getAllCategories();
                 for (RecurringExpense rec : recurring) {
-                    for (Category category : categoryList) {
+                    for (Category category : categories) {
                         if (category.getId() == rec.getCategoryId()) {
                             rec.setCategoryName(category.getName());
                             rec.setCategoryColor(category.getColor());
@@ -400,45 +407,37 @@ public class RecurringExpenseActivity extends AppCompatActivity {
                         }
                     }
                 }
-
-                // Update adapter
-                recurringList.clear();
-                recurringList.addAll(recurring);
-                recurringAdapter.notifyDataSetChanged();
-            }
+                return recurring;
+            }, this::showRecurringExpenses);
         }
     }
 
-    private void deleteRecurringExpense(int id) {
-        // In a real app, you'd want to confirm deletion
-        boolean result = expenseDb.deleteRecurringExpense(id);
-        if (result) {
-            Toast.makeText(this, "Recurring expense deleted", Toast.LENGTH_SHORT).show();
-            loadRecurringExpenses();
+    private void showRecurringExpenses(List<RecurringExpense> recurring) {
+        // Update UI based on results
+        if (recurring.isEmpty()) {
+            tvNoRecurring.setVisibility(View.VISIBLE);
+            recyclerRecurring.setVisibility(View.GONE);
         } else {
-            Toast.makeText(this, "Failed to delete recurring expense", Toast.LENGTH_SHORT).show();
+            tvNoRecurring.setVisibility(View.GONE);
+            recyclerRecurring.setVisibility(View.VISIBLE);
+
+            // Update adapter
+            recurringList.clear();
+            recurringList.addAll(recurring);
+            recurringAdapter.submitList(new ArrayList<>(recurringList));
         }
     }
 
-    // Add this method to RecurringExpenseActivity.java to check if a category has a budget
-
-    /**
-     * Checks if the selected category has a budget allocated
-     * @param categoryId The category ID to check
-     * @return true if the category has a budget, false otherwise
-     */
-    private boolean categoryHasBudget(int categoryId) {
-        // Get all budgets for the current user
-        List<Budget> budgets = expenseDb.getBudgetsByUser(userId);
-
-        // Check if any budget matches the selected category
-        for (Budget budget : budgets) {
-            if (budget.getCategoryId() == categoryId) {
-                return true;
+    private void deleteRecurringExpense(int id) {
+        // In a real app, you'd want to confirm deletion
+        repository.write(this, db -> db.deleteRecurringExpense(id), result -> {
+            if (result) {
+                Toast.makeText(this, "Recurring expense deleted", Toast.LENGTH_SHORT).show();
+                loadRecurringExpenses();
+            } else {
+                Toast.makeText(this, "Failed to delete recurring expense", Toast.LENGTH_SHORT).show();
             }
-        }
-
-        return false;
+        });
     }
 
     @Override
@@ -452,7 +451,7 @@ public class RecurringExpenseActivity extends AppCompatActivity {
         if (hasPendingData) {
             try {
                 // Retrieve the stored data
-                float amount = prefs.getFloat("PENDING_AMOUNT", 0f);
+                long amount = prefs.getLong("PENDING_AMOUNT_CENTS", 0);
                 String description = prefs.getString("PENDING_DESCRIPTION", "");
                 int categoryId = prefs.getInt("PENDING_CATEGORY_ID", -1);
                 String startDate = prefs.getString("PENDING_START_DATE", "");
@@ -465,40 +464,47 @@ public class RecurringExpenseActivity extends AppCompatActivity {
                 editor.apply();
 
                 // Check if the category now has a budget
-                if (categoryHasBudget(categoryId)) {
-                    // If it does, proceed with saving
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                        proceedWithSavingRecurringExpense(categoryId, amount, description);
-                    }
-                } else {
-                    // Restore the form with the data
-                    for (int i = 0; i < spinnerCategory.getCount(); i++) {
-                        Category category = (Category) spinnerCategory.getItemAtPosition(i);
-                        if (category.getId() == categoryId) {
-                            spinnerCategory.setSelection(i);
-                            break;
+                repository.read(this, db -> db.hasCategoryBudget(userId, categoryId), hasBudget -> {
+                    if (hasBudget) {
+                        // If it does, proceed with saving
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                            proceedWithSavingRecurringExpense(categoryId, amount, description, false);
                         }
+                    } else {
+                        restorePendingForm(categoryId, amount, description, startDate, endDate, frequencyPos);
                     }
-
-                    spinnerFrequency.setSelection(frequencyPos);
-                    tvStartDate.setText(startDate);
-                    tvEndDate.setText(endDate);
-                    etAmount.setText(String.valueOf(amount));
-                    etDescription.setText(description);
-
-                    // Show the form if it was hidden
-                    formContainer.setVisibility(View.VISIBLE);
-                    fabAddRecurring.setVisibility(View.GONE);
-
-                    Toast.makeText(this,
-                            "Your expense information has been restored. You may continue editing.",
-                            Toast.LENGTH_LONG).show();
-                }
+                });
             } catch (Exception e) {
                 Log.e("RecurringExpense", "Error restoring pending data", e);
             }
         }
     }
 
+    private void restorePendingForm(int categoryId, long amount, String description,
+                                    String startDate, String endDate, int frequencyPos) {
+        // Restore the form with the data
+        for (int i = 0; i < spinnerCategory.getCount(); i++) {
+            Category category = (Category) spinnerCategory.getItemAtPosition(i);
+            if (category.getId() == categoryId) {
+                spinnerCategory.setSelection(i);
+                break;
+            }
+        }
+
+        spinnerFrequency.setSelection(frequencyPos);
+        tvStartDate.setText(startDate);
+        tvEndDate.setText(endDate);
+        etAmount.setText(String.format(Locale.getDefault(), "%.2f", Money.toDollars(amount)));
+        etDescription.setText(description);
+
+        // Show the form if it was hidden
+        formContainer.setVisibility(View.VISIBLE);
+        fabAddRecurring.setVisibility(View.GONE);
+
+        Toast.makeText(this,
+                "Your expense information has been restored. You may continue editing.",
+                Toast.LENGTH_LONG).show();
+    }
+
 
 }
\ No newline at end of file
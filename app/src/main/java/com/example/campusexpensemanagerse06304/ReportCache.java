@@ -0,0 +1,222 @@
+package com.example.campusexpensemanagerse06304;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Generated report files kept on disk, keyed by user, period and ExpenseDb.getReportFingerprint,
+ * so a report whose data has not changed is handed out again instead of being regenerated.
+ * Every key has a directory under reports/ in the app's external files, holding one file per
+ * format and the counts the report was built from. Once the directories add up to more than
+ * MAX_CACHE_BYTES the least recently used ones are deleted, except the last RECENT_ENTRIES
+ * handed out: a finished job's result dialog still points at their files until it is shared.
+ * A key is held by one generator at a time, see acquire.
+ */
+final class ReportCache {
+
+    private static final String TAG = "ReportCache";
+    private static final long MAX_CACHE_BYTES = 20L * 1024 * 1024;
+    private static final int RECENT_ENTRIES = 4; // Kept even past MAX_CACHE_BYTES
+    private static final String COUNTS_FILE = "counts.properties";
+    private static final String KEY_ROWS = "rows";
+    private static final String KEY_CATEGORIES = "categories";
+
+    /**
+     * A complete cache entry: the formats written so far and what they cover
+     */
+    static final class Entry {
+        final File directory;
+        final int rowCount;
+        final int categoryCount;
+
+        Entry(File directory, int rowCount, int categoryCount) {
+            this.directory = directory;
+            this.rowCount = rowCount;
+            this.categoryCount = categoryCount;
+        }
+    }
+
+    private final File root;
+    private final Set<String> busyKeys = new HashSet<>(); // Guarded by this
+    private final Set<String> recentKeys = new LinkedHashSet<>(); // Guarded by this; oldest first
+
+    ReportCache(Context context) {
+        root = new File(context.getExternalFilesDir(null), "reports");
+    }
+
+    /**
+     * Build the key of a report
+     * @param fingerprint ExpenseDb.getReportFingerprint for the report's filter
+     */
+    static String key(int userId, String startDate, String endDate, String fingerprint) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((userId + "|" + startDate + "|" + endDate + "|" + fingerprint)
+                    .getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                key.append(String.format("%02x", hash[i]));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Take the key for writing, waiting while another thread holds it. Every acquire must be
+     * followed by release.
+     */
+    synchronized void acquire(String key) throws InterruptedException {
+        while (busyKeys.contains(key)) {
+            wait();
+        }
+        busyKeys.add(key);
+    }
+
+    /**
+     * Give the key back; a directory that never got its counts is deleted
+     */
+    synchronized void release(String key) {
+        busyKeys.remove(key);
+        notifyAll();
+
+        File directory = new File(root, key);
+        if (directory.exists() && !new File(directory, COUNTS_FILE).exists()) {
+            deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * @return The entry for the key, or null if nothing complete has been stored under it.
+     *         A hit makes the entry the most recently used.
+     */
+    synchronized Entry get(String key) {
+        File directory = new File(root, key);
+        File countsFile = new File(directory, COUNTS_FILE);
+        if (!countsFile.exists()) {
+            return null;
+        }
+
+        Properties counts = new Properties();
+        try (InputStream input = new FileInputStream(countsFile)) {
+            counts.load(input);
+            Entry entry = new Entry(directory,
+                    Integer.parseInt(counts.getProperty(KEY_ROWS)),
+                    Integer.parseInt(counts.getProperty(KEY_CATEGORIES)));
+            directory.setLastModified(System.currentTimeMillis());
+            remember(key);
+            return entry;
+        } catch (IOException | NumberFormatException e) {
+            Log.e(TAG, "Unreadable cache entry " + key, e);
+            countsFile.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Where to write a report file for a key; the caller must hold the key
+     */
+    File file(String key, String fileName) {
+        File directory = new File(root, key);
+        directory.mkdirs();
+        return new File(directory, fileName);
+    }
+
+    /**
+     * Mark the files written under a key as complete and evict old entries if the cache is full.
+     * The caller must hold the key.
+     */
+    synchronized void put(String key, int rowCount, int categoryCount) throws IOException {
+        File directory = new File(root, key);
+        Properties counts = new Properties();
+        counts.setProperty(KEY_ROWS, String.valueOf(rowCount));
+        counts.setProperty(KEY_CATEGORIES, String.valueOf(categoryCount));
+        try (OutputStream output = new FileOutputStream(new File(directory, COUNTS_FILE))) {
+            counts.store(output, null);
+        }
+        directory.setLastModified(System.currentTimeMillis());
+        remember(key);
+        trim();
+    }
+
+    // Record a key whose files were just handed out, forgetting the oldest beyond RECENT_ENTRIES
+    private void remember(String key) {
+        recentKeys.remove(key);
+        recentKeys.add(key);
+        Iterator<String> oldest = recentKeys.iterator();
+        while (recentKeys.size() > RECENT_ENTRIES) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    // Delete least recently used entries until the cache fits, never touching keys in use or
+    // recently handed out
+    private void trim() {
+        File[] directories = root.listFiles(File::isDirectory);
+        if (directories == null) {
+            return;
+        }
+
+        List<File> candidates = new ArrayList<>();
+        long totalBytes = 0;
+        for (File directory : directories) {
+            totalBytes += directorySize(directory);
+            if (!busyKeys.contains(directory.getName()) && !recentKeys.contains(directory.getName())) {
+                candidates.add(directory);
+            }
+        }
+        if (totalBytes <= MAX_CACHE_BYTES) {
+            return;
+        }
+
+        candidates.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File directory : candidates) {
+            if (totalBytes <= MAX_CACHE_BYTES) {
+                break;
+            }
+            totalBytes -= directorySize(directory);
+            deleteDirectory(directory);
+            Log.d(TAG, "Evicted " + directory.getName() + ", cache now " + totalBytes + " bytes");
+        }
+    }
+
+    private static long directorySize(File directory) {
+        long size = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
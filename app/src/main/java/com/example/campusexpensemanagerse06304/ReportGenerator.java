@@ -5,40 +5,61 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Environment;
+import android.os.SystemClock;
+import android.util.JsonWriter;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseLongArray;
 import android.widget.Toast;
 
+import androidx.annotation.Nullable;
 import androidx.core.content.FileProvider;
 
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
+import com.example.campusexpensemanagerse06304.database.ExpenseFilter;
+import com.example.campusexpensemanagerse06304.database.UserDb;
 import com.example.campusexpensemanagerse06304.model.Budget;
 import com.example.campusexpensemanagerse06304.model.Category;
 import com.example.campusexpensemanagerse06304.model.Expense;
+import com.example.campusexpensemanagerse06304.model.Money;
 
 
 import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Element;
-import com.itextpdf.text.Font;
 import com.itextpdf.text.Paragraph;
 import com.itextpdf.text.pdf.PdfPTable;
-import com.itextpdf.text.pdf.PdfPCell;
 import com.itextpdf.text.pdf.PdfWriter;
 
 
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.ParseException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 
 /**
@@ -51,12 +72,86 @@ import java.util.Map;
  */
 public class ReportGenerator {
     private static final String TAG = "ReportGenerator";
+
+    // Transaction rows added to the PDF table between writes to the document
+    private static final int PDF_FLUSH_ROWS = 100;
+
+    // Rows between progress callbacks and cancellation checks
+    private static final int PROGRESS_ROWS = 250;
+
     private Context context;
     private ExpenseDb expenseDb;
+    private ReportCache reportCache;
 
     public ReportGenerator(Context context) {
         this.context = context;
-        this.expenseDb = new ExpenseDb(context);
+        this.expenseDb = ExpenseDb.getInstance(context);
+        this.reportCache = new ReportCache(context);
+    }
+
+    /**
+     * Output formats of generate
+     */
+    public enum Format {
+        CSV(".csv"),
+        JSON(".json"),
+        PDF(".pdf");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * Progress reporting and cooperative cancellation for generate and generateBatchReport.
+     * Both methods are called on the generating thread, every PROGRESS_ROWS rows; total is 0
+     * when the rows were not counted beforehand.
+     */
+    public interface Progress {
+        void onRows(int processed, int total);
+
+        boolean isCancelled();
+    }
+
+    /**
+     * Files written by generate and what they cover
+     */
+    public static final class Report {
+        private final Map<Format, String> filePaths;
+        private final int rowCount;
+        private final int categoryCount;
+
+        Report(Map<Format, String> filePaths, int rowCount, int categoryCount) {
+            this.filePaths = filePaths;
+            this.rowCount = rowCount;
+            this.categoryCount = categoryCount;
+        }
+
+        public String getFilePath(Format format) {
+            return filePaths.get(format);
+        }
+
+        public List<String> getFilePaths() {
+            return new ArrayList<>(filePaths.values());
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        // Number of unique categories in the report
+        public int getCategoryCount() {
+            return categoryCount;
+        }
+    }
+
+    // Thrown out of the row loop when Progress.isCancelled() turns true
+    private static final class CancelledException extends IOException {
+        CancelledException() {
+            super("Report generation cancelled");
+        }
     }
 
     /**
@@ -73,393 +168,357 @@ public class ReportGenerator {
      * @return Path to the generated CSV file, or null if generation failed
      */
     public String generateCSVReport(int userId, String startDate, String endDate) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        Date start, end;
+        return generateSingle(userId, startDate, endDate, Format.CSV);
+    }
+
+    /**
+     * Generate a JSON expense report for a specific time period, with the same content as the CSV report
+     *
+     * @param userId User ID
+     * @param startDate Start date in format yyyy-MM-dd
+     * @param endDate End date in format yyyy-MM-dd
+     * @return Path to the generated JSON file, or null if generation failed
+     */
+    public String generateJSONReport(int userId, String startDate, String endDate) {
+        return generateSingle(userId, startDate, endDate, Format.JSON);
+    }
+
+    /**
+     * Generate a PDF expense report with better table formatting and matching CSV features
+     *
+     * @param userId User ID
+     * @param startDate Start date in format yyyy-MM-dd
+     * @param endDate End date in format yyyy-MM-dd
+     * @return Path to the generated PDF file, or null if generation failed
+     */
+    public String generatePDFReport(int userId, String startDate, String endDate) {
+        return generateSingle(userId, startDate, endDate, Format.PDF);
+    }
+
+    private String generateSingle(int userId, String startDate, String endDate, Format format) {
+        Report report = generate(userId, startDate, endDate, EnumSet.of(format), null);
+        return report != null ? report.getFilePath(format) : null;
+    }
+
+    /**
+     * Write the report for a period in one or more formats from a single pass over the expenses.
+     * Rows go from the database cursor to every format's writer, and the category and month
+     * totals are added up on the way, so memory use stays the same however many expenses the
+     * period has. The summary sections follow the transactions. The PDF transaction table is
+     * written to the document every PDF_FLUSH_ROWS rows.
+     * Files are kept in a ReportCache keyed by the data they show: asking again while nothing in
+     * the period, the budgets or the categories has changed returns the same files without
+     * reading the expenses.
+     *
+     * @param userId User ID
+     * @param startDate Start date in format yyyy-MM-dd
+     * @param endDate End date in format yyyy-MM-dd
+     * @param formats Formats to write
+     * @param progress Receives progress and is asked for cancellation, may be null
+     * @return The written files, or null if generation failed, was cancelled or the period has
+     *         no expenses; partly written files are deleted
+     */
+    public Report generate(int userId, String startDate, String endDate, Set<Format> formats,
+                           @Nullable Progress progress) {
+        LocalDate start, end;
 
         try {
-            start = dateFormat.parse(startDate);
-            end = dateFormat.parse(endDate);
-        } catch (ParseException e) {
+            start = LocalDate.parse(startDate);
+            end = LocalDate.parse(endDate);
+        } catch (DateTimeParseException e) {
             Log.e(TAG, "Invalid date format", e);
             return null;
         }
 
-        // *** QUERY 1: Get all expenses for the user and date range ***
-        List<Expense> filteredExpenses = getFilteredExpenses(userId, start, end);
+        ExpenseFilter filter = new ExpenseFilter(userId);
+        filter.setDateRange(start, end);
 
-        if (filteredExpenses.isEmpty()) {
+        // The fingerprint covers everything the report shows, so files generated for the
+        // same fingerprint are still up to date
+        String fingerprint = expenseDb.getReportFingerprint(filter);
+        int totalRows = Integer.parseInt(fingerprint.substring(0, fingerprint.indexOf(':')));
+        if (totalRows == 0) {
+            Log.e(TAG, "No expenses found for the selected period");
             return null;
         }
 
-        // *** QUERY 2: Get all categories for mapping ***
-        List<Category> categories = expenseDb.getAllCategories();
-        Map<Integer, String> categoryMap = createCategoryMap(categories);
-
-        // *** QUERY 3: Get budgets for comparison (if applicable) ***
-        Map<Integer, Double> budgetMap = getBudgetMap(userId);
-
-        // Build CSV content
-        StringBuilder csvBuilder = new StringBuilder();
-
-        // Add report header with metadata
-        csvBuilder.append("# CampusExpense Manager Report\n");
-        csvBuilder.append("# Generated: ").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date())).append("\n");
-        csvBuilder.append("# Period: ").append(startDate).append(" to ").append(endDate).append("\n\n");
+        String cacheKey = ReportCache.key(userId, startDate, endDate, fingerprint);
+        try {
+            reportCache.acquire(cacheKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            return generate(cacheKey, filter, startDate, endDate, formats, totalRows, progress);
+        } finally {
+            reportCache.release(cacheKey);
+        }
+    }
 
-        // SECTION 1: Transaction details
-        csvBuilder.append("## EXPENSE TRANSACTIONS\n");
-        csvBuilder.append("Date,Amount,Description,Category,Payment Method\n");
+    // Hand out the cached files for the key, writing the formats it does not have yet
+    private Report generate(String cacheKey, ExpenseFilter filter, String startDate, String endDate,
+                            Set<Format> formats, int totalRows, @Nullable Progress progress) {
+        Map<Format, File> files = new EnumMap<>(Format.class);
+        Set<Format> missing = EnumSet.noneOf(Format.class);
+        ReportCache.Entry cached = reportCache.get(cacheKey);
+        for (Format format : formats) {
+            File file = reportCache.file(cacheKey, "Expense_Report_" + startDate + "_to_" + endDate + format.extension);
+            files.put(format, file);
+            if (cached == null || !file.exists()) {
+                missing.add(format);
+            }
+        }
 
-        for (Expense expense : filteredExpenses) {
-            csvBuilder.append(dateFormat.format(expense.getDate())).append(",");
-            csvBuilder.append(expense.getAmount()).append(",");
-            csvBuilder.append("\"").append(expense.getDescription().replace("\"", "\"\"")).append("\",");
-            csvBuilder.append("\"").append(categoryMap.getOrDefault(expense.getCategoryId(), "Unknown")).append("\",");
-            csvBuilder.append("\"").append(expense.getPaymentMethod()).append("\"\n");
+        if (missing.isEmpty()) {
+            Log.d(TAG, "Report cache hit for " + formats + " " + startDate + " to " + endDate);
+            if (progress != null) {
+                progress.onRows(cached.rowCount, cached.rowCount);
+            }
+            return new Report(filePaths(files), cached.rowCount, cached.categoryCount);
         }
 
-        // SECTION 2: Category Summary
-        csvBuilder.append("\n## CATEGORY SUMMARY\n");
-        csvBuilder.append("Category,Total Amount,Budget Amount,Remaining Budget,% of Budget Used\n");
+        // Categories and budgets are small; expenses are streamed below
+        Map<Integer, String> categoryMap = createCategoryMap(expenseDb.getAllCategories());
+        SparseLongArray budgetMap = getBudgetMap(filter.getUserId());
 
-        // Calculate total by category
-        Map<Integer, Double> categoryTotals = calculateCategoryTotals(filteredExpenses);
-        double grandTotal = 0;
+        List<OutputStream> outputs = new ArrayList<>();
+        List<ReportWriter> writers = new ArrayList<>();
+        ReportTotals totals = new ReportTotals();
+        long startTime = SystemClock.elapsedRealtime();
+        boolean complete = false;
+        int rowCount;
 
-        // Add category summaries to CSV
-        for (Map.Entry<Integer, Double> entry : categoryTotals.entrySet()) {
-            int categoryId = entry.getKey();
-            double totalSpent = entry.getValue();
-            grandTotal += totalSpent;
+        if (progress != null) {
+            progress.onRows(0, totalRows);
+        }
 
-            String categoryName = categoryMap.getOrDefault(categoryId, "Unknown");
-            double budgetAmount = budgetMap.getOrDefault(categoryId, 0.0);
-            double remaining = budgetAmount - totalSpent;
-            double percentUsed = budgetAmount > 0 ? (totalSpent / budgetAmount) * 100 : 0;
+        try {
+            for (Format format : missing) {
+                OutputStream output = new FileOutputStream(files.get(format));
+                outputs.add(output);
+                writers.add(createWriter(format, output));
+            }
 
-            csvBuilder.append("\"").append(categoryName).append("\",");
-            csvBuilder.append(totalSpent).append(",");
-            csvBuilder.append(budgetAmount).append(",");
-            csvBuilder.append(remaining).append(",");
-            csvBuilder.append(String.format(Locale.getDefault(), "%.1f%%", percentUsed)).append("\n");
-        }
+            for (ReportWriter writer : writers) {
+                writer.writeHeader(startDate, endDate);
+            }
 
-        // Add grand total
-        csvBuilder.append("\"Total\",").append(grandTotal).append("\n");
+            // Add expense data rows as they are read
+            rowCount = expenseDb.streamExpenses(filter, new ExpenseDb.ExpenseStream() {
+                private int processed;
+
+                @Override
+                public void onExpense(Expense expense) throws IOException {
+                    totals.add(expense);
+                    String categoryName = categoryMap.getOrDefault(expense.getCategoryId(), "Unknown");
+                    for (ReportWriter writer : writers) {
+                        writer.writeExpense(expense, categoryName);
+                    }
+
+                    if (progress != null && ++processed % PROGRESS_ROWS == 0) {
+                        if (progress.isCancelled()) {
+                            throw new CancelledException();
+                        }
+                        progress.onRows(processed, totalRows);
+                    }
+                }
+            });
 
-        // SECTION 3: Monthly Distribution (if spanning multiple months)
-        if (isReportSpanningMultipleMonths(start, end)) {
-            csvBuilder.append("\n## MONTHLY DISTRIBUTION\n");
-            csvBuilder.append("Month,Total Amount\n");
+            if (rowCount == 0) {
+                Log.e(TAG, "No expenses found for the selected period");
+                return null;
+            }
+            if (progress != null) {
+                progress.onRows(rowCount, totalRows);
+            }
 
-            Map<String, Double> monthlyTotals = calculateMonthlyTotals(filteredExpenses);
-            for (Map.Entry<String, Double> entry : monthlyTotals.entrySet()) {
-                csvBuilder.append("\"").append(entry.getKey()).append("\",");
-                csvBuilder.append(entry.getValue()).append("\n");
+            boolean multipleMonths = isReportSpanningMultipleMonths(filter.getStartDate(), filter.getEndDate());
+            for (ReportWriter writer : writers) {
+                writeSummary(writer, totals, categoryMap, budgetMap, multipleMonths);
+                writer.finish();
+            }
+            for (OutputStream output : outputs) {
+                output.close();
+            }
+            reportCache.put(cacheKey, rowCount, totals.byCategory.size());
+            complete = true;
+        } catch (CancelledException e) {
+            Log.d(TAG, "Report generation cancelled");
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Error generating report", e);
+            return null;
+        } finally {
+            for (OutputStream output : outputs) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing report file", e);
+                }
+            }
+            if (!complete) {
+                for (Format format : missing) {
+                    files.get(format).delete();
+                }
             }
         }
 
-        // Write to file
-        String fileName = "Expense_Report_" + startDate + "_to_" + endDate + ".csv";
-        File file = new File(context.getExternalFilesDir(null), fileName);
+        Log.d(TAG, "Wrote " + rowCount + " expenses as " + missing + " in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return new Report(filePaths(files), rowCount, totals.byCategory.size());
+    }
 
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            fos.write(csvBuilder.toString().getBytes());
-            return file.getAbsolutePath();
-        } catch (IOException e) {
-            Log.e(TAG, "Error writing CSV file", e);
-            return null;
+    private static Map<Format, String> filePaths(Map<Format, File> files) {
+        Map<Format, String> filePaths = new EnumMap<>(Format.class);
+        for (Map.Entry<Format, File> entry : files.entrySet()) {
+            filePaths.put(entry.getKey(), entry.getValue().getAbsolutePath());
         }
+        return filePaths;
     }
 
     /**
-     * Generate a PDF expense report with better table formatting and matching CSV features
+     * Write one report per user for a period into a single ZIP archive, such as the term-end
+     * reports of every student on a shared device. The expenses of all users come from one query
+     * ordered by user; each user's rows go to a writer for that user's ZIP entry, which gets its
+     * summary and is closed as soon as the next user's rows start. Categories, budgets and
+     * usernames are loaded once for the whole batch. Users without expenses in the period get
+     * no entry.
      *
-     * @param userId User ID
+     * @param userIds Users to include, or null for every user
      * @param startDate Start date in format yyyy-MM-dd
      * @param endDate End date in format yyyy-MM-dd
-     * @return Path to the generated PDF file, or null if generation failed
+     * @param format Format of every user's report
+     * @param progress Receives progress and is asked for cancellation, may be null
+     * @return Path to the ZIP archive, or null if generation failed, was cancelled or nobody has
+     *         expenses in the period
      */
-    public String generatePDFReport(int userId, String startDate, String endDate) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        Date start, end;
+    public String generateBatchReport(@Nullable Collection<Integer> userIds, String startDate, String endDate,
+                                      Format format, @Nullable Progress progress) {
+        LocalDate start, end;
 
         try {
-            start = dateFormat.parse(startDate);
-            end = dateFormat.parse(endDate);
-        } catch (ParseException e) {
+            start = LocalDate.parse(startDate);
+            end = LocalDate.parse(endDate);
+        } catch (DateTimeParseException e) {
             Log.e(TAG, "Invalid date format", e);
             return null;
         }
 
-        // Get all expenses for the user and date range
-        List<Expense> filteredExpenses = getFilteredExpenses(userId, start, end);
+        // Lookups shared by every user's report
+        Map<Integer, String> categoryMap = createCategoryMap(expenseDb.getAllCategories());
+        SparseArray<SparseLongArray> budgetMaps = new SparseArray<>();
+        for (Budget budget : expenseDb.getAllBudgets()) {
+            SparseLongArray budgetMap = budgetMaps.get(budget.getUserId());
+            if (budgetMap == null) {
+                budgetMap = new SparseLongArray();
+                budgetMaps.put(budget.getUserId(), budgetMap);
+            }
+            budgetMap.put(budget.getCategoryId(), budget.getAmountCents());
+        }
+        SparseArray<String> usernames = new UserDb(context).getUsernames();
 
-        if (filteredExpenses.isEmpty()) {
-            Log.e(TAG, "No expenses found for the selected period");
+        File file = new File(context.getExternalFilesDir(null),
+                "Expense_Reports_" + startDate + "_to_" + endDate + ".zip");
+        long startTime = SystemClock.elapsedRealtime();
+        ZipOutputStream zip = null;
+        boolean complete = false;
+        BatchStream batch;
+        int rowCount;
+
+        try {
+            zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            batch = new BatchStream(zip, format, startDate, endDate, isReportSpanningMultipleMonths(start, end),
+                    categoryMap, budgetMaps, usernames, progress);
+            rowCount = expenseDb.streamExpensesByUser(userIds, start, end, batch);
+            if (rowCount == 0) {
+                Log.e(TAG, "No expenses found for the selected period");
+                return null;
+            }
+            batch.finishUser();
+            zip.close(); // Writes the archive's central directory
+            complete = true;
+        } catch (CancelledException e) {
+            Log.d(TAG, "Batch report cancelled");
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Error generating batch report", e);
             return null;
+        } finally {
+            if (!complete) {
+                if (zip != null) {
+                    try {
+                        zip.close();
+                    } catch (IOException e) {
+                        // An archive without entries cannot be closed cleanly; it is deleted anyway
+                    }
+                }
+                file.delete();
+            }
         }
 
-        // Get all categories for mapping
-        List<Category> categories = expenseDb.getAllCategories();
-        Map<Integer, String> categoryMap = createCategoryMap(categories);
-
-        // Get budgets for comparison (if applicable)
-        Map<Integer, Double> budgetMap = getBudgetMap(userId);
+        Log.d(TAG, "Wrote " + batch.userCount + " " + format + " reports (" + rowCount + " expenses) in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return file.getAbsolutePath();
+    }
 
-        // Calculate category totals
-        Map<Integer, Double> categoryTotals = calculateCategoryTotals(filteredExpenses);
-        double grandTotal = 0;
-        for (Double total : categoryTotals.values()) {
-            grandTotal += total;
+    private static ReportWriter createWriter(Format format, OutputStream output) throws IOException {
+        switch (format) {
+            case PDF:
+                return new PdfReportWriter(output);
+            case JSON:
+                return new JsonReportWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+            default:
+                return new CsvReportWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
         }
+    }
 
-        // Calculate monthly totals if spanning multiple months
-        boolean multipleMonths = isReportSpanningMultipleMonths(start, end);
-        Map<String, Double> monthlyTotals = null;
-        if (multipleMonths) {
-            monthlyTotals = calculateMonthlyTotals(filteredExpenses);
+    // Write the category summary and, if spanning multiple months, the monthly distribution
+    private static void writeSummary(ReportWriter writer, ReportTotals totals, Map<Integer, String> categoryMap,
+                                     SparseLongArray budgetMap, boolean multipleMonths) throws IOException {
+        // Category summary, in category id order
+        writer.beginCategorySummary();
+        for (int i = 0; i < totals.byCategory.size(); i++) {
+            int categoryId = totals.byCategory.keyAt(i);
+            writer.writeCategoryTotal(categoryMap.getOrDefault(categoryId, "Unknown"),
+                    totals.byCategory.valueAt(i), budgetMap.get(categoryId, 0));
         }
+        writer.endCategorySummary(totals.grandTotal);
 
-        // Create PDF document
-        Document document = new Document();
-        String fileName = "Expense_Report_" + startDate + "_to_" + endDate + ".pdf";
-        File file = new File(context.getExternalFilesDir(null), fileName);
-
-        try {
-            PdfWriter.getInstance(document, new FileOutputStream(file));
-            document.open();
-
-            // Add document metadata
-            document.addCreationDate();
-            document.addTitle("Campus Expense Manager Report");
-            document.addSubject("Expense Report for period: " + startDate + " to " + endDate);
-
-            // Add title and metadata
-            Font titleFont = new Font(Font.FontFamily.HELVETICA, 18, Font.BOLD);
-            Font headingFont = new Font(Font.FontFamily.HELVETICA, 14, Font.BOLD);
-            Font normalFont = new Font(Font.FontFamily.HELVETICA, 10, Font.NORMAL);
-            Font smallBoldFont = new Font(Font.FontFamily.HELVETICA, 10, Font.BOLD);
-
-            // Report Title
-            Paragraph title = new Paragraph("CAMPUS EXPENSE MANAGER REPORT", titleFont);
-            title.setAlignment(Element.ALIGN_CENTER);
-            document.add(title);
-
-            // Add metadata
-            document.add(new Paragraph(" "));
-            document.add(new Paragraph("Generated: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()), normalFont));
-            document.add(new Paragraph("Period: " + startDate + " to " + endDate, normalFont));
-            document.add(new Paragraph(" "));
-
-            // SECTION 1: EXPENSE TRANSACTIONS
-            Paragraph expenseTitle = new Paragraph("EXPENSE TRANSACTIONS", headingFont);
-            document.add(expenseTitle);
-            document.add(new Paragraph(" "));
-
-            // Create transaction table
-            PdfPTable expenseTable = new PdfPTable(5); // 5 columns
-            expenseTable.setWidthPercentage(100);
-
-            // Try to set column widths for better appearance
-            try {
-                expenseTable.setWidths(new float[]{2, 2, 3, 2, 2});
-            } catch (DocumentException e) {
-                Log.e(TAG, "Error setting column widths", e);
-            }
-
-            // Add table headers
-            PdfPCell headerCell;
-
-            headerCell = new PdfPCell(new Paragraph("Date", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            expenseTable.addCell(headerCell);
-
-            headerCell = new PdfPCell(new Paragraph("Amount", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            expenseTable.addCell(headerCell);
-
-            headerCell = new PdfPCell(new Paragraph("Description", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            expenseTable.addCell(headerCell);
-
-            headerCell = new PdfPCell(new Paragraph("Category", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            expenseTable.addCell(headerCell);
-
-            headerCell = new PdfPCell(new Paragraph("Payment Method", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            expenseTable.addCell(headerCell);
-
-            // Add expense data rows
-            PdfPCell cell;
-            for (Expense expense : filteredExpenses) {
-                // Date
-                cell = new PdfPCell(new Paragraph(dateFormat.format(expense.getDate()), normalFont));
-                expenseTable.addCell(cell);
-
-                // Amount
-                cell = new PdfPCell(new Paragraph(String.format(Locale.getDefault(), "$%.2f", expense.getAmount()), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                expenseTable.addCell(cell);
-
-                // Description
-                cell = new PdfPCell(new Paragraph(expense.getDescription(), normalFont));
-                expenseTable.addCell(cell);
-
-                // Category
-                cell = new PdfPCell(new Paragraph(categoryMap.getOrDefault(expense.getCategoryId(), "Unknown"), normalFont));
-                expenseTable.addCell(cell);
-
-                // Payment Method
-                cell = new PdfPCell(new Paragraph(expense.getPaymentMethod(), normalFont));
-                expenseTable.addCell(cell);
+        if (multipleMonths) {
+            writer.beginMonthlyDistribution();
+            for (int i = 0; i < totals.byMonth.size(); i++) {
+                writer.writeMonthTotal(monthLabel(totals.byMonth.keyAt(i)), totals.byMonth.valueAt(i));
             }
+            writer.endMonthlyDistribution();
+        }
+    }
 
-            document.add(expenseTable);
-            document.add(new Paragraph(" "));
-            document.add(new Paragraph(" "));
-
-            // SECTION 2: CATEGORY SUMMARY
-            Paragraph categoryTitle = new Paragraph("CATEGORY SUMMARY", headingFont);
-            document.add(categoryTitle);
-            document.add(new Paragraph(" "));
-
-            // Create category summary table
-            PdfPTable categoryTable = new PdfPTable(5); // 5 columns
-            categoryTable.setWidthPercentage(100);
+    /**
+     * Create a PDF table with a styled header row
+     * @param widths Relative column widths, or null for equal columns
+     * @param widthPercentage Table width as a percentage of the page
+     */
+    private static PdfPTable createTable(float[] widths, float widthPercentage, String... headers) {
+        PdfPTable table = new PdfPTable(headers.length);
+        table.setWidthPercentage(widthPercentage);
 
-            // Try to set column widths for better appearance
+        // Try to set column widths for better appearance
+        if (widths != null) {
             try {
-                categoryTable.setWidths(new float[]{3, 2, 2, 2, 2});
+                table.setWidths(widths);
             } catch (DocumentException e) {
                 Log.e(TAG, "Error setting column widths", e);
             }
+        }
 
-            // Add table headers
-            headerCell = new PdfPCell(new Paragraph("Category", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            categoryTable.addCell(headerCell);
-
-            headerCell = new PdfPCell(new Paragraph("Total Amount", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            categoryTable.addCell(headerCell);
-
-            headerCell = new PdfPCell(new Paragraph("Budget Amount", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            categoryTable.addCell(headerCell);
-
-            headerCell = new PdfPCell(new Paragraph("Remaining Budget", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            categoryTable.addCell(headerCell);
-
-            headerCell = new PdfPCell(new Paragraph("% of Budget Used", smallBoldFont));
-            headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-            categoryTable.addCell(headerCell);
-
-            // Add category data rows
-            for (Map.Entry<Integer, Double> entry : categoryTotals.entrySet()) {
-                int categoryId = entry.getKey();
-                double totalSpent = entry.getValue();
-
-                String categoryName = categoryMap.getOrDefault(categoryId, "Unknown");
-                double budgetAmount = budgetMap.getOrDefault(categoryId, 0.0);
-                double remaining = budgetAmount - totalSpent;
-                double percentUsed = budgetAmount > 0 ? (totalSpent / budgetAmount) * 100 : 0;
-
-                // Category
-                cell = new PdfPCell(new Paragraph(categoryName, normalFont));
-                categoryTable.addCell(cell);
-
-                // Total Amount
-                cell = new PdfPCell(new Paragraph(String.format(Locale.getDefault(), "$%.2f", totalSpent), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                categoryTable.addCell(cell);
-
-                // Budget Amount
-                cell = new PdfPCell(new Paragraph(String.format(Locale.getDefault(), "$%.2f", budgetAmount), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                categoryTable.addCell(cell);
-
-                // Remaining Budget
-                cell = new PdfPCell(new Paragraph(String.format(Locale.getDefault(), "$%.2f", remaining), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                categoryTable.addCell(cell);
-
-                // % of Budget Used
-                cell = new PdfPCell(new Paragraph(String.format(Locale.getDefault(), "%.1f%%", percentUsed), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                categoryTable.addCell(cell);
-            }
-
-            // Add grand total row
-            cell = new PdfPCell(new Paragraph("Total", smallBoldFont));
-            categoryTable.addCell(cell);
-
-            cell = new PdfPCell(new Paragraph(String.format(Locale.getDefault(), "$%.2f", grandTotal), smallBoldFont));
-            cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            categoryTable.addCell(cell);
-
-            // Empty cells for the rest of the row
-            categoryTable.addCell("");
-            categoryTable.addCell("");
-            categoryTable.addCell("");
-
-            document.add(categoryTable);
-
-            // SECTION 3: MONTHLY DISTRIBUTION (if applicable)
-            if (multipleMonths && monthlyTotals != null && !monthlyTotals.isEmpty()) {
-                document.add(new Paragraph(" "));
-                document.add(new Paragraph(" "));
-                Paragraph monthlyTitle = new Paragraph("MONTHLY DISTRIBUTION", headingFont);
-                document.add(monthlyTitle);
-                document.add(new Paragraph(" "));
-
-                // Create monthly distribution table
-                PdfPTable monthlyTable = new PdfPTable(2); // 2 columns
-                monthlyTable.setWidthPercentage(70);
-
-                // Add table headers
-                headerCell = new PdfPCell(new Paragraph("Month", smallBoldFont));
-                headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-                monthlyTable.addCell(headerCell);
-
-                headerCell = new PdfPCell(new Paragraph("Total Amount", smallBoldFont));
-                headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                headerCell.setBackgroundColor(new com.itextpdf.text.BaseColor(220, 220, 220));
-                monthlyTable.addCell(headerCell);
-
-                // Add monthly data rows
-                for (Map.Entry<String, Double> entry : monthlyTotals.entrySet()) {
-                    cell = new PdfPCell(new Paragraph(entry.getKey(), normalFont));
-                    monthlyTable.addCell(cell);
-
-                    cell = new PdfPCell(new Paragraph(String.format(Locale.getDefault(), "$%.2f", entry.getValue()), normalFont));
-                    cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                    monthlyTable.addCell(cell);
-                }
-
-                document.add(monthlyTable);
-            }
-
-            document.close();
-            return file.getAbsolutePath();
-        } catch (DocumentException | IOException e) {
-            Log.e(TAG, "Error generating PDF report", e);
-            return null;
+        // Add table headers
+        for (String header : headers) {
+            table.addCell(PdfStyleHelper.createHeaderCell(header));
         }
+        return table;
     }
+
     /**
      * Create a centered title with decoration
      */
@@ -531,27 +590,41 @@ public class ReportGenerator {
         }
     }
 
-    // ====== HELPER METHODS ======
-
     /**
-     * Get expenses filtered by date range
+     * Share several generated reports at once, such as the CSV and PDF of the same period
+     * @param filePaths Paths to the report files
      */
-    private List<Expense> getFilteredExpenses(int userId, Date start, Date end) {
-        List<Expense> allExpenses = expenseDb.getExpensesByUser(userId);
-        List<Expense> filteredExpenses = new ArrayList<>();
-
-        for (Expense expense : allExpenses) {
-            // Check date range
-            if (expense.getDate() != null &&
-                    (expense.getDate().after(start) || expense.getDate().equals(start)) &&
-                    (expense.getDate().before(end) || expense.getDate().equals(end))) {
-                filteredExpenses.add(expense);
+    public void shareReports(List<String> filePaths) {
+        if (filePaths.size() == 1) {
+            shareReport(filePaths.get(0));
+            return;
+        }
+
+        ArrayList<Uri> fileUris = new ArrayList<>();
+        for (String filePath : filePaths) {
+            File file = new File(filePath);
+            if (!file.exists()) {
+                Toast.makeText(context, "Report file not found", Toast.LENGTH_SHORT).show();
+                return;
             }
+            fileUris.add(FileProvider.getUriForFile(context, context.getPackageName() + ".provider", file));
         }
 
-        return filteredExpenses;
+        Intent shareIntent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+        shareIntent.setType("*/*");
+        shareIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, fileUris);
+        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+        if (context instanceof Activity) {
+            context.startActivity(Intent.createChooser(shareIntent, "Share Expense Reports"));
+        } else {
+            shareIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            context.startActivity(shareIntent);
+        }
     }
 
+    // ====== HELPER METHODS ======
+
     /**
      * Create a map of category IDs to names
      */
@@ -564,91 +637,480 @@ public class ReportGenerator {
     }
 
     /**
-     * Get map of category IDs to budget amounts
+     * Get map of category IDs to budget amounts in cents
      */
-    private Map<Integer, Double> getBudgetMap(int userId) {
-        Map<Integer, Double> budgetMap = new HashMap<>();
+    private SparseLongArray getBudgetMap(int userId) {
+        SparseLongArray budgetMap = new SparseLongArray();
         List<Budget> budgets = expenseDb.getBudgetsByUser(userId);
 
         for (Budget budget : budgets) {
-            budgetMap.put(budget.getCategoryId(), budget.getAmount());
+            budgetMap.put(budget.getCategoryId(), budget.getAmountCents());
         }
 
         return budgetMap;
     }
 
     /**
-     * Calculate total expenses by category
+     * Calculate total expenses in cents
      */
-    private Map<Integer, Double> calculateCategoryTotals(List<Expense> expenses) {
-        Map<Integer, Double> categoryTotals = new HashMap<>();
-
+    private long calculateTotalExpenses(List<Expense> expenses) {
+        long total = 0;
         for (Expense expense : expenses) {
-            int categoryId = expense.getCategoryId();
-            double currentTotal = categoryTotals.getOrDefault(categoryId, 0.0);
-            categoryTotals.put(categoryId, currentTotal + expense.getAmount());
+            total += expense.getAmountCents();
         }
-
-        return categoryTotals;
+        return total;
     }
 
     /**
-     * Calculate total expenses
+     * Calculate total budget in cents
      */
-    private double calculateTotalExpenses(List<Expense> expenses) {
-        double total = 0;
-        for (Expense expense : expenses) {
-            total += expense.getAmount();
+    private long calculateTotalBudget(SparseLongArray budgetMap) {
+        long total = 0;
+        for (int i = 0; i < budgetMap.size(); i++) {
+            total += budgetMap.valueAt(i);
         }
         return total;
     }
 
+    // Helper method to turn a ReportTotals month key into a label such as "Mar 2024"
+    private static String monthLabel(int monthKey) {
+        return YearMonth.of(monthKey / 12, monthKey % 12 + 1)
+                .format(DateTimeFormatter.ofPattern("MMM yyyy", Locale.getDefault()));
+    }
+
     /**
-     * Calculate total budget
+     * Check if the report spans multiple months
      */
-    private double calculateTotalBudget(Map<Integer, Double> budgetMap) {
-        double total = 0;
-        for (Double amount : budgetMap.values()) {
-            total += amount;
-        }
-        return total;
+    private static boolean isReportSpanningMultipleMonths(LocalDate start, LocalDate end) {
+        return !YearMonth.from(start).equals(YearMonth.from(end));
     }
 
     /**
-     * Calculate expenses by month
+     * Truncate string to a maximum length
      */
-    private Map<String, Double> calculateMonthlyTotals(List<Expense> expenses) {
-        Map<String, Double> monthlyTotals = new HashMap<>();
-        SimpleDateFormat monthFormat = new SimpleDateFormat("MMM yyyy", Locale.getDefault());
-
-        for (Expense expense : expenses) {
-            String month = monthFormat.format(expense.getDate());
-            double currentTotal = monthlyTotals.getOrDefault(month, 0.0);
-            monthlyTotals.put(month, currentTotal + expense.getAmount());
-        }
-
-        return monthlyTotals;
+    private String truncateString(String input, int maxLength) {
+        if (input == null) return "";
+        return input.length() > maxLength ? input.substring(0, maxLength - 3) + "..." : input;
     }
 
     /**
-     * Check if the report spans multiple months
+     * Category and month totals in cents, added up while the expenses stream past.
+     * Month keys are year * 12 + month (0-based), so the entries come out in calendar order.
      */
-    private boolean isReportSpanningMultipleMonths(Date start, Date end) {
-        Calendar startCal = Calendar.getInstance();
-        startCal.setTime(start);
+    private static final class ReportTotals {
+        final SparseLongArray byCategory = new SparseLongArray();
+        final SparseLongArray byMonth = new SparseLongArray();
+        long grandTotal;
+
+        void add(Expense expense) {
+            long amount = expense.getAmountCents();
+            int categoryId = expense.getCategoryId();
+            byCategory.put(categoryId, byCategory.get(categoryId) + amount);
 
-        Calendar endCal = Calendar.getInstance();
-        endCal.setTime(end);
+            LocalDate date = expense.getDate();
+            int month = date.getYear() * 12 + date.getMonthValue() - 1;
+            byMonth.put(month, byMonth.get(month) + amount);
 
-        return (startCal.get(Calendar.YEAR) != endCal.get(Calendar.YEAR)) ||
-                (startCal.get(Calendar.MONTH) != endCal.get(Calendar.MONTH));
+            grandTotal += amount;
+        }
     }
 
     /**
-     * Truncate string to a maximum length
+     * Writes one report format. Calls come in order: header, expenses, category summary,
+     * optionally the monthly distribution, then finish.
      */
-    private String truncateString(String input, int maxLength) {
-        if (input == null) return "";
-        return input.length() > maxLength ? input.substring(0, maxLength - 3) + "..." : input;
+    private interface ReportWriter {
+        void writeHeader(String startDate, String endDate) throws IOException;
+
+        void writeExpense(Expense expense, String categoryName) throws IOException;
+
+        void beginCategorySummary() throws IOException;
+
+        void writeCategoryTotal(String categoryName, long totalSpent, long budgetAmount) throws IOException;
+
+        void endCategorySummary(long grandTotal) throws IOException;
+
+        void beginMonthlyDistribution() throws IOException;
+
+        void writeMonthTotal(String month, long total) throws IOException;
+
+        void endMonthlyDistribution() throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class CsvReportWriter implements ReportWriter {
+        private final Writer out;
+
+        CsvReportWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void writeHeader(String startDate, String endDate) throws IOException {
+            // Add report header with metadata
+            out.write("# CampusExpense Manager Report\n");
+            out.write("# Generated: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()) + "\n");
+            out.write("# Period: " + startDate + " to " + endDate + "\n\n");
+
+            // SECTION 1: Transaction details
+            out.write("## EXPENSE TRANSACTIONS\n");
+            out.write("Date,Amount,Description,Category,Payment Method\n");
+        }
+
+        @Override
+        public void writeExpense(Expense expense, String categoryName) throws IOException {
+            out.write(expense.getFormattedDate());
+            out.write(',');
+            out.write(Money.toPlainString(expense.getAmountCents()));
+            out.write(',');
+            writeQuoted(expense.getDescription());
+            out.write(',');
+            writeQuoted(categoryName);
+            out.write(',');
+            writeQuoted(expense.getPaymentMethod());
+            out.write('\n');
+        }
+
+        @Override
+        public void beginCategorySummary() throws IOException {
+            // SECTION 2: Category Summary
+            out.write("\n## CATEGORY SUMMARY\n");
+            out.write("Category,Total Amount,Budget Amount,Remaining Budget,% of Budget Used\n");
+        }
+
+        @Override
+        public void writeCategoryTotal(String categoryName, long totalSpent, long budgetAmount) throws IOException {
+            double percentUsed = budgetAmount > 0 ? (totalSpent * 100.0) / budgetAmount : 0;
+
+            writeQuoted(categoryName);
+            out.write("," + Money.toPlainString(totalSpent));
+            out.write("," + Money.toPlainString(budgetAmount));
+            out.write("," + Money.toPlainString(budgetAmount - totalSpent));
+            out.write("," + String.format(Locale.getDefault(), "%.1f%%", percentUsed) + "\n");
+        }
+
+        @Override
+        public void endCategorySummary(long grandTotal) throws IOException {
+            // Add grand total
+            out.write("\"Total\"," + Money.toPlainString(grandTotal) + "\n");
+        }
+
+        @Override
+        public void beginMonthlyDistribution() throws IOException {
+            // SECTION 3: Monthly Distribution
+            out.write("\n## MONTHLY DISTRIBUTION\n");
+            out.write("Month,Total Amount\n");
+        }
+
+        @Override
+        public void writeMonthTotal(String month, long total) throws IOException {
+            writeQuoted(month);
+            out.write("," + Money.toPlainString(total) + "\n");
+        }
+
+        @Override
+        public void endMonthlyDistribution() {
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+
+        // Write a quoted CSV field, doubling embedded quotes
+        private void writeQuoted(String value) throws IOException {
+            out.write('"');
+            if (value != null) {
+                out.write(value.replace("\"", "\"\""));
+            }
+            out.write('"');
+        }
+    }
+
+    private static final class JsonReportWriter implements ReportWriter {
+        private final JsonWriter json;
+
+        JsonReportWriter(Writer out) {
+            this.json = new JsonWriter(out);
+        }
+
+        @Override
+        public void writeHeader(String startDate, String endDate) throws IOException {
+            json.beginObject();
+            json.name("title").value("CampusExpense Manager Report");
+            json.name("generated").value(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()));
+            json.name("period").beginObject()
+                    .name("start").value(startDate)
+                    .name("end").value(endDate)
+                    .endObject();
+            json.name("transactions").beginArray();
+        }
+
+        @Override
+        public void writeExpense(Expense expense, String categoryName) throws IOException {
+            json.beginObject();
+            json.name("date").value(expense.getFormattedDate());
+            json.name("amount").value(amount(expense.getAmountCents()));
+            json.name("description").value(expense.getDescription());
+            json.name("category").value(categoryName);
+            json.name("paymentMethod").value(expense.getPaymentMethod());
+            json.endObject();
+        }
+
+        @Override
+        public void beginCategorySummary() throws IOException {
+            json.endArray();
+            json.name("categorySummary").beginArray();
+        }
+
+        @Override
+        public void writeCategoryTotal(String categoryName, long totalSpent, long budgetAmount) throws IOException {
+            double percentUsed = budgetAmount > 0 ? (totalSpent * 100.0) / budgetAmount : 0;
+
+            json.beginObject();
+            json.name("category").value(categoryName);
+            json.name("total").value(amount(totalSpent));
+            json.name("budget").value(amount(budgetAmount));
+            json.name("remaining").value(amount(budgetAmount - totalSpent));
+            json.name("percentUsed").value(Math.round(percentUsed * 10) / 10.0);
+            json.endObject();
+        }
+
+        @Override
+        public void endCategorySummary(long grandTotal) throws IOException {
+            json.endArray();
+            json.name("total").value(amount(grandTotal));
+        }
+
+        @Override
+        public void beginMonthlyDistribution() throws IOException {
+            json.name("monthlyDistribution").beginArray();
+        }
+
+        @Override
+        public void writeMonthTotal(String month, long total) throws IOException {
+            json.beginObject();
+            json.name("month").value(month);
+            json.name("total").value(amount(total));
+            json.endObject();
+        }
+
+        @Override
+        public void endMonthlyDistribution() throws IOException {
+            json.endArray();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            json.endObject();
+            json.flush();
+        }
+
+        // Exact decimal amount, written as a JSON number such as 12.50
+        private static BigDecimal amount(long cents) {
+            return BigDecimal.valueOf(cents, 2);
+        }
+    }
+
+    private static final class PdfReportWriter implements ReportWriter {
+        private final Document document = new Document();
+        private final PdfWriter writer;
+        private final long startTime = SystemClock.elapsedRealtime();
+        private PdfPTable table; // Table being filled
+        private int pendingRows; // Transaction rows not yet written to the document
+
+        PdfReportWriter(OutputStream output) throws IOException {
+            try {
+                writer = PdfWriter.getInstance(document, output);
+                writer.setCloseStream(false); // The caller owns the stream, which may be a ZIP entry
+            } catch (DocumentException e) {
+                throw new IOException("Error creating PDF writer", e);
+            }
+        }
+
+        @Override
+        public void writeHeader(String startDate, String endDate) throws IOException {
+            // Add document metadata
+            document.addCreationDate();
+            document.addTitle("Campus Expense Manager Report");
+            document.addSubject("Expense Report for period: " + startDate + " to " + endDate);
+            document.open();
+
+            // Report Title
+            add(PdfStyleHelper.createTitle("CAMPUS EXPENSE MANAGER REPORT"));
+
+            // Add metadata
+            add(new Paragraph("Generated: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()), PdfStyleHelper.NORMAL_FONT));
+            add(new Paragraph("Period: " + startDate + " to " + endDate, PdfStyleHelper.NORMAL_FONT));
+
+            // SECTION 1: EXPENSE TRANSACTIONS
+            add(PdfStyleHelper.createHeading("EXPENSE TRANSACTIONS"));
+
+            // Large table: rows already added to the document are released, and the
+            // header row is repeated on every page
+            table = createTable(new float[]{2, 2, 3, 2, 2}, 100,
+                    "Date", "Amount", "Description", "Category", "Payment Method");
+            table.setHeaderRows(1);
+            table.setComplete(false);
+        }
+
+        @Override
+        public void writeExpense(Expense expense, String categoryName) throws IOException {
+            table.addCell(PdfStyleHelper.createDataCell(expense.getFormattedDate()));
+            table.addCell(PdfStyleHelper.createCurrencyCell(Money.format(expense.getAmountCents())));
+            table.addCell(PdfStyleHelper.createDataCell(expense.getDescription()));
+            table.addCell(PdfStyleHelper.createDataCell(categoryName));
+            table.addCell(PdfStyleHelper.createDataCell(expense.getPaymentMethod()));
+
+            if (++pendingRows == PDF_FLUSH_ROWS) {
+                pendingRows = 0;
+                add(table);
+            }
+        }
+
+        @Override
+        public void beginCategorySummary() throws IOException {
+            // Write the remaining rows and close the transaction table
+            table.setComplete(true);
+            add(table);
+
+            // SECTION 2: CATEGORY SUMMARY
+            add(PdfStyleHelper.createHeading("CATEGORY SUMMARY"));
+            table = createTable(new float[]{3, 2, 2, 2, 2}, 100,
+                    "Category", "Total Amount", "Budget Amount", "Remaining Budget", "% of Budget Used");
+        }
+
+        @Override
+        public void writeCategoryTotal(String categoryName, long totalSpent, long budgetAmount) {
+            double percentUsed = budgetAmount > 0 ? (totalSpent * 100.0) / budgetAmount : 0;
+
+            table.addCell(PdfStyleHelper.createDataCell(categoryName));
+            table.addCell(PdfStyleHelper.createCurrencyCell(Money.format(totalSpent)));
+            table.addCell(PdfStyleHelper.createCurrencyCell(Money.format(budgetAmount)));
+            table.addCell(PdfStyleHelper.createCurrencyCell(Money.format(budgetAmount - totalSpent)));
+            table.addCell(PdfStyleHelper.createCurrencyCell(String.format(Locale.getDefault(), "%.1f%%", percentUsed)));
+        }
+
+        @Override
+        public void endCategorySummary(long grandTotal) throws IOException {
+            // Add grand total row, with empty cells for the rest of the row
+            table.addCell(PdfStyleHelper.createTotalCell("Total", false));
+            table.addCell(PdfStyleHelper.createTotalCell(Money.format(grandTotal), true));
+            table.completeRow();
+            add(table);
+        }
+
+        @Override
+        public void beginMonthlyDistribution() throws IOException {
+            // SECTION 3: MONTHLY DISTRIBUTION
+            add(PdfStyleHelper.createHeading("MONTHLY DISTRIBUTION"));
+            table = createTable(null, 70, "Month", "Total Amount");
+        }
+
+        @Override
+        public void writeMonthTotal(String month, long total) {
+            table.addCell(PdfStyleHelper.createDataCell(month));
+            table.addCell(PdfStyleHelper.createCurrencyCell(Money.format(total)));
+        }
+
+        @Override
+        public void endMonthlyDistribution() throws IOException {
+            add(table);
+        }
+
+        @Override
+        public void finish() {
+            int pageCount = writer.getPageNumber();
+            document.close();
+
+            long elapsed = Math.max(SystemClock.elapsedRealtime() - startTime, 1);
+            Log.d(TAG, String.format(Locale.US, "PDF report: %d pages in %d ms (%.1f pages/s)",
+                    pageCount, elapsed, pageCount * 1000.0 / elapsed));
+        }
+
+        private void add(Element element) throws IOException {
+            try {
+                document.add(element);
+            } catch (DocumentException e) {
+                throw new IOException("Error writing PDF", e);
+            }
+        }
+    }
+
+    // Fans the rows of streamExpensesByUser out to one report writer per user, each in its own ZIP entry
+    private static final class BatchStream implements ExpenseDb.ExpenseStream {
+        private final ZipOutputStream zip;
+        private final Format format;
+        private final String startDate;
+        private final String endDate;
+        private final boolean multipleMonths;
+        private final Map<Integer, String> categoryMap;
+        private final SparseArray<SparseLongArray> budgetMaps;
+        private final SparseArray<String> usernames;
+        private final Progress progress;
+        private int userId = -1; // User whose entry is open
+        private ReportWriter writer; // null while no entry is open
+        private ReportTotals totals;
+        private int processed;
+        int userCount;
+
+        BatchStream(ZipOutputStream zip, Format format, String startDate, String endDate, boolean multipleMonths,
+                    Map<Integer, String> categoryMap, SparseArray<SparseLongArray> budgetMaps,
+                    SparseArray<String> usernames, @Nullable Progress progress) {
+            this.zip = zip;
+            this.format = format;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.multipleMonths = multipleMonths;
+            this.categoryMap = categoryMap;
+            this.budgetMaps = budgetMaps;
+            this.usernames = usernames;
+            this.progress = progress;
+        }
+
+        @Override
+        public void onExpense(Expense expense) throws IOException {
+            if (writer == null || expense.getUserId() != userId) {
+                finishUser();
+                startUser(expense.getUserId());
+            }
+
+            totals.add(expense);
+            writer.writeExpense(expense, categoryMap.getOrDefault(expense.getCategoryId(), "Unknown"));
+
+            if (progress != null && ++processed % PROGRESS_ROWS == 0) {
+                if (progress.isCancelled()) {
+                    throw new CancelledException();
+                }
+                progress.onRows(processed, 0);
+            }
+        }
+
+        private void startUser(int userId) throws IOException {
+            this.userId = userId;
+            // One folder per user, named so that staff can find a student without looking up ids
+            String folder = userId + "_" + usernames.get(userId, "user").replaceAll("[^A-Za-z0-9._-]", "_");
+            zip.putNextEntry(new ZipEntry(folder + "/Expense_Report_" + startDate + "_to_" + endDate
+                    + format.extension));
+
+            writer = createWriter(format, zip);
+            totals = new ReportTotals();
+            writer.writeHeader(startDate, endDate);
+            userCount++;
+        }
+
+        // Write the summary of the open user's report and close its entry
+        void finishUser() throws IOException {
+            if (writer == null) {
+                return;
+            }
+            SparseLongArray budgetMap = budgetMaps.get(userId);
+            writeSummary(writer, totals, categoryMap, budgetMap != null ? budgetMap : new SparseLongArray(),
+                    multipleMonths);
+            writer.finish();
+            zip.closeEntry();
+            writer = null;
+        }
     }
-}
\ No newline at end of file
+}
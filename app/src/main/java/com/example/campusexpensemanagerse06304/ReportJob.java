@@ -0,0 +1,103 @@
+package com.example.campusexpensemanagerse06304;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * A report queued on ReportJobScheduler: what to generate, how far it has got and the result.
+ * Fields are written by the report thread and may be read from any thread.
+ */
+public class ReportJob {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED, // Generation failed or the period has no expenses
+        CANCELLED
+    }
+
+    private final int id;
+    private final int userId;
+    private final String startDate;
+    private final String endDate;
+    private final Set<ReportGenerator.Format> formats;
+    private volatile State state = State.QUEUED;
+    private volatile int rowsProcessed;
+    private volatile int totalRows;
+    private volatile ReportGenerator.Report report;
+    volatile boolean cancelRequested;
+    Future<?> future; // Set by the scheduler right after submitting
+
+    ReportJob(int id, int userId, String startDate, String endDate, Set<ReportGenerator.Format> formats) {
+        this.id = id;
+        this.userId = userId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.formats = Collections.unmodifiableSet(EnumSet.copyOf(formats));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    public Set<ReportGenerator.Format> getFormats() {
+        return formats;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return true once the job is DONE, FAILED or CANCELLED
+     */
+    public boolean isFinished() {
+        return state != State.QUEUED && state != State.RUNNING;
+    }
+
+    public int getRowsProcessed() {
+        return rowsProcessed;
+    }
+
+    /**
+     * @return Expenses in the period, 0 until the job has counted them
+     */
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * @return The generated files when the job is DONE, otherwise null
+     */
+    public ReportGenerator.Report getReport() {
+        return report;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    void setProgress(int rowsProcessed, int totalRows) {
+        this.rowsProcessed = rowsProcessed;
+        this.totalRows = totalRows;
+    }
+
+    void setReport(ReportGenerator.Report report) {
+        this.report = report;
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.campusexpensemanagerse06304;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Queue for report generation that lives as long as the process, not the screen that asked.
+ * Jobs run one at a time on a background thread, in the order they were submitted; a job that
+ * asks for several formats writes all of them from one pass over the expenses. Progress and
+ * state changes are posted to the main thread. Finished jobs are kept, up to MAX_FINISHED_JOBS,
+ * so a screen recreated after a configuration change can pick its job up again by id.
+ */
+public final class ReportJobScheduler {
+
+    private static final String TAG = "ReportJobScheduler";
+    private static final int MAX_FINISHED_JOBS = 20;
+
+    public interface Listener {
+        void onJobUpdated(ReportJob job);
+    }
+
+    private static ReportJobScheduler instance;
+
+    private final ReportGenerator reportGenerator;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "report-jobs");
+        thread.setPriority(Thread.NORM_PRIORITY - 1); // Stay behind the UI thread
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Integer, ReportJob> jobs = new LinkedHashMap<>(); // Guarded by this, oldest first
+    private int nextId = 1; // Guarded by this
+
+    /**
+     * Get the process-wide scheduler.
+     * @param context Any context, the application context is retained
+     */
+    public static synchronized ReportJobScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReportJobScheduler(new ReportGenerator(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    private ReportJobScheduler(ReportGenerator reportGenerator) {
+        this.reportGenerator = reportGenerator;
+    }
+
+    /**
+     * Queue a report for a period.
+     * @param formats Formats to write, all from the same pass over the expenses
+     * @return The queued job
+     */
+    public ReportJob submit(int userId, String startDate, String endDate, Set<ReportGenerator.Format> formats) {
+        ReportJob job;
+        synchronized (this) {
+            job = new ReportJob(nextId++, userId, startDate, endDate, formats);
+            jobs.put(job.getId(), job);
+            trimFinishedJobs();
+            job.future = executor.submit(() -> run(job));
+        }
+        Log.d(TAG, "Queued report job " + job.getId() + " " + formats + " " + startDate + " to " + endDate);
+        publish(job);
+        return job;
+    }
+
+    /**
+     * Cancel a job. A queued job is dropped; a running one stops at its next progress check
+     * and its partly written files are deleted.
+     */
+    public void cancel(int jobId) {
+        ReportJob job;
+        boolean dropped = false;
+        synchronized (this) {
+            job = jobs.get(jobId);
+            if (job == null || job.isFinished()) {
+                return;
+            }
+            job.cancelRequested = true;
+            if (job.getState() == ReportJob.State.QUEUED) {
+                job.setState(ReportJob.State.CANCELLED);
+                job.future.cancel(false);
+                dropped = true;
+            }
+        }
+        if (dropped) {
+            publish(job);
+        }
+    }
+
+    /**
+     * @return The job, or null if the id is unknown or the job has been dropped from the history
+     */
+    public synchronized ReportJob getJob(int jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * @return Queued, running and recently finished jobs, oldest first
+     */
+    public synchronized List<ReportJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Receive job updates for as long as the owner lives, typically a fragment's view lifecycle.
+     * Updates that arrive while the owner is not resumed are held back, keeping the latest per
+     * job, and delivered when it resumes. Must be called on the main thread.
+     */
+    public void observe(LifecycleOwner owner, Listener listener) {
+        owner.getLifecycle().addObserver(new LifecycleListener(owner.getLifecycle(), listener));
+    }
+
+    private void run(ReportJob job) {
+        synchronized (this) {
+            if (job.cancelRequested) {
+                return; // Cancelled between being taken off the queue and starting
+            }
+            job.setState(ReportJob.State.RUNNING);
+        }
+        publish(job);
+
+        ReportGenerator.Report report = reportGenerator.generate(job.getUserId(), job.getStartDate(),
+                job.getEndDate(), job.getFormats(), new ReportGenerator.Progress() {
+                    @Override
+                    public void onRows(int processed, int total) {
+                        job.setProgress(processed, total);
+                        publish(job);
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return job.cancelRequested;
+                    }
+                });
+
+        synchronized (this) {
+            job.setReport(report);
+            if (report != null) {
+                job.setState(ReportJob.State.DONE);
+            } else if (job.cancelRequested) {
+                job.setState(ReportJob.State.CANCELLED);
+            } else {
+                job.setState(ReportJob.State.FAILED);
+            }
+            trimFinishedJobs();
+        }
+        Log.d(TAG, "Report job " + job.getId() + " " + job.getState());
+        publish(job);
+    }
+
+    // Forget the oldest finished jobs beyond MAX_FINISHED_JOBS, keeping their files
+    private void trimFinishedJobs() {
+        int finished = 0;
+        for (ReportJob job : jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+        Iterator<ReportJob> iterator = jobs.values().iterator();
+        while (finished > MAX_FINISHED_JOBS && iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+
+    private void publish(ReportJob job) {
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onJobUpdated(job);
+            }
+        });
+    }
+
+    // Holds updates back while its lifecycle is below RESUMED and unregisters when it is destroyed
+    private final class LifecycleListener implements Listener, LifecycleEventObserver {
+        private final Lifecycle lifecycle;
+        private final Listener listener;
+        private final Map<Integer, ReportJob> deferred = new LinkedHashMap<>(); // Main thread only
+
+        LifecycleListener(Lifecycle lifecycle, Listener listener) {
+            this.lifecycle = lifecycle;
+            this.listener = listener;
+            listeners.add(this);
+        }
+
+        @Override
+        public void onJobUpdated(ReportJob job) {
+            if (lifecycle.getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+                listener.onJobUpdated(job);
+            } else {
+                deferred.put(job.getId(), job);
+            }
+        }
+
+        @Override
+        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_RESUME && !deferred.isEmpty()) {
+                List<ReportJob> updated = new ArrayList<>(deferred.values());
+                deferred.clear();
+                for (ReportJob job : updated) {
+                    listener.onJobUpdated(job);
+                }
+            } else if (event == Lifecycle.Event.ON_DESTROY) {
+                listeners.remove(this);
+                lifecycle.removeObserver(this);
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
+import android.util.Pair;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,22 +17,27 @@ import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.campusexpensemanagerse06304.adapter.BudgetRow;
 import com.example.campusexpensemanagerse06304.adapter.SimpleBudgetAdapter;
-import com.example.campusexpensemanagerse06304.database.ExpenseDb;
+import com.example.campusexpensemanagerse06304.database.BudgetTracker;
+import com.example.campusexpensemanagerse06304.database.DataChange;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.example.campusexpensemanagerse06304.model.Budget;
 import com.example.campusexpensemanagerse06304.model.Category;
+import com.example.campusexpensemanagerse06304.model.Money;
 
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
 public class SimpleBudgetFragment extends Fragment implements RefreshableFragment {
     private static final String TAG = "SimpleBudgetFragment";
@@ -53,10 +59,13 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
     // Data
     private SimpleBudgetAdapter budgetAdapter;
     private List<Budget> budgetList;
+    private BudgetTracker.Usage budgetUsage; // Spending and total budget the rows are built with
     private List<Category> categoryList;
-    private ExpenseDb expenseDb;
+    private ExpenseRepository repository;
     private int userId = -1;
     private Category selectedCategory;
+    private long currentTotalBudget; // As last shown in tvCurrentTotalBudget
+    private int pendingCategoryId = -1; // Category to select once the spinner is rebuilt
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -78,8 +87,8 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
         tvNoBudgets = view.findViewById(R.id.tvNoBudgets);
         recyclerBudgets = view.findViewById(R.id.recyclerBudgets);
 
-        // Initialize database helper
-        expenseDb = new ExpenseDb(getContext());
+        // Database work runs off the main thread
+        repository = ExpenseRepository.getInstance(requireContext());
 
         // Get the current user ID from the activity
         if (getActivity() != null) {
@@ -90,15 +99,6 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
             }
         }
 
-        // Setup RecyclerView
-        budgetList = new ArrayList<>();
-        budgetAdapter = new SimpleBudgetAdapter(getContext(), budgetList);
-        recyclerBudgets.setLayoutManager(new LinearLayoutManager(getContext()));
-        recyclerBudgets.setAdapter(budgetAdapter);
-
-        // Setup category spinner
-        setupCategorySpinner();
-
         // Setup Total Budget button
         btnSetTotalBudget.setOnClickListener(v -> {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -117,18 +117,12 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
             }
         });
 
-        // Load total budget and category budgets
-        loadTotalBudget();
-        loadBudgets();
-
         return view;
     }
 
     // Then, update the setupCategorySpinner method to filter out categories that already have budgets
     private void setupCategorySpinner() {
-        // Load categories from database
-        categoryList = expenseDb.getAllCategories();
-        Log.d(TAG, "Loaded " + categoryList.size() + " categories");
+        Log.d(TAG, "Showing " + categoryList.size() + " categories");
 
         // Create a filtered list of categories that don't already have budgets
         List<Category> availableCategories = new ArrayList<>();
@@ -205,9 +199,9 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
             return;
         }
 
-        double amount;
+        long amount;
         try {
-            amount = Double.parseDouble(etTotalBudgetAmount.getText().toString());
+            amount = Money.parseCents(etTotalBudgetAmount.getText().toString());
             if (amount <= 0) {
                 etTotalBudgetAmount.setError("Amount must be greater than zero");
                 return;
@@ -218,78 +212,71 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
         }
 
         // NEW CODE: Check if the new total budget is less than the sum of category budgets
-        double totalCategoryBudgets = calculateTotalCategoryBudgetsAllocated();
+        long totalCategoryBudgets = calculateTotalCategoryBudgetsAllocated();
         if (amount < totalCategoryBudgets) {
             // Show error message
-            String errorMsg = "Total budget cannot be less than the sum of category budgets ($" +
-                    String.format(Locale.getDefault(), "%.2f", totalCategoryBudgets) + ")";
+            String errorMsg = "Total budget cannot be less than the sum of category budgets (" +
+                    Money.format(totalCategoryBudgets) + ")";
             etTotalBudgetAmount.setError(errorMsg);
             Toast.makeText(getContext(), errorMsg, Toast.LENGTH_LONG).show();
             return;
         }
 
-        // Get first day of current month
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.DAY_OF_MONTH, 1);
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String startDate = dateFormat.format(calendar.getTime());
-
-        // Get last day of current month
-        calendar.add(Calendar.MONTH, 1);
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        String endDate = dateFormat.format(calendar.getTime());
+        // Budget covers the current month
+        YearMonth currentMonth = YearMonth.now();
+        LocalDate startDate = currentMonth.atDay(1);
+        LocalDate endDate = currentMonth.atEndOfMonth();
 
         // Save to database
-        long result = expenseDb.insertOrUpdateTotalBudget(userId, amount, "monthly", startDate, endDate);
-
-        if (result > 0) {
-            Toast.makeText(getContext(), "Total budget set successfully", Toast.LENGTH_SHORT).show();
-
-            // Clear input field
-            etTotalBudgetAmount.setText("");
-
-            // Refresh data
-            loadTotalBudget();
-
-            // Check if category budgets need adjustment
-            checkCategoryBudgetsAgainstTotal();
-
-            // Refresh all fragments
-            if (getActivity() instanceof MenuActivity) {
-                ((MenuActivity) getActivity()).refreshAllDataFragments();
-            }
-        } else {
-            Toast.makeText(getContext(), "Failed to set total budget", Toast.LENGTH_SHORT).show();
-        }
+        repository.write(getViewLifecycleOwner(),
+                db -> db.insertOrUpdateTotalBudget(userId, amount, "monthly", startDate, endDate),
+                result -> {
+                    if (result > 0) {
+                        Toast.makeText(getContext(), "Total budget set successfully", Toast.LENGTH_SHORT).show();
+
+                        // Clear input field; the totals refresh from the change event
+                        etTotalBudgetAmount.setText("");
+
+                        // Check if category budgets need adjustment
+                        checkCategoryBudgetsAgainstTotal(amount);
+                    } else {
+                        Toast.makeText(getContext(), "Failed to set total budget", Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
 
     // NEW METHOD: Calculate total category budgets allocated
-    private double calculateTotalCategoryBudgetsAllocated() {
-        double total = 0;
+    private long calculateTotalCategoryBudgetsAllocated() {
+        long total = 0;
         for (Budget budget : budgetList) {
-            total += budget.getAmount();
+            total += budget.getAmountCents();
         }
         Log.d(TAG, "Total category budgets allocated: $" + total);
         return total;
     }
 
     private void loadTotalBudget() {
-        if (userId == -1 || getContext() == null) {
+        if (userId == -1 || getView() == null) {
             return;
         }
 
-        // Get total budget amount
-        double totalBudget = expenseDb.getTotalBudget(userId, "monthly");
+        // Total budget and this month's spending per category, kept in memory by the budget tracker
+        repository.read(getViewLifecycleOwner(), db -> db.getBudgetUsage(userId), this::showTotalBudget);
+    }
 
-        // Get remaining budget
-        double remainingBudget = expenseDb.getRemainingTotalBudget(userId);
+    private void showTotalBudget(BudgetTracker.Usage usage) {
+        long totalBudget = usage.getTotalBudgetCents();
+        long remainingBudget = usage.getRemainingTotalCents();
+        currentTotalBudget = totalBudget;
+        budgetUsage = usage;
+        showBudgetRows();
 
         // Update UI
-        tvCurrentTotalBudget.setText(String.format(Locale.getDefault(), "$%.2f", totalBudget));
-        tvRemainingTotalBudget.setText(String.format(Locale.getDefault(), "$%.2f", remainingBudget));
+        tvCurrentTotalBudget.setText(Money.format(totalBudget));
+        tvRemainingTotalBudget.setText(Money.format(remainingBudget));
 
         // Set hint in the input field
-        etTotalBudgetAmount.setHint("Enter amount (current: $" + String.format(Locale.getDefault(), "%.2f", totalBudget) + ")");
+        etTotalBudgetAmount.setHint("Enter amount (current: " + Money.format(totalBudget) + ")");
     }
 
     // Update the saveCategoryBudget method to double-check
@@ -314,9 +301,9 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
             return;
         }
 
-        double amount;
+        long amount;
         try {
-            amount = Double.parseDouble(etCategoryBudgetAmount.getText().toString());
+            amount = Money.parseCents(etCategoryBudgetAmount.getText().toString());
             if (amount <= 0) {
                 etCategoryBudgetAmount.setError("Amount must be greater than zero");
                 return;
@@ -327,67 +314,60 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
         }
 
         // Get total budget
-        double totalBudget = expenseDb.getTotalBudget(userId, "monthly");
+        long totalBudget = currentTotalBudget;
         if (totalBudget <= 0) {
             Toast.makeText(getContext(), "Please set a total budget first", Toast.LENGTH_SHORT).show();
             return;
         }
 
         // Calculate how much is already allocated to other categories
-        double otherCategoriesTotal = 0;
-        double currentCategoryBudget = 0;
+        long otherCategoriesTotal = 0;
+        long currentCategoryBudget = 0;
         for (Budget budget : budgetList) {
             if (budget.getCategoryId() == selectedCategory.getId()) {
                 // Remember current budget for this category if it exists
-                currentCategoryBudget = budget.getAmount();
+                currentCategoryBudget = budget.getAmountCents();
             } else {
                 // Sum up budgets for other categories
-                otherCategoriesTotal += budget.getAmount();
+                otherCategoriesTotal += budget.getAmountCents();
             }
         }
 
         // Calculate available budget (total budget - other categories + current category)
-        double availableBudget = totalBudget - otherCategoriesTotal;
+        long availableBudget = totalBudget - otherCategoriesTotal;
 
         // If we're updating an existing category budget, add its current amount to available
         availableBudget += currentCategoryBudget;
 
         // Check if the new amount would exceed available budget
         if (amount > availableBudget) {
-            String errorMsg = "Amount exceeds available budget ($" +
-                    String.format(Locale.getDefault(), "%.2f", availableBudget) +
+            String errorMsg = "Amount exceeds available budget (" +
+                    Money.format(availableBudget) +
                     "). Please enter a lower amount or increase your total budget.";
             etCategoryBudgetAmount.setError(errorMsg);
             Toast.makeText(getContext(), errorMsg, Toast.LENGTH_LONG).show();
             return;
         }
 
-        // Get first day of current month
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.DAY_OF_MONTH, 1);
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String startDate = dateFormat.format(calendar.getTime());
-
-        // Get last day of current month
-        calendar.add(Calendar.MONTH, 1);
-        calendar.add(Calendar.DAY_OF_MONTH, -1);
-        String endDate = dateFormat.format(calendar.getTime());
+        // Budget covers the current month
+        YearMonth currentMonth = YearMonth.now();
+        LocalDate startDate = currentMonth.atDay(1);
+        LocalDate endDate = currentMonth.atEndOfMonth();
 
         // Save to database using existing method
-        long result = expenseDb.updateOrInsertBudget(userId, selectedCategory.getId(), amount, "monthly", startDate, endDate);
-
-        if (result > 0) {
-            Toast.makeText(getContext(), "Category budget set successfully", Toast.LENGTH_SHORT).show();
-
-            // Clear input field
-            etCategoryBudgetAmount.setText("");
-
-            // Refresh data
-            loadBudgets();
-            loadTotalBudget(); // Refresh total budget display too
-        } else {
-            Toast.makeText(getContext(), "Failed to set category budget", Toast.LENGTH_SHORT).show();
-        }
+        int categoryId = selectedCategory.getId();
+        repository.write(getViewLifecycleOwner(),
+                db -> db.updateOrInsertBudget(userId, categoryId, amount, "monthly", startDate, endDate),
+                result -> {
+                    if (result > 0) {
+                        Toast.makeText(getContext(), "Category budget set successfully", Toast.LENGTH_SHORT).show();
+
+                        // Clear input field; the list and spinner refresh from the change event
+                        etCategoryBudgetAmount.setText("");
+                    } else {
+                        Toast.makeText(getContext(), "Failed to set category budget", Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
 
     private void showCurrentCategoryBudget(int categoryId) {
@@ -399,8 +379,8 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
         for (Budget budget : budgetList) {
             if (budget.getCategoryId() == categoryId) {
                 // Found existing budget, show it in the input field
-                etCategoryBudgetAmount.setHint("Enter amount (current: $" +
-                        String.format(Locale.getDefault(), "%.2f", budget.getAmount()) + ")");
+                etCategoryBudgetAmount.setHint("Enter amount (current: " +
+                        Money.format(budget.getAmountCents()) + ")");
                 return;
             }
         }
@@ -409,32 +389,61 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
         etCategoryBudgetAmount.setHint("Enter amount (no current budget)");
     }
 
-    private void checkCategoryBudgetsAgainstTotal() {
-        double totalBudget = expenseDb.getTotalBudget(userId, "monthly");
-        double allocatedBudget = calculateTotalCategoryBudgetsAllocated();
+    private void checkCategoryBudgetsAgainstTotal(long totalBudget) {
+        long allocatedBudget = calculateTotalCategoryBudgetsAllocated();
 
         if (allocatedBudget > totalBudget) {
             // Alert user that category budgets exceed total
             Toast.makeText(getContext(),
-                    "Warning: Your category budgets ($" + String.format(Locale.getDefault(), "%.2f", allocatedBudget) +
-                            ") exceed your total budget ($" + String.format(Locale.getDefault(), "%.2f", totalBudget) +
+                    "Warning: Your category budgets (" + Money.format(allocatedBudget) +
+                            ") exceed your total budget (" + Money.format(totalBudget) +
                             "). Please adjust your category allocations.",
                     Toast.LENGTH_LONG).show();
         }
     }
 
     public void loadBudgets() {
-        if (userId == -1 || getContext() == null) {
-            Log.d(TAG, "Cannot load budgets - userId is -1 or context is null");
+        loadBudgets(false);
+    }
+
+    /**
+     * @param withCategories Also reload the categories and rebuild the spinner, which only
+     *                       offers categories without a budget
+     */
+    private void loadBudgets(boolean withCategories) {
+        if (userId == -1 || getView() == null) {
+            Log.d(TAG, "Cannot load budgets - userId is -1 or view is not created");
             return;
         }
 
         Log.d(TAG, "Loading budgets for user " + userId);
 
-        // Get budgets from database
-        List<Budget> budgets = expenseDb.getBudgetsByUser(userId);
+        // Get current month
+        YearMonth currentMonth = YearMonth.now();
+
+        Log.d(TAG, "Current month: " + currentMonth);
+
+        // Budgets with category info and spending, in one query; categories come from the query cache
+        repository.read(getViewLifecycleOwner(),
+                db -> Pair.create(db.getBudgetStatusByMonth(userId, currentMonth),
+                        withCategories ? db.getAllCategories() : null),
+                result -> {
+                    showBudgets(result.first);
+                    if (result.second != null) {
+                        categoryList = result.second;
+                        setupCategorySpinner();
+                        selectPendingCategory();
+                    }
+                });
+    }
+
+    private void showBudgets(List<Budget> budgets) {
         Log.d(TAG, "Found " + budgets.size() + " budgets");
 
+        budgetList.clear();
+        budgetList.addAll(budgets);
+        showBudgetRows();
+
         // Update UI based on results
         if (budgets.isEmpty()) {
             tvNoBudgets.setVisibility(View.VISIBLE);
@@ -443,68 +452,64 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
             tvNoBudgets.setVisibility(View.GONE);
             recyclerBudgets.setVisibility(View.VISIBLE);
 
-            // Get current month in format YYYY-MM
-            Calendar cal = Calendar.getInstance();
-            String currentMonth = String.format(Locale.getDefault(), "%d-%02d",
-                    cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
-
-            Log.d(TAG, "Current month: " + currentMonth);
-
-            // Add spending information to each budget
             for (Budget budget : budgets) {
-                // Get category name
-                for (Category category : categoryList) {
-                    if (category.getId() == budget.getCategoryId()) {
-                        budget.setCategoryName(category.getName());
-                        budget.setCategoryColor(category.getColor());
-                        break;
-                    }
-                }
-
-                // Get spent amount for this category
-                double spent = expenseDb.getTotalExpensesByCategoryAndMonth(
-                        userId, budget.getCategoryId(), currentMonth);
-                budget.setSpent(spent);
-
                 Log.d(TAG, "Budget: " + budget.getId() + " - Category: " + budget.getCategoryName() +
-                        " - Amount: " + budget.getAmount() + " - Spent: " + spent);
+                        " - Amount: " + budget.getAmount() + " - Spent: " + budget.getSpent());
             }
-
-            // Update adapter with new data
-            budgetList.clear();
-            budgetList.addAll(budgets);
-            budgetAdapter.notifyDataSetChanged();
         }
     }
 
+    // Rebuild the rows from the budgets and usage; the adapter diffs them and rebinds what changed
+    private void showBudgetRows() {
+        budgetAdapter.submitList(BudgetRow.build(budgetList, budgetUsage));
+    }
+
     @Override
     public void refreshData() {
         Log.d(TAG, "refreshData called");
-        if (isAdded() && getContext() != null) {
+        if (isAdded() && getView() != null) {
             loadTotalBudget();
             loadBudgets();
         }
     }
 
-    // Finally, update onResume to refresh the spinner when returning to this fragment
     @Override
-    public void onResume() {
-        super.onResume();
-        Log.d(TAG, "onResume called");
-        // Refresh budget data when fragment becomes visible
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        // Setup RecyclerView; the adapter's writes are tied to the view lifecycle
+        budgetList = new ArrayList<>();
+        budgetAdapter = new SimpleBudgetAdapter(getContext(), getViewLifecycleOwner());
+        recyclerBudgets.setLayoutManager(new LinearLayoutManager(getContext()));
+        recyclerBudgets.setAdapter(budgetAdapter);
+
+        repository.getChangeBus().observe(getViewLifecycleOwner(), this::onDataChanged);
+
+        // Load total budget, category budgets and the category spinner
         loadTotalBudget();
-        loadBudgets();
-        // Refresh category spinner to filter out categories with budgets
-        setupCategorySpinner();
+        loadBudgets(true);
     }
 
-    @Override
-    public void setUserVisibleHint(boolean isVisibleToUser) {
-        super.setUserVisibleHint(isVisibleToUser);
-        if (isVisibleToUser && isAdded()) {
-            Log.d(TAG, "setUserVisibleHint: visible and refreshing");
+    // Reload only the sections that depend on what changed
+    private void onDataChanged(DataChange change) {
+        if (!change.affectsUser(userId)) {
+            return;
+        }
+        Log.d(TAG, "Data changed: " + change);
+
+        // Spending on this screen is for the current month only
+        boolean spendingChanged = change.touches(DataChange.Table.EXPENSES)
+                && change.affectsMonth(YearMonth.now());
+        boolean budgetsChanged = change.touches(DataChange.Table.BUDGETS);
+        boolean categoriesChanged = change.touches(DataChange.Table.CATEGORIES);
+
+        // The usage carries the spending shown in the list, so new spending needs no list reload
+        if (change.touches(DataChange.Table.TOTAL_BUDGET) || spendingChanged) {
             loadTotalBudget();
-            loadBudgets();
+        }
+        if (budgetsChanged || categoriesChanged) {
+            // The spinner only offers categories without a budget
+            loadBudgets(true);
         }
     }
 
@@ -583,49 +588,10 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
                 return true;
             } else {
                 // If category not found, it might already have a budget
-                // Refresh the category list to make sure we have the latest data
+                // Refresh the category list and try again once the spinner is rebuilt
                 Log.d(TAG, "Category not found in spinner, refreshing data");
-                loadBudgets(); // Refresh the budget list
-                setupCategorySpinner(); // Refresh the spinner
-
-                // Try one more time with refreshed data
-                for (int i = 0; i < spinnerBudgetCategory.getCount(); i++) {
-                    try {
-                        Object item = spinnerBudgetCategory.getItemAtPosition(i);
-                        if (item instanceof Category) {
-                            Category category = (Category) item;
-                            if (category.getId() == categoryId) {
-                                spinnerBudgetCategory.setSelection(i);
-                                if (etCategoryBudgetAmount != null) {
-                                    etCategoryBudgetAmount.requestFocus();
-                                }
-                                Log.d(TAG, "Found category on second attempt");
-                                return true;
-                            }
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error checking category at position " + i + " on second attempt", e);
-                    }
-                }
-
-                // If we got here, category wasn't found even after refresh
-                Log.e(TAG, "Category not found even after refresh");
-
-                // Check if it already has a budget
-                for (Budget budget : budgetList) {
-                    if (budget.getCategoryId() == categoryId) {
-                        // It already has a budget, show a message
-                        Toast.makeText(getContext(),
-                                "This category already has a budget. You can adjust it below.",
-                                Toast.LENGTH_LONG).show();
-                        return false;
-                    }
-                }
-
-                // Otherwise, let the user know
-                Toast.makeText(getContext(),
-                        "Could not find the selected category. Please select one manually.",
-                        Toast.LENGTH_LONG).show();
+                pendingCategoryId = categoryId;
+                loadBudgets(true);
                 return false;
             }
         } catch (Exception e) {
@@ -640,4 +606,52 @@ public class SimpleBudgetFragment extends Fragment implements RefreshableFragmen
     }
 
 
+    // Second attempt of selectCategory, once the refreshed spinner is shown
+    private void selectPendingCategory() {
+        if (pendingCategoryId == -1) {
+            return;
+        }
+        int categoryId = pendingCategoryId;
+        pendingCategoryId = -1;
+
+        // Try one more time with refreshed data
+        for (int i = 0; i < spinnerBudgetCategory.getCount(); i++) {
+            try {
+                Object item = spinnerBudgetCategory.getItemAtPosition(i);
+                if (item instanceof Category) {
+                    Category category = (Category) item;
+                    if (category.getId() == categoryId) {
+                        spinnerBudgetCategory.setSelection(i);
+                        if (etCategoryBudgetAmount != null) {
+                            etCategoryBudgetAmount.requestFocus();
+                        }
+                        Log.d(TAG, "Found category on second attempt");
+                        return;
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error checking category at position " + i + " on second attempt", e);
+            }
+        }
+
+        // If we got here, category wasn't found even after refresh
+        Log.e(TAG, "Category not found even after refresh");
+
+        // Check if it already has a budget
+        for (Budget budget : budgetList) {
+            if (budget.getCategoryId() == categoryId) {
+                // It already has a budget, show a message
+                Toast.makeText(getContext(),
+                        "This category already has a budget. You can adjust it below.",
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
+        }
+
+        // Otherwise, let the user know
+        Toast.makeText(getContext(),
+                "Could not find the selected category. Please select one manually.",
+                Toast.LENGTH_LONG).show();
+    }
+
 }
\ No newline at end of file
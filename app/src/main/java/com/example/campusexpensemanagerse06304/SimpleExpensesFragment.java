@@ -20,24 +20,33 @@ import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.campusexpensemanagerse06304.adapter.EndlessScrollListener;
 import com.example.campusexpensemanagerse06304.adapter.SimpleExpenseAdapter;
 import com.example.campusexpensemanagerse06304.adapter.ViewPagerAdapter;
+import com.example.campusexpensemanagerse06304.database.DataChange;
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
+import com.example.campusexpensemanagerse06304.database.ExpenseFilter;
+import com.example.campusexpensemanagerse06304.database.ExpenseInsertResult;
+import com.example.campusexpensemanagerse06304.database.ExpensePage;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.example.campusexpensemanagerse06304.model.Budget;
 import com.example.campusexpensemanagerse06304.model.Category;
 import com.example.campusexpensemanagerse06304.model.Expense;
+import com.example.campusexpensemanagerse06304.model.Money;
 
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Future;
 
 public class SimpleExpensesFragment extends Fragment implements RefreshableFragment {
 
@@ -46,6 +55,7 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
     private AlertDialog editDialog;
 
     private static final String TAG = "SimpleExpensesFragment";
+    private static final int PAGE_SIZE = 50;
 
     private EditText etAmount, etDescription;
     private Spinner spinnerCategory;
@@ -55,8 +65,11 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
     private SimpleExpenseAdapter expenseAdapter;
     private List<Expense> expenseList;
     private List<Category> categoryList;
-    private ExpenseDb expenseDb;
+    private ExpenseRepository repository;
     private int userId = -1;
+    private ExpenseFilter expenseFilter;
+    private String nextPageToken; // null once the last page is loaded
+    private Future<ExpensePage> pageLoad; // Page being loaded, null when idle
 
 
 
@@ -75,8 +88,8 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
         tvNoExpenses = view.findViewById(R.id.tvNoExpenses);
         recyclerExpenses = view.findViewById(R.id.recyclerExpenses);
 
-        // Initialize database helper
-        expenseDb = new ExpenseDb(getContext());
+        // Database work runs off the main thread
+        repository = ExpenseRepository.getInstance(requireContext());
 
         // Get the current user ID from the activity
         if (getActivity() != null) {
@@ -87,13 +100,14 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
             }
         }
 
-        // Load categories for spinner
-        loadCategories();
+        // Filled by loadCategories once the view is created
+        categoryList = new ArrayList<>();
 
         // Setup RecyclerView
-        recyclerExpenses.setLayoutManager(new LinearLayoutManager(getContext()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        recyclerExpenses.setLayoutManager(layoutManager);
         expenseList = new ArrayList<>();
-        expenseAdapter = new SimpleExpenseAdapter(getContext(), expenseList);
+        expenseAdapter = new SimpleExpenseAdapter(getContext());
 
         // IMPORTANT: Set the listener right after creating the adapter
         expenseAdapter.setOnExpenseActionListener(new SimpleExpenseAdapter.OnExpenseActionListener() {
@@ -116,8 +130,13 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
         // Set the adapter to the RecyclerView
         recyclerExpenses.setAdapter(expenseAdapter);
 
-        // Load expenses
-        loadExpenses();
+        // Load further pages as the user scrolls towards the end
+        recyclerExpenses.addOnScrollListener(new EndlessScrollListener(layoutManager) {
+            @Override
+            public void onLoadMore() {
+                loadMoreExpenses();
+            }
+        });
 
         // Setup Add Expense button
         btnAddExpense.setOnClickListener(v -> {
@@ -131,6 +150,16 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
         return view;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        repository.getChangeBus().observe(getViewLifecycleOwner(), this::onDataChanged);
+
+        // Load categories for spinner and the first page of expenses
+        loadCategories();
+        loadExpenses();
+    }
+
 
     // Override these methods to add the action menu for multi-select
     @Override
@@ -150,6 +179,12 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
                 showMultiDeleteConfirmationDialog(selectedExpenses);
             }
             return true;
+        } else if (item.getItemId() == R.id.action_recategorize_selected) {
+            List<Expense> selectedExpenses = expenseAdapter.getSelectedExpenses();
+            if (!selectedExpenses.isEmpty()) {
+                showMultiRecategorizeDialog(selectedExpenses);
+            }
+            return true;
         } else if (item.getItemId() == R.id.action_cancel_selection) {
             expenseAdapter.toggleMultiSelectMode();
             updateMenuVisibility();
@@ -164,6 +199,7 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
         if (actionMenu != null) {
             boolean showMenu = expenseAdapter.isMultiSelectMode();
             actionMenu.findItem(R.id.action_delete_selected).setVisible(showMenu);
+            actionMenu.findItem(R.id.action_recategorize_selected).setVisible(showMenu);
             actionMenu.findItem(R.id.action_cancel_selection).setVisible(showMenu);
 
             // Update the title to show selection count
@@ -197,10 +233,10 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
         spinnerCategory.setAdapter(adapter);
 
         // Set values from the expense
-        double originalAmount = expense.getAmount();
-        etAmount.setText(String.format(Locale.getDefault(), "%.2f", originalAmount));
+        long originalAmount = expense.getAmountCents();
+        etAmount.setText(String.format(Locale.getDefault(), "%.2f", Money.toDollars(originalAmount)));
         etDescription.setText(expense.getDescription());
-        tvDate.setText(new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(expense.getDate()));
+        tvDate.setText(expense.getFormattedDate());
 
         // Set selected category
         int originalCategoryId = expense.getCategoryId();
@@ -218,19 +254,15 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
 
         // Set date picker
         tvDate.setOnClickListener(v -> {
-            Calendar c = Calendar.getInstance();
-            c.setTime(expense.getDate());
+            LocalDate shown = LocalDate.parse(tvDate.getText().toString());
 
+            // DatePickerDialog months are 0-based
             DatePickerDialog datePickerDialog = new DatePickerDialog(getContext(),
-                    (view, year, month, dayOfMonth) -> {
-                        Calendar newDate = Calendar.getInstance();
-                        newDate.set(year, month, dayOfMonth);
-                        tvDate.setText(new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault())
-                                .format(newDate.getTime()));
-                    },
-                    c.get(Calendar.YEAR),
-                    c.get(Calendar.MONTH),
-                    c.get(Calendar.DAY_OF_MONTH));
+                    (view, year, month, dayOfMonth) ->
+                            tvDate.setText(LocalDate.of(year, month + 1, dayOfMonth).toString()),
+                    shown.getYear(),
+                    shown.getMonthValue() - 1,
+                    shown.getDayOfMonth());
             datePickerDialog.show();
         });
 
@@ -249,21 +281,19 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
             }
 
             try {
-                double newAmount = Double.parseDouble(etAmount.getText().toString());
+                long newAmount = Money.parseCents(etAmount.getText().toString());
                 if (newAmount <= 0) {
                     etAmount.setError("Amount must be greater than zero");
                     return;
                 }
 
                 // Get values
-                String description = etDescription.getText().toString();
-                if (description.isEmpty()) {
-                    description = "Expense";
-                }
+                String enteredDescription = etDescription.getText().toString();
+                String description = enteredDescription.isEmpty() ? "Expense" : enteredDescription;
 
                 Category selectedCategory = (Category) spinnerCategory.getSelectedItem();
                 int categoryId = selectedCategory.getId();
-                String dateStr = tvDate.getText().toString();
+                LocalDate date = LocalDate.parse(tvDate.getText().toString());
 
                 // Check if the category has changed
                 boolean categoryChanged = categoryId != originalCategoryId;
@@ -274,106 +304,109 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
                 if (newAmount > originalAmount || categoryChanged) {
                     // Calculate available budget for the selected category
 
-                    // 1. Get the budget limit for this category
-                    double categoryBudget = 0;
-                    List<Budget> budgets = expenseDb.getBudgetsByUser(userId);
-                    for (Budget budget : budgets) {
-                        if (budget.getCategoryId() == categoryId) {
-                            categoryBudget = budget.getAmount();
-                            break;
-                        }
-                    }
-
-                    // 2. Calculate current usage for this category (excluding this expense)
-                    Calendar cal = Calendar.getInstance();
-                    String currentMonth = String.format(Locale.getDefault(), "%d-%02d",
-                            cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
-
-                    double categoryUsage = expenseDb.getTotalExpensesByCategoryAndMonth(userId, categoryId, currentMonth);
+                    // 1. Get the budget limit and current usage for this category in one query
+                    YearMonth currentMonth = YearMonth.now();
+                    repository.read(getViewLifecycleOwner(),
+                            db -> db.getBudgetStatusByMonth(userId, currentMonth),
+                            budgets -> {
+                                long categoryBudget = 0;
+                                long categoryUsage = 0;
+                                for (Budget budget : budgets) {
+                                    if (budget.getCategoryId() == categoryId) {
+                                        categoryBudget = budget.getAmountCents();
+                                        categoryUsage = budget.getSpentCents();
+                                        break;
+                                    }
+                                }
 
-                    // 3. If category hasn't changed, subtract original amount from usage
-                    //    (since it's included in the total but we're replacing it)
-                    if (!categoryChanged) {
-                        categoryUsage -= originalAmount;
-                    }
+                                // 2. If category hasn't changed, subtract original amount from usage
+                                //    (since it's included in the total but we're replacing it)
+                                if (!categoryChanged) {
+                                    categoryUsage -= originalAmount;
+                                }
 
-                    // 4. Check if new amount would exceed budget
-                    if (categoryUsage + newAmount > categoryBudget) {
-                        // Show error dialog with more details
-                        AlertDialog.Builder budgetExceededDialog = new AlertDialog.Builder(getContext());
-                        budgetExceededDialog.setTitle("Budget Limit Exceeded");
-                        budgetExceededDialog.setMessage(
-                                "Updating this expense to $" + String.format(Locale.getDefault(), "%.2f", newAmount) +
-                                        " would exceed your budget for " + selectedCategory.getName() + ".\n\n" +
-                                        "Category Budget: $" + String.format(Locale.getDefault(), "%.2f", categoryBudget) + "\n" +
-                                        "Current Usage: $" + String.format(Locale.getDefault(), "%.2f", categoryUsage) + "\n" +
-                                        "Available: $" + String.format(Locale.getDefault(), "%.2f", categoryBudget - categoryUsage) + "\n\n" +
-                                        "Would you like to increase your budget for this category?"
-                        );
-                        budgetExceededDialog.setPositiveButton("Increase Budget", (dialog, which) -> {
-                            // Navigate to budget tab to adjust budget
-                            if (getActivity() instanceof MenuActivity) {
-                                MenuActivity activity = (MenuActivity) getActivity();
-                                activity.viewPager2.setCurrentItem(2);
-
-                                // Pre-select the category in the budget fragment
-                                new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                                    Fragment budgetFragment = activity.getViewPagerAdapter().getFragment(2);
-                                    if (budgetFragment instanceof SimpleBudgetFragment) {
-                                        ((SimpleBudgetFragment) budgetFragment).selectCategory(categoryId);
-                                    }
-                                }, 500);
-                            }
-                            editDialog.dismiss();
-                        });
-                        budgetExceededDialog.setNegativeButton("Cancel", null);
-                        budgetExceededDialog.show();
-                        return;
-                    }
+                                // 3. Check if new amount would exceed budget
+                                if (categoryUsage + newAmount > categoryBudget) {
+                                    showEditBudgetExceededDialog(selectedCategory, newAmount, categoryBudget, categoryUsage);
+                                } else {
+                                    updateExpense(expense, categoryId, newAmount, description, date);
+                                }
+                            });
+                    return;
                 }
 
                 // Update expense in database
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    int result = expenseDb.updateExpense(
-                            expense.getId(),
-                            categoryId,
-                            newAmount,
-                            description,
-                            dateStr,
-                            expense.getPaymentMethod());
-
-                    if (result > 0) {
-                        Toast.makeText(getContext(), "Expense updated successfully", Toast.LENGTH_SHORT).show();
-                        loadExpenses();
-                        editDialog.dismiss();
-
-                        // Update related fragments
-                        refreshAllData();
-                    } else {
-                        Toast.makeText(getContext(), "Failed to update expense", Toast.LENGTH_SHORT).show();
-                    }
-                }
+                updateExpense(expense, categoryId, newAmount, description, date);
             } catch (NumberFormatException e) {
                 etAmount.setError("Invalid amount format");
             }
         });
     }
 
+    private void showEditBudgetExceededDialog(Category selectedCategory, long newAmount,
+                                              long categoryBudget, long categoryUsage) {
+        int categoryId = selectedCategory.getId();
+
+        // Show error dialog with more details
+        AlertDialog.Builder budgetExceededDialog = new AlertDialog.Builder(getContext());
+        budgetExceededDialog.setTitle("Budget Limit Exceeded");
+        budgetExceededDialog.setMessage(
+                "Updating this expense to " + Money.format(newAmount) +
+                        " would exceed your budget for " + selectedCategory.getName() + ".\n\n" +
+                        "Category Budget: " + Money.format(categoryBudget) + "\n" +
+                        "Current Usage: " + Money.format(categoryUsage) + "\n" +
+                        "Available: " + Money.format(categoryBudget - categoryUsage) + "\n\n" +
+                        "Would you like to increase your budget for this category?"
+        );
+        budgetExceededDialog.setPositiveButton("Increase Budget", (dialog, which) -> {
+            // Navigate to budget tab to adjust budget
+            if (getActivity() instanceof MenuActivity) {
+                MenuActivity activity = (MenuActivity) getActivity();
+                activity.viewPager2.setCurrentItem(2);
+
+                // Pre-select the category in the budget fragment
+                new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                    Fragment budgetFragment = activity.getViewPagerAdapter().getFragment(2);
+                    if (budgetFragment instanceof SimpleBudgetFragment) {
+                        ((SimpleBudgetFragment) budgetFragment).selectCategory(categoryId);
+                    }
+                }, 500);
+            }
+            editDialog.dismiss();
+        });
+        budgetExceededDialog.setNegativeButton("Cancel", null);
+        budgetExceededDialog.show();
+    }
+
+    private void updateExpense(Expense expense, int categoryId, long newAmount, String description, LocalDate date) {
+        repository.write(getViewLifecycleOwner(), db -> db.updateExpense(
+                expense.getId(),
+                categoryId,
+                newAmount,
+                description,
+                date,
+                expense.getPaymentMethod()), result -> {
+            if (result > 0) {
+                Toast.makeText(getContext(), "Expense updated successfully", Toast.LENGTH_SHORT).show();
+                editDialog.dismiss();
+            } else {
+                Toast.makeText(getContext(), "Failed to update expense", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
     private void showDeleteConfirmationDialog(Expense expense) {
         new AlertDialog.Builder(getContext())
                 .setTitle("Delete Expense")
                 .setMessage("Are you sure you want to delete this expense?")
                 .setPositiveButton("Delete", (dialog, which) -> {
-                    int result = expenseDb.deleteExpense(expense.getId());
-                    if (result > 0) {
-                        Toast.makeText(getContext(), "Expense deleted successfully", Toast.LENGTH_SHORT).show();
-                        loadExpenses();
-
-                        // Update related fragments
-                        refreshAllData();
-                    } else {
-                        Toast.makeText(getContext(), "Failed to delete expense", Toast.LENGTH_SHORT).show();
-                    }
+                    repository.write(getViewLifecycleOwner(), db -> db.deleteExpense(expense.getId()), result -> {
+                        if (result > 0) {
+                            Toast.makeText(getContext(), "Expense deleted successfully", Toast.LENGTH_SHORT).show();
+                        } else {
+                            Toast.makeText(getContext(), "Failed to delete expense", Toast.LENGTH_SHORT).show();
+                        }
+                    });
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
@@ -384,33 +417,75 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
                 .setTitle("Delete Multiple Expenses")
                 .setMessage("Are you sure you want to delete these " + expenses.size() + " expenses?")
                 .setPositiveButton("Delete", (dialog, which) -> {
-                    int successCount = 0;
-                    for (Expense expense : expenses) {
-                        int result = expenseDb.deleteExpense(expense.getId());
-                        if (result > 0) {
-                            successCount++;
-                        }
+                    // Delete all selected rows in a single transaction
+                    int[] ids = new int[expenses.size()];
+                    for (int i = 0; i < expenses.size(); i++) {
+                        ids[i] = expenses.get(i).getId();
                     }
 
-                    if (successCount > 0) {
-                        Toast.makeText(getContext(), successCount + " expenses deleted successfully", Toast.LENGTH_SHORT).show();
-                        expenseAdapter.toggleMultiSelectMode();
-                        updateMenuVisibility();
-                        loadExpenses();
+                    repository.write(getViewLifecycleOwner(), db -> countSuccesses(db.deleteExpenses(ids)), successCount -> {
+                        if (successCount > 0) {
+                            Toast.makeText(getContext(), successCount + " expenses deleted successfully", Toast.LENGTH_SHORT).show();
+                            expenseAdapter.toggleMultiSelectMode();
+                            updateMenuVisibility();
+                        } else {
+                            Toast.makeText(getContext(), "Failed to delete expenses", Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void showMultiRecategorizeDialog(List<Expense> expenses) {
+        ArrayAdapter<Category> adapter = new ArrayAdapter<>(
+                getContext(), android.R.layout.simple_list_item_1, categoryList);
+
+        new AlertDialog.Builder(getContext())
+                .setTitle("Move " + expenses.size() + " expenses to")
+                .setAdapter(adapter, (dialog, which) -> {
+                    Category category = categoryList.get(which);
 
-                        // Update related fragments
-                        refreshAllData();
-                    } else {
-                        Toast.makeText(getContext(), "Failed to delete expenses", Toast.LENGTH_SHORT).show();
+                    // Update all selected rows in a single transaction
+                    List<Expense> updated = new ArrayList<>();
+                    for (Expense expense : expenses) {
+                        Expense copy = new Expense(expense.getId(), expense.getUserId(), category.getId(),
+                                expense.getAmountCents(), expense.getDescription(), expense.getDate(),
+                                expense.getPaymentMethod(), expense.isRecurring(), expense.getRecurringExpenseId());
+                        updated.add(copy);
                     }
+
+                    repository.write(getViewLifecycleOwner(), db -> countSuccesses(db.updateExpenses(updated)), successCount -> {
+                        if (successCount > 0) {
+                            Toast.makeText(getContext(), successCount + " expenses moved to " + category.getName(), Toast.LENGTH_SHORT).show();
+                            expenseAdapter.toggleMultiSelectMode();
+                            updateMenuVisibility();
+                        } else {
+                            Toast.makeText(getContext(), "Failed to update expenses", Toast.LENGTH_SHORT).show();
+                        }
+                    });
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
     }
 
+    // Number of rows a batch write changed
+    private static int countSuccesses(int[] results) {
+        int successCount = 0;
+        for (int result : results) {
+            if (result > 0) {
+                successCount++;
+            }
+        }
+        return successCount;
+    }
 
     private void loadCategories() {
-        categoryList = expenseDb.getAllCategories();
+        repository.read(getViewLifecycleOwner(), ExpenseDb::getAllCategories, this::showCategories);
+    }
+
+    private void showCategories(List<Category> categories) {
+        categoryList = categories;
         Log.d(TAG, "Loaded " + categoryList.size() + " categories");
 
         // Create adapter for spinner
@@ -430,9 +505,9 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
         }
 
 
-        double amount;
+        long amount;
         try {
-            amount = Double.parseDouble(etAmount.getText().toString());
+            amount = Money.parseCents(etAmount.getText().toString());
             if (amount <= 0) {
                 etAmount.setError("Amount must be greater than zero");
                 return;
@@ -459,88 +534,93 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
         Log.d(TAG, "Selected category: " + selectedCategory.getName() + " (ID: " + categoryId + ")");
 
 
-        // Check if this category has a budget
-        if (!categoryHasBudget(categoryId)) {
-            // Show dialog to prompt user to set up a budget first
-            String finalDescription = description;
-            new AlertDialog.Builder(getContext())
-                    .setTitle("Budget Required")
-                    .setMessage("This category doesn't have a budget yet. Would you like to set one up first?")
-                    .setPositiveButton("Set Budget", (dialog, which) -> {
-                        // Navigate to budget screen
-                        if (getActivity() instanceof MenuActivity) {
-                            MenuActivity activity = (MenuActivity) getActivity();
-                            activity.viewPager2.setCurrentItem(2);
-
-                            // Allow layout to be drawn first, then update spinner selection
-                            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                                Fragment budgetFragment = activity.getViewPagerAdapter().getFragment(2);
-                                if (budgetFragment instanceof SimpleBudgetFragment) {
-                                    ((SimpleBudgetFragment) budgetFragment).selectCategory(categoryId);
-                                }
-                            }, 300);
-                        }
-                    })
-                    .setNegativeButton("Continue Anyway", (dialog, which) -> {
-                        // Proceed with saving expense
-                        proceedWithSavingExpense(categoryId, amount, finalDescription);
-                    })
-                    .show();
-            return;
-        }
-
+        // Budgets are checked and the expense inserted in one transaction
+        proceedWithSavingExpense(selectedCategory, amount, description, false);
+    }
 
-        // Check if this expense would exceed the category budget
-        if (!expenseDb.checkCategoryBudgetBalance(userId, categoryId, amount)) {
-            // Show an error dialog with more details
-            showBudgetExceededDialog(selectedCategory.getName(), amount);
-            return;
-        }
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void proceedWithSavingExpense(Category selectedCategory, long amount, String description,
+                                          boolean allowWithoutBudget) {
+        int categoryId = selectedCategory.getId();
 
         // Get current date
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String currentDate = dateFormat.format(new Date());
+        LocalDate currentDate = LocalDate.now();
 
         // Save to database with selected category
-/*        long result = expenseDb.insertExpense(userId, categoryId, amount, description, currentDate, "Cash", false, null);
+        repository.write(getViewLifecycleOwner(),
+                db -> db.insertExpenseWithinBudget(userId, categoryId, amount, description, currentDate,
+                        "Cash", allowWithoutBudget),
+                result -> onExpenseSaved(result, selectedCategory, amount, description));
+    }
 
-        if (result != -1) {
-            Log.d(TAG, "Expense added successfully with ID: " + result);
-            Toast.makeText(getContext(), "Expense added successfully", Toast.LENGTH_SHORT).show();
-            // Clear input fields
-            etAmount.setText("");
-            etDescription.setText("");
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void onExpenseSaved(ExpenseInsertResult result, Category selectedCategory, long amount, String description) {
+        int categoryId = selectedCategory.getId();
 
-            // Refresh the expense list
-            loadExpenses();
+        switch (result.getStatus()) {
+            case INSERTED:
+                Log.d(TAG, "Expense added successfully with ID: " + result.getId());
+                Toast.makeText(getContext(), "Expense added successfully", Toast.LENGTH_SHORT).show();
+                // Clear input fields; the list and the other tabs refresh from the change event
+                etAmount.setText("");
+                etDescription.setText("");
+                break;
+            case NO_CATEGORY_BUDGET:
+                showBudgetRequiredDialog(selectedCategory, amount, description);
+                break;
+            case OVER_CATEGORY_BUDGET:
+                // Show an error dialog with more details
+                showBudgetExceededDialog("your budget for " + selectedCategory.getName(), categoryId,
+                        amount, result.getRemainingCents());
+                break;
+            case OVER_TOTAL_BUDGET:
+                showBudgetExceededDialog("your total monthly budget", categoryId, amount, result.getRemainingCents());
+                break;
+            default:
+                Log.e(TAG, "Failed to add expense");
+                Toast.makeText(getContext(), "Failed to add expense", Toast.LENGTH_SHORT).show();
+                break;
+        }
+    }
 
-            // Force update budget information with a small delay
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                updateBudgetFragment();
-                updateHomeFragment();
-            }, 500);
-        } else {
-            Log.e(TAG, "Failed to add expense");
-            Toast.makeText(getContext(), "Failed to add expense", Toast.LENGTH_SHORT).show();
-        }*/
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void showBudgetRequiredDialog(Category selectedCategory, long amount, String description) {
+        int categoryId = selectedCategory.getId();
 
-        proceedWithSavingExpense(categoryId, amount, description);
+        // Show dialog to prompt user to set up a budget first
+        new AlertDialog.Builder(getContext())
+                .setTitle("Budget Required")
+                .setMessage("This category doesn't have a budget yet. Would you like to set one up first?")
+                .setPositiveButton("Set Budget", (dialog, which) -> {
+                    // Navigate to budget screen
+                    if (getActivity() instanceof MenuActivity) {
+                        MenuActivity activity = (MenuActivity) getActivity();
+                        activity.viewPager2.setCurrentItem(2);
+
+                        // Allow layout to be drawn first, then update spinner selection
+                        new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                            Fragment budgetFragment = activity.getViewPagerAdapter().getFragment(2);
+                            if (budgetFragment instanceof SimpleBudgetFragment) {
+                                ((SimpleBudgetFragment) budgetFragment).selectCategory(categoryId);
+                            }
+                        }, 300);
+                    }
+                })
+                .setNegativeButton("Continue Anyway", (dialog, which) -> {
+                    // Proceed with saving expense; the total budget is still checked
+                    proceedWithSavingExpense(selectedCategory, amount, description, true);
+                })
+                .show();
     }
 
     // Add this new method to show a detailed budget exceeded dialog
-    private void showBudgetExceededDialog(String categoryName, double expenseAmount) {
-        if (getContext() == null) return;
-
-        // Get remaining budget for this category
-        int categoryId = ((Category) spinnerCategory.getSelectedItem()).getId();
-        double remainingBudget = expenseDb.getRemainingCategoryBudget(userId, categoryId);
-
+    private void showBudgetExceededDialog(String budgetName, int categoryId, long expenseAmount, long remainingBudget) {
         AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
         builder.setTitle("Budget Limit Exceeded");
-        builder.setMessage("Adding this expense of $" + String.format(Locale.getDefault(), "%.2f", expenseAmount) +
-                " would exceed your budget for " + categoryName + ".\n\n" +
-                "Remaining budget: $" + String.format(Locale.getDefault(), "%.2f", remainingBudget) + "\n\n" +
-                "Would you like to increase your budget for this category?");
+        builder.setMessage("Adding this expense of " + Money.format(expenseAmount) +
+                " would exceed " + budgetName + ".\n\n" +
+                "Remaining budget: " + Money.format(remainingBudget) + "\n\n" +
+                "Would you like to increase this budget?");
 
         // Add buttons
         builder.setPositiveButton("Increase Budget", (dialog, which) -> {
@@ -567,7 +647,7 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
 
                             // Also pre-fill the amount field with the expense amount
                             EditText amountField = budgetFragment.getView().findViewById(R.id.etCategoryBudgetAmount);
-                            amountField.setText(String.valueOf(expenseAmount));
+                            amountField.setText(String.format(Locale.getDefault(), "%.2f", Money.toDollars(expenseAmount)));
                         } catch (Exception e) {
                             Log.e(TAG, "Error pre-selecting category in budget fragment", e);
                         }
@@ -582,121 +662,106 @@ public class SimpleExpensesFragment extends Fragment implements RefreshableFragm
     }
 
 
-    private void refreshAllData() {
-        if (getActivity() instanceof MenuActivity) {
-            ((MenuActivity) getActivity()).refreshAllDataFragments();
-        }
-    }
-
     private void loadExpenses() {
         if (userId != -1) {
-            // Get expenses from database
-            List<Expense> expenses = expenseDb.getExpensesByUser(userId);
-            Log.d(TAG, "Loaded " + expenses.size() + " expenses");
-
-            // Update UI based on results
-            if (expenses.isEmpty()) {
-                tvNoExpenses.setVisibility(View.VISIBLE);
-                recyclerExpenses.setVisibility(View.GONE);
-            } else {
-                tvNoExpenses.setVisibility(View.GONE);
-                recyclerExpenses.setVisibility(View.VISIBLE);
-
-                // Add category info to expenses
-                for (Expense expense : expenses) {
-                    for (Category category : categoryList) {
-                        if (category.getId() == expense.getCategoryId()) {
-                            expense.setCategoryName(category.getName());
-                            expense.setCategoryColor(category.getColor());
-                            break;
-                        }
-                    }
-                }
-
-                // Update adapter
-                expenseList.clear();
-                expenseList.addAll(expenses);
-                expenseAdapter.notifyDataSetChanged();
-
-                // Add this line if there are expenses in the list
-                if (!expenseList.isEmpty()) {
-                    recyclerExpenses.smoothScrollToPosition(expenseList.size() - 1);
-                }
+            // Get the first page of expenses, newest first, with category info joined in
+            ExpenseFilter filter = new ExpenseFilter(userId);
+            if (pageLoad != null) {
+                pageLoad.cancel(false); // A page of the old list must not be appended to the new one
             }
+            pageLoad = repository.read(getViewLifecycleOwner(),
+                    db -> db.queryExpensePage(filter, null, PAGE_SIZE),
+                    page -> {
+                        pageLoad = null;
+                        expenseFilter = filter;
+                        showExpenses(page);
+                    });
         }
     }
 
-    @Override
-    public void refreshData() {
-        if (isAdded() && getContext() != null) {
-            Log.d(TAG, "refreshData called");
-            loadCategories();
-            loadExpenses();
+    // Re-read the rows already loaded, so a change is diffed in place and the scroll position is kept
+    private void reloadExpenses() {
+        if (expenseFilter == null) {
+            loadExpenses(); // Nothing shown yet
+            return;
         }
-    }
 
-    @Override
-    public void onResume() {
-        super.onResume();
-        Log.d(TAG, "onResume called");
-        // Refresh data when fragment becomes visible
-        refreshData();
+        if (pageLoad != null) {
+            pageLoad.cancel(false); // Read before the change; the next scroll asks again
+        }
+        ExpenseFilter filter = expenseFilter;
+        String pageToken = nextPageToken;
+        pageLoad = repository.read(getViewLifecycleOwner(),
+                db -> db.queryExpensesThrough(filter, pageToken),
+                page -> {
+                    pageLoad = null;
+                    showExpenses(page);
+                });
     }
 
-    // Here's the implementation of the budget check for normal expenses
-// This should be added to the SimpleExpensesFragment.java file
-
-    /**
-     * Checks if the selected category has a budget allocated
-     * @param categoryId The category ID to check
-     * @return true if the category has a budget, false otherwise
-     */
-    private boolean categoryHasBudget(int categoryId) {
-        // Get all budgets for the current user
-        List<Budget> budgets = expenseDb.getBudgetsByUser(userId);
-
-        // Check if any budget matches the selected category
-        for (Budget budget : budgets) {
-            if (budget.getCategoryId() == categoryId) {
-                return true;
-            }
+    private void showExpenses(ExpensePage page) {
+        List<Expense> expenses = page.getExpenses();
+        nextPageToken = page.getNextPageToken();
+        Log.d(TAG, "Loaded " + expenses.size() + " expenses, more: " + page.hasMore());
+
+        // Update UI based on results
+        if (expenses.isEmpty()) {
+            tvNoExpenses.setVisibility(View.VISIBLE);
+            recyclerExpenses.setVisibility(View.GONE);
+        } else {
+            tvNoExpenses.setVisibility(View.GONE);
+            recyclerExpenses.setVisibility(View.VISIBLE);
         }
 
-        return false;
+        // Update adapter, which diffs against the rows it shows
+        expenseList.clear();
+        expenseList.addAll(expenses);
+        expenseAdapter.submitList(new ArrayList<>(expenseList));
     }
 
+    private void loadMoreExpenses() {
+        if (expenseFilter == null || nextPageToken == null || pageLoad != null) {
+            return; // Nothing loaded yet, already at the last page, or a page is on its way
+        }
 
-    @RequiresApi(api = Build.VERSION_CODES.O)
-    private void proceedWithSavingExpense(int categoryId, double amount, String description) {
-        // Get current date
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        String currentDate = dateFormat.format(new Date());
+        ExpenseFilter filter = expenseFilter;
+        String pageToken = nextPageToken;
+        pageLoad = repository.read(getViewLifecycleOwner(),
+                db -> db.queryExpensePage(filter, pageToken, PAGE_SIZE),
+                page -> {
+                    pageLoad = null;
+                    appendPage(page);
+                });
+    }
 
-        // Save to database with selected category
-        long result = expenseDb.insertExpense(userId, categoryId, amount, description, currentDate, "Cash", false, null);
+    private void appendPage(ExpensePage page) {
+        nextPageToken = page.getNextPageToken();
 
-        if (result != -1) {
-            Log.d(TAG, "Expense added successfully with ID: " + result);
-            Toast.makeText(getContext(), "Expense added successfully", Toast.LENGTH_SHORT).show();
-            // Clear input fields
-            etAmount.setText("");
-            etDescription.setText("");
+        expenseList.addAll(page.getExpenses());
+        expenseAdapter.submitList(new ArrayList<>(expenseList));
+        Log.d(TAG, "Loaded " + page.getExpenses().size() + " more expenses, total " + expenseList.size());
+    }
 
-            // Refresh the expense list
+    @Override
+    public void refreshData() {
+        if (isAdded() && getView() != null) {
+            Log.d(TAG, "refreshData called");
+            loadCategories();
             loadExpenses();
-
-            // Force update all data
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                refreshAllData();
-            }, 500);
-        } else {
-            Log.e(TAG, "Failed to add expense");
-            Toast.makeText(getContext(), "Failed to add expense", Toast.LENGTH_SHORT).show();
         }
     }
 
-
-
-
+    // Reload the list when this or another screen, or a background job, changes its rows
+    private void onDataChanged(DataChange change) {
+        if (!change.affectsUser(userId)) {
+            return;
+        }
+        if (change.touches(DataChange.Table.CATEGORIES)) {
+            loadCategories();
+        }
+        if (change.touches(DataChange.Table.EXPENSES) || change.touches(DataChange.Table.CATEGORIES)) {
+            reloadExpenses();
+        }
+    }
 
 }
\ No newline at end of file
@@ -4,35 +4,51 @@ import android.app.DatePickerDialog;
 import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
+import android.util.Pair;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.ProgressBar;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.campusexpensemanagerse06304.adapter.EndlessScrollListener;
 import com.example.campusexpensemanagerse06304.adapter.SimpleExpenseAdapter;
+import com.example.campusexpensemanagerse06304.database.DataChange;
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
+import com.example.campusexpensemanagerse06304.database.ExpenseFilter;
+import com.example.campusexpensemanagerse06304.database.ExpensePage;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.example.campusexpensemanagerse06304.model.Category;
 import com.example.campusexpensemanagerse06304.model.Expense;
+import com.example.campusexpensemanagerse06304.model.Money;
 
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 public class SimpleHistoryFragment extends Fragment {
     private static final String TAG = "SimpleHistoryFragment";
+    private static final int PAGE_SIZE = 50;
+    private static final String KEY_REPORT_JOB_ID = "report_job_id";
 
     private TextView tvStartDate, tvEndDate, tvTotalAmount, tvNoExpenses;
     private Spinner spinnerHistoryCategory;
@@ -41,11 +57,20 @@ public class SimpleHistoryFragment extends Fragment {
     private SimpleExpenseAdapter expenseAdapter;
     private List<Expense> filteredExpensesList;
     private List<Category> categoryList;
-    private ExpenseDb expenseDb;
+    private ExpenseRepository repository;
     private int userId = -1;
     private int selectedCategoryId = -1; // -1 means all categories
     private Calendar startDate, endDate;
     private SimpleDateFormat dateFormat;
+    private ExpenseFilter currentFilter;
+    private Future<?> pageLoad; // Page being loaded, null when idle
+    private String nextPageToken; // null once the last page is loaded
+    private ExpenseFilter loadedFilter; // Filter of the rows shown, null until its first page arrives
+    private ReportJobScheduler reportScheduler;
+    private int reportJobId = -1; // Report job whose progress or result is shown, -1 for none
+    private AlertDialog reportDialog;
+    private TextView reportProgressText;
+    private ProgressBar reportProgressBar;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -70,8 +95,11 @@ public class SimpleHistoryFragment extends Fragment {
         btnGenerateReport.setText("GENERATE REPORT");
         btnGenerateReport.setBackgroundResource(R.drawable.button_report);
 
-        // Initialize database helper
-        expenseDb = new ExpenseDb(getContext());
+        // Database work runs off the main thread
+        repository = ExpenseRepository.getInstance(requireContext());
+
+        // Reports are generated by a process-wide queue so they survive this fragment
+        reportScheduler = ReportJobScheduler.getInstance(requireContext());
 
         // Get the current user ID from the activity
         if (getActivity() != null) {
@@ -92,15 +120,21 @@ public class SimpleHistoryFragment extends Fragment {
         tvStartDate.setText(dateFormat.format(startDate.getTime()));
         tvEndDate.setText(dateFormat.format(endDate.getTime()));
 
-        // Load categories for spinner
-        loadCategories();
-
         // Setup RecyclerView
         filteredExpensesList = new ArrayList<>();
-        expenseAdapter = new SimpleExpenseAdapter(getContext(), filteredExpensesList);
-        recyclerHistory.setLayoutManager(new LinearLayoutManager(getContext()));
+        expenseAdapter = new SimpleExpenseAdapter(getContext());
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        recyclerHistory.setLayoutManager(layoutManager);
         recyclerHistory.setAdapter(expenseAdapter);
 
+        // Load further pages as the user scrolls towards the end
+        recyclerHistory.addOnScrollListener(new EndlessScrollListener(layoutManager) {
+            @Override
+            public void onLoadMore() {
+                loadMoreExpenses();
+            }
+        });
+
         // Setup date picker dialogs
         tvStartDate.setOnClickListener(v -> showDatePickerDialog(true));
         tvEndDate.setOnClickListener(v -> showDatePickerDialog(false));
@@ -111,8 +145,6 @@ public class SimpleHistoryFragment extends Fragment {
         // Setup Generate Report button with enhanced functionality
         btnGenerateReport.setOnClickListener(v -> showReportOptions());
 
-        // Load initial data
-        filterExpenses();
 
         return view;
     }
@@ -137,7 +169,9 @@ public class SimpleHistoryFragment extends Fragment {
 
         // Find buttons in the custom layout
         Button btnCsvReport = dialogView.findViewById(R.id.btnCsvReport);
+        Button btnJsonReport = dialogView.findViewById(R.id.btnJsonReport);
         Button btnPdfReport = dialogView.findViewById(R.id.btnPdfReport);
+        Button btnCsvPdfReport = dialogView.findViewById(R.id.btnCsvPdfReport);
         Button btnCancel = dialogView.findViewById(R.id.btnCancelReport);
 
         // Create dialog
@@ -145,12 +179,22 @@ public class SimpleHistoryFragment extends Fragment {
 
         // Set button click listeners
         btnCsvReport.setOnClickListener(v -> {
-            generateAndShareReport("csv");
+            generateAndShareReport(EnumSet.of(ReportGenerator.Format.CSV));
+            dialog.dismiss();
+        });
+
+        btnJsonReport.setOnClickListener(v -> {
+            generateAndShareReport(EnumSet.of(ReportGenerator.Format.JSON));
             dialog.dismiss();
         });
 
         btnPdfReport.setOnClickListener(v -> {
-            generateAndShareReport("pdf");
+            generateAndShareReport(EnumSet.of(ReportGenerator.Format.PDF));
+            dialog.dismiss();
+        });
+
+        btnCsvPdfReport.setOnClickListener(v -> {
+            generateAndShareReport(EnumSet.of(ReportGenerator.Format.CSV, ReportGenerator.Format.PDF));
             dialog.dismiss();
         });
 
@@ -162,10 +206,10 @@ public class SimpleHistoryFragment extends Fragment {
     }
 
     /**
-     * Generate and share the report with progress indication
-     * @param format Report format (csv or pdf)
+     * Queue the report on the report scheduler and show its progress
+     * @param formats Report formats, written together from one pass over the expenses
      */
-    private void generateAndShareReport(String format) {
+    private void generateAndShareReport(Set<ReportGenerator.Format> formats) {
         if (userId == -1) {
             Toast.makeText(getContext(), "User not found", Toast.LENGTH_SHORT).show();
             return;
@@ -174,79 +218,125 @@ public class SimpleHistoryFragment extends Fragment {
         String startDateStr = tvStartDate.getText().toString();
         String endDateStr = tvEndDate.getText().toString();
 
-        // Show progress dialog
+        ReportJob job = reportScheduler.submit(userId, startDateStr, endDateStr, formats);
+        reportJobId = job.getId();
+        showReportProgress(job);
+    }
+
+    // Called on the main thread for every job of the scheduler; only the one this screen started matters
+    private void onReportJobUpdated(ReportJob job) {
+        if (job.getId() != reportJobId) {
+            return;
+        }
+        if (job.isFinished()) {
+            showReportResult(job);
+        } else {
+            updateReportProgress(job);
+        }
+    }
+
+    private void showReportProgress(ReportJob job) {
+        dismissReportDialog();
+
+        View dialogView = LayoutInflater.from(getContext()).inflate(R.layout.dialog_report_progress, null);
+        reportProgressText = dialogView.findViewById(R.id.tvReportProgress);
+        reportProgressBar = dialogView.findViewById(R.id.progressReport);
+
         AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
         builder.setTitle("Generating Report");
-        builder.setMessage("Please wait while your report is being generated...");
+        builder.setView(dialogView);
         builder.setCancelable(false);
+        builder.setNegativeButton("Cancel", (dialog, which) -> {
+            // The job reports CANCELLED once it has stopped
+            reportScheduler.cancel(job.getId());
+        });
 
-        final AlertDialog progressDialog = builder.create();
-        progressDialog.show();
+        reportDialog = builder.show();
+        updateReportProgress(job);
+    }
 
-        // Use a background thread for report generation
-        new Thread(() -> {
-            ReportGenerator reportGenerator = new ReportGenerator(getContext());
-            String filePath;
+    private void updateReportProgress(ReportJob job) {
+        if (reportProgressBar == null) {
+            return;
+        }
+        if (job.getState() == ReportJob.State.QUEUED) {
+            reportProgressText.setText("Waiting for other reports to finish...");
+        } else if (job.getTotalRows() > 0) {
+            reportProgressBar.setIndeterminate(false);
+            reportProgressBar.setMax(job.getTotalRows());
+            reportProgressBar.setProgress(job.getRowsProcessed());
+            reportProgressText.setText("Processed " + job.getRowsProcessed() + " of "
+                    + job.getTotalRows() + " transactions");
+        }
+    }
 
-            if ("csv".equals(format)) {
-                filePath = reportGenerator.generateCSVReport(userId, startDateStr, endDateStr);
-            } else {
-                filePath = reportGenerator.generatePDFReport(userId, startDateStr, endDateStr);
-            }
+    private void showReportResult(ReportJob job) {
+        dismissReportDialog();
 
-            // Update UI on main thread
-            if (getActivity() != null) {
-                getActivity().runOnUiThread(() -> {
-                    progressDialog.dismiss();
-
-                    if (filePath != null) {
-                        // Show success message with file details
-                        AlertDialog.Builder resultBuilder = new AlertDialog.Builder(getContext());
-                        resultBuilder.setTitle("Report Generated Successfully");
-
-                        String fileType = format.toUpperCase();
-                        String message = "Your " + fileType + " report has been created with the following details:\n\n" +
-                                "• Date Range: " + startDateStr + " to " + endDateStr + "\n" +
-                                "• Total Transactions: " + filteredExpensesList.size() + "\n" +
-                                "• Categories Included: " + getCategoryCount() + "\n\n" +
-                                "Would you like to share this report now?";
-
-                        resultBuilder.setMessage(message);
-                        resultBuilder.setPositiveButton("Share", (dialog, which) -> {
-                            reportGenerator.shareReport(filePath);
-                        });
-                        resultBuilder.setNegativeButton("Done", (dialog, which) -> dialog.dismiss());
-                        resultBuilder.show();
-                    } else {
-                        Toast.makeText(getContext(),
-                                "Failed to generate report. Please try again.",
-                                Toast.LENGTH_SHORT).show();
-                    }
-                });
-            }
-        }).start();
-    }
+        ReportGenerator.Report report = job.getReport();
+        if (report == null) {
+            reportJobId = -1;
+        }
+        if (job.getState() == ReportJob.State.CANCELLED) {
+            Toast.makeText(getContext(), "Report cancelled", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (report == null) {
+            Toast.makeText(getContext(),
+                    "Failed to generate report. Please try again.",
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
 
-    /**
-     * Count the number of unique categories in the filtered expenses
-     */
-    private int getCategoryCount() {
-        if (filteredExpensesList.isEmpty()) return 0;
+        // Show success message with file details
+        AlertDialog.Builder resultBuilder = new AlertDialog.Builder(getContext());
+        resultBuilder.setTitle("Report Generated Successfully");
 
-        // Use a Set to count unique category IDs
-        java.util.Set<Integer> uniqueCategories = new java.util.HashSet<>();
-        for (Expense expense : filteredExpensesList) {
-            uniqueCategories.add(expense.getCategoryId());
+        StringBuilder fileType = new StringBuilder();
+        for (ReportGenerator.Format format : job.getFormats()) {
+            if (fileType.length() > 0) {
+                fileType.append(" + ");
+            }
+            fileType.append(format.name());
         }
+        String message = "Your " + fileType + (job.getFormats().size() > 1 ? " reports have" : " report has")
+                + " been created with the following details:\n\n" +
+                "• Date Range: " + job.getStartDate() + " to " + job.getEndDate() + "\n" +
+                "• Total Transactions: " + report.getRowCount() + "\n" +
+                "• Categories Included: " + report.getCategoryCount() + "\n\n" +
+                "Would you like to share this report now?";
+
+        resultBuilder.setMessage(message);
+        resultBuilder.setCancelable(false);
+        resultBuilder.setPositiveButton("Share", (dialog, which) -> {
+            reportJobId = -1;
+            new ReportGenerator(getContext()).shareReports(report.getFilePaths());
+        });
+        resultBuilder.setNegativeButton("Done", (dialog, which) -> {
+            reportJobId = -1;
+            dialog.dismiss();
+        });
+        reportDialog = resultBuilder.show();
+    }
 
-        return uniqueCategories.size();
+    private void dismissReportDialog() {
+        if (reportDialog != null) {
+            reportDialog.dismiss();
+            reportDialog = null;
+        }
+        reportProgressText = null;
+        reportProgressBar = null;
     }
 
 // Replace the existing showReportOptions() and generateAndShareReport() methods
 // with these enhanced versions in your SimpleHistoryFragment class.
 
     private void loadCategories() {
-        categoryList = expenseDb.getAllCategories();
+        repository.read(getViewLifecycleOwner(), ExpenseDb::getAllCategories, this::showCategories);
+    }
+
+    private void showCategories(List<Category> categories) {
+        categoryList = categories;
         Log.d(TAG, "Loaded " + categoryList.size() + " categories");
 
         // Create a list with "All Categories" option
@@ -268,6 +358,14 @@ public class SimpleHistoryFragment extends Fragment {
 
         spinnerHistoryCategory.setAdapter(adapter);
 
+        // Keep the current selection when the list is reloaded
+        for (int i = 0; i < spinnerCategories.size(); i++) {
+            if (spinnerCategories.get(i).getId() == selectedCategoryId) {
+                spinnerHistoryCategory.setSelection(i);
+                break;
+            }
+        }
+
         // Set listener
         spinnerHistoryCategory.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
@@ -311,74 +409,160 @@ public class SimpleHistoryFragment extends Fragment {
 
         try {
             // Parse selected dates
-            Date start = dateFormat.parse(tvStartDate.getText().toString());
-            Date end = dateFormat.parse(tvEndDate.getText().toString());
+            LocalDate start = LocalDate.parse(tvStartDate.getText().toString());
+            LocalDate end = LocalDate.parse(tvEndDate.getText().toString());
 
             // Validate date range
-            if (start != null && end != null && start.after(end)) {
+            if (start.isAfter(end)) {
                 Toast.makeText(getContext(), "Start date cannot be after end date", Toast.LENGTH_SHORT).show();
                 return;
             }
 
-            // Get all expenses from database
-            List<Expense> allExpenses = expenseDb.getExpensesByUser(userId);
-            List<Expense> filteredExpenses = new ArrayList<>();
-            double totalAmount = 0;
-
-            // Filter by date range and category
-            for (Expense expense : allExpenses) {
-                // Check date range
-                boolean dateMatches = expense.getDate() != null &&
-                        (start == null || !expense.getDate().before(start)) &&
-                        (end == null || !expense.getDate().after(end));
-
-                // Check category
-                boolean categoryMatches = selectedCategoryId == -1 || expense.getCategoryId() == selectedCategoryId;
-
-                if (dateMatches && categoryMatches) {
-                    // Add category info
-                    for (Category category : categoryList) {
-                        if (category.getId() == expense.getCategoryId()) {
-                            expense.setCategoryName(category.getName());
-                            expense.setCategoryColor(category.getColor());
-                            break;
-                        }
-                    }
+            // Let the database filter by date range and category, one page at a time
+            ExpenseFilter filter = new ExpenseFilter(userId);
+            filter.setDateRange(start, end);
+            filter.setCategoryId(selectedCategoryId);
+            loadFirstPage(filter);
+        } catch (DateTimeParseException e) {
+            Log.e(TAG, "Error parsing dates", e);
+            Toast.makeText(getContext(), "Invalid date format", Toast.LENGTH_SHORT).show();
+        }
+    }
 
-                    filteredExpenses.add(expense);
-                    totalAmount += expense.getAmount();
-                }
-            }
+    private void loadFirstPage(ExpenseFilter filter) {
+        if (pageLoad != null) {
+            pageLoad.cancel(false); // Results of a replaced filter must not be shown
+        }
+        currentFilter = filter; // Set now so changes made during the load re-run it
+
+        // The total covers every matching expense, not only the first page
+        pageLoad = repository.read(getViewLifecycleOwner(),
+                db -> Pair.create(db.queryExpensePage(filter, null, PAGE_SIZE), db.getExpenseTotal(filter)),
+                result -> {
+                    pageLoad = null;
+                    loadedFilter = filter;
+                    showExpenses(result.first, result.second);
+                });
+    }
+
+    // Re-read the rows already loaded and the total, so a change is diffed in place and the
+    // scroll position is kept
+    private void reloadExpenses() {
+        if (loadedFilter != currentFilter) {
+            loadFirstPage(currentFilter); // The filter's first page has not arrived yet
+            return;
+        }
+
+        if (pageLoad != null) {
+            pageLoad.cancel(false); // Read before the change; the next scroll asks again
+        }
+        ExpenseFilter filter = currentFilter;
+        String pageToken = nextPageToken;
+        pageLoad = repository.read(getViewLifecycleOwner(),
+                db -> Pair.create(db.queryExpensesThrough(filter, pageToken), db.getExpenseTotal(filter)),
+                result -> {
+                    pageLoad = null;
+                    showExpenses(result.first, result.second);
+                });
+    }
+
+    private void showExpenses(ExpensePage page, long totalAmount) {
+        List<Expense> filteredExpenses = page.getExpenses();
+        nextPageToken = page.getNextPageToken();
+
+        // Update total amount
+        tvTotalAmount.setText(Money.format(totalAmount));
+        Log.d(TAG, "Total filtered amount: $" + totalAmount);
+
+        // Update UI based on results
+        if (filteredExpenses.isEmpty()) {
+            tvNoExpenses.setVisibility(View.VISIBLE);
+            recyclerHistory.setVisibility(View.GONE);
+            Log.d(TAG, "No expenses match the filters");
+        } else {
+            tvNoExpenses.setVisibility(View.GONE);
+            recyclerHistory.setVisibility(View.VISIBLE);
+            Log.d(TAG, "Showing " + filteredExpenses.size() + " expenses matching filters");
+        }
+
+        // Update adapter, which diffs against the rows it shows
+        filteredExpensesList.clear();
+        filteredExpensesList.addAll(filteredExpenses);
+        expenseAdapter.submitList(new ArrayList<>(filteredExpensesList));
+    }
+
+    private void loadMoreExpenses() {
+        if (currentFilter == null || nextPageToken == null || pageLoad != null) {
+            return; // Nothing loaded yet, already at the last page, or a page is on its way
+        }
+
+        ExpenseFilter filter = currentFilter;
+        String pageToken = nextPageToken;
+        pageLoad = repository.read(getViewLifecycleOwner(),
+                db -> db.queryExpensePage(filter, pageToken, PAGE_SIZE),
+                page -> {
+                    pageLoad = null;
+                    appendPage(page);
+                });
+    }
+
+    private void appendPage(ExpensePage page) {
+        nextPageToken = page.getNextPageToken();
 
-            // Update total amount
-            tvTotalAmount.setText(String.format(Locale.getDefault(), "$%.2f", totalAmount));
-            Log.d(TAG, "Total filtered amount: $" + totalAmount);
+        filteredExpensesList.addAll(page.getExpenses());
+        expenseAdapter.submitList(new ArrayList<>(filteredExpensesList));
+        Log.d(TAG, "Loaded " + page.getExpenses().size() + " more expenses, total " + filteredExpensesList.size());
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        repository.getChangeBus().observe(getViewLifecycleOwner(), this::onDataChanged);
+        reportScheduler.observe(getViewLifecycleOwner(), this::onReportJobUpdated);
+
+        // Load categories for spinner and the current month's expenses
+        loadCategories();
+        filterExpenses();
 
-            // Update UI based on results
-            if (filteredExpenses.isEmpty()) {
-                tvNoExpenses.setVisibility(View.VISIBLE);
-                recyclerHistory.setVisibility(View.GONE);
-                Log.d(TAG, "No expenses match the filters");
+        // Pick up a report started before a configuration change or before the view was recreated
+        if (savedInstanceState != null) {
+            reportJobId = savedInstanceState.getInt(KEY_REPORT_JOB_ID, -1);
+        }
+        if (reportJobId != -1) {
+            ReportJob job = reportScheduler.getJob(reportJobId);
+            if (job == null) {
+                reportJobId = -1; // Dropped from the scheduler's history
             } else {
-                tvNoExpenses.setVisibility(View.GONE);
-                recyclerHistory.setVisibility(View.VISIBLE);
-                Log.d(TAG, "Found " + filteredExpenses.size() + " expenses matching filters");
-
-                // Update adapter
-                filteredExpensesList.clear();
-                filteredExpensesList.addAll(filteredExpenses);
-                expenseAdapter.notifyDataSetChanged();
+                if (job.isFinished()) {
+                    showReportResult(job);
+                } else {
+                    showReportProgress(job);
+                }
             }
-        } catch (ParseException e) {
-            Log.e(TAG, "Error parsing dates", e);
-            Toast.makeText(getContext(), "Invalid date format", Toast.LENGTH_SHORT).show();
         }
     }
 
     @Override
-    public void onResume() {
-        super.onResume();
-        // Refresh data when fragment becomes visible
-        filterExpenses();
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(KEY_REPORT_JOB_ID, reportJobId);
+    }
+
+    @Override
+    public void onDestroyView() {
+        // The job keeps running; its dialog is shown again if the view is recreated
+        dismissReportDialog();
+        super.onDestroyView();
+    }
+
+    // Re-read the applied filter's rows only when the change can alter its results
+    private void onDataChanged(DataChange change) {
+        boolean categoriesChanged = change.touches(DataChange.Table.CATEGORIES);
+        if (categoriesChanged) {
+            loadCategories();
+        }
+        if (currentFilter != null && (categoriesChanged || change.affects(currentFilter))) {
+            reloadExpenses();
+        }
     }
 }
\ No newline at end of file
@@ -10,15 +10,22 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.campusexpensemanagerse06304.adapter.SimpleExpenseAdapter;
+import com.example.campusexpensemanagerse06304.database.DataChange;
 import com.example.campusexpensemanagerse06304.database.ExpenseDb;
-import com.example.campusexpensemanagerse06304.model.Budget;
+import com.example.campusexpensemanagerse06304.database.ExpenseFilter;
+import com.example.campusexpensemanagerse06304.database.ExpensePage;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
 import com.example.campusexpensemanagerse06304.model.Category;
 import com.example.campusexpensemanagerse06304.model.Expense;
+import com.example.campusexpensemanagerse06304.model.Money;
 import com.github.mikephil.charting.charts.PieChart;
 import com.github.mikephil.charting.data.PieData;
 import com.github.mikephil.charting.data.PieDataSet;
@@ -26,10 +33,8 @@ import com.github.mikephil.charting.data.PieEntry;
 import com.github.mikephil.charting.formatter.PercentFormatter;
 import com.github.mikephil.charting.utils.ColorTemplate;
 
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -44,7 +49,7 @@ public class SimpleHomeFragment extends Fragment {
     private SimpleExpenseAdapter expenseAdapter;
     private List<Expense> recentExpensesList;
     private List<Category> categoryList;
-    private ExpenseDb expenseDb;
+    private ExpenseRepository repository;
     private int userId = -1;
     private View budgetProgressView;
     private TextView tvBudgetPercentage;
@@ -67,8 +72,8 @@ public class SimpleHomeFragment extends Fragment {
         parentProgressView = view.findViewById(R.id.progressContainer);
         tvBudgetPercentage = view.findViewById(R.id.tvBudgetPercentage);
 
-        // Initialize database helper
-        expenseDb = new ExpenseDb(getContext());
+        // Database work runs off the main thread
+        repository = ExpenseRepository.getInstance(requireContext());
 
         // Get the current user ID from the activity
         if (getActivity() != null) {
@@ -84,7 +89,7 @@ public class SimpleHomeFragment extends Fragment {
 
         // Setup RecyclerView for recent expenses
         recentExpensesList = new ArrayList<>();
-        expenseAdapter = new SimpleExpenseAdapter(getContext(), recentExpensesList);
+        expenseAdapter = new SimpleExpenseAdapter(getContext());
 
         // Enable scrolling in the RecyclerView
         LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
@@ -107,19 +112,18 @@ public class SimpleHomeFragment extends Fragment {
                     }
                 });
 
-        // Load categories
-        loadCategories();
-
         return view;
     }
 
     private void loadCategories() {
-        categoryList = expenseDb.getAllCategories();
-        Log.d(TAG, "Loaded " + categoryList.size() + " categories");
+        repository.read(getViewLifecycleOwner(), ExpenseDb::getAllCategories, categories -> {
+            categoryList = categories;
+            Log.d(TAG, "Loaded " + categoryList.size() + " categories");
+        });
     }
 
     public void refreshData() {
-        if (isAdded()) {  // Check if fragment is still attached to activity
+        if (isAdded() && getView() != null) {  // Check if fragment is still attached and has its view
             Log.d(TAG, "Refreshing data in SimpleHomeFragment");
             loadCategories();
             loadDashboardData();
@@ -131,73 +135,58 @@ public class SimpleHomeFragment extends Fragment {
 
     private void loadDashboardData() {
         if (userId != -1) {
-            // Get current month in format YYYY-MM
-            Calendar cal = Calendar.getInstance();
-            String currentMonth = String.format(Locale.getDefault(), "%d-%02d",
-                    cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
+            // Get current month
+            YearMonth currentMonth = YearMonth.now();
 
             Log.d(TAG, "Loading dashboard data for month: " + currentMonth);
 
-            // Get total expenses for current month
-            double totalSpent = expenseDb.getTotalExpensesByMonth(userId, currentMonth);
-            tvTotalSpent.setText(String.format(Locale.getDefault(), "$%.2f", totalSpent));
-
-            Log.d(TAG, "Total spent: $" + totalSpent);
+            // Total expenses for the current month and the total budget, from the budget tracker
+            repository.read(getViewLifecycleOwner(), db -> db.getBudgetUsage(userId),
+                    usage -> showDashboardData(usage.getTotalSpentCents(), usage.getTotalBudgetCents()));
+        }
+    }
 
-            // Get total budget amount from ExpenseDb
-            double totalBudget = expenseDb.getTotalBudget(userId, "monthly");
-            tvTotalBudget.setText(String.format(Locale.getDefault(), "$%.2f", totalBudget));
+    private void showDashboardData(long totalSpent, long totalBudget) {
+        tvTotalSpent.setText(Money.format(totalSpent));
 
-            Log.d(TAG, "Total budget: $" + totalBudget);
+        Log.d(TAG, "Total spent: " + Money.format(totalSpent));
 
-            // Calculate remaining budget
-            double remaining = Math.max(0, totalBudget - totalSpent);
-            tvRemainingBudget.setText(String.format(Locale.getDefault(), "$%.2f", remaining));
+        tvTotalBudget.setText(Money.format(totalBudget));
 
-            Log.d(TAG, "Remaining budget: $" + remaining);
+        Log.d(TAG, "Total budget: " + Money.format(totalBudget));
 
-            // Set budget progress visualization
-            int progressPercentage = totalBudget > 0 ? (int)((totalSpent / totalBudget) * 100) : 0;
-            progressPercentage = Math.min(progressPercentage, 100); // Cap at 100%
+        // Calculate remaining budget
+        long remaining = Math.max(0, totalBudget - totalSpent);
+        tvRemainingBudget.setText(Money.format(remaining));
 
-            Log.d(TAG, "Budget progress: " + progressPercentage + "%");
+        Log.d(TAG, "Remaining budget: " + Money.format(remaining));
 
-            // Calculate width based on percentage
-            int parentWidth = parentProgressView.getWidth();
-            if (parentWidth > 0) {
-                ViewGroup.LayoutParams params = budgetProgressView.getLayoutParams();
-                params.width = (parentWidth * progressPercentage) / 100;
-                budgetProgressView.setLayoutParams(params);
+        // Set budget progress visualization
+        int progressPercentage = totalBudget > 0 ? (int) ((totalSpent * 100) / totalBudget) : 0;
+        progressPercentage = Math.min(progressPercentage, 100); // Cap at 100%
 
-                Log.d(TAG, "Set progress bar width: " + params.width + " of " + parentWidth);
-            }
+        Log.d(TAG, "Budget progress: " + progressPercentage + "%");
 
-            // Set color based on percentage
-            if (progressPercentage < 70) {
-                budgetProgressView.setBackgroundColor(0xFF4CAF50); // Green
-            } else if (progressPercentage < 90) {
-                budgetProgressView.setBackgroundColor(0xFFFF9800); // Orange
-            } else {
-                budgetProgressView.setBackgroundColor(0xFFF44336); // Red
-            }
+        // Calculate width based on percentage
+        int parentWidth = parentProgressView.getWidth();
+        if (parentWidth > 0) {
+            ViewGroup.LayoutParams params = budgetProgressView.getLayoutParams();
+            params.width = (parentWidth * progressPercentage) / 100;
+            budgetProgressView.setLayoutParams(params);
 
-            tvBudgetPercentage.setText(String.format(Locale.getDefault(), "%d%%", progressPercentage));
+            Log.d(TAG, "Set progress bar width: " + params.width + " of " + parentWidth);
         }
-    }
-
-    private double calculateTotalBudget() {
-        double total = 0;
-        List<Budget> budgets = expenseDb.getBudgetsByUser(userId);
-
-        Log.d(TAG, "Found " + budgets.size() + " budgets for user");
 
-        // For simplicity, sum all active budgets
-        for (Budget budget : budgets) {
-            total += budget.getAmount();
-            Log.d(TAG, "Budget: " + budget.getCategoryId() + " - $" + budget.getAmount());
+        // Set color based on percentage
+        if (progressPercentage < 70) {
+            budgetProgressView.setBackgroundColor(0xFF4CAF50); // Green
+        } else if (progressPercentage < 90) {
+            budgetProgressView.setBackgroundColor(0xFFFF9800); // Orange
+        } else {
+            budgetProgressView.setBackgroundColor(0xFFF44336); // Red
         }
 
-        return total;
+        tvBudgetPercentage.setText(String.format(Locale.getDefault(), "%d%%", progressPercentage));
     }
 
     private void loadRecentExpenses() {
@@ -206,20 +195,18 @@ public class SimpleHomeFragment extends Fragment {
             return;
         }
 
-        // Get all expenses from database
-        List<Expense> allExpenses = expenseDb.getExpensesByUser(userId);
+        // Only the newest page is needed; the database orders by (date DESC, id DESC)
+        // and joins the category name and colour
+        repository.read(getViewLifecycleOwner(),
+                db -> db.queryExpensePage(new ExpenseFilter(userId), null, MAX_RECENT_EXPENSES),
+                this::showRecentExpenses);
+    }
 
-        // Log for debugging
-        Log.d(TAG, "Loaded " + allExpenses.size() + " expenses");
-        for (Expense expense : allExpenses) {
-            Log.d(TAG, "Expense ID: " + expense.getId() +
-                    " - Description: " + expense.getDescription() +
-                    " - $" + expense.getAmount() +
-                    " - Date: " + (expense.getDate() != null ? expense.getFormattedDate() : "null"));
-        }
+    private void showRecentExpenses(ExpensePage page) {
+        List<Expense> recentExpenses = page.getExpenses();
 
         // Update UI based on results
-        if (allExpenses.isEmpty()) {
+        if (recentExpenses.isEmpty()) {
             tvNoRecentExpenses.setVisibility(View.VISIBLE);
             recyclerRecentExpenses.setVisibility(View.GONE);
             Log.d(TAG, "No expenses found");
@@ -227,70 +214,47 @@ public class SimpleHomeFragment extends Fragment {
             tvNoRecentExpenses.setVisibility(View.GONE);
             recyclerRecentExpenses.setVisibility(View.VISIBLE);
 
-            // Add category information to expenses
-            for (Expense expense : allExpenses) {
-                for (Category category : categoryList) {
-                    if (category.getId() == expense.getCategoryId()) {
-                        expense.setCategoryName(category.getName());
-                        expense.setCategoryColor(category.getColor());
-                        break;
-                    }
-                }
-            }
-
-            // Complex multi-key sorting to ensure consistent order
-            Collections.sort(allExpenses, new Comparator<Expense>() {
-                @Override
-                public int compare(Expense e1, Expense e2) {
-                    // First try to compare by date (newest first)
-                    if (e1.getDate() != null && e2.getDate() != null) {
-                        int dateComparison = e2.getDate().compareTo(e1.getDate());
-                        if (dateComparison != 0) {
-                            return dateComparison;
-                        }
-                    } else if (e1.getDate() == null && e2.getDate() != null) {
-                        return 1; // Null dates come after non-null dates
-                    } else if (e1.getDate() != null && e2.getDate() == null) {
-                        return -1; // Non-null dates come before null dates
-                    }
-
-                    // If dates are equal or both null, compare by ID (higher ID = newer)
-                    return Integer.compare(e2.getId(), e1.getId());
-                }
-            });
-
-            // Take only most recent expenses, but show more than just 3
-            int count = Math.min(MAX_RECENT_EXPENSES, allExpenses.size()); // Show up to 10 expenses
-            List<Expense> recentExpenses = new ArrayList<>(allExpenses.subList(0, count));
-
-            Log.d(TAG, "Showing " + count + " recent expenses");
+            Log.d(TAG, "Showing " + recentExpenses.size() + " recent expenses");
             for (Expense expense : recentExpenses) {
-                Log.d(TAG, "Recent expense: " + expense.getDescription() + " - $" + expense.getAmount());
+                Log.d(TAG, "Recent expense: " + expense.getDescription() + " - " + Money.format(expense.getAmountCents()));
             }
 
             // Update adapter
             recentExpensesList.clear();
             recentExpensesList.addAll(recentExpenses);
-            expenseAdapter.notifyDataSetChanged();
+            expenseAdapter.submitList(new ArrayList<>(recentExpensesList));
         }
     }
 
     @Override
-    public void onResume() {
-        super.onResume();
-        Log.d(TAG, "onResume called");
-        // Refresh data when fragment becomes visible
-        if (getView() != null && parentProgressView.getWidth() > 0) {
-            refreshData();
-        }
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        // Changes made while another tab is showing arrive merged when this one resumes
+        repository.getChangeBus().observe(getViewLifecycleOwner(), this::onDataChanged);
+
+        // Load categories
+        loadCategories();
     }
 
-    @Override
-    public void setUserVisibleHint(boolean isVisibleToUser) {
-        super.setUserVisibleHint(isVisibleToUser);
-        Log.d(TAG, "setUserVisibleHint: " + isVisibleToUser);
-        if (isVisibleToUser && isAdded()) {
-            refreshData();
+    // Reload only the parts of the dashboard the change touches
+    private void onDataChanged(DataChange change) {
+        if (!change.affectsUser(userId)) {
+            return;
+        }
+        Log.d(TAG, "Data changed: " + change);
+
+        boolean expensesChanged = change.touches(DataChange.Table.EXPENSES);
+        boolean categoriesChanged = change.touches(DataChange.Table.CATEGORIES);
+
+        if (categoriesChanged) {
+            loadCategories();
+        }
+        if (change.touches(DataChange.Table.TOTAL_BUDGET)
+                || (expensesChanged && change.affectsMonth(YearMonth.now()))) {
+            loadDashboardData();
+        }
+        if (expensesChanged || categoriesChanged) {
+            loadRecentExpenses();
         }
     }
 
@@ -11,19 +11,38 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.campusexpensemanagerse06304.R;
 import com.example.campusexpensemanagerse06304.model.Budget;
 
-import java.text.SimpleDateFormat;
-import java.util.List;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
+import java.util.Objects;
 
-public class BudgetAdapter extends RecyclerView.Adapter<BudgetAdapter.BudgetViewHolder> {
+public class BudgetAdapter extends ListAdapter<Budget, BudgetAdapter.BudgetViewHolder> {
+
+    private static final DiffUtil.ItemCallback<Budget> DIFF_CALLBACK = new DiffUtil.ItemCallback<Budget>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Budget oldItem, @NonNull Budget newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Budget oldItem, @NonNull Budget newItem) {
+            return oldItem.getAmountCents() == newItem.getAmountCents()
+                    && oldItem.getSpentCents() == newItem.getSpentCents()
+                    && Objects.equals(oldItem.getCategoryName(), newItem.getCategoryName())
+                    && Objects.equals(oldItem.getCategoryColor(), newItem.getCategoryColor())
+                    && Objects.equals(oldItem.getPeriod(), newItem.getPeriod())
+                    && Objects.equals(oldItem.getStartDate(), newItem.getStartDate())
+                    && Objects.equals(oldItem.getEndDate(), newItem.getEndDate());
+        }
+    };
 
     private Context context;
-    private List<Budget> budgetList;
     private OnItemClickListener listener;
 
     public interface OnItemClickListener {
@@ -35,9 +54,15 @@ public class BudgetAdapter extends RecyclerView.Adapter<BudgetAdapter.BudgetView
         this.listener = listener;
     }
 
-    public BudgetAdapter(Context context, List<Budget> budgetList) {
+    public BudgetAdapter(Context context) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.budgetList = budgetList;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
     @NonNull
@@ -50,7 +75,7 @@ public class BudgetAdapter extends RecyclerView.Adapter<BudgetAdapter.BudgetView
 
     @Override
     public void onBindViewHolder(@NonNull BudgetViewHolder holder, int position) {
-        Budget budget = budgetList.get(position);
+        Budget budget = getItem(position);
 
         // Format amount with currency symbol
         String budgetAmountText = String.format(Locale.getDefault(), "$%.2f", budget.getAmount());
@@ -80,12 +105,12 @@ public class BudgetAdapter extends RecyclerView.Adapter<BudgetAdapter.BudgetView
         holder.tvRemaining.setText(remainingText);
 
         // Set date range
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd", Locale.getDefault());
-        String startDateText = sdf.format(budget.getStartDate());
+        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("MMM dd", Locale.getDefault());
+        String startDateText = dateFormatter.format(budget.getStartDate());
         String dateRangeText = "From " + startDateText;
 
         if (budget.getEndDate() != null) {
-            String endDateText = sdf.format(budget.getEndDate());
+            String endDateText = dateFormatter.format(budget.getEndDate());
             dateRangeText += " to " + endDateText;
         }
 
@@ -114,13 +139,8 @@ public class BudgetAdapter extends RecyclerView.Adapter<BudgetAdapter.BudgetView
         }
     }
 
-    @Override
-    public int getItemCount() {
-        return budgetList == null ? 0 : budgetList.size();
-    }
-
     public Budget getItemAt(int position) {
-        return budgetList.get(position);
+        return getItem(position);
     }
 
     public static class BudgetViewHolder extends RecyclerView.ViewHolder {
@@ -0,0 +1,223 @@
+package com.example.campusexpensemanagerse06304.adapter;
+
+import android.graphics.Color;
+
+import androidx.annotation.Nullable;
+
+import com.example.campusexpensemanagerse06304.database.BudgetTracker;
+import com.example.campusexpensemanagerse06304.model.Budget;
+import com.example.campusexpensemanagerse06304.model.Money;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * One row of SimpleBudgetAdapter with everything it shows already worked out, so binding only
+ * copies fields into views. Rows are immutable and compare by value, which lets the adapter
+ * diff a new list against the old one and rebind only the rows that changed.
+ */
+public final class BudgetRow {
+
+    private static final int COLOR_GREEN = 0xFF4CAF50;
+    private static final int COLOR_ORANGE = 0xFFFF9800;
+    private static final int COLOR_RED = 0xFFF44336;
+
+    // The budget itself, for the adjust and delete actions
+    private final int budgetId;
+    private final int categoryId;
+    private final String period;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final long amountCents;
+    private final long spentCents;
+    private final long totalBudgetCents;
+
+    // What the row shows
+    private final String categoryName;
+    private final int categoryColor;
+    private final String periodLabel;
+    private final String amountText;
+    private final String percentOfTotalText;
+    private final int progressPercent;
+    private final int progressColor;
+    private final String spentText;
+    private final String percentageText;
+    private final String remainingText;
+    private final int remainingColor;
+
+    private BudgetRow(Budget budget, long spentCents, long totalBudgetCents) {
+        this.budgetId = budget.getId();
+        this.categoryId = budget.getCategoryId();
+        this.period = budget.getPeriod();
+        this.startDate = budget.getStartDate();
+        this.endDate = budget.getEndDate();
+        this.amountCents = budget.getAmountCents();
+        this.spentCents = spentCents;
+        this.totalBudgetCents = totalBudgetCents;
+
+        categoryName = budget.getCategoryName();
+        categoryColor = parseColor(budget.getCategoryColor());
+
+        // Budget period (monthly, weekly, etc)
+        if (period != null && !period.isEmpty()) {
+            periodLabel = period.substring(0, 1).toUpperCase() + period.substring(1);
+        } else {
+            periodLabel = "Monthly";
+        }
+
+        amountText = Money.format(amountCents);
+
+        // Percentage of the total budget
+        double percentOfTotal = totalBudgetCents > 0 ? (amountCents * 100.0) / totalBudgetCents : 0;
+        percentOfTotalText = String.format(Locale.getDefault(), "(%.1f%% of total)", percentOfTotal);
+
+        // Progress and its colour
+        progressPercent = amountCents > 0 ? (int) ((spentCents * 100) / amountCents) : 0;
+        if (progressPercent < 70) {
+            progressColor = COLOR_GREEN;
+        } else if (progressPercent < 90) {
+            progressColor = COLOR_ORANGE;
+        } else {
+            progressColor = COLOR_RED;
+        }
+
+        spentText = Money.format(spentCents) + " / " + Money.format(amountCents);
+        percentageText = String.format(Locale.getDefault(), "%d%%", progressPercent);
+
+        long remaining = amountCents - spentCents;
+        remainingText = Money.format(remaining);
+        remainingColor = remaining < 0 ? COLOR_RED : COLOR_GREEN;
+    }
+
+    /**
+     * Build the rows for a list of budgets
+     * @param usage Spending and total budget to show; null shows the spending loaded with the
+     *              budgets and no total
+     */
+    public static List<BudgetRow> build(List<Budget> budgets, @Nullable BudgetTracker.Usage usage) {
+        List<BudgetRow> rows = new ArrayList<>(budgets.size());
+        for (Budget budget : budgets) {
+            long spent = usage != null ? usage.getSpentCents(budget.getCategoryId()) : budget.getSpentCents();
+            long totalBudget = usage != null ? usage.getTotalBudgetCents() : 0;
+            rows.add(new BudgetRow(budget, spent, totalBudget));
+        }
+        return rows;
+    }
+
+    private static int parseColor(String color) {
+        if (color == null || color.isEmpty()) {
+            return Color.GRAY;
+        }
+        try {
+            return Color.parseColor(color);
+        } catch (IllegalArgumentException e) {
+            return Color.GRAY;
+        }
+    }
+
+    public int getBudgetId() {
+        return budgetId;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public String getPeriod() {
+        return period;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public long getSpentCents() {
+        return spentCents;
+    }
+
+    public long getTotalBudgetCents() {
+        return totalBudgetCents;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public int getCategoryColor() {
+        return categoryColor;
+    }
+
+    public String getPeriodLabel() {
+        return periodLabel;
+    }
+
+    public String getAmountText() {
+        return amountText;
+    }
+
+    public String getPercentOfTotalText() {
+        return percentOfTotalText;
+    }
+
+    public int getProgressPercent() {
+        return progressPercent;
+    }
+
+    public int getProgressColor() {
+        return progressColor;
+    }
+
+    public String getSpentText() {
+        return spentText;
+    }
+
+    public String getPercentageText() {
+        return percentageText;
+    }
+
+    public String getRemainingText() {
+        return remainingText;
+    }
+
+    public int getRemainingColor() {
+        return remainingColor;
+    }
+
+    // The display fields all derive from these, so comparing them is enough
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BudgetRow)) {
+            return false;
+        }
+        BudgetRow other = (BudgetRow) o;
+        return budgetId == other.budgetId
+                && categoryId == other.categoryId
+                && amountCents == other.amountCents
+                && spentCents == other.spentCents
+                && totalBudgetCents == other.totalBudgetCents
+                && categoryColor == other.categoryColor
+                && Objects.equals(categoryName, other.categoryName)
+                && Objects.equals(period, other.period)
+                && Objects.equals(startDate, other.startDate)
+                && Objects.equals(endDate, other.endDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(budgetId, categoryId, amountCents, spentCents, totalBudgetCents);
+    }
+}
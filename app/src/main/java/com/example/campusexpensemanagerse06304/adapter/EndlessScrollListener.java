@@ -0,0 +1,37 @@
+package com.example.campusexpensemanagerse06304.adapter;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Scroll listener that asks for the next page when the user nears the end of a list.
+ * onLoadMore is called on the main thread, on every scroll event near the end; the listener
+ * does not track whether more data exists, so implementations should ignore the call while a
+ * page is still loading and once the last page has been loaded.
+ */
+public abstract class EndlessScrollListener extends RecyclerView.OnScrollListener {
+
+    // Start loading while this many rows are still below the last visible one
+    private static final int VISIBLE_THRESHOLD = 10;
+
+    private final LinearLayoutManager layoutManager;
+
+    public EndlessScrollListener(LinearLayoutManager layoutManager) {
+        this.layoutManager = layoutManager;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dy <= 0) {
+            return; // Only scrolling down can reach the end
+        }
+
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (lastVisible >= layoutManager.getItemCount() - 1 - VISIBLE_THRESHOLD) {
+            onLoadMore();
+        }
+    }
+
+    public abstract void onLoadMore();
+}
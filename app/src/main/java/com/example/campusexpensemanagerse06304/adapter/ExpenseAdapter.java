@@ -10,19 +10,18 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.campusexpensemanagerse06304.R;
 import com.example.campusexpensemanagerse06304.model.Expense;
 
-import java.text.SimpleDateFormat;
-import java.util.List;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
 
-public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseViewHolder> {
+public class ExpenseAdapter extends ListAdapter<Expense, ExpenseAdapter.ExpenseViewHolder> {
 
     private Context context;
-    private List<Expense> expenseList;
     private OnItemClickListener listener;
 
     public interface OnItemClickListener {
@@ -34,9 +33,15 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
         this.listener = listener;
     }
 
-    public ExpenseAdapter(Context context, List<Expense> expenseList) {
+    public ExpenseAdapter(Context context) {
+        super(ExpenseItemCallback.INSTANCE);
         this.context = context;
-        this.expenseList = expenseList;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
     @NonNull
@@ -49,7 +54,7 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
 
     @Override
     public void onBindViewHolder(@NonNull ExpenseViewHolder holder, int position) {
-        Expense expense = expenseList.get(position);
+        Expense expense = getItem(position);
 
         // Format amount with currency symbol
         String amountText = String.format(Locale.getDefault(), "$%.2f", expense.getAmount());
@@ -62,8 +67,8 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
         holder.tvCategory.setText(expense.getCategoryName());
 
         // Set date in readable format
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
-        holder.tvDate.setText(sdf.format(expense.getDate()));
+        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("MMM dd, yyyy", Locale.getDefault());
+        holder.tvDate.setText(dateFormatter.format(expense.getDate()));
 
         // Set payment method
         holder.tvPaymentMethod.setText(expense.getPaymentMethod());
@@ -89,13 +94,8 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
         }
     }
 
-    @Override
-    public int getItemCount() {
-        return expenseList == null ? 0 : expenseList.size();
-    }
-
     public Expense getItemAt(int position) {
-        return expenseList.get(position);
+        return getItem(position);
     }
 
     public static class ExpenseViewHolder extends RecyclerView.ViewHolder {
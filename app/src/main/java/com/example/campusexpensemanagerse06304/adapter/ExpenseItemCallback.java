@@ -0,0 +1,36 @@
+package com.example.campusexpensemanagerse06304.adapter;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.example.campusexpensemanagerse06304.model.Expense;
+
+import java.util.Objects;
+
+/**
+ * Diff callback shared by the expense adapters. Expenses are the same item when their ids
+ * match, and the same contents when everything either adapter shows is equal.
+ */
+final class ExpenseItemCallback extends DiffUtil.ItemCallback<Expense> {
+
+    static final ExpenseItemCallback INSTANCE = new ExpenseItemCallback();
+
+    private ExpenseItemCallback() {
+    }
+
+    @Override
+    public boolean areItemsTheSame(@NonNull Expense oldItem, @NonNull Expense newItem) {
+        return oldItem.getId() == newItem.getId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(@NonNull Expense oldItem, @NonNull Expense newItem) {
+        return oldItem.getAmountCents() == newItem.getAmountCents()
+                && oldItem.isRecurring() == newItem.isRecurring()
+                && Objects.equals(oldItem.getDescription(), newItem.getDescription())
+                && Objects.equals(oldItem.getDate(), newItem.getDate())
+                && Objects.equals(oldItem.getPaymentMethod(), newItem.getPaymentMethod())
+                && Objects.equals(oldItem.getCategoryName(), newItem.getCategoryName())
+                && Objects.equals(oldItem.getCategoryColor(), newItem.getCategoryColor());
+    }
+}
@@ -10,19 +10,39 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.campusexpensemanagerse06304.R;
 import com.example.campusexpensemanagerse06304.model.RecurringExpense;
 
-import java.text.SimpleDateFormat;
-import java.util.List;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
+import java.util.Objects;
 
-public class RecurringExpenseAdapter extends RecyclerView.Adapter<RecurringExpenseAdapter.RecurringViewHolder> {
+public class RecurringExpenseAdapter extends ListAdapter<RecurringExpense, RecurringExpenseAdapter.RecurringViewHolder> {
+
+    private static final DiffUtil.ItemCallback<RecurringExpense> DIFF_CALLBACK = new DiffUtil.ItemCallback<RecurringExpense>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull RecurringExpense oldItem, @NonNull RecurringExpense newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull RecurringExpense oldItem, @NonNull RecurringExpense newItem) {
+            return oldItem.getAmountCents() == newItem.getAmountCents()
+                    && Objects.equals(oldItem.getDescription(), newItem.getDescription())
+                    && Objects.equals(oldItem.getFrequency(), newItem.getFrequency())
+                    && Objects.equals(oldItem.getCategoryName(), newItem.getCategoryName())
+                    && Objects.equals(oldItem.getCategoryColor(), newItem.getCategoryColor())
+                    && Objects.equals(oldItem.getStartDate(), newItem.getStartDate())
+                    && Objects.equals(oldItem.getEndDate(), newItem.getEndDate())
+                    && Objects.equals(oldItem.getNextCharge(), newItem.getNextCharge());
+        }
+    };
 
     private Context context;
-    private List<RecurringExpense> recurringList;
     private OnItemClickListener listener;
 
     public interface OnItemClickListener {
@@ -34,9 +54,15 @@ public class RecurringExpenseAdapter extends RecyclerView.Adapter<RecurringExpen
         this.listener = listener;
     }
 
-    public RecurringExpenseAdapter(Context context, List<RecurringExpense> recurringList) {
+    public RecurringExpenseAdapter(Context context) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.recurringList = recurringList;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
     @NonNull
@@ -48,7 +74,7 @@ public class RecurringExpenseAdapter extends RecyclerView.Adapter<RecurringExpen
 
     @Override
     public void onBindViewHolder(@NonNull RecurringViewHolder holder, int position) {
-        RecurringExpense recurring = recurringList.get(position);
+        RecurringExpense recurring = getItem(position);
 
         // Format amount with currency symbol
         String amountText = String.format(Locale.getDefault(), "$%.2f", recurring.getAmount());
@@ -92,14 +118,14 @@ public class RecurringExpenseAdapter extends RecyclerView.Adapter<RecurringExpen
         }
 
         // Set date period
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
+        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("MMM dd, yyyy", Locale.getDefault());
         StringBuilder datePeriod = new StringBuilder();
 
         if (recurring.getStartDate() != null) {
-            datePeriod.append("From ").append(sdf.format(recurring.getStartDate()));
+            datePeriod.append("From ").append(dateFormatter.format(recurring.getStartDate()));
 
             if (recurring.getEndDate() != null) {
-                datePeriod.append(" to ").append(sdf.format(recurring.getEndDate()));
+                datePeriod.append(" to ").append(dateFormatter.format(recurring.getEndDate()));
             } else {
                 datePeriod.append(" (ongoing)");
             }
@@ -109,16 +135,15 @@ public class RecurringExpenseAdapter extends RecyclerView.Adapter<RecurringExpen
 
         // Set next charge info
         if (recurring.getNextCharge() != null) {
-            holder.tvNextCharge.setText("Next: " + sdf.format(recurring.getNextCharge()));
+            holder.tvNextCharge.setText("Next: " + dateFormatter.format(recurring.getNextCharge()));
             holder.tvNextCharge.setVisibility(View.VISIBLE);
         } else {
             holder.tvNextCharge.setVisibility(View.GONE);
         }
     }
 
-    @Override
-    public int getItemCount() {
-        return recurringList.size();
+    public RecurringExpense getItemAt(int position) {
+        return getItem(position);
     }
 
     static class RecurringViewHolder extends RecyclerView.ViewHolder {
@@ -2,7 +2,7 @@ package com.example.campusexpensemanagerse06304.adapter;
 
 import android.app.AlertDialog;
 import android.content.Context;
-import android.graphics.Color;
+import android.content.res.ColorStateList;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -17,33 +17,67 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.example.campusexpensemanagerse06304.MenuActivity;
 import com.example.campusexpensemanagerse06304.R;
-import com.example.campusexpensemanagerse06304.database.ExpenseDb;
-import com.example.campusexpensemanagerse06304.model.Budget;
+import com.example.campusexpensemanagerse06304.database.ExpenseRepository;
+import com.example.campusexpensemanagerse06304.model.Money;
 
-import java.text.SimpleDateFormat;
-import java.util.List;
 import java.util.Locale;
 
-public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapter.BudgetViewHolder> {
+/**
+ * Budget list of SimpleBudgetFragment. Rows arrive precomputed through submitList, which diffs
+ * them against the current list off the main thread, so only changed rows are rebound and
+ * binding never touches the database.
+ */
+public class SimpleBudgetAdapter extends ListAdapter<BudgetRow, SimpleBudgetAdapter.BudgetViewHolder> {
 
     private static final String TAG = "SimpleBudgetAdapter";
+
+    private static final DiffUtil.ItemCallback<BudgetRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<BudgetRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull BudgetRow oldItem, @NonNull BudgetRow newItem) {
+            return oldItem.getBudgetId() == newItem.getBudgetId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull BudgetRow oldItem, @NonNull BudgetRow newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
     private final Context context;
-    private final List<Budget> budgetList;
-    private ExpenseDb expenseDb;
+    private final ExpenseRepository repository;
+    private final LifecycleOwner lifecycleOwner;
     private OnBudgetActionListener listener;
 
     public interface OnBudgetActionListener {
         void onBudgetAdjusted();
     }
 
-    public SimpleBudgetAdapter(Context context, List<Budget> budgetList) {
+    /**
+     * @param lifecycleOwner Lifecycle of the hosting view; database results arriving after it
+     *                       is destroyed are dropped
+     */
+    public SimpleBudgetAdapter(Context context, LifecycleOwner lifecycleOwner) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.budgetList = budgetList;
-        this.expenseDb = new ExpenseDb(context);
+        this.lifecycleOwner = lifecycleOwner;
+        this.repository = ExpenseRepository.getInstance(context);
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getBudgetId();
+    }
+
+    // The user's total budget, carried by every row
+    private long totalBudgetCents() {
+        return getItemCount() > 0 ? getItem(0).getTotalBudgetCents() : 0;
     }
 
     public void setOnBudgetActionListener(OnBudgetActionListener listener) {
@@ -59,78 +93,28 @@ public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapte
 
     @Override
     public void onBindViewHolder(@NonNull BudgetViewHolder holder, int position) {
-        Budget budget = budgetList.get(position);
-        int userId = budget.getUserId();
+        BudgetRow row = getItem(position);
 
-        // Set category name and color
-        holder.tvCategory.setText(budget.getCategoryName());
-        if (budget.getCategoryColor() != null && !budget.getCategoryColor().isEmpty()) {
-            try {
-                int color = Color.parseColor(budget.getCategoryColor());
-                holder.vCategoryColor.setBackgroundColor(color);
-            } catch (Exception e) {
-                holder.vCategoryColor.setBackgroundColor(Color.GRAY);
-            }
-        } else {
-            holder.vCategoryColor.setBackgroundColor(Color.GRAY);
-        }
+        holder.tvCategory.setText(row.getCategoryName());
+        holder.vCategoryColor.setBackgroundColor(row.getCategoryColor());
+        holder.tvPeriod.setText(row.getPeriodLabel());
+        holder.tvAmount.setText(row.getAmountText());
+        holder.tvPercentageOfTotal.setText(row.getPercentOfTotalText());
 
-        // Set budget period (monthly, weekly, etc)
-        String period = budget.getPeriod();
-        if (period != null && !period.isEmpty()) {
-            period = period.substring(0, 1).toUpperCase() + period.substring(1);
-        } else {
-            period = "Monthly";
-        }
-        holder.tvPeriod.setText(period);
+        holder.progressBar.setProgress(row.getProgressPercent());
+        holder.progressBar.setProgressTintList(ColorStateList.valueOf(row.getProgressColor()));
+        holder.tvSpent.setText(row.getSpentText());
+        holder.tvPercentage.setText(row.getPercentageText());
 
-        // Set budget amount
-        holder.tvAmount.setText(String.format(Locale.getDefault(), "$%.2f", budget.getAmount()));
-
-        // Calculate percentage of total budget
-        double totalBudget = expenseDb.getTotalBudget(userId, "monthly");
-        double percentOfTotal = 0;
-        if (totalBudget > 0) {
-            percentOfTotal = (budget.getAmount() / totalBudget) * 100;
-        }
-        holder.tvPercentageOfTotal.setText(String.format(Locale.getDefault(), "(%.1f%% of total)", percentOfTotal));
-
-        // Calculate progress
-        double spent = budget.getSpent();
-        double amount = budget.getAmount();
-        int progressPercent = amount > 0 ? (int)((spent / amount) * 100) : 0;
-        holder.progressBar.setProgress(progressPercent);
-
-        // Set progress color based on percentage
-        if (progressPercent < 70) {
-            holder.progressBar.setProgressTintList(android.content.res.ColorStateList.valueOf(0xFF4CAF50)); // Green
-        } else if (progressPercent < 90) {
-            holder.progressBar.setProgressTintList(android.content.res.ColorStateList.valueOf(0xFFFF9800)); // Orange
-        } else {
-            holder.progressBar.setProgressTintList(android.content.res.ColorStateList.valueOf(0xFFF44336)); // Red
-        }
-
-        // Set spent/budget text
-        holder.tvSpent.setText(String.format(Locale.getDefault(), "$%.2f / $%.2f", spent, amount));
-
-        // Set percentage text
-        holder.tvPercentage.setText(String.format(Locale.getDefault(), "%d%%", progressPercent));
-
-        // Set remaining amount
-        double remaining = amount - spent;
-        holder.tvRemaining.setText(String.format(Locale.getDefault(), "$%.2f", remaining));
-        if (remaining < 0) {
-            holder.tvRemaining.setTextColor(0xFFF44336); // Red for negative
-        } else {
-            holder.tvRemaining.setTextColor(0xFF4CAF50); // Green for positive
-        }
+        holder.tvRemaining.setText(row.getRemainingText());
+        holder.tvRemaining.setTextColor(row.getRemainingColor());
 
         // Setup action buttons
-        holder.btnAdjust.setOnClickListener(v -> showAdjustBudgetDialog(budget, position));
-        holder.btnDelete.setOnClickListener(v -> showDeleteBudgetDialog(budget, position));
+        holder.btnAdjust.setOnClickListener(v -> showAdjustBudgetDialog(row));
+        holder.btnDelete.setOnClickListener(v -> showDeleteBudgetDialog(row));
     }
 
-    private void showAdjustBudgetDialog(Budget budget, int position) {
+    private void showAdjustBudgetDialog(BudgetRow budget) {
         AlertDialog.Builder builder = new AlertDialog.Builder(context);
         builder.setTitle("Adjust Budget for " + budget.getCategoryName());
 
@@ -147,23 +131,23 @@ public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapte
         TextView tvAllocatedBudgetInfo = dialogView.findViewById(R.id.tvAllocatedBudgetInfo);
         TextView tvAvailableBudgetInfo = dialogView.findViewById(R.id.tvAvailableBudgetInfo);
 
-        // Get important values
-        int userId = budget.getUserId();
-        double totalBudget = expenseDb.getTotalBudget(userId, "monthly");
-        double currentAmount = budget.getAmount();
-        double currentSpent = budget.getSpent();
-        double currentPercentOfTotal = totalBudget > 0 ? (currentAmount / totalBudget) * 100 : 0;
-
-        // Calculate available budget using our helper method
-        double availableBudget = calculateAvailableBudget(budget);
-        double maxAllowable = availableBudget + currentAmount;
+        // Get important values, in cents
+        long maxAllowableCents = calculateAvailableBudget(budget) + budget.getAmountCents();
 
         // Calculate total allocated across ALL categories
-        double totalAllocated = 0;
-        for (Budget b : budgetList) {
-            totalAllocated += b.getAmount();
+        long totalAllocatedCents = 0;
+        for (BudgetRow b : getCurrentList()) {
+            totalAllocatedCents += b.getAmountCents();
         }
 
+        // The slider and text fields work in dollars
+        double totalBudget = Money.toDollars(totalBudgetCents());
+        double currentAmount = Money.toDollars(budget.getAmountCents());
+        double currentSpent = Money.toDollars(budget.getSpentCents());
+        double currentPercentOfTotal = totalBudget > 0 ? (currentAmount / totalBudget) * 100 : 0;
+        double maxAllowable = Money.toDollars(maxAllowableCents);
+        double totalAllocated = Money.toDollars(totalAllocatedCents);
+
         // Set initial values
         etNewAmount.setHint("Current: $" + String.format(Locale.getDefault(), "%.2f", currentAmount));
         tvCurrentBudgetInfo.setText(String.format(Locale.getDefault(),
@@ -303,14 +287,14 @@ public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapte
             }
 
             try {
-                double newAmount = Double.parseDouble(amountStr);
+                long newAmount = Money.parseCents(amountStr);
                 if (newAmount <= 0) {
                     etNewAmount.setError("Amount must be greater than zero");
                     return;
                 }
 
                 // Final check to ensure amount doesn't exceed available budget
-                if (newAmount > maxAllowable) {
+                if (newAmount > maxAllowableCents) {
                     etNewAmount.setError("This amount exceeds your available budget");
                     Toast.makeText(context,
                             String.format(Locale.getDefault(),
@@ -328,39 +312,28 @@ public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapte
         });
     }
 
-    private void showDeleteBudgetDialog(Budget budget, int position) {
+    private void showDeleteBudgetDialog(BudgetRow budget) {
         new AlertDialog.Builder(context)
                 .setTitle("Delete Budget")
                 .setMessage("Are you sure you want to delete the budget for " + budget.getCategoryName() + "?")
                 .setPositiveButton("Delete", (dialog, which) -> {
-                    deleteBudget(budget, position);
+                    deleteBudget(budget);
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
     }
 
-    private void updateBudgetAmount(Budget budget, double newAmount) {
-        try {
-            // Get date info - this would normally come from the budget date range
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-            String startDate = budget.getFormattedStartDate();
-            String endDate = budget.getFormattedEndDate();
-
-            // Update in database
-            int result = expenseDb.updateBudget(
-                    budget.getId(),
-                    budget.getCategoryId(),
-                    newAmount,
-                    budget.getPeriod(),
-                    startDate,
-                    endDate
-            );
-
+    private void updateBudgetAmount(BudgetRow budget, long newAmount) {
+        // Update in database; the fragment resubmits the rows when the change is announced
+        repository.write(lifecycleOwner, db -> db.updateBudget(
+                budget.getBudgetId(),
+                budget.getCategoryId(),
+                newAmount,
+                budget.getPeriod(),
+                budget.getStartDate(),
+                budget.getEndDate()
+        ), result -> {
             if (result > 0) {
-                // Update in local list
-                budget.setAmount(newAmount);
-                notifyDataSetChanged();
-
                 // Notify listeners
                 if (listener != null) {
                     listener.onBudgetAdjusted();
@@ -370,20 +343,22 @@ public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapte
             } else {
                 Toast.makeText(context, "Failed to update budget", Toast.LENGTH_SHORT).show();
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error updating budget", e);
-            Toast.makeText(context, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+        });
     }
 
-    private void deleteBudget(Budget budget, int position) {
+    private void deleteBudget(BudgetRow budget) {
         int categoryId = budget.getCategoryId();
 
         // Log for debugging
         Log.d(TAG, "Attempting to delete budget for category ID: " + categoryId);
 
         // Check if any expenses use this budget's category
-        boolean hasExpenses = expenseDb.categoryHasExpenses(categoryId);
+        repository.read(lifecycleOwner, db -> db.categoryHasExpenses(categoryId),
+                hasExpenses -> confirmDeleteBudget(budget, hasExpenses));
+    }
+
+    private void confirmDeleteBudget(BudgetRow budget, boolean hasExpenses) {
+        int categoryId = budget.getCategoryId();
         Log.d(TAG, "Category has expenses: " + hasExpenses);
 
         if (hasExpenses) {
@@ -399,29 +374,19 @@ public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapte
                     .setTitle("Delete Budget")
                     .setMessage("Are you sure you want to delete this budget for " + budget.getCategoryName() + "?")
                     .setPositiveButton("Delete", (dialog, which) -> {
-                        try {
-                            // Double-check again right before deleting
-                            if (expenseDb.categoryHasExpenses(categoryId)) {
-                                Toast.makeText(context, "Cannot delete: category has expenses", Toast.LENGTH_SHORT).show();
-                                return;
+                        repository.write(lifecycleOwner, db -> {
+                            // Double-check again right before deleting; null means it was blocked
+                            if (db.categoryHasExpenses(categoryId)) {
+                                return null;
                             }
 
                             // Delete the budget
-                            boolean result = expenseDb.deleteBudget(budget.getId());
-
-// In SimpleBudgetAdapter.java, after successful deletion
-                            if (result) {
-                                // Remove from local list
-                                budgetList.remove(position);
-                                notifyItemRemoved(position);
-                                notifyItemRangeChanged(position, budgetList.size());
-
-                                // Force refresh the expense data in case something wasn't properly updated
-                                if (context instanceof MenuActivity) {
-                                    ((MenuActivity) context).refreshAllDataFragments();
-                                }
-
-                                // Notify listeners
+                            return db.deleteBudget(budget.getBudgetId());
+                        }, result -> {
+                            if (result == null) {
+                                Toast.makeText(context, "Cannot delete: category has expenses", Toast.LENGTH_SHORT).show();
+                            } else if (result) {
+                                // The row goes when the fragment resubmits the list; notify listeners
                                 if (listener != null) {
                                     listener.onBudgetAdjusted();
                                 }
@@ -430,10 +395,7 @@ public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapte
                             } else {
                                 Toast.makeText(context, "Failed to delete budget", Toast.LENGTH_SHORT).show();
                             }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error deleting budget", e);
-                            Toast.makeText(context, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                        }
+                        });
                     })
                     .setNegativeButton("Cancel", null)
                     .show();
@@ -441,11 +403,6 @@ public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapte
 
     }
 
-    @Override
-    public int getItemCount() {
-        return budgetList.size();
-    }
-
     static class BudgetViewHolder extends RecyclerView.ViewHolder {
         TextView tvCategory, tvPeriod, tvAmount, tvPercentageOfTotal,
                 tvSpent, tvPercentage, tvRemaining;
@@ -472,25 +429,24 @@ public class SimpleBudgetAdapter extends RecyclerView.Adapter<SimpleBudgetAdapte
     // This method to the SimpleBudgetAdapter class to calculate the correct available budget
     // considering all other category allocations
 
-    private double calculateAvailableBudget(Budget currentBudget) {
-        int userId = currentBudget.getUserId();
-        double totalBudget = expenseDb.getTotalBudget(userId, "monthly");
-        double totalAllocated = 0;
+    private long calculateAvailableBudget(BudgetRow currentBudget) {
+        long totalBudget = totalBudgetCents();
+        long totalAllocated = 0;
 
         // Sum up all allocations EXCEPT the current budget being adjusted
-        for (Budget budget : budgetList) {
-            if (budget.getId() != currentBudget.getId()) {
-                totalAllocated += budget.getAmount();
+        for (BudgetRow budget : getCurrentList()) {
+            if (budget.getBudgetId() != currentBudget.getBudgetId()) {
+                totalAllocated += budget.getAmountCents();
             }
         }
 
         // Available budget is total budget minus all other allocations
-        double availableBudget = totalBudget - totalAllocated;
+        long availableBudget = totalBudget - totalAllocated;
 
-        Log.d(TAG, "Total budget: $" + totalBudget);
-        Log.d(TAG, "Total allocated to other categories: $" + totalAllocated);
-        Log.d(TAG, "Available budget for this category: $" + availableBudget);
-        Log.d(TAG, "Current category budget: $" + currentBudget.getAmount());
+        Log.d(TAG, "Total budget: " + Money.format(totalBudget));
+        Log.d(TAG, "Total allocated to other categories: " + Money.format(totalAllocated));
+        Log.d(TAG, "Available budget for this category: " + Money.format(availableBudget));
+        Log.d(TAG, "Current category budget: " + Money.format(currentBudget.getAmountCents()));
 
         return availableBudget;
     }
@@ -10,12 +10,13 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.campusexpensemanagerse06304.R;
 import com.example.campusexpensemanagerse06304.model.Expense;
 
-import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -23,10 +24,15 @@ import java.util.Locale;
 import java.util.Set;
 
 
-public class SimpleExpenseAdapter extends RecyclerView.Adapter<SimpleExpenseAdapter.ExpenseViewHolder> {
+/**
+ * Expense list with multi-select. Lists arrive through submitList and are diffed off the main
+ * thread, so only inserted, removed and changed rows are rebound. Selection is kept by expense
+ * id, so it follows the rows when a new list moves them.
+ */
+public class SimpleExpenseAdapter extends ListAdapter<Expense, SimpleExpenseAdapter.ExpenseViewHolder> {
 
     private boolean isMultiSelectMode = false;
-    private Set<Integer> selectedItems = new HashSet<>();
+    private Set<Integer> selectedItems = new HashSet<>(); // Expense ids
     private OnExpenseActionListener listener;
 
 
@@ -52,7 +58,7 @@ public class SimpleExpenseAdapter extends RecyclerView.Adapter<SimpleExpenseAdap
         if (!isMultiSelectMode) {
             selectedItems.clear();
         }
-        notifyDataSetChanged();
+        notifyItemRangeChanged(0, getItemCount());
     }
 
 
@@ -61,10 +67,11 @@ public class SimpleExpenseAdapter extends RecyclerView.Adapter<SimpleExpenseAdap
     }
 
     public void toggleItemSelection(int position) {
-        if (selectedItems.contains(position)) {
-            selectedItems.remove(position);
+        int expenseId = getItem(position).getId();
+        if (selectedItems.contains(expenseId)) {
+            selectedItems.remove(expenseId);
         } else {
-            selectedItems.add(position);
+            selectedItems.add(expenseId);
         }
         notifyItemChanged(position);
     }
@@ -75,9 +82,9 @@ public class SimpleExpenseAdapter extends RecyclerView.Adapter<SimpleExpenseAdap
 
     public List<Expense> getSelectedExpenses() {
         List<Expense> selected = new ArrayList<>();
-        for (Integer position : selectedItems) {
-            if (position >= 0 && position < expenseList.size()) {
-                selected.add(expenseList.get(position));
+        for (Expense expense : getCurrentList()) {
+            if (selectedItems.contains(expense.getId())) {
+                selected.add(expense);
             }
         }
         return selected;
@@ -85,17 +92,35 @@ public class SimpleExpenseAdapter extends RecyclerView.Adapter<SimpleExpenseAdap
 
     public void clearSelections() {
         selectedItems.clear();
-        notifyDataSetChanged();
+        notifyItemRangeChanged(0, getItemCount());
     }
 
 
 
     private Context context;
-    private List<Expense> expenseList;
 
-    public SimpleExpenseAdapter(Context context, List<Expense> expenseList) {
+    public SimpleExpenseAdapter(Context context) {
+        super(ExpenseItemCallback.INSTANCE);
         this.context = context;
-        this.expenseList = expenseList;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    // Forget selected expenses that are no longer in the list
+    @Override
+    public void onCurrentListChanged(@NonNull List<Expense> previousList, @NonNull List<Expense> currentList) {
+        if (selectedItems.isEmpty()) {
+            return;
+        }
+        Set<Integer> present = new HashSet<>();
+        for (Expense expense : currentList) {
+            present.add(expense.getId());
+        }
+        selectedItems.retainAll(present);
     }
 
     @NonNull
@@ -108,7 +133,7 @@ public class SimpleExpenseAdapter extends RecyclerView.Adapter<SimpleExpenseAdap
     // Update the onBindViewHolder method in SimpleExpenseAdapter
     @Override
     public void onBindViewHolder(@NonNull ExpenseViewHolder holder, int position) {
-        Expense expense = expenseList.get(position);
+        Expense expense = getItem(position);
 
         // Format amount with currency symbol
         String amountText = String.format(Locale.getDefault(), "$%.2f", expense.getAmount());
@@ -143,9 +168,9 @@ public class SimpleExpenseAdapter extends RecyclerView.Adapter<SimpleExpenseAdap
         }
 
         // Set date in readable format
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
+        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("MMM dd, yyyy", Locale.getDefault());
         if (expense.getDate() != null) {
-            holder.tvDate.setText(sdf.format(expense.getDate()));
+            holder.tvDate.setText(dateFormatter.format(expense.getDate()));
         } else {
             holder.tvDate.setText("Unknown date");
         }
@@ -153,15 +178,19 @@ public class SimpleExpenseAdapter extends RecyclerView.Adapter<SimpleExpenseAdap
         // Add this section for multi-select and edit buttons
         if (isMultiSelectMode) {
             // Show selection state
-            holder.itemContainer.setBackgroundColor(selectedItems.contains(position) ?
+            holder.itemContainer.setBackgroundColor(selectedItems.contains(expense.getId()) ?
                     ContextCompat.getColor(context, R.color.selectedItem) :
                     ContextCompat.getColor(context, R.color.normalItem));
 
             holder.ivEdit.setVisibility(View.GONE);
             holder.ivDelete.setVisibility(View.GONE);
 
+            // Positions move when a new list is diffed in, so read it at click time
             holder.itemView.setOnClickListener(v -> {
-                toggleItemSelection(position);
+                int current = holder.getAdapterPosition();
+                if (current != RecyclerView.NO_POSITION) {
+                    toggleItemSelection(current);
+                }
             });
 
         } else {
@@ -187,18 +216,17 @@ public class SimpleExpenseAdapter extends RecyclerView.Adapter<SimpleExpenseAdap
             });
 
             holder.itemView.setOnLongClickListener(v -> {
+                int current = holder.getAdapterPosition();
+                if (current == RecyclerView.NO_POSITION) {
+                    return false;
+                }
                 toggleMultiSelectMode();
-                toggleItemSelection(position);
+                toggleItemSelection(current);
                 return true;
             });
         }
     }
 
-    @Override
-    public int getItemCount() {
-        return expenseList.size();
-    }
-
     // Replace/Update the current ExpenseViewHolder class in SimpleExpenseAdapter
     static class ExpenseViewHolder extends RecyclerView.ViewHolder {
         TextView tvDescription, tvAmount, tvDate, tvCategory;
@@ -0,0 +1,69 @@
+package com.example.campusexpensemanagerse06304.database;
+
+/**
+ * A category budget whose spending for the current month crossed a notification threshold,
+ * found by ExpenseDb while writing expenses and handed to its BudgetAlertListener.
+ */
+public class BudgetAlert {
+
+    // Stored by ordinal in budget_alerts.level, so only append
+    public enum Level {
+        NONE,
+        WARNING,
+        EXCEEDED
+    }
+
+    private final int userId;
+    private final int budgetId;
+    private final int categoryId;
+    private final String categoryName;
+    private final long spentCents;
+    private final long budgetCents;
+    private final Level level;
+
+    BudgetAlert(int userId, int budgetId, int categoryId, String categoryName, long spentCents,
+                long budgetCents, Level level) {
+        this.userId = userId;
+        this.budgetId = budgetId;
+        this.categoryId = categoryId;
+        this.categoryName = categoryName;
+        this.spentCents = spentCents;
+        this.budgetCents = budgetCents;
+        this.level = level;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getBudgetId() {
+        return budgetId;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public long getSpentCents() {
+        return spentCents;
+    }
+
+    public long getBudgetCents() {
+        return budgetCents;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @return Spent amount as a fraction of the budget, 1.0 meaning all of it
+     */
+    public double getPercentage() {
+        return budgetCents > 0 ? (double) spentCents / budgetCents : 0;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.campusexpensemanagerse06304.database;
+
+/**
+ * Settings for, and receiver of, the budget thresholds ExpenseDb checks as expenses are written.
+ * The settings are read on every check, so changes apply from the next write.
+ */
+public interface BudgetAlertListener {
+
+    boolean areNotificationsEnabled();
+
+    /**
+     * @return Fraction of a budget at which to warn, such as 0.8
+     */
+    double getWarningThreshold();
+
+    /**
+     * @return Fraction of a budget at which it counts as exceeded, usually 1.0
+     */
+    double getExceededThreshold();
+
+    /**
+     * @return Minimum hours between two alerts for the same budget
+     */
+    int getWarningFrequency();
+
+    /**
+     * Called on the writing thread once the write that crossed the threshold has committed
+     */
+    void onBudgetAlert(BudgetAlert alert);
+}
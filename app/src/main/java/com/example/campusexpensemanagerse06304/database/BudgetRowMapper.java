@@ -0,0 +1,64 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.database.Cursor;
+
+import com.example.campusexpensemanagerse06304.model.Budget;
+
+/**
+ * Maps budget rows. category_name, category_color and spent are picked up when the query selects them.
+ */
+class BudgetRowMapper extends RowMapper<Budget> {
+
+    static final String[] COLUMNS = {
+            ExpenseDb.BUD_ID_COL,
+            ExpenseDb.BUD_USER_ID_COL,
+            ExpenseDb.BUD_CAT_ID_COL,
+            ExpenseDb.BUD_AMOUNT_COL,
+            ExpenseDb.BUD_PERIOD_COL,
+            ExpenseDb.BUD_START_DATE_COL,
+            ExpenseDb.BUD_END_DATE_COL
+    };
+
+    private final int idIndex;
+    private final int userIdIndex;
+    private final int categoryIdIndex;
+    private final int amountIndex;
+    private final int periodIndex;
+    private final int startDateIndex;
+    private final int endDateIndex;
+    private final int categoryNameIndex;
+    private final int categoryColorIndex;
+    private final int spentIndex;
+
+    BudgetRowMapper(Cursor cursor) {
+        super(cursor);
+        idIndex = cursor.getColumnIndexOrThrow(ExpenseDb.BUD_ID_COL);
+        userIdIndex = cursor.getColumnIndexOrThrow(ExpenseDb.BUD_USER_ID_COL);
+        categoryIdIndex = cursor.getColumnIndexOrThrow(ExpenseDb.BUD_CAT_ID_COL);
+        amountIndex = cursor.getColumnIndexOrThrow(ExpenseDb.BUD_AMOUNT_COL);
+        periodIndex = cursor.getColumnIndexOrThrow(ExpenseDb.BUD_PERIOD_COL);
+        startDateIndex = cursor.getColumnIndexOrThrow(ExpenseDb.BUD_START_DATE_COL);
+        endDateIndex = cursor.getColumnIndexOrThrow(ExpenseDb.BUD_END_DATE_COL);
+        categoryNameIndex = cursor.getColumnIndex("category_name");
+        categoryColorIndex = cursor.getColumnIndex("category_color");
+        spentIndex = cursor.getColumnIndex("spent");
+    }
+
+    @Override
+    Budget mapRow() {
+        Budget budget = new Budget();
+        budget.setId(cursor.getInt(idIndex));
+        budget.setUserId(cursor.getInt(userIdIndex));
+        budget.setCategoryId(cursor.getInt(categoryIdIndex));
+        budget.setAmountCents(cursor.getLong(amountIndex));
+        budget.setPeriod(cursor.getString(periodIndex));
+        budget.setStartDate(getDate(startDateIndex));
+        budget.setEndDate(getDate(endDateIndex));
+        budget.setCategoryName(getOptionalString(categoryNameIndex));
+        budget.setCategoryColor(getOptionalString(categoryColorIndex));
+        if (spentIndex >= 0) {
+            budget.setSpentCents(cursor.getLong(spentIndex));
+        }
+        return budget;
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Current-month spending and budgets per user, held in memory so budget screens and threshold
+ * checks do not go back to SQL.
+ * A user's Usage is seeded by ExpenseDb from one grouped query and then kept up to date by
+ * the expense writes themselves: each write registers with beginWrite and hands its per-row
+ * amount changes to endWrite once its transaction has committed. Writes the tracker cannot
+ * follow (budgets, the total budget, categories, repairs) drop the affected users, who are
+ * seeded again on their next read. A Usage from an earlier month is never returned, so a new
+ * month starts with a fresh seed.
+ * Seeds are read outside any write lock, so a seed is only installed if no expense write
+ * overlapped its query; see seedGeneration.
+ * Usage objects are immutable; updates replace them, so a Usage a reader holds never changes.
+ */
+public final class BudgetTracker {
+
+    /**
+     * A category budget as the tracker knows it
+     */
+    public static final class CategoryBudget {
+        private final int budgetId;
+        private final int categoryId;
+        private final String categoryName;
+        private final long amountCents;
+
+        CategoryBudget(int budgetId, int categoryId, String categoryName, long amountCents) {
+            this.budgetId = budgetId;
+            this.categoryId = categoryId;
+            this.categoryName = categoryName;
+            this.amountCents = amountCents;
+        }
+
+        public int getBudgetId() {
+            return budgetId;
+        }
+
+        public int getCategoryId() {
+            return categoryId;
+        }
+
+        public String getCategoryName() {
+            return categoryName;
+        }
+
+        public long getAmountCents() {
+            return amountCents;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CategoryBudget)) {
+                return false;
+            }
+            CategoryBudget other = (CategoryBudget) o;
+            return budgetId == other.budgetId && categoryId == other.categoryId
+                    && amountCents == other.amountCents && Objects.equals(categoryName, other.categoryName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(budgetId, categoryId, categoryName, amountCents);
+        }
+    }
+
+    /**
+     * One user's spending and budgets for a month. All amounts in cents.
+     */
+    public static final class Usage {
+        private final int userId;
+        private final YearMonth month;
+        private final long totalBudgetCents; // 0 when no total budget is set
+        private final long totalSpentCents;
+        private final Map<Integer, Long> spentByCategory;
+        private final Map<Integer, CategoryBudget> budgets;
+
+        Usage(int userId, YearMonth month, long totalBudgetCents, Map<Integer, Long> spentByCategory,
+              Map<Integer, CategoryBudget> budgets) {
+            this.userId = userId;
+            this.month = month;
+            this.totalBudgetCents = totalBudgetCents;
+            this.spentByCategory = Collections.unmodifiableMap(spentByCategory);
+            this.budgets = Collections.unmodifiableMap(budgets);
+
+            long total = 0;
+            for (long spent : spentByCategory.values()) {
+                total += spent;
+            }
+            this.totalSpentCents = total;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public YearMonth getMonth() {
+            return month;
+        }
+
+        public long getTotalBudgetCents() {
+            return totalBudgetCents;
+        }
+
+        public long getTotalSpentCents() {
+            return totalSpentCents;
+        }
+
+        public long getRemainingTotalCents() {
+            return totalBudgetCents - totalSpentCents;
+        }
+
+        /**
+         * @return Spent in the category this month, 0 if nothing
+         */
+        public long getSpentCents(int categoryId) {
+            Long spent = spentByCategory.get(categoryId);
+            return spent != null ? spent : 0;
+        }
+
+        /**
+         * @return The category's budget, or null if it has none
+         */
+        public CategoryBudget getBudget(int categoryId) {
+            return budgets.get(categoryId);
+        }
+
+        public Collection<CategoryBudget> getBudgets() {
+            return budgets.values();
+        }
+
+        // Copy with the given amounts added to the categories' spending
+        Usage plus(Map<Integer, Long> changes) {
+            Map<Integer, Long> spent = new HashMap<>(spentByCategory);
+            for (Map.Entry<Integer, Long> change : changes.entrySet()) {
+                long value = getSpentCents(change.getKey()) + change.getValue();
+                if (value == 0) {
+                    spent.remove(change.getKey()); // Like the rollup, which drops empty rows
+                } else {
+                    spent.put(change.getKey(), value);
+                }
+            }
+            return new Usage(userId, month, totalBudgetCents, spent, budgets);
+        }
+
+        @Override
+        public String toString() {
+            return "Usage{user=" + userId + ", month=" + month + ", totalBudget=" + totalBudgetCents
+                    + ", spent=" + spentByCategory + ", budgets=" + budgets.size() + '}';
+        }
+    }
+
+    /**
+     * Spending changes made by one write, collected while it runs and applied once it has committed
+     */
+    static final class Delta {
+        private static final class Change {
+            final int userId;
+            final int categoryId;
+            final YearMonth month;
+            final long cents;
+
+            Change(int userId, int categoryId, YearMonth month, long cents) {
+                this.userId = userId;
+                this.categoryId = categoryId;
+                this.month = month;
+                this.cents = cents;
+            }
+        }
+
+        private final List<Change> changes = new ArrayList<>();
+
+        /**
+         * @param cents Positive for an expense added, negative for one removed
+         */
+        void add(int userId, int categoryId, YearMonth month, long cents) {
+            changes.add(new Change(userId, categoryId, month, cents));
+        }
+
+        void addAll(Delta other) {
+            changes.addAll(other.changes);
+        }
+
+        /**
+         * @return The net change per category for one user and month, for Usage.plus
+         */
+        Map<Integer, Long> changesFor(int userId, YearMonth month) {
+            Map<Integer, Long> byCategory = new HashMap<>();
+            for (Change change : changes) {
+                if (change.userId == userId && change.month.equals(month) && change.cents != 0) {
+                    Long previous = byCategory.get(change.categoryId);
+                    byCategory.put(change.categoryId, (previous != null ? previous : 0) + change.cents);
+                }
+            }
+            return byCategory;
+        }
+    }
+
+    private final Map<Integer, Usage> usages = new HashMap<>(); // Guarded by this
+    private int writesInProgress; // Guarded by this; expense writes between beginWrite and endWrite
+    private long generation; // Guarded by this; bumped by every finished write and invalidation
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    /**
+     * @return The user's usage for the month, or null if it has to be seeded
+     */
+    synchronized Usage get(int userId, YearMonth month) {
+        Usage usage = usages.get(userId);
+        return usage != null && usage.month.equals(month) ? usage : null;
+    }
+
+    /**
+     * Usage for an expense write to evaluate inside its transaction, before its own changes.
+     * Only trusted while the caller is the one write in progress; otherwise an earlier write
+     * may have committed without having reached endWrite yet.
+     * @return The tracked usage, or null if the caller must read it inside its transaction
+     */
+    synchronized Usage getForWrite(int userId, YearMonth month) {
+        return writesInProgress == 1 ? get(userId, month) : null;
+    }
+
+    /**
+     * Register an expense write. Call right after its transaction begins, before it changes anything.
+     */
+    synchronized void beginWrite() {
+        writesInProgress++;
+    }
+
+    /**
+     * Finish an expense write registered with beginWrite. Call after its transaction has ended.
+     * @param committed The write's spending changes if it committed, null if it rolled back
+     */
+    synchronized void endWrite(Delta committed) {
+        if (committed != null) {
+            apply(committed);
+        }
+        writesInProgress--;
+        generation++;
+    }
+
+    /**
+     * Take before running a seed query and hand the result to install or verify.
+     * @return The current generation, or -1 while an expense write is in progress
+     */
+    synchronized long seedGeneration() {
+        return writesInProgress == 0 ? generation : -1;
+    }
+
+    // True if no expense write or invalidation happened since seedGeneration returned seed
+    private boolean isSettled(long seed) {
+        return seed >= 0 && seed == generation && writesInProgress == 0;
+    }
+
+    /**
+     * Store a freshly seeded usage, unless a write overlapped the seed query: the query might
+     * then have missed changes that endWrite has already applied, or will apply on top of it.
+     * @param seed What seedGeneration returned before the query
+     * @return true if the usage was installed
+     */
+    synchronized boolean install(Usage usage, long seed) {
+        if (!isSettled(seed)) {
+            return false;
+        }
+        usages.put(usage.userId, usage);
+        rebuilds.incrementAndGet();
+        return true;
+    }
+
+    // Add a committed write's spending changes to the users that are seeded for the changed month
+    private void apply(Delta delta) {
+        Map<Integer, Map<Integer, Long>> byUser = new HashMap<>();
+        for (Delta.Change change : delta.changes) {
+            Usage usage = usages.get(change.userId);
+            if (usage == null || !usage.month.equals(change.month) || change.cents == 0) {
+                continue;
+            }
+            Map<Integer, Long> changes = byUser.get(change.userId);
+            if (changes == null) {
+                changes = new HashMap<>();
+                byUser.put(change.userId, changes);
+            }
+            Long previous = changes.get(change.categoryId);
+            changes.put(change.categoryId, (previous != null ? previous : 0) + change.cents);
+        }
+
+        for (Map.Entry<Integer, Map<Integer, Long>> entry : byUser.entrySet()) {
+            usages.put(entry.getKey(), usages.get(entry.getKey()).plus(entry.getValue()));
+            updates.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drop some users, or everyone when userIds is null, so they are seeded on their next read
+     */
+    synchronized void invalidate(Collection<Integer> userIds) {
+        if (userIds == null) {
+            usages.clear();
+        } else {
+            usages.keySet().removeAll(userIds);
+        }
+        generation++;
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Compare the tracked usage with one just read from the database, replacing it on a mismatch
+     * @param expected Usage read from the database, for the month the tracker should hold
+     * @param seed What seedGeneration returned before the query
+     * @return What differs, empty if the tracker matched, had nothing for the user or a write
+     * overlapped the query
+     */
+    synchronized List<String> verify(Usage expected, long seed) {
+        Usage actual = get(expected.userId, expected.month);
+        if (actual == null || !isSettled(seed)) {
+            return Collections.emptyList();
+        }
+
+        List<String> differences = new ArrayList<>();
+        if (actual.totalBudgetCents != expected.totalBudgetCents) {
+            differences.add("total budget " + actual.totalBudgetCents + " != " + expected.totalBudgetCents);
+        }
+        Set<Integer> categories = new HashSet<>(actual.spentByCategory.keySet());
+        categories.addAll(expected.spentByCategory.keySet());
+        for (int categoryId : categories) {
+            if (actual.getSpentCents(categoryId) != expected.getSpentCents(categoryId)) {
+                differences.add("category " + categoryId + " spent " + actual.getSpentCents(categoryId)
+                        + " != " + expected.getSpentCents(categoryId));
+            }
+        }
+        if (!actual.budgets.equals(expected.budgets)) {
+            differences.add("budgets " + actual.budgets.keySet() + " != " + expected.budgets.keySet());
+        }
+
+        if (!differences.isEmpty()) {
+            usages.put(expected.userId, expected);
+            mismatches.incrementAndGet();
+        }
+        return differences;
+    }
+
+    // Counters, for logging how well the incremental updates hold up
+
+    /**
+     * @return Usages seeded from the database, including reseeds after invalidation or a new month
+     */
+    public long getRebuildCount() {
+        return rebuilds.get();
+    }
+
+    /**
+     * @return Writes applied to a seeded usage without going back to the database
+     */
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return Verifications that found the tracker out of step with the database
+     */
+    public long getMismatchCount() {
+        return mismatches.get();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.database.Cursor;
+
+import com.example.campusexpensemanagerse06304.model.Category;
+
+/**
+ * Maps category rows.
+ */
+class CategoryRowMapper extends RowMapper<Category> {
+
+    static final String[] COLUMNS = {
+            ExpenseDb.CAT_ID_COL,
+            ExpenseDb.CAT_NAME_COL,
+            ExpenseDb.CAT_DESC_COL,
+            ExpenseDb.CAT_ICON_COL,
+            ExpenseDb.CAT_COLOR_COL
+    };
+
+    private final int idIndex;
+    private final int nameIndex;
+    private final int descriptionIndex;
+    private final int iconIndex;
+    private final int colorIndex;
+
+    CategoryRowMapper(Cursor cursor) {
+        super(cursor);
+        idIndex = cursor.getColumnIndexOrThrow(ExpenseDb.CAT_ID_COL);
+        nameIndex = cursor.getColumnIndexOrThrow(ExpenseDb.CAT_NAME_COL);
+        descriptionIndex = cursor.getColumnIndexOrThrow(ExpenseDb.CAT_DESC_COL);
+        iconIndex = cursor.getColumnIndexOrThrow(ExpenseDb.CAT_ICON_COL);
+        colorIndex = cursor.getColumnIndexOrThrow(ExpenseDb.CAT_COLOR_COL);
+    }
+
+    @Override
+    Category mapRow() {
+        Category category = new Category();
+        category.setId(cursor.getInt(idIndex));
+        category.setName(cursor.getString(nameIndex));
+        category.setDescription(cursor.getString(descriptionIndex));
+        category.setIcon(cursor.getString(iconIndex));
+        category.setColor(cursor.getString(colorIndex));
+        return category;
+    }
+}
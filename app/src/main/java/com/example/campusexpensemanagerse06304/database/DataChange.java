@@ -0,0 +1,158 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Description of what one or more ExpenseDb writes changed, delivered through DataChangeBus.
+ * Users, months and categories are each either a set of values or "any", used when the writer
+ * could not narrow them down (a write by row id, a repair). The affects* checks treat "any" as
+ * a match. Changes published close together are merged, so one event can span several tables.
+ */
+public final class DataChange {
+
+    public enum Table {
+        CATEGORIES,
+        EXPENSES,
+        BUDGETS,
+        TOTAL_BUDGET,
+        RECURRING_EXPENSES
+    }
+
+    private final Set<Table> tables;
+    // null means any value may be affected
+    private final Set<Integer> userIds;
+    private final Set<YearMonth> months;
+    private final Set<Integer> categoryIds;
+
+    private DataChange(Set<Table> tables, Set<Integer> userIds, Set<YearMonth> months, Set<Integer> categoryIds) {
+        this.tables = tables;
+        this.userIds = userIds;
+        this.months = months;
+        this.categoryIds = categoryIds;
+    }
+
+    /**
+     * Change to rows of one table.
+     * @param userId Owner of the rows, or null if unknown or not tied to a user
+     * @param month Month of the rows' dates, or null if unknown or not applicable
+     * @param categoryId Category of the rows, or null if unknown
+     */
+    static DataChange of(Table table, Integer userId, YearMonth month, Integer categoryId) {
+        return new DataChange(EnumSet.of(table), single(userId), single(month), single(categoryId));
+    }
+
+    private static <T> Set<T> single(T value) {
+        return value != null ? Collections.singleton(value) : null;
+    }
+
+    /**
+     * @return A change covering both this one and other
+     */
+    public DataChange merge(DataChange other) {
+        Set<Table> mergedTables = EnumSet.copyOf(tables);
+        mergedTables.addAll(other.tables);
+        return new DataChange(mergedTables, union(userIds, other.userIds), union(months, other.months),
+                union(categoryIds, other.categoryIds));
+    }
+
+    private static <T> Set<T> union(Set<T> a, Set<T> b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        Set<T> result = new HashSet<>(a);
+        result.addAll(b);
+        return result;
+    }
+
+    public boolean touches(Table table) {
+        return tables.contains(table);
+    }
+
+    public boolean affectsUser(int userId) {
+        return userIds == null || userIds.contains(userId);
+    }
+
+    public boolean affectsMonth(YearMonth month) {
+        return months == null || months.contains(month);
+    }
+
+    public boolean affectsCategory(int categoryId) {
+        return categoryIds == null || categoryIds.contains(categoryId);
+    }
+
+    /**
+     * Whether the expenses matching a filter, or their total, may have changed
+     */
+    public boolean affects(ExpenseFilter filter) {
+        if (!touches(Table.EXPENSES) || !affectsUser(filter.getUserId())) {
+            return false;
+        }
+        return overlapsDateRange(filter.getStartDate(), filter.getEndDate())
+                && overlapsCategories(filter.getCategoryIds());
+    }
+
+    private boolean overlapsDateRange(LocalDate start, LocalDate end) {
+        if (months == null) {
+            return true;
+        }
+        for (YearMonth month : months) {
+            boolean endsBeforeStart = start != null && month.atEndOfMonth().isBefore(start);
+            boolean startsAfterEnd = end != null && month.atDay(1).isAfter(end);
+            if (!endsBeforeStart && !startsAfterEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean overlapsCategories(Set<Integer> filterCategoryIds) {
+        if (categoryIds == null || filterCategoryIds.isEmpty()) {
+            return true; // Empty filter set means all categories
+        }
+        for (int categoryId : filterCategoryIds) {
+            if (categoryIds.contains(categoryId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<Table> getTables() {
+        return Collections.unmodifiableSet(tables);
+    }
+
+    /**
+     * @return The affected users, or null if any user may be affected
+     */
+    public Set<Integer> getUserIds() {
+        return userIds != null ? Collections.unmodifiableSet(userIds) : null;
+    }
+
+    /**
+     * @return The affected months, or null if any month may be affected
+     */
+    public Set<YearMonth> getMonths() {
+        return months != null ? Collections.unmodifiableSet(months) : null;
+    }
+
+    /**
+     * @return The affected categories, or null if any category may be affected
+     */
+    public Set<Integer> getCategoryIds() {
+        return categoryIds != null ? Collections.unmodifiableSet(categoryIds) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "DataChange{tables=" + tables +
+                ", users=" + (userIds != null ? userIds : "any") +
+                ", months=" + (months != null ? months : "any") +
+                ", categories=" + (categoryIds != null ? categoryIds : "any") +
+                '}';
+    }
+}
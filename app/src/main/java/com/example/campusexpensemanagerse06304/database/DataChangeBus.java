@@ -0,0 +1,111 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process bus carrying ExpenseDb changes to the screens that show the data.
+ * Writes may happen on any thread; listeners are called on the main thread. Changes published
+ * within COALESCE_DELAY_MS of the first one are merged into a single event, so a burst of
+ * writes (an import, the recurring expense scheduler) costs one refresh per screen.
+ */
+public final class DataChangeBus {
+
+    private static final String TAG = "DataChangeBus";
+    private static final long COALESCE_DELAY_MS = 100;
+
+    public interface Listener {
+        void onDataChanged(DataChange change);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private DataChange pending; // Guarded by this
+
+    public void register(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void unregister(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Listen for as long as the owner lives, typically a fragment's view lifecycle.
+     * Changes that arrive while the owner is not resumed, such as a view pager page that is
+     * off screen, are merged and delivered once when it resumes.
+     * Must be called on the main thread.
+     */
+    public void observe(LifecycleOwner owner, Listener listener) {
+        owner.getLifecycle().addObserver(new LifecycleListener(owner.getLifecycle(), listener));
+    }
+
+    /**
+     * Queue a change for delivery. Call after the write has committed.
+     */
+    void publish(DataChange change) {
+        synchronized (this) {
+            if (pending != null) {
+                pending = pending.merge(change);
+                return; // Already scheduled
+            }
+            pending = change;
+        }
+        mainHandler.postDelayed(this::dispatch, COALESCE_DELAY_MS);
+    }
+
+    private void dispatch() {
+        DataChange change;
+        synchronized (this) {
+            change = pending;
+            pending = null;
+        }
+        Log.d(TAG, "Dispatching " + change + " to " + listeners.size() + " listeners");
+        for (Listener listener : listeners) {
+            listener.onDataChanged(change);
+        }
+    }
+
+    // Holds changes back while its lifecycle is below RESUMED and unregisters when it is destroyed
+    private final class LifecycleListener implements Listener, LifecycleEventObserver {
+        private final Lifecycle lifecycle;
+        private final Listener listener;
+        private DataChange deferred; // Main thread only
+
+        LifecycleListener(Lifecycle lifecycle, Listener listener) {
+            this.lifecycle = lifecycle;
+            this.listener = listener;
+            register(this);
+        }
+
+        @Override
+        public void onDataChanged(DataChange change) {
+            if (lifecycle.getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+                listener.onDataChanged(change);
+            } else {
+                deferred = deferred != null ? deferred.merge(change) : change;
+            }
+        }
+
+        @Override
+        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_RESUME && deferred != null) {
+                DataChange change = deferred;
+                deferred = null;
+                listener.onDataChanged(change);
+            } else if (event == Lifecycle.Event.ON_DESTROY) {
+                unregister(this);
+                lifecycle.removeObserver(this);
+            }
+        }
+    }
+}
@@ -4,82 +4,100 @@ import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
 
 import com.example.campusexpensemanagerse06304.model.Budget;
 import com.example.campusexpensemanagerse06304.model.Category;
 import com.example.campusexpensemanagerse06304.model.Expense;
 import com.example.campusexpensemanagerse06304.model.RecurringExpense;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 
 public class ExpenseDb extends SQLiteOpenHelper {
     private static final String TAG = "ExpenseDb";
     private static final String DB_NAME = "campus expenses";
-    private static final int DB_VERSION = 2; // Increased version number!
+    private static final int DB_VERSION = 9; // Must match the last entry of MIGRATIONS
+
+    // User table (accessed through UserDb)
+    static final String TABLE_USER = "user";
+    static final String USER_ID_COL = "id";
+    static final String USER_USERNAME_COL = "username";
+    static final String USER_PASSWORD_COL = "password";
+    static final String USER_EMAIL_COL = "email";
+    static final String USER_PHONE_COL = "phone";
+    static final String USER_ROLE_ID_COL = "role_id";
+    static final String USER_CREATED_AT = "created_at";
+    static final String USER_UPDATED_AT = "updated_at";
+    static final String USER_DELETED_AT = "deleted_at";
 
     // Category table
     private static final String TABLE_CATEGORY = "categories";
-    private static final String CAT_ID_COL = "id";
-    private static final String CAT_NAME_COL = "name";
-    private static final String CAT_DESC_COL = "description";
-    private static final String CAT_ICON_COL = "icon";
-    private static final String CAT_COLOR_COL = "color";
+    static final String CAT_ID_COL = "id";
+    static final String CAT_NAME_COL = "name";
+    static final String CAT_DESC_COL = "description";
+    static final String CAT_ICON_COL = "icon";
+    static final String CAT_COLOR_COL = "color";
 
     // Expense table
     private static final String TABLE_EXPENSE = "expenses";
-    private static final String EXP_ID_COL = "id";
-    private static final String EXP_USER_ID_COL = "user_id";
-    private static final String EXP_CAT_ID_COL = "category_id";
-    private static final String EXP_AMOUNT_COL = "amount";
-    private static final String EXP_DESC_COL = "description";
-    private static final String EXP_DATE_COL = "date";
-    private static final String EXP_PAYMENT_METHOD_COL = "payment_method";
-    private static final String EXP_IS_RECURRING_COL = "is_recurring";
-    private static final String EXP_RECURRING_ID_COL = "recurring_expense_id";
-    private static final String EXP_CREATED_AT = "created_at";
-    private static final String EXP_UPDATED_AT = "updated_at";
+    static final String EXP_ID_COL = "id";
+    static final String EXP_USER_ID_COL = "user_id";
+    static final String EXP_CAT_ID_COL = "category_id";
+    static final String EXP_AMOUNT_COL = "amount";
+    static final String EXP_DESC_COL = "description";
+    static final String EXP_DATE_COL = "date";
+    static final String EXP_PAYMENT_METHOD_COL = "payment_method";
+    static final String EXP_IS_RECURRING_COL = "is_recurring";
+    static final String EXP_RECURRING_ID_COL = "recurring_expense_id";
+    static final String EXP_CREATED_AT = "created_at";
+    static final String EXP_UPDATED_AT = "updated_at";
 
     // Budget table
     private static final String TABLE_BUDGET = "budgets";
-    private static final String BUD_ID_COL = "id";
-    private static final String BUD_USER_ID_COL = "user_id";
-    private static final String BUD_CAT_ID_COL = "category_id";
-    private static final String BUD_AMOUNT_COL = "amount";
-    private static final String BUD_PERIOD_COL = "period";
-    private static final String BUD_START_DATE_COL = "start_date";
-    private static final String BUD_END_DATE_COL = "end_date";
-    private static final String BUD_CREATED_AT = "created_at";
-    private static final String BUD_UPDATED_AT = "updated_at";
+    static final String BUD_ID_COL = "id";
+    static final String BUD_USER_ID_COL = "user_id";
+    static final String BUD_CAT_ID_COL = "category_id";
+    static final String BUD_AMOUNT_COL = "amount";
+    static final String BUD_PERIOD_COL = "period";
+    static final String BUD_START_DATE_COL = "start_date";
+    static final String BUD_END_DATE_COL = "end_date";
+    static final String BUD_CREATED_AT = "created_at";
+    static final String BUD_UPDATED_AT = "updated_at";
 
     // Recurring Expense table
     private static final String TABLE_RECURRING = "recurring_expenses";
-    private static final String REC_ID_COL = "id";
-    private static final String REC_USER_ID_COL = "user_id";
-    private static final String REC_CAT_ID_COL = "category_id";
-    private static final String REC_AMOUNT_COL = "amount";
-    private static final String REC_DESC_COL = "description";
-    private static final String REC_FREQUENCY_COL = "frequency";
-    private static final String REC_START_DATE_COL = "start_date";
-    private static final String REC_END_DATE_COL = "end_date";
-    private static final String REC_LAST_CHARGED_COL = "last_charged";
-    private static final String REC_NEXT_CHARGE_COL = "next_charge";
-    private static final String REC_CREATED_AT = "created_at";
-    private static final String REC_UPDATED_AT = "updated_at";
+    static final String REC_ID_COL = "id";
+    static final String REC_USER_ID_COL = "user_id";
+    static final String REC_CAT_ID_COL = "category_id";
+    static final String REC_AMOUNT_COL = "amount";
+    static final String REC_DESC_COL = "description";
+    static final String REC_FREQUENCY_COL = "frequency";
+    static final String REC_START_DATE_COL = "start_date";
+    static final String REC_END_DATE_COL = "end_date";
+    static final String REC_LAST_CHARGED_COL = "last_charged";
+    static final String REC_NEXT_CHARGE_COL = "next_charge";
+    static final String REC_CREATED_AT = "created_at";
+    static final String REC_UPDATED_AT = "updated_at";
 
     // Total Budget table
     private static final String TABLE_TOTAL_BUDGET = "total_budget";
@@ -92,79 +110,107 @@ public class ExpenseDb extends SQLiteOpenHelper {
     private static final String TOT_CREATED_AT = "created_at";
     private static final String TOT_UPDATED_AT = "updated_at";
 
-    public ExpenseDb(@Nullable Context context) {
-        super(context, DB_NAME, null, DB_VERSION);
+    // Monthly category totals rollup, kept in sync with the expenses table by triggers
+    private static final String TABLE_MONTHLY_TOTALS = "monthly_category_totals";
+    private static final String MT_USER_ID_COL = "user_id";
+    private static final String MT_CAT_ID_COL = "category_id";
+    private static final String MT_YEAR_MONTH_COL = "year_month"; // Month index, see monthKey
+    private static final String MT_TOTAL_COL = "total";
+    private static final String MT_COUNT_COL = "expense_count";
+
+    // Budget alert state: the threshold level last recorded per budget and when it last notified
+    private static final String TABLE_BUDGET_ALERTS = "budget_alerts";
+    private static final String BA_BUDGET_ID_COL = "budget_id";
+    private static final String BA_YEAR_MONTH_COL = "year_month"; // Month the level applies to, see monthKey
+    private static final String BA_LEVEL_COL = "level"; // BudgetAlert.Level ordinal
+    private static final String BA_NOTIFIED_AT_COL = "notified_at"; // Epoch millis
+
+    // Per-user counter bumped by triggers on every expense insert, update and delete
+    private static final String TABLE_EXPENSE_VERSIONS = "expense_versions";
+    private static final String EV_USER_ID_COL = "user_id";
+    private static final String EV_VERSION_COL = "version";
+
+    // Dates are stored as epoch days; SQLite's date functions read numbers as Julian days
+    private static final String JULIAN_DAY_OF_EPOCH = "2440587.5";
+
+    private static final String TRG_EXPENSE_INSERT = "trg_expenses_totals_insert";
+    private static final String TRG_EXPENSE_UPDATE = "trg_expenses_totals_update";
+    private static final String TRG_EXPENSE_DELETE = "trg_expenses_totals_delete";
+    private static final String TRG_EXPENSE_VERSION_INSERT = "trg_expenses_version_insert";
+    private static final String TRG_EXPENSE_VERSION_UPDATE = "trg_expenses_version_update";
+    private static final String TRG_EXPENSE_VERSION_DELETE = "trg_expenses_version_delete";
+
+    // Hot statements, compiled once and reused through compiledStatement()
+    private static final String SQL_INSERT_EXPENSE = "INSERT INTO " + TABLE_EXPENSE + " ("
+            + EXP_USER_ID_COL + ", " + EXP_CAT_ID_COL + ", " + EXP_AMOUNT_COL + ", " + EXP_DESC_COL + ", "
+            + EXP_DATE_COL + ", " + EXP_PAYMENT_METHOD_COL + ", " + EXP_IS_RECURRING_COL + ", "
+            + EXP_RECURRING_ID_COL + ", " + EXP_CREATED_AT + ", " + EXP_UPDATED_AT + ")"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_UPDATE_EXPENSE = "UPDATE " + TABLE_EXPENSE + " SET "
+            + EXP_CAT_ID_COL + " = ?, " + EXP_AMOUNT_COL + " = ?, " + EXP_DESC_COL + " = ?, "
+            + EXP_DATE_COL + " = ?, " + EXP_PAYMENT_METHOD_COL + " = ?, " + EXP_UPDATED_AT + " = ?"
+            + " WHERE " + EXP_ID_COL + " = ?";
+    private static final String SQL_DELETE_EXPENSE = "DELETE FROM " + TABLE_EXPENSE
+            + " WHERE " + EXP_ID_COL + " = ?";
+    private static final String SQL_TOTAL_BY_MONTH = "SELECT COALESCE(SUM(" + MT_TOTAL_COL + "), 0) FROM "
+            + TABLE_MONTHLY_TOTALS + " WHERE " + MT_USER_ID_COL + " = ? AND " + MT_YEAR_MONTH_COL + " = ?";
+    private static final String SQL_TOTAL_BY_CATEGORY_AND_MONTH = "SELECT COALESCE(SUM(" + MT_TOTAL_COL + "), 0) FROM "
+            + TABLE_MONTHLY_TOTALS + " WHERE " + MT_USER_ID_COL + " = ? AND " + MT_CAT_ID_COL + " = ? AND "
+            + MT_YEAR_MONTH_COL + " = ?";
+
+    // Indexes
+    private static final String IDX_EXPENSE_USER_DATE = "idx_expenses_user_date";
+    private static final String IDX_EXPENSE_USER_CAT_DATE = "idx_expenses_user_category_date";
+    private static final String IDX_BUDGET_USER_CAT = "idx_budgets_user_category";
+    private static final String IDX_RECURRING_USER_NEXT = "idx_recurring_user_next_charge";
+    private static final String IDX_TOTAL_BUDGET_USER = "idx_total_budget_user_period";
+    private static final String IDX_USER_USERNAME = "idx_user_username";
+
+    // Categories, total budgets and monthly totals for a handful of users fit comfortably
+    private static final int QUERY_CACHE_SIZE = 128;
+
+    private static ExpenseDb instance;
+
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+    private final QueryCache cache = new QueryCache(QUERY_CACHE_SIZE);
+    private final DataChangeBus changeBus = new DataChangeBus();
+    private final BudgetTracker budgetTracker = new BudgetTracker();
+    private volatile BudgetAlertListener budgetAlertListener;
+
+    /**
+     * Get the process-wide database helper.
+     * The underlying connection stays open for the lifetime of the process, so callers
+     * must never close the SQLiteDatabase returned by this helper.
+     * @param context Any context, the application context is retained
+     * @return The shared ExpenseDb instance
+     */
+    public static synchronized ExpenseDb getInstance(Context context) {
+        if (instance == null) {
+            instance = new ExpenseDb(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ExpenseDb(@Nullable Context context) {
+        this(context, DB_NAME);
+    }
+
+    // Lets tests open their own database file instead of the app's
+    @VisibleForTesting
+    ExpenseDb(@Nullable Context context, String name) {
+        super(context, name, null, DB_VERSION);
+        // Write-ahead logging lets readers (UI, reports) run while the scheduler writes
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         try {
-            // Create Category table
-            String createCategoryTable = "CREATE TABLE IF NOT EXISTS " + TABLE_CATEGORY + " ( "
-                    + CAT_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                    + CAT_NAME_COL + " TEXT NOT NULL, "
-                    + CAT_DESC_COL + " TEXT, "
-                    + CAT_ICON_COL + " TEXT, "
-                    + CAT_COLOR_COL + " TEXT )";
-
-            // Create Expense table
-            String createExpenseTable = "CREATE TABLE IF NOT EXISTS " + TABLE_EXPENSE + " ( "
-                    + EXP_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                    + EXP_USER_ID_COL + " INTEGER NOT NULL, "
-                    + EXP_CAT_ID_COL + " INTEGER NOT NULL, "
-                    + EXP_AMOUNT_COL + " REAL NOT NULL, "
-                    + EXP_DESC_COL + " TEXT, "
-                    + EXP_DATE_COL + " DATE NOT NULL, "
-                    + EXP_PAYMENT_METHOD_COL + " TEXT, "
-                    + EXP_IS_RECURRING_COL + " INTEGER DEFAULT 0, "
-                    + EXP_RECURRING_ID_COL + " INTEGER, "
-                    + EXP_CREATED_AT + " DATETIME, "
-                    + EXP_UPDATED_AT + " DATETIME )";
-
-            // Create Budget table
-            String createBudgetTable = "CREATE TABLE IF NOT EXISTS " + TABLE_BUDGET + " ( "
-                    + BUD_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                    + BUD_USER_ID_COL + " INTEGER NOT NULL, "
-                    + BUD_CAT_ID_COL + " INTEGER NOT NULL, "
-                    + BUD_AMOUNT_COL + " REAL NOT NULL, "
-                    + BUD_PERIOD_COL + " TEXT NOT NULL, "
-                    + BUD_START_DATE_COL + " DATE NOT NULL, "
-                    + BUD_END_DATE_COL + " DATE, "
-                    + BUD_CREATED_AT + " DATETIME, "
-                    + BUD_UPDATED_AT + " DATETIME )";
-
-            // Create Recurring Expense table
-            String createRecurringTable = "CREATE TABLE IF NOT EXISTS " + TABLE_RECURRING + " ( "
-                    + REC_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                    + REC_USER_ID_COL + " INTEGER NOT NULL, "
-                    + REC_CAT_ID_COL + " INTEGER NOT NULL, "
-                    + REC_AMOUNT_COL + " REAL NOT NULL, "
-                    + REC_DESC_COL + " TEXT, "
-                    + REC_FREQUENCY_COL + " TEXT NOT NULL, "
-                    + REC_START_DATE_COL + " DATE NOT NULL, "
-                    + REC_END_DATE_COL + " DATE, "
-                    + REC_LAST_CHARGED_COL + " DATE, "
-                    + REC_NEXT_CHARGE_COL + " DATE, "
-                    + REC_CREATED_AT + " DATETIME, "
-                    + REC_UPDATED_AT + " DATETIME )";
-
-            // Create Total Budget table
-            String createTotalBudgetTable = "CREATE TABLE IF NOT EXISTS " + TABLE_TOTAL_BUDGET + " ( "
-                    + TOT_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                    + TOT_USER_ID_COL + " INTEGER NOT NULL, "
-                    + TOT_AMOUNT_COL + " REAL NOT NULL, "
-                    + TOT_PERIOD_COL + " TEXT NOT NULL, "
-                    + TOT_START_DATE_COL + " DATE NOT NULL, "
-                    + TOT_END_DATE_COL + " DATE, "
-                    + TOT_CREATED_AT + " DATETIME, "
-                    + TOT_UPDATED_AT + " DATETIME )";
-
-            // Execute table creation
-            db.execSQL(createCategoryTable);
-            db.execSQL(createExpenseTable);
-            db.execSQL(createBudgetTable);
-            db.execSQL(createRecurringTable);
-            db.execSQL(createTotalBudgetTable);
+            createTables(db);
+            createIndexes(db);
+            createMonthlyTotals(db);
+            createBudgetAlerts(db);
+            createExpenseVersions(db);
 
             // Insert default categories
             insertDefaultCategories(db);
@@ -176,63 +222,698 @@ public class ExpenseDb extends SQLiteOpenHelper {
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.d(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
-        try {
-            if (oldVersion < 2) {
-                // Create the new total_budget table without dropping existing tables
-                String createTotalBudgetTable = "CREATE TABLE IF NOT EXISTS " + TABLE_TOTAL_BUDGET + " ( "
-                        + TOT_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                        + TOT_USER_ID_COL + " INTEGER NOT NULL, "
-                        + TOT_AMOUNT_COL + " REAL NOT NULL, "
-                        + TOT_PERIOD_COL + " TEXT NOT NULL, "
-                        + TOT_START_DATE_COL + " DATE NOT NULL, "
-                        + TOT_END_DATE_COL + " DATE, "
-                        + TOT_CREATED_AT + " DATETIME, "
-                        + TOT_UPDATED_AT + " DATETIME )";
-                db.execSQL(createTotalBudgetTable);
-                Log.d(TAG, "Created total_budget table during upgrade");
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Enabled after onCreate/onUpgrade rather than in onConfigure, so migrations that copy
+        // tables are not rejected by rows written before the constraints existed
+        if (!db.isReadOnly()) {
+            db.setForeignKeyConstraintsEnabled(true);
+        }
+    }
+
+    // Execute table creation, users first since every other per-user table references it
+    private static void createTables(SQLiteDatabase db) {
+        db.execSQL(userTableSql(TABLE_USER));
+        db.execSQL(categoryTableSql(TABLE_CATEGORY));
+        db.execSQL(expenseTableSql(TABLE_EXPENSE));
+        db.execSQL(budgetTableSql(TABLE_BUDGET));
+        db.execSQL(recurringTableSql(TABLE_RECURRING));
+        db.execSQL(totalBudgetTableSql(TABLE_TOTAL_BUDGET));
+    }
+
+    // Table definitions, parameterized by name so migrations can build a replacement table
+
+    private static String userTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " ( "
+                + USER_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + USER_USERNAME_COL + " VARCHAR(60) NOT NULL, "
+                + USER_PASSWORD_COL + " VARCHAR(200) NOT NULL, "
+                + USER_EMAIL_COL + " VARCHAR(60) NOT NULL, "
+                + USER_PHONE_COL + " VARCHAR(30), "
+                + USER_ROLE_ID_COL + " INTEGER, "
+                + USER_CREATED_AT + " DATETIME, "
+                + USER_UPDATED_AT + " DATETIME, "
+                + USER_DELETED_AT + " DATETIME )";
+    }
+
+    private static String categoryTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " ( "
+                + CAT_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + CAT_NAME_COL + " TEXT NOT NULL, "
+                + CAT_DESC_COL + " TEXT, "
+                + CAT_ICON_COL + " TEXT, "
+                + CAT_COLOR_COL + " TEXT )";
+    }
+
+    // Column definition tying a row to its owner in the user table
+    private static String userReference(String column) {
+        return column + " INTEGER NOT NULL REFERENCES " + TABLE_USER + "(" + USER_ID_COL + ") ON DELETE CASCADE, ";
+    }
+
+    private static String expenseTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " ( "
+                + EXP_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + userReference(EXP_USER_ID_COL)
+                + EXP_CAT_ID_COL + " INTEGER NOT NULL, "
+                + EXP_AMOUNT_COL + " INTEGER NOT NULL, "
+                + EXP_DESC_COL + " TEXT, "
+                + EXP_DATE_COL + " INTEGER NOT NULL, "
+                + EXP_PAYMENT_METHOD_COL + " TEXT, "
+                + EXP_IS_RECURRING_COL + " INTEGER DEFAULT 0, "
+                + EXP_RECURRING_ID_COL + " INTEGER, "
+                + EXP_CREATED_AT + " DATETIME, "
+                + EXP_UPDATED_AT + " DATETIME )";
+    }
+
+    private static String budgetTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " ( "
+                + BUD_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + userReference(BUD_USER_ID_COL)
+                + BUD_CAT_ID_COL + " INTEGER NOT NULL, "
+                + BUD_AMOUNT_COL + " INTEGER NOT NULL, "
+                + BUD_PERIOD_COL + " TEXT NOT NULL, "
+                + BUD_START_DATE_COL + " INTEGER NOT NULL, "
+                + BUD_END_DATE_COL + " INTEGER, "
+                + BUD_CREATED_AT + " DATETIME, "
+                + BUD_UPDATED_AT + " DATETIME )";
+    }
+
+    private static String recurringTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " ( "
+                + REC_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + userReference(REC_USER_ID_COL)
+                + REC_CAT_ID_COL + " INTEGER NOT NULL, "
+                + REC_AMOUNT_COL + " INTEGER NOT NULL, "
+                + REC_DESC_COL + " TEXT, "
+                + REC_FREQUENCY_COL + " TEXT NOT NULL, "
+                + REC_START_DATE_COL + " INTEGER NOT NULL, "
+                + REC_END_DATE_COL + " INTEGER, "
+                + REC_LAST_CHARGED_COL + " INTEGER, "
+                + REC_NEXT_CHARGE_COL + " INTEGER, "
+                + REC_CREATED_AT + " DATETIME, "
+                + REC_UPDATED_AT + " DATETIME )";
+    }
+
+    private static String totalBudgetTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " ( "
+                + TOT_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + userReference(TOT_USER_ID_COL)
+                + TOT_AMOUNT_COL + " INTEGER NOT NULL, "
+                + TOT_PERIOD_COL + " TEXT NOT NULL, "
+                + TOT_START_DATE_COL + " INTEGER NOT NULL, "
+                + TOT_END_DATE_COL + " INTEGER, "
+                + TOT_CREATED_AT + " DATETIME, "
+                + TOT_UPDATED_AT + " DATETIME )";
+    }
+
+    /**
+     * Replace a table with one built from newTableSql, keeping every row and id.
+     * SQLite cannot add constraints to an existing table, so the data is copied into a new
+     * table that then takes the old name. Indexes and triggers on the old table are dropped
+     * with it and must be recreated by the caller.
+     */
+    private static void rebuildTable(SQLiteDatabase db, String table, String newTableSql) {
+        String tempTable = table + "_new";
+        db.execSQL("DROP TABLE IF EXISTS " + tempTable);
+        db.execSQL(newTableSql);
+
+        // Copy the columns both versions share, in case an old file predates some of them
+        List<String> columns = new ArrayList<>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        while (cursor.moveToNext()) {
+            columns.add(cursor.getString(cursor.getColumnIndexOrThrow("name")));
+        }
+        cursor.close();
+        String columnList = String.join(", ", columns);
+
+        db.execSQL("INSERT INTO " + tempTable + " (" + columnList + ") SELECT " + columnList + " FROM " + table);
+        db.execSQL("DROP TABLE " + table);
+        db.execSQL("ALTER TABLE " + tempTable + " RENAME TO " + table);
+    }
+
+    @Override
+    public synchronized void close() {
+        synchronized (statements) {
+            for (SQLiteStatement statement : statements.values()) {
+                statement.close();
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error during database upgrade: " + e.getMessage());
+            statements.clear();
         }
+        cache.clear();
+        super.close();
     }
 
-    // Helper method to create missing tables
-    public void ensureTablesExist() {
-        SQLiteDatabase db = this.getWritableDatabase();
+    /**
+     * Bus announcing every committed write, for screens that need to refresh
+     */
+    public DataChangeBus getChangeBus() {
+        return changeBus;
+    }
 
-        try {
-            // Check if total_budget table exists
-            Cursor cursor = db.rawQuery(
-                    "SELECT name FROM sqlite_master WHERE type='table' AND name=?",
-                    new String[]{TABLE_TOTAL_BUDGET});
+    // Invalidate cached reads of the changed rows and announce the change; call after the write commits
+    private void notifyChanged(DataChange change) {
+        // Expense writes that name their users and categories have already been applied by endWrite
+        boolean untrackedExpenses = change.touches(DataChange.Table.EXPENSES)
+                && (change.getUserIds() == null || change.getCategoryIds() == null);
+        if (untrackedExpenses || change.touches(DataChange.Table.BUDGETS)
+                || change.touches(DataChange.Table.TOTAL_BUDGET) || change.touches(DataChange.Table.CATEGORIES)) {
+            // Category names are shared by every user
+            budgetTracker.invalidate(change.touches(DataChange.Table.CATEGORIES) ? null : change.getUserIds());
+        }
 
-            boolean totalBudgetExists = cursor.getCount() > 0;
+        for (DataChange.Table table : change.getTables()) {
+            String tableName = tableName(table);
+            if (change.getUserIds() == null) {
+                cache.invalidateTable(tableName);
+            } else {
+                for (int userId : change.getUserIds()) {
+                    cache.invalidate(tableName, userId);
+                }
+            }
+        }
+        changeBus.publish(change);
+    }
+
+    private static String tableName(DataChange.Table table) {
+        switch (table) {
+            case CATEGORIES:
+                return TABLE_CATEGORY;
+            case EXPENSES:
+                return TABLE_EXPENSE;
+            case BUDGETS:
+                return TABLE_BUDGET;
+            case TOTAL_BUDGET:
+                return TABLE_TOTAL_BUDGET;
+            default:
+                return TABLE_RECURRING;
+        }
+    }
+
+    /**
+     * Change describing the stored row of an expense, or null if there is no such row.
+     * The row's amount is also added to delta, negated when sign is -1, for writes that
+     * replace or remove it.
+     */
+    private static DataChange expenseRowChange(SQLiteDatabase db, int expenseId, BudgetTracker.Delta delta, int sign) {
+        Cursor cursor = db.query(TABLE_EXPENSE, new String[]{EXP_USER_ID_COL, EXP_CAT_ID_COL, EXP_DATE_COL, EXP_AMOUNT_COL},
+                EXP_ID_COL + " = ?", new String[]{String.valueOf(expenseId)}, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            YearMonth month = YearMonth.from(LocalDate.ofEpochDay(cursor.getLong(2)));
+            delta.add(cursor.getInt(0), cursor.getInt(1), month, sign * cursor.getLong(3));
+            return DataChange.of(DataChange.Table.EXPENSES, cursor.getInt(0), month, cursor.getInt(1));
+        } finally {
             cursor.close();
+        }
+    }
+
+    // Merge two possibly null changes
+    private static DataChange merge(DataChange a, DataChange b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null ? a.merge(b) : a;
+    }
+
+    // Read cache counters, for checking the hit rate in logs
+    public long getCacheHitCount() {
+        return cache.hitCount();
+    }
 
-            if (!totalBudgetExists) {
-                Log.d(TAG, "Total budget table does not exist, creating it now");
-                String createTotalBudgetTable = "CREATE TABLE IF NOT EXISTS " + TABLE_TOTAL_BUDGET + " ( "
-                        + TOT_ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                        + TOT_USER_ID_COL + " INTEGER NOT NULL, "
-                        + TOT_AMOUNT_COL + " REAL NOT NULL, "
-                        + TOT_PERIOD_COL + " TEXT NOT NULL, "
-                        + TOT_START_DATE_COL + " DATE NOT NULL, "
-                        + TOT_END_DATE_COL + " DATE, "
-                        + TOT_CREATED_AT + " DATETIME, "
-                        + TOT_UPDATED_AT + " DATETIME )";
-                db.execSQL(createTotalBudgetTable);
+    public long getCacheMissCount() {
+        return cache.missCount();
+    }
+
+    public long getCacheEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * Get a compiled statement for one of the SQL_* constants, compiling it on first use.
+     * A statement holds its bindings, so callers must synchronize on it from clearBindings()
+     * to execution; batch methods take that lock before opening their transaction.
+     */
+    private SQLiteStatement compiledStatement(String sql) {
+        synchronized (statements) {
+            SQLiteStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = getWritableDatabase().compileStatement(sql);
+                statements.put(sql, statement);
             }
+            return statement;
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Migration.migrate(db, MIGRATIONS, oldVersion, newVersion);
+    }
+
+    // Schema history, one entry per database version; onCreate builds the latest schema directly.
+    // Each step spells out the DDL of its own version rather than calling the current table
+    // helpers, so upgrading an old file still produces the schema that version had
+    private static final Migration[] MIGRATIONS = {
+            new Migration(2, "total_budget table", db -> {
+                // Files first created by the old UserDb helper only contain the user table,
+                // so create whatever is missing rather than just total_budget
+                db.execSQL("CREATE TABLE IF NOT EXISTS categories ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "name TEXT NOT NULL, description TEXT, icon TEXT, color TEXT )");
+                db.execSQL("CREATE TABLE IF NOT EXISTS expenses ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL, category_id INTEGER NOT NULL, amount REAL NOT NULL, "
+                        + "description TEXT, date DATE NOT NULL, payment_method TEXT, is_recurring INTEGER DEFAULT 0, "
+                        + "recurring_expense_id INTEGER, created_at DATETIME, updated_at DATETIME )");
+                db.execSQL("CREATE TABLE IF NOT EXISTS budgets ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL, category_id INTEGER NOT NULL, amount REAL NOT NULL, "
+                        + "period TEXT NOT NULL, start_date DATE NOT NULL, end_date DATE, "
+                        + "created_at DATETIME, updated_at DATETIME )");
+                db.execSQL("CREATE TABLE IF NOT EXISTS recurring_expenses ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL, category_id INTEGER NOT NULL, amount REAL NOT NULL, "
+                        + "description TEXT, frequency TEXT NOT NULL, start_date DATE NOT NULL, end_date DATE, "
+                        + "last_charged DATE, next_charge DATE, created_at DATETIME, updated_at DATETIME )");
+                db.execSQL("CREATE TABLE IF NOT EXISTS total_budget ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL, amount REAL NOT NULL, period TEXT NOT NULL, "
+                        + "start_date DATE NOT NULL, end_date DATE, created_at DATETIME, updated_at DATETIME )");
+                if (DatabaseUtils.queryNumEntries(db, "categories") == 0) {
+                    insertDefaultCategories(db);
+                }
+            }),
+            new Migration(3, "per-user/month indexes", db -> {
+                // Only adds indexes, existing rows are left untouched
+                db.execSQL("CREATE INDEX IF NOT EXISTS idx_expenses_user_date ON expenses (user_id, date)");
+                db.execSQL("CREATE INDEX IF NOT EXISTS idx_expenses_user_category_date ON expenses (user_id, category_id, date)");
+                db.execSQL("CREATE INDEX IF NOT EXISTS idx_budgets_user_category ON budgets (user_id, category_id)");
+                db.execSQL("CREATE INDEX IF NOT EXISTS idx_recurring_user_next_charge ON recurring_expenses (user_id, next_charge)");
+            }),
+            new Migration(4, "monthly_category_totals rollup", db -> {
+                // year_month is the 'yyyy-MM' prefix of the text date here
+                db.execSQL("CREATE TABLE IF NOT EXISTS monthly_category_totals ( user_id INTEGER NOT NULL, "
+                        + "category_id INTEGER NOT NULL, year_month TEXT NOT NULL, total REAL NOT NULL DEFAULT 0, "
+                        + "expense_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (user_id, category_id, year_month) )");
+                execAll(db, TEXT_MONTH_TOTALS_TRIGGERS);
+                db.execSQL("INSERT INTO monthly_category_totals (user_id, category_id, year_month, total, expense_count) "
+                        + "SELECT user_id, category_id, substr(date, 1, 7), SUM(amount), COUNT(*) FROM expenses "
+                        + "GROUP BY user_id, category_id, substr(date, 1, 7)");
+            }),
+            new Migration(5, "user table owned by ExpenseDb, user_id foreign keys", db -> {
+                // The user table used to be created by a separate helper; rebuild the
+                // per-user tables so user_id references it
+                db.execSQL("CREATE TABLE IF NOT EXISTS user ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "username VARCHAR(60) NOT NULL, password VARCHAR(200) NOT NULL, email VARCHAR(60) NOT NULL, "
+                        + "phone VARCHAR(30), role_id INTEGER, created_at DATETIME, updated_at DATETIME, deleted_at DATETIME )");
+                rebuildTable(db, "expenses", "CREATE TABLE expenses_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, category_id INTEGER NOT NULL, "
+                        + "amount REAL NOT NULL, description TEXT, date DATE NOT NULL, payment_method TEXT, "
+                        + "is_recurring INTEGER DEFAULT 0, recurring_expense_id INTEGER, created_at DATETIME, updated_at DATETIME )");
+                rebuildTable(db, "budgets", "CREATE TABLE budgets_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, category_id INTEGER NOT NULL, "
+                        + "amount REAL NOT NULL, period TEXT NOT NULL, start_date DATE NOT NULL, end_date DATE, "
+                        + "created_at DATETIME, updated_at DATETIME )");
+                rebuildTable(db, "recurring_expenses", "CREATE TABLE recurring_expenses_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, category_id INTEGER NOT NULL, "
+                        + "amount REAL NOT NULL, description TEXT, frequency TEXT NOT NULL, start_date DATE NOT NULL, "
+                        + "end_date DATE, last_charged DATE, next_charge DATE, created_at DATETIME, updated_at DATETIME )");
+                rebuildTable(db, "total_budget", "CREATE TABLE total_budget_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, amount REAL NOT NULL, "
+                        + "period TEXT NOT NULL, start_date DATE NOT NULL, end_date DATE, created_at DATETIME, updated_at DATETIME )");
+                // The rebuild dropped the indexes and rollup triggers; the rollup rows are still exact
+                execAll(db, USER_INDEXES);
+                execAll(db, TEXT_MONTH_TOTALS_TRIGGERS);
+            }),
+            new Migration(6, "amounts stored as integer cents", db -> {
+                rebuildTable(db, "expenses", "CREATE TABLE expenses_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, category_id INTEGER NOT NULL, "
+                        + "amount INTEGER NOT NULL, description TEXT, date DATE NOT NULL, payment_method TEXT, "
+                        + "is_recurring INTEGER DEFAULT 0, recurring_expense_id INTEGER, created_at DATETIME, updated_at DATETIME )");
+                rebuildTable(db, "budgets", "CREATE TABLE budgets_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, category_id INTEGER NOT NULL, "
+                        + "amount INTEGER NOT NULL, period TEXT NOT NULL, start_date DATE NOT NULL, end_date DATE, "
+                        + "created_at DATETIME, updated_at DATETIME )");
+                rebuildTable(db, "recurring_expenses", "CREATE TABLE recurring_expenses_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, category_id INTEGER NOT NULL, "
+                        + "amount INTEGER NOT NULL, description TEXT, frequency TEXT NOT NULL, start_date DATE NOT NULL, "
+                        + "end_date DATE, last_charged DATE, next_charge DATE, created_at DATETIME, updated_at DATETIME )");
+                rebuildTable(db, "total_budget", "CREATE TABLE total_budget_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, amount INTEGER NOT NULL, "
+                        + "period TEXT NOT NULL, start_date DATE NOT NULL, end_date DATE, created_at DATETIME, updated_at DATETIME )");
+                // The rebuild dropped the expense triggers, so these updates leave the rollup alone
+                convertToCents(db, "expenses", "amount");
+                convertToCents(db, "budgets", "amount");
+                convertToCents(db, "recurring_expenses", "amount");
+                convertToCents(db, "total_budget", "amount");
+                execAll(db, USER_INDEXES);
+                // Totals become integer cents, so the rollup is recreated and refilled
+                db.execSQL("DROP TABLE IF EXISTS monthly_category_totals");
+                db.execSQL("CREATE TABLE monthly_category_totals ( user_id INTEGER NOT NULL, "
+                        + "category_id INTEGER NOT NULL, year_month TEXT NOT NULL, total INTEGER NOT NULL DEFAULT 0, "
+                        + "expense_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (user_id, category_id, year_month) )");
+                execAll(db, TEXT_MONTH_TOTALS_TRIGGERS);
+                db.execSQL("INSERT INTO monthly_category_totals (user_id, category_id, year_month, total, expense_count) "
+                        + "SELECT user_id, category_id, substr(date, 1, 7), SUM(amount), COUNT(*) FROM expenses "
+                        + "GROUP BY user_id, category_id, substr(date, 1, 7)");
+            }),
+            new Migration(7, "dates stored as epoch days", db -> {
+                rebuildTable(db, "expenses", "CREATE TABLE expenses_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, category_id INTEGER NOT NULL, "
+                        + "amount INTEGER NOT NULL, description TEXT, date INTEGER NOT NULL, payment_method TEXT, "
+                        + "is_recurring INTEGER DEFAULT 0, recurring_expense_id INTEGER, created_at DATETIME, updated_at DATETIME )");
+                rebuildTable(db, "budgets", "CREATE TABLE budgets_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, category_id INTEGER NOT NULL, "
+                        + "amount INTEGER NOT NULL, period TEXT NOT NULL, start_date INTEGER NOT NULL, end_date INTEGER, "
+                        + "created_at DATETIME, updated_at DATETIME )");
+                rebuildTable(db, "recurring_expenses", "CREATE TABLE recurring_expenses_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, category_id INTEGER NOT NULL, "
+                        + "amount INTEGER NOT NULL, description TEXT, frequency TEXT NOT NULL, start_date INTEGER NOT NULL, "
+                        + "end_date INTEGER, last_charged INTEGER, next_charge INTEGER, created_at DATETIME, updated_at DATETIME )");
+                rebuildTable(db, "total_budget", "CREATE TABLE total_budget_new ( id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "user_id INTEGER NOT NULL REFERENCES user(id) ON DELETE CASCADE, amount INTEGER NOT NULL, "
+                        + "period TEXT NOT NULL, start_date INTEGER NOT NULL, end_date INTEGER, created_at DATETIME, updated_at DATETIME )");
+                convertToEpochDays(db, "expenses", "date", true);
+                convertToEpochDays(db, "budgets", "start_date", true);
+                convertToEpochDays(db, "budgets", "end_date", false);
+                convertToEpochDays(db, "recurring_expenses", "start_date", true);
+                convertToEpochDays(db, "recurring_expenses", "end_date", false);
+                convertToEpochDays(db, "recurring_expenses", "last_charged", false);
+                convertToEpochDays(db, "recurring_expenses", "next_charge", false);
+                convertToEpochDays(db, "total_budget", "start_date", true);
+                convertToEpochDays(db, "total_budget", "end_date", false);
+                execAll(db, USER_INDEXES);
+
+                // year_month becomes the integer month index year * 12 + month - 1, so the rollup
+                // is recreated and refilled
+                String month = "(CAST(strftime('%Y', date + 2440587.5) AS INTEGER) * 12 "
+                        + "+ CAST(strftime('%m', date + 2440587.5) AS INTEGER) - 1)";
+                String newMonth = month.replace("date", "NEW.date");
+                String oldMonth = month.replace("date", "OLD.date");
+                db.execSQL("DROP TABLE IF EXISTS monthly_category_totals");
+                db.execSQL("CREATE TABLE monthly_category_totals ( user_id INTEGER NOT NULL, "
+                        + "category_id INTEGER NOT NULL, year_month INTEGER NOT NULL, total INTEGER NOT NULL DEFAULT 0, "
+                        + "expense_count INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (user_id, category_id, year_month) )");
+                db.execSQL("CREATE TRIGGER trg_expenses_totals_insert AFTER INSERT ON expenses BEGIN "
+                        + "INSERT OR IGNORE INTO monthly_category_totals (user_id, category_id, year_month) "
+                        + "VALUES (NEW.user_id, NEW.category_id, " + newMonth + "); "
+                        + "UPDATE monthly_category_totals SET total = total + NEW.amount, expense_count = expense_count + 1 "
+                        + "WHERE user_id = NEW.user_id AND category_id = NEW.category_id AND year_month = " + newMonth + "; END");
+                db.execSQL("CREATE TRIGGER trg_expenses_totals_update AFTER UPDATE OF user_id, category_id, amount, date "
+                        + "ON expenses BEGIN "
+                        + "UPDATE monthly_category_totals SET total = total - OLD.amount, expense_count = expense_count - 1 "
+                        + "WHERE user_id = OLD.user_id AND category_id = OLD.category_id AND year_month = " + oldMonth + "; "
+                        + "DELETE FROM monthly_category_totals WHERE user_id = OLD.user_id AND category_id = OLD.category_id "
+                        + "AND year_month = " + oldMonth + " AND expense_count <= 0; "
+                        + "INSERT OR IGNORE INTO monthly_category_totals (user_id, category_id, year_month) "
+                        + "VALUES (NEW.user_id, NEW.category_id, " + newMonth + "); "
+                        + "UPDATE monthly_category_totals SET total = total + NEW.amount, expense_count = expense_count + 1 "
+                        + "WHERE user_id = NEW.user_id AND category_id = NEW.category_id AND year_month = " + newMonth + "; END");
+                db.execSQL("CREATE TRIGGER trg_expenses_totals_delete AFTER DELETE ON expenses BEGIN "
+                        + "UPDATE monthly_category_totals SET total = total - OLD.amount, expense_count = expense_count - 1 "
+                        + "WHERE user_id = OLD.user_id AND category_id = OLD.category_id AND year_month = " + oldMonth + "; "
+                        + "DELETE FROM monthly_category_totals WHERE user_id = OLD.user_id AND category_id = OLD.category_id "
+                        + "AND year_month = " + oldMonth + " AND expense_count <= 0; END");
+                db.execSQL("INSERT INTO monthly_category_totals (user_id, category_id, year_month, total, expense_count) "
+                        + "SELECT user_id, category_id, " + month + ", SUM(amount), COUNT(*) FROM expenses "
+                        + "GROUP BY user_id, category_id, " + month);
+            }),
+            new Migration(8, "budget_alerts table", db -> {
+                // Throttle times used to live in SharedPreferences; they start empty here
+                db.execSQL("CREATE TABLE IF NOT EXISTS budget_alerts ( "
+                        + "budget_id INTEGER PRIMARY KEY REFERENCES budgets(id) ON DELETE CASCADE, "
+                        + "year_month INTEGER NOT NULL, level INTEGER NOT NULL DEFAULT 0, "
+                        + "notified_at INTEGER NOT NULL DEFAULT 0 )");
+            }),
+            new Migration(9, "expense_versions counter", db -> {
+                // Starts empty; a missing row reads as version 0
+                db.execSQL("CREATE TABLE IF NOT EXISTS expense_versions ( user_id INTEGER PRIMARY KEY, "
+                        + "version INTEGER NOT NULL DEFAULT 0 )");
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_expenses_version_insert AFTER INSERT ON expenses BEGIN "
+                        + "INSERT OR IGNORE INTO expense_versions (user_id) VALUES (NEW.user_id); "
+                        + "UPDATE expense_versions SET version = version + 1 WHERE user_id = NEW.user_id; END");
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_expenses_version_update AFTER UPDATE ON expenses BEGIN "
+                        + "INSERT OR IGNORE INTO expense_versions (user_id) VALUES (OLD.user_id); "
+                        + "INSERT OR IGNORE INTO expense_versions (user_id) VALUES (NEW.user_id); "
+                        + "UPDATE expense_versions SET version = version + 1 "
+                        + "WHERE user_id = OLD.user_id OR user_id = NEW.user_id; END");
+                db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_expenses_version_delete AFTER DELETE ON expenses BEGIN "
+                        + "INSERT OR IGNORE INTO expense_versions (user_id) VALUES (OLD.user_id); "
+                        + "UPDATE expense_versions SET version = version + 1 WHERE user_id = OLD.user_id; END");
+            }),
+    };
+
+    // Indexes of versions 5 to 7, recreated by each step that rebuilds the tables
+    private static final String[] USER_INDEXES = {
+            "CREATE INDEX IF NOT EXISTS idx_expenses_user_date ON expenses (user_id, date)",
+            "CREATE INDEX IF NOT EXISTS idx_expenses_user_category_date ON expenses (user_id, category_id, date)",
+            "CREATE INDEX IF NOT EXISTS idx_budgets_user_category ON budgets (user_id, category_id)",
+            "CREATE INDEX IF NOT EXISTS idx_recurring_user_next_charge ON recurring_expenses (user_id, next_charge)",
+            "CREATE INDEX IF NOT EXISTS idx_total_budget_user_period ON total_budget (user_id, period)",
+            "CREATE INDEX IF NOT EXISTS idx_user_username ON user (username, email)"
+    };
+
+    // Rollup triggers of versions 4 to 6, keyed by the 'yyyy-MM' prefix of the text date
+    private static final String[] TEXT_MONTH_TOTALS_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS trg_expenses_totals_insert AFTER INSERT ON expenses BEGIN "
+                    + "INSERT OR IGNORE INTO monthly_category_totals (user_id, category_id, year_month) "
+                    + "VALUES (NEW.user_id, NEW.category_id, substr(NEW.date, 1, 7)); "
+                    + "UPDATE monthly_category_totals SET total = total + NEW.amount, expense_count = expense_count + 1 "
+                    + "WHERE user_id = NEW.user_id AND category_id = NEW.category_id "
+                    + "AND year_month = substr(NEW.date, 1, 7); END",
+            "CREATE TRIGGER IF NOT EXISTS trg_expenses_totals_update AFTER UPDATE OF user_id, category_id, amount, date "
+                    + "ON expenses BEGIN "
+                    + "UPDATE monthly_category_totals SET total = total - OLD.amount, expense_count = expense_count - 1 "
+                    + "WHERE user_id = OLD.user_id AND category_id = OLD.category_id "
+                    + "AND year_month = substr(OLD.date, 1, 7); "
+                    + "DELETE FROM monthly_category_totals WHERE user_id = OLD.user_id AND category_id = OLD.category_id "
+                    + "AND year_month = substr(OLD.date, 1, 7) AND expense_count <= 0; "
+                    + "INSERT OR IGNORE INTO monthly_category_totals (user_id, category_id, year_month) "
+                    + "VALUES (NEW.user_id, NEW.category_id, substr(NEW.date, 1, 7)); "
+                    + "UPDATE monthly_category_totals SET total = total + NEW.amount, expense_count = expense_count + 1 "
+                    + "WHERE user_id = NEW.user_id AND category_id = NEW.category_id "
+                    + "AND year_month = substr(NEW.date, 1, 7); END",
+            "CREATE TRIGGER IF NOT EXISTS trg_expenses_totals_delete AFTER DELETE ON expenses BEGIN "
+                    + "UPDATE monthly_category_totals SET total = total - OLD.amount, expense_count = expense_count - 1 "
+                    + "WHERE user_id = OLD.user_id AND category_id = OLD.category_id "
+                    + "AND year_month = substr(OLD.date, 1, 7); "
+                    + "DELETE FROM monthly_category_totals WHERE user_id = OLD.user_id AND category_id = OLD.category_id "
+                    + "AND year_month = substr(OLD.date, 1, 7) AND expense_count <= 0; END"
+    };
+
+    private static void execAll(SQLiteDatabase db, String[] statements) {
+        for (String sql : statements) {
+            db.execSQL(sql);
+        }
+    }
+
+    // Helper method to turn a REAL dollar column into whole cents
+    private static void convertToCents(SQLiteDatabase db, String table, String column) {
+        db.execSQL("UPDATE " + table + " SET " + column + " = CAST(ROUND(" + column + " * 100) AS INTEGER)");
+    }
+
+    /**
+     * Turn a yyyy-MM-dd text column into epoch days.
+     * Text SQLite cannot read as a date becomes NULL, or today for a NOT NULL column, the same
+     * fallback the old date parsing used.
+     */
+    private static void convertToEpochDays(SQLiteDatabase db, String table, String column, boolean notNull) {
+        String epochDay = "CAST(julianday(" + column + ") - " + JULIAN_DAY_OF_EPOCH + " AS INTEGER)";
+        if (notNull) {
+            epochDay = "COALESCE(" + epochDay + ", CAST(julianday('now', 'localtime') - "
+                    + JULIAN_DAY_OF_EPOCH + " AS INTEGER))";
+        }
+        db.execSQL("UPDATE " + table + " SET " + column + " = " + epochDay);
+    }
+
+
+    // Helper method to create the indexes backing the per-user and per-month queries
+    private static void createIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + IDX_EXPENSE_USER_DATE + " ON " + TABLE_EXPENSE
+                + " (" + EXP_USER_ID_COL + ", " + EXP_DATE_COL + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + IDX_EXPENSE_USER_CAT_DATE + " ON " + TABLE_EXPENSE
+                + " (" + EXP_USER_ID_COL + ", " + EXP_CAT_ID_COL + ", " + EXP_DATE_COL + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + IDX_BUDGET_USER_CAT + " ON " + TABLE_BUDGET
+                + " (" + BUD_USER_ID_COL + ", " + BUD_CAT_ID_COL + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + IDX_RECURRING_USER_NEXT + " ON " + TABLE_RECURRING
+                + " (" + REC_USER_ID_COL + ", " + REC_NEXT_CHARGE_COL + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + IDX_TOTAL_BUDGET_USER + " ON " + TABLE_TOTAL_BUDGET
+                + " (" + TOT_USER_ID_COL + ", " + TOT_PERIOD_COL + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + IDX_USER_USERNAME + " ON " + TABLE_USER
+                + " (" + USER_USERNAME_COL + ", " + USER_EMAIL_COL + ")");
+    }
+
+    /**
+     * Create the monthly_category_totals rollup and the triggers that maintain it.
+     * Every insert, update and delete on expenses adjusts the (user, category, month) row,
+     * so monthly sums are a primary key lookup instead of a scan over the expenses.
+     */
+    private static void createMonthlyTotals(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_MONTHLY_TOTALS + " ( "
+                + MT_USER_ID_COL + " INTEGER NOT NULL, "
+                + MT_CAT_ID_COL + " INTEGER NOT NULL, "
+                + MT_YEAR_MONTH_COL + " INTEGER NOT NULL, "
+                + MT_TOTAL_COL + " INTEGER NOT NULL DEFAULT 0, "
+                + MT_COUNT_COL + " INTEGER NOT NULL DEFAULT 0, "
+                + "PRIMARY KEY (" + MT_USER_ID_COL + ", " + MT_CAT_ID_COL + ", " + MT_YEAR_MONTH_COL + ") )");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRG_EXPENSE_INSERT
+                + " AFTER INSERT ON " + TABLE_EXPENSE + " BEGIN "
+                + addToMonthlyTotals("NEW")
+                + " END");
+
+        // Only fires when a column that affects the rollup changes; an expense moved to another
+        // month or category is taken out of its old row and added to the new one
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRG_EXPENSE_UPDATE
+                + " AFTER UPDATE OF " + EXP_USER_ID_COL + ", " + EXP_CAT_ID_COL + ", "
+                + EXP_AMOUNT_COL + ", " + EXP_DATE_COL + " ON " + TABLE_EXPENSE + " BEGIN "
+                + removeFromMonthlyTotals("OLD")
+                + addToMonthlyTotals("NEW")
+                + " END");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRG_EXPENSE_DELETE
+                + " AFTER DELETE ON " + TABLE_EXPENSE + " BEGIN "
+                + removeFromMonthlyTotals("OLD")
+                + " END");
+    }
+
+    // Budget alert state, one row per budget that has reached a threshold
+    private static void createBudgetAlerts(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_BUDGET_ALERTS + " ( "
+                + BA_BUDGET_ID_COL + " INTEGER PRIMARY KEY REFERENCES " + TABLE_BUDGET + "(" + BUD_ID_COL
+                + ") ON DELETE CASCADE, "
+                + BA_YEAR_MONTH_COL + " INTEGER NOT NULL, "
+                + BA_LEVEL_COL + " INTEGER NOT NULL DEFAULT 0, "
+                + BA_NOTIFIED_AT_COL + " INTEGER NOT NULL DEFAULT 0 )");
+    }
+
+    /**
+     * Create expense_versions and the triggers that bump a user's version on every insert,
+     * update and delete of their expenses, whichever column changed. Equal versions therefore
+     * mean the user's expenses have not been written since, which report caching relies on.
+     */
+    private static void createExpenseVersions(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_EXPENSE_VERSIONS + " ( "
+                + EV_USER_ID_COL + " INTEGER PRIMARY KEY, "
+                + EV_VERSION_COL + " INTEGER NOT NULL DEFAULT 0 )");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRG_EXPENSE_VERSION_INSERT
+                + " AFTER INSERT ON " + TABLE_EXPENSE + " BEGIN "
+                + bumpExpenseVersion("NEW." + EXP_USER_ID_COL)
+                + " END");
+
+        // An expense moved to another user changes both users' expenses
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRG_EXPENSE_VERSION_UPDATE
+                + " AFTER UPDATE ON " + TABLE_EXPENSE + " BEGIN "
+                + "INSERT OR IGNORE INTO " + TABLE_EXPENSE_VERSIONS + " (" + EV_USER_ID_COL + ") VALUES (OLD."
+                + EXP_USER_ID_COL + "); "
+                + "INSERT OR IGNORE INTO " + TABLE_EXPENSE_VERSIONS + " (" + EV_USER_ID_COL + ") VALUES (NEW."
+                + EXP_USER_ID_COL + "); "
+                + "UPDATE " + TABLE_EXPENSE_VERSIONS + " SET " + EV_VERSION_COL + " = " + EV_VERSION_COL + " + 1"
+                + " WHERE " + EV_USER_ID_COL + " = OLD." + EXP_USER_ID_COL
+                + " OR " + EV_USER_ID_COL + " = NEW." + EXP_USER_ID_COL + ";"
+                + " END");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRG_EXPENSE_VERSION_DELETE
+                + " AFTER DELETE ON " + TABLE_EXPENSE + " BEGIN "
+                + bumpExpenseVersion("OLD." + EXP_USER_ID_COL)
+                + " END");
+    }
+
+    // Trigger body adding one to a user's expense version, creating the row at 0 first
+    private static String bumpExpenseVersion(String userId) {
+        return "INSERT OR IGNORE INTO " + TABLE_EXPENSE_VERSIONS + " (" + EV_USER_ID_COL + ") VALUES ("
+                + userId + "); "
+                + "UPDATE " + TABLE_EXPENSE_VERSIONS + " SET " + EV_VERSION_COL + " = " + EV_VERSION_COL + " + 1"
+                + " WHERE " + EV_USER_ID_COL + " = " + userId + "; ";
+    }
+
+    // Trigger body adding the NEW/OLD row to its monthly total
+    private static String addToMonthlyTotals(String row) {
+        String month = monthKeySql(row + "." + EXP_DATE_COL);
+        return "INSERT OR IGNORE INTO " + TABLE_MONTHLY_TOTALS + " (" + MT_USER_ID_COL + ", "
+                + MT_CAT_ID_COL + ", " + MT_YEAR_MONTH_COL + ") VALUES ("
+                + row + "." + EXP_USER_ID_COL + ", " + row + "." + EXP_CAT_ID_COL + ", " + month + "); "
+                + "UPDATE " + TABLE_MONTHLY_TOTALS + " SET "
+                + MT_TOTAL_COL + " = " + MT_TOTAL_COL + " + " + row + "." + EXP_AMOUNT_COL + ", "
+                + MT_COUNT_COL + " = " + MT_COUNT_COL + " + 1"
+                + monthlyTotalsKey(row, month) + "; ";
+    }
+
+    // Trigger body removing the NEW/OLD row from its monthly total, dropping emptied rows
+    private static String removeFromMonthlyTotals(String row) {
+        String month = monthKeySql(row + "." + EXP_DATE_COL);
+        return "UPDATE " + TABLE_MONTHLY_TOTALS + " SET "
+                + MT_TOTAL_COL + " = " + MT_TOTAL_COL + " - " + row + "." + EXP_AMOUNT_COL + ", "
+                + MT_COUNT_COL + " = " + MT_COUNT_COL + " - 1"
+                + monthlyTotalsKey(row, month) + "; "
+                + "DELETE FROM " + TABLE_MONTHLY_TOTALS
+                + monthlyTotalsKey(row, month) + " AND " + MT_COUNT_COL + " <= 0; ";
+    }
+
+    private static String monthlyTotalsKey(String row, String month) {
+        return " WHERE " + MT_USER_ID_COL + " = " + row + "." + EXP_USER_ID_COL
+                + " AND " + MT_CAT_ID_COL + " = " + row + "." + EXP_CAT_ID_COL
+                + " AND " + MT_YEAR_MONTH_COL + " = " + month;
+    }
+
+    // SQL turning an epoch-day expression into the rollup's month index, see monthKey
+    private static String monthKeySql(String epochDay) {
+        String julianDay = epochDay + " + " + JULIAN_DAY_OF_EPOCH;
+        return "(CAST(strftime('%Y', " + julianDay + ") AS INTEGER) * 12 + CAST(strftime('%m', "
+                + julianDay + ") AS INTEGER) - 1)";
+    }
+
+    /**
+     * Month index stored in monthly_category_totals.year_month: year * 12 + month - 1.
+     * Consecutive months are consecutive integers, so month ranges are integer ranges.
+     */
+    private static int monthKey(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    // Recompute the whole rollup from the expenses table
+    private static void rebuildMonthlyTotals(SQLiteDatabase db) {
+        String month = monthKeySql(EXP_DATE_COL);
+        db.execSQL("DELETE FROM " + TABLE_MONTHLY_TOTALS);
+        db.execSQL("INSERT INTO " + TABLE_MONTHLY_TOTALS + " (" + MT_USER_ID_COL + ", " + MT_CAT_ID_COL + ", "
+                + MT_YEAR_MONTH_COL + ", " + MT_TOTAL_COL + ", " + MT_COUNT_COL + ")"
+                + " SELECT " + EXP_USER_ID_COL + ", " + EXP_CAT_ID_COL + ", " + month + ", "
+                + "SUM(" + EXP_AMOUNT_COL + "), COUNT(*) FROM " + TABLE_EXPENSE
+                + " GROUP BY " + EXP_USER_ID_COL + ", " + EXP_CAT_ID_COL + ", " + month);
+    }
+
+    /**
+     * Repair command: drop and recompute monthly_category_totals from the raw expenses.
+     * The triggers keep the rollup exact, so this is only needed after data was changed
+     * outside this helper (manual edits, restored backups) or to recover from corruption.
+     * @return true if the rollup was rebuilt
+     */
+    public boolean repairMonthlyTotals() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            createMonthlyTotals(db);
+            rebuildMonthlyTotals(db);
+            db.setTransactionSuccessful();
+            Log.d(TAG, "Rebuilt monthly_category_totals from expenses");
+            return true;
         } catch (Exception e) {
-            Log.e(TAG, "Error ensuring tables exist: " + e.getMessage());
+            Log.e(TAG, "Error rebuilding monthly totals: " + e.getMessage());
+            return false;
         } finally {
-            db.close();
+            db.endTransaction();
+            notifyChanged(DataChange.of(DataChange.Table.EXPENSES, null, null, null));
         }
     }
 
+    /**
+     * Convert a month into a half-open [first day, first day of next month) epoch-day range
+     * for an integer range scan on the date indexes.
+     */
+    private static String[] monthRange(YearMonth month) {
+        return new String[]{String.valueOf(month.atDay(1).toEpochDay()),
+                String.valueOf(month.plusMonths(1).atDay(1).toEpochDay())};
+    }
+
     // Helper method to insert default categories
-    private void insertDefaultCategories(SQLiteDatabase db) {
+    private static void insertDefaultCategories(SQLiteDatabase db) {
         String[] categories = {"Housing", "Food", "Transportation", "Entertainment", "Education", "Health", "Personal", "Utilities", "Other"};
         String[] colors = {"#FF5722", "#4CAF50", "#2196F3", "#9C27B0", "#FFC107", "#E91E63", "#3F51B5", "#009688", "#607D8B"};
         String[] icons = {"home", "restaurant", "directions_car", "movie", "school", "local_hospital", "person", "power", "more_horiz"};
@@ -256,7 +937,9 @@ public class ExpenseDb extends SQLiteOpenHelper {
         values.put(CAT_ICON_COL, icon);
         values.put(CAT_COLOR_COL, color);
         long id = db.insert(TABLE_CATEGORY, null, values);
-        db.close();
+        if (id != -1) {
+            notifyChanged(DataChange.of(DataChange.Table.CATEGORIES, null, null, (int) id));
+        }
         return id;
     }
 
@@ -273,7 +956,9 @@ public class ExpenseDb extends SQLiteOpenHelper {
         String[] whereArgs = {String.valueOf(category.getId())};
 
         int rowsAffected = db.update(TABLE_CATEGORY, values, whereClause, whereArgs);
-        db.close();
+        if (rowsAffected > 0) {
+            notifyChanged(DataChange.of(DataChange.Table.CATEGORIES, null, null, category.getId()));
+        }
         return rowsAffected > 0;
     }
 
@@ -289,7 +974,6 @@ public class ExpenseDb extends SQLiteOpenHelper {
 
         if (count > 0) {
             // Category is in use, can't delete
-            db.close();
             return false;
         }
 
@@ -298,154 +982,912 @@ public class ExpenseDb extends SQLiteOpenHelper {
         String[] whereArgs = {String.valueOf(categoryId)};
 
         int rowsAffected = db.delete(TABLE_CATEGORY, whereClause, whereArgs);
-        db.close();
+        if (rowsAffected > 0) {
+            notifyChanged(DataChange.of(DataChange.Table.CATEGORIES, null, null, categoryId));
+        }
         return rowsAffected > 0;
     }
 
-    @SuppressLint("Range")
     public List<Category> getAllCategories() {
-        List<Category> categoryList = new ArrayList<>();
+        List<Category> cached = cache.get(TABLE_CATEGORY, QueryCache.ALL_USERS, "all", () -> {
+            SQLiteDatabase db = this.getReadableDatabase();
+
+            Cursor cursor = db.query(TABLE_CATEGORY, CategoryRowMapper.COLUMNS, null,
+                    null, null, null, CAT_NAME_COL + " ASC");
+
+            return new CategoryRowMapper(cursor).mapAll();
+        });
+
+        // Callers edit and extend the list, so hand out copies of the cached rows
+        List<Category> categories = new ArrayList<>(cached.size());
+        for (Category category : cached) {
+            categories.add(new Category(category.getId(), category.getName(), category.getDescription(),
+                    category.getIcon(), category.getColor()));
+        }
+        return categories;
+    }
+
+    // CRUD operations for Expenses
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    public long insertExpense(int userId, int categoryId, long amountCents, String description,
+                              LocalDate date, String paymentMethod, boolean isRecurring, Integer recurringExpenseId) {
+
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        ZonedDateTime zoneDt = ZonedDateTime.now();
+        String currentDate = dtf.format(zoneDt);
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement insert = compiledStatement(SQL_INSERT_EXPENSE);
+        DataChange change = DataChange.of(DataChange.Table.EXPENSES, userId, YearMonth.from(date), categoryId);
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        delta.add(userId, categoryId, YearMonth.from(date), amountCents);
+        List<BudgetAlert> alerts;
+        long id;
+        BudgetTracker.Delta committed = null;
+        synchronized (insert) {
+            db.beginTransactionNonExclusive();
+            budgetTracker.beginWrite();
+            try {
+                bindExpenseInsert(insert, userId, categoryId, amountCents, description, date,
+                        paymentMethod, isRecurring, recurringExpenseId, currentDate);
+                id = insert.executeInsert();
+                alerts = evaluateBudgetAlerts(db, change, delta);
+                db.setTransactionSuccessful();
+                committed = delta;
+            } catch (Exception e) {
+                Log.e(TAG, "Error inserting expense: " + e.getMessage());
+                return -1;
+            } finally {
+                endExpenseWrite(db, committed);
+            }
+        }
+
+        notifyChanged(change);
+        deliverBudgetAlerts(alerts);
+        return id;
+    }
+
+    // Helper method to bind all columns of SQL_INSERT_EXPENSE
+    private static void bindExpenseInsert(SQLiteStatement insert, int userId, int categoryId, long amountCents,
+                                          String description, LocalDate date, String paymentMethod,
+                                          boolean isRecurring, Integer recurringExpenseId, String timestamp) {
+        insert.clearBindings();
+        insert.bindLong(1, userId);
+        insert.bindLong(2, categoryId);
+        insert.bindLong(3, amountCents);
+        bindNullableString(insert, 4, description);
+        insert.bindLong(5, date.toEpochDay());
+        bindNullableString(insert, 6, paymentMethod);
+        insert.bindLong(7, isRecurring ? 1 : 0);
+        if (recurringExpenseId != null) {
+            insert.bindLong(8, recurringExpenseId);
+        }
+        insert.bindString(9, timestamp);
+        insert.bindString(10, timestamp);
+    }
+
+    /**
+     * Insert an expense only if it fits its category budget and the monthly total budget.
+     * The checks and the insert run in one immediate transaction, which takes the write lock
+     * before reading, so two saves cannot both pass against the same remaining budget.
+     * @param allowWithoutBudget Insert even if the category has no budget; the total budget still applies
+     * @return INSERTED with the new row id, or why the expense was not inserted
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    public ExpenseInsertResult insertExpenseWithinBudget(int userId, int categoryId, long amountCents,
+                                                         String description, LocalDate date, String paymentMethod,
+                                                         boolean allowWithoutBudget) {
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        String currentDate = dtf.format(ZonedDateTime.now());
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement insert = compiledStatement(SQL_INSERT_EXPENSE);
+        DataChange change = DataChange.of(DataChange.Table.EXPENSES, userId, YearMonth.from(date), categoryId);
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        delta.add(userId, categoryId, YearMonth.from(date), amountCents);
+        List<BudgetAlert> alerts = Collections.emptyList();
+        ExpenseInsertResult result;
+        BudgetTracker.Delta committed = null;
+        synchronized (insert) {
+            db.beginTransactionNonExclusive();
+            budgetTracker.beginWrite();
+            try {
+                result = checkBudgets(db, userId, categoryId, amountCents, YearMonth.from(date), allowWithoutBudget);
+                if (result == null) {
+                    bindExpenseInsert(insert, userId, categoryId, amountCents, description, date,
+                            paymentMethod, false, null, currentDate);
+                    result = ExpenseInsertResult.inserted(insert.executeInsert());
+                    alerts = evaluateBudgetAlerts(db, change, delta);
+                    db.setTransactionSuccessful();
+                    committed = delta;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error inserting expense within budget: " + e.getMessage());
+                result = ExpenseInsertResult.failed();
+            } finally {
+                endExpenseWrite(db, committed);
+            }
+        }
+
+        if (result.isInserted()) {
+            notifyChanged(change);
+            deliverBudgetAlerts(alerts);
+        }
+        return result;
+    }
+
+    /**
+     * Check an amount about to be spent against the category budget, then the monthly total
+     * budget if one is set. Must run inside the caller's transaction, registered with
+     * budgetTracker.beginWrite. The current month is checked against usageForWrite; other months
+     * read the rollup, going past the cache so they see the same rows as the insert that follows.
+     * @return null if the amount fits, otherwise the rejection to return
+     */
+    private ExpenseInsertResult checkBudgets(SQLiteDatabase db, int userId, int categoryId, long amountCents,
+                                             YearMonth month, boolean allowWithoutBudget) {
+        Long categoryBudget = null;
+        long spent;
+        long totalBudget;
+        long totalSpent;
+        if (month.equals(YearMonth.now())) {
+            BudgetTracker.Usage usage = usageForWrite(db, userId, null);
+            BudgetTracker.CategoryBudget budget = usage.getBudget(categoryId);
+            if (budget != null) {
+                categoryBudget = budget.getAmountCents();
+            }
+            spent = usage.getSpentCents(categoryId);
+            totalBudget = usage.getTotalBudgetCents();
+            totalSpent = usage.getTotalSpentCents();
+        } else {
+            String user = String.valueOf(userId);
+            String category = String.valueOf(categoryId);
+            String monthIndex = String.valueOf(monthKey(month));
+
+            // Same budget row as checkCategoryBudgetBalance, found through the user/category index
+            Cursor cursor = db.rawQuery("SELECT " + BUD_AMOUNT_COL + " FROM " + TABLE_BUDGET +
+                    " WHERE " + BUD_USER_ID_COL + " = ? AND " + BUD_CAT_ID_COL + " = ? LIMIT 1",
+                    new String[]{user, category});
+            try {
+                if (cursor.moveToFirst()) {
+                    categoryBudget = cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            spent = DatabaseUtils.longForQuery(db, SQL_TOTAL_BY_CATEGORY_AND_MONTH,
+                    new String[]{user, category, monthIndex});
+            totalBudget = loadTotalBudget(userId, "monthly");
+            totalSpent = DatabaseUtils.longForQuery(db, SQL_TOTAL_BY_MONTH, new String[]{user, monthIndex});
+        }
+
+        if (categoryBudget == null) {
+            if (!allowWithoutBudget) {
+                return ExpenseInsertResult.rejected(ExpenseInsertResult.Status.NO_CATEGORY_BUDGET, 0);
+            }
+        } else if (spent + amountCents > categoryBudget) {
+            return ExpenseInsertResult.rejected(ExpenseInsertResult.Status.OVER_CATEGORY_BUDGET,
+                    categoryBudget - spent);
+        }
+
+        // A total budget of zero means none is set
+        if (totalBudget > 0 && totalSpent + amountCents > totalBudget) {
+            return ExpenseInsertResult.rejected(ExpenseInsertResult.Status.OVER_TOTAL_BUDGET,
+                    totalBudget - totalSpent);
+        }
+
+        return null;
+    }
+
+    /**
+     * Get a user's spending and budgets for the current month from the budget tracker,
+     * seeding it with one query if the user is not tracked yet or the month has changed.
+     */
+    public BudgetTracker.Usage getBudgetUsage(int userId) {
+        YearMonth month = YearMonth.now();
+        BudgetTracker.Usage usage = budgetTracker.get(userId, month);
+        if (usage != null) {
+            return usage;
+        }
+
+        // One statement outside any transaction is its own read transaction on a pooled WAL
+        // connection, so seeding neither waits for nor blocks writers
+        long seed = budgetTracker.seedGeneration();
+        usage = loadBudgetUsage(this.getReadableDatabase(), userId, month);
+        if (budgetTracker.install(usage, seed)) {
+            Log.d(TAG, "Seeded budget tracker: " + usage);
+        }
+        return usage;
+    }
+
+    /**
+     * Tracker for getBudgetUsage, exposed for its counters
+     */
+    public BudgetTracker getBudgetTracker() {
+        return budgetTracker;
+    }
+
+    /**
+     * Compare the budget tracker's usage for a user with the database, replacing it if they
+     * differ. Meant for tests and periodic checks; it runs the seed query every time.
+     * @return The differences found, empty if the tracker was consistent, not holding the user
+     * or an expense write overlapped the check
+     */
+    public List<String> verifyBudgetTracker(int userId) {
+        long seed = budgetTracker.seedGeneration();
+        List<String> differences = budgetTracker.verify(
+                loadBudgetUsage(this.getReadableDatabase(), userId, YearMonth.now()), seed);
+
+        if (!differences.isEmpty()) {
+            Log.e(TAG, "Budget tracker out of step for user " + userId + ": " + differences);
+        }
+        return differences;
+    }
+
+    /**
+     * A user's current-month usage inside an expense write's transaction, including the changes
+     * in delta. Taken from the tracker when this is the only write in progress; otherwise read
+     * inside the transaction, which already sees the write's own rows. Neither is installed:
+     * the tracker only takes this write's changes once it has committed.
+     */
+    private BudgetTracker.Usage usageForWrite(SQLiteDatabase db, int userId, @Nullable BudgetTracker.Delta delta) {
+        YearMonth month = YearMonth.now();
+        BudgetTracker.Usage usage = budgetTracker.getForWrite(userId, month);
+        if (usage == null) {
+            return loadBudgetUsage(db, userId, month);
+        }
+        return delta != null ? usage.plus(delta.changesFor(userId, month)) : usage;
+    }
+
+    // Read a month's spending per category, the category budgets and the total budget in one query
+    private static BudgetTracker.Usage loadBudgetUsage(SQLiteDatabase db, int userId, YearMonth month) {
+        String user = String.valueOf(userId);
+        String query = "SELECT 0, " + MT_CAT_ID_COL + ", " + MT_TOTAL_COL + ", NULL, NULL FROM " + TABLE_MONTHLY_TOTALS
+                + " WHERE " + MT_USER_ID_COL + " = ? AND " + MT_YEAR_MONTH_COL + " = ?"
+                + " UNION ALL SELECT 1, b." + BUD_CAT_ID_COL + ", b." + BUD_AMOUNT_COL + ", b." + BUD_ID_COL
+                + ", c." + CAT_NAME_COL + " FROM " + TABLE_BUDGET + " b"
+                + " LEFT JOIN " + TABLE_CATEGORY + " c ON c." + CAT_ID_COL + " = b." + BUD_CAT_ID_COL
+                + " WHERE b." + BUD_USER_ID_COL + " = ?"
+                // Same row as loadTotalBudget
+                + " UNION ALL SELECT 2, NULL, " + TOT_AMOUNT_COL + ", NULL, NULL FROM (SELECT " + TOT_AMOUNT_COL
+                + " FROM " + TABLE_TOTAL_BUDGET + " WHERE " + TOT_USER_ID_COL + " = ? AND " + TOT_PERIOD_COL
+                + " = 'monthly' ORDER BY " + TOT_ID_COL + " DESC LIMIT 1)";
+
+        Map<Integer, Long> spent = new HashMap<>();
+        Map<Integer, BudgetTracker.CategoryBudget> budgets = new LinkedHashMap<>();
+        long totalBudget = 0;
+        Cursor cursor = db.rawQuery(query, new String[]{user, String.valueOf(monthKey(month)), user, user});
+        try {
+            while (cursor.moveToNext()) {
+                switch (cursor.getInt(0)) {
+                    case 0:
+                        if (cursor.getLong(2) != 0) {
+                            spent.put(cursor.getInt(1), cursor.getLong(2));
+                        }
+                        break;
+                    case 1:
+                        // A category with several budgets uses the first, like checkBudgets did
+                        int categoryId = cursor.getInt(1);
+                        if (!budgets.containsKey(categoryId)) {
+                            budgets.put(categoryId, new BudgetTracker.CategoryBudget(cursor.getInt(3), categoryId,
+                                    cursor.isNull(4) ? "Unknown" : cursor.getString(4), cursor.getLong(2)));
+                        }
+                        break;
+                    default:
+                        totalBudget = cursor.getLong(2);
+                        break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return new BudgetTracker.Usage(userId, month, totalBudget, spent, budgets);
+    }
+
+    /**
+     * End the transaction of an expense write registered with budgetTracker.beginWrite, then
+     * hand the tracker the write's spending changes if it committed.
+     * @param committed The write's changes if it marked the transaction successful, otherwise null
+     */
+    private void endExpenseWrite(SQLiteDatabase db, @Nullable BudgetTracker.Delta committed) {
+        try {
+            db.endTransaction();
+        } catch (RuntimeException e) {
+            // The commit failed, so nothing was written
+            budgetTracker.endWrite(null);
+            throw e;
+        }
+        budgetTracker.endWrite(committed);
+    }
+
+    /**
+     * Set who decides the budget alert thresholds and receives the alerts.
+     * Every expense write then compares the current month's total of each category it touched
+     * with that category's budget, in the write's own transaction, and reports a threshold the
+     * total has newly crossed. The level reached and the time of the last alert are stored per
+     * budget in budget_alerts, so each crossing is reported once and alerts for a budget are at
+     * least getWarningFrequency() hours apart.
+     * @param listener The listener, or null to stop evaluating budgets
+     */
+    public void setBudgetAlertListener(@Nullable BudgetAlertListener listener) {
+        budgetAlertListener = listener;
+    }
+
+    /**
+     * Evaluate every budget of a user against the current month, as a write would. Catches what
+     * writes do not: budgets added or lowered, a new month starting and alerts held back by the
+     * frequency limit. Alerts go to the listener as well as being returned.
+     * @return The alerts raised
+     */
+    public List<BudgetAlert> reconcileBudgetAlerts(int userId) {
+        BudgetAlertListener listener = budgetAlertListener;
+        if (listener == null || !listener.areNotificationsEnabled()) {
+            return Collections.emptyList();
+        }
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        long now = System.currentTimeMillis();
+        List<BudgetAlert> alerts = new ArrayList<>();
+        db.beginTransactionNonExclusive();
+        budgetTracker.beginWrite();
+        try {
+            BudgetTracker.Usage usage = usageForWrite(db, userId, null);
+            for (BudgetTracker.CategoryBudget budget : usage.getBudgets()) {
+                BudgetAlert alert = evaluateBudget(db, listener, usage, budget.getCategoryId(), now);
+                if (alert != null) {
+                    alerts.add(alert);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            // Only budget_alerts changes, so there is no spending to apply
+            endExpenseWrite(db, null);
+        }
+
+        deliverBudgetAlerts(alerts);
+        return alerts;
+    }
+
+    /**
+     * Evaluate the budgets of the categories a write changed in the current month. Runs inside
+     * the write's transaction, after the write; delta holds the write's spending changes, which
+     * the budget tracker does not have until it commits. Writes that cannot name their users and
+     * categories are left to reconcileBudgetAlerts.
+     */
+    private List<BudgetAlert> evaluateBudgetAlerts(SQLiteDatabase db, @Nullable DataChange change,
+                                                   BudgetTracker.Delta delta) {
+        BudgetAlertListener listener = budgetAlertListener;
+        YearMonth month = YearMonth.now();
+        if (listener == null || change == null || !change.affectsMonth(month)
+                || change.getUserIds() == null || change.getCategoryIds() == null
+                || !listener.areNotificationsEnabled()) {
+            return Collections.emptyList();
+        }
+
+        long now = System.currentTimeMillis();
+        List<BudgetAlert> alerts = new ArrayList<>();
+        for (int userId : change.getUserIds()) {
+            BudgetTracker.Usage usage = usageForWrite(db, userId, delta);
+            for (int categoryId : change.getCategoryIds()) {
+                BudgetAlert alert = evaluateBudget(db, listener, usage, categoryId, now);
+                if (alert != null) {
+                    alerts.add(alert);
+                }
+            }
+        }
+        return alerts;
+    }
+
+    /**
+     * Compare one category's monthly total with its budget and record the level reached.
+     * Both come from usage; only a category with a budget reads its alert state.
+     * A level above the recorded one is an alert, unless the budget alerted less than the
+     * frequency limit ago; then nothing is recorded, so the next write or reconcile tries again.
+     * A level below the recorded one (an expense deleted or moved) is recorded so that crossing
+     * back up alerts again. The recorded level only counts for its own month.
+     * @return The alert to deliver after commit, or null
+     */
+    private BudgetAlert evaluateBudget(SQLiteDatabase db, BudgetAlertListener listener, BudgetTracker.Usage usage,
+                                       int categoryId, long now) {
+        BudgetTracker.CategoryBudget budget = usage.getBudget(categoryId);
+        if (budget == null) {
+            return null; // No budget, nothing to cross
+        }
+
+        long spent = usage.getSpentCents(categoryId);
+        double percentage = budget.getAmountCents() > 0 ? (double) spent / budget.getAmountCents() : 0;
+        BudgetAlert.Level level = BudgetAlert.Level.NONE;
+        if (percentage >= listener.getExceededThreshold()) {
+            level = BudgetAlert.Level.EXCEEDED;
+        } else if (percentage >= listener.getWarningThreshold()) {
+            level = BudgetAlert.Level.WARNING;
+        }
+
+        int monthIndex = monthKey(usage.getMonth());
+        int recordedLevel = BudgetAlert.Level.NONE.ordinal();
+        long notifiedAt = 0;
+        Cursor cursor = db.rawQuery("SELECT " + BA_YEAR_MONTH_COL + ", " + BA_LEVEL_COL + ", " + BA_NOTIFIED_AT_COL
+                + " FROM " + TABLE_BUDGET_ALERTS + " WHERE " + BA_BUDGET_ID_COL + " = ?",
+                new String[]{String.valueOf(budget.getBudgetId())});
+        try {
+            if (cursor.moveToFirst()) {
+                if (cursor.getInt(0) == monthIndex) {
+                    recordedLevel = cursor.getInt(1);
+                }
+                notifiedAt = cursor.getLong(2);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (level.ordinal() > recordedLevel) {
+            long minInterval = listener.getWarningFrequency() * 60L * 60 * 1000;
+            if (now - notifiedAt < minInterval) {
+                return null;
+            }
+            saveBudgetAlertState(db, budget.getBudgetId(), monthIndex, level, now);
+            return new BudgetAlert(usage.getUserId(), budget.getBudgetId(), categoryId, budget.getCategoryName(),
+                    spent, budget.getAmountCents(), level);
+        }
+        if (level.ordinal() < recordedLevel) {
+            saveBudgetAlertState(db, budget.getBudgetId(), monthIndex, level, notifiedAt);
+        }
+        return null;
+    }
+
+    private static void saveBudgetAlertState(SQLiteDatabase db, int budgetId, int monthIndex,
+                                             BudgetAlert.Level level, long notifiedAt) {
+        ContentValues values = new ContentValues();
+        values.put(BA_BUDGET_ID_COL, budgetId);
+        values.put(BA_YEAR_MONTH_COL, monthIndex);
+        values.put(BA_LEVEL_COL, level.ordinal());
+        values.put(BA_NOTIFIED_AT_COL, notifiedAt);
+        db.insertWithOnConflict(TABLE_BUDGET_ALERTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // Hand committed alerts to the listener; call after the write's transaction has ended
+    private void deliverBudgetAlerts(List<BudgetAlert> alerts) {
+        BudgetAlertListener listener = budgetAlertListener;
+        if (listener == null) {
+            return;
+        }
+        for (BudgetAlert alert : alerts) {
+            try {
+                listener.onBudgetAlert(alert);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error delivering budget alert", e);
+            }
+        }
+    }
+
+    public List<Expense> getExpensesByUser(int userId) {
         SQLiteDatabase db = this.getReadableDatabase();
 
-        Cursor cursor = db.query(TABLE_CATEGORY, null, null,
-                null, null, null, CAT_NAME_COL + " ASC");
+        String selection = EXP_USER_ID_COL + " = ?";
+        String[] selectionArgs = {String.valueOf(userId)};
 
-        if (cursor.moveToFirst()) {
-            do {
-                Category category = new Category();
-                category.setId(cursor.getInt(cursor.getColumnIndex(CAT_ID_COL)));
-                category.setName(cursor.getString(cursor.getColumnIndex(CAT_NAME_COL)));
-                category.setDescription(cursor.getString(cursor.getColumnIndex(CAT_DESC_COL)));
-                category.setIcon(cursor.getString(cursor.getColumnIndex(CAT_ICON_COL)));
-                category.setColor(cursor.getString(cursor.getColumnIndex(CAT_COLOR_COL)));
+        Cursor cursor = db.query(TABLE_EXPENSE, ExpenseRowMapper.COLUMNS, selection,
+                selectionArgs, null, null, EXP_DATE_COL + " DESC");
+
+        return new ExpenseRowMapper(cursor).mapAll();
+    }
+
+    public List<Expense> getExpensesByMonth(int userId, YearMonth month) {
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        String[] range = monthRange(month);
+        String selection = EXP_USER_ID_COL + " = ? AND " + EXP_DATE_COL + " >= ? AND " + EXP_DATE_COL + " < ?";
+        String[] selectionArgs = {String.valueOf(userId), range[0], range[1]};
+
+        Cursor cursor = db.query(TABLE_EXPENSE, ExpenseRowMapper.COLUMNS, selection,
+                selectionArgs, null, null, EXP_DATE_COL + " DESC");
+
+        return new ExpenseRowMapper(cursor).mapAll();
+    }
+
+    /**
+     * Query expenses matching a filter in a single SQL statement.
+     * Filtering, sorting and the limit all run in SQLite on the (user_id, date) and
+     * (user_id, category_id, date) indexes, and the category name and colour are joined in,
+     * so callers receive only the rows they display.
+     * @param filter The filter specification
+     * @return Matching expenses in the requested order
+     */
+    public List<Expense> queryExpenses(ExpenseFilter filter) {
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        List<String> args = new ArrayList<>();
+        Cursor cursor = db.rawQuery(filterQuery(filter, args), args.toArray(new String[0]));
+
+        return new ExpenseRowMapper(cursor).mapAll();
+    }
+
+    /**
+     * Hand the expenses matching a filter to a callback one at a time, in the filter's sort
+     * order and with category names joined in. Rows are mapped straight off the cursor and
+     * not kept, so memory use does not grow with the number of rows; a user and date range
+     * filter is served by the user/date index.
+     * @return Number of rows handed to the callback
+     * @throws IOException If the callback fails; the cursor is closed and no more rows are read
+     */
+    public int streamExpenses(ExpenseFilter filter, ExpenseStream stream) throws IOException {
+        SQLiteDatabase db = this.getReadableDatabase();
 
-                categoryList.add(category);
-            } while (cursor.moveToNext());
+        List<String> args = new ArrayList<>();
+        Cursor cursor = db.rawQuery(filterQuery(filter, args), args.toArray(new String[0]));
+        return streamRows(cursor, stream);
+    }
+
+    /**
+     * Hand the expenses of many users in a date range to a callback, ordered by user and then
+     * newest first, so every user's rows arrive together and in the order of a single user's
+     * report. One query walks the user/date index once, instead of one query per user.
+     * @param userIds Users to include, or null for every user
+     * @return Number of rows handed to the callback
+     * @throws IOException If the callback fails; the cursor is closed and no more rows are read
+     */
+    public int streamExpensesByUser(@Nullable Collection<Integer> userIds, LocalDate startDate, LocalDate endDate,
+                                    ExpenseStream stream) throws IOException {
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        List<String> args = new ArrayList<>();
+        StringBuilder query = new StringBuilder("SELECT " + RowMapper.select("e", ExpenseRowMapper.COLUMNS) +
+                ", c." + CAT_NAME_COL + " AS category_name, c." + CAT_COLOR_COL + " AS category_color FROM " +
+                TABLE_EXPENSE + " e LEFT JOIN " + TABLE_CATEGORY + " c ON c." + CAT_ID_COL + " = e." + EXP_CAT_ID_COL);
+        query.append(" WHERE e.").append(EXP_DATE_COL).append(" >= ? AND e.").append(EXP_DATE_COL).append(" <= ?");
+        args.add(String.valueOf(startDate.toEpochDay()));
+        args.add(String.valueOf(endDate.toEpochDay()));
+        if (userIds != null) {
+            query.append(" AND e.").append(EXP_USER_ID_COL).append(" IN (");
+            appendPlaceholders(query, userIds.size());
+            query.append(")");
+            for (Integer userId : userIds) {
+                args.add(String.valueOf(userId));
+            }
         }
+        query.append(" ORDER BY e.").append(EXP_USER_ID_COL).append(" ASC, ")
+                .append(filterOrderBy(ExpenseFilter.SortOrder.DATE_NEWEST));
 
-        cursor.close();
-        db.close();
-        return categoryList;
+        Cursor cursor = db.rawQuery(query.toString(), args.toArray(new String[0]));
+        return streamRows(cursor, stream);
+    }
+
+    // Map every row of the cursor to the callback, closing the cursor afterwards
+    private static int streamRows(Cursor cursor, ExpenseStream stream) throws IOException {
+        ExpenseRowMapper mapper = new ExpenseRowMapper(cursor);
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                stream.onExpense(mapper.mapRow());
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    /**
+     * Receives the rows of streamExpenses
+     */
+    public interface ExpenseStream {
+        void onExpense(Expense expense) throws IOException;
+    }
+
+    // Helper method to build the SELECT shared by queryExpenses and streamExpenses
+    private String filterQuery(ExpenseFilter filter, List<String> args) {
+        StringBuilder query = new StringBuilder("SELECT " + RowMapper.select("e", ExpenseRowMapper.COLUMNS) +
+                ", c." + CAT_NAME_COL + " AS category_name, c." + CAT_COLOR_COL + " AS category_color FROM " +
+                TABLE_EXPENSE + " e LEFT JOIN " + TABLE_CATEGORY + " c ON c." + CAT_ID_COL + " = e." + EXP_CAT_ID_COL);
+        query.append(" WHERE ").append(buildFilterSelection(filter, args));
+        query.append(" ORDER BY ").append(filterOrderBy(filter.getSortOrder()));
+        if (filter.getLimit() > 0) {
+            query.append(" LIMIT ").append(filter.getLimit());
+        }
+        return query.toString();
     }
 
-    // CRUD operations for Expenses
-    @RequiresApi(api = Build.VERSION_CODES.O)
-    public long insertExpense(int userId, int categoryId, double amount, String description,
-                              String date, String paymentMethod, boolean isRecurring, Integer recurringExpenseId) {
+    // Compile a filter into a parameterized WHERE clause over the "e" expenses alias
+    private String buildFilterSelection(ExpenseFilter filter, List<String> args) {
+        StringBuilder where = new StringBuilder("e." + EXP_USER_ID_COL + " = ?");
+        args.add(String.valueOf(filter.getUserId()));
+
+        if (filter.getStartDate() != null) {
+            where.append(" AND e.").append(EXP_DATE_COL).append(" >= ?");
+            args.add(String.valueOf(filter.getStartDate().toEpochDay()));
+        }
+        if (filter.getEndDate() != null) {
+            where.append(" AND e.").append(EXP_DATE_COL).append(" <= ?");
+            args.add(String.valueOf(filter.getEndDate().toEpochDay()));
+        }
+        if (!filter.getCategoryIds().isEmpty()) {
+            where.append(" AND e.").append(EXP_CAT_ID_COL).append(" IN (");
+            appendPlaceholders(where, filter.getCategoryIds().size());
+            where.append(")");
+            for (Integer categoryId : filter.getCategoryIds()) {
+                args.add(String.valueOf(categoryId));
+            }
+        }
+        if (filter.getMinAmountCents() != null) {
+            where.append(" AND e.").append(EXP_AMOUNT_COL).append(" >= ?");
+            args.add(String.valueOf(filter.getMinAmountCents()));
+        }
+        if (filter.getMaxAmountCents() != null) {
+            where.append(" AND e.").append(EXP_AMOUNT_COL).append(" <= ?");
+            args.add(String.valueOf(filter.getMaxAmountCents()));
+        }
+        if (!filter.getPaymentMethods().isEmpty()) {
+            where.append(" AND e.").append(EXP_PAYMENT_METHOD_COL).append(" IN (");
+            appendPlaceholders(where, filter.getPaymentMethods().size());
+            where.append(")");
+            args.addAll(filter.getPaymentMethods());
+        }
+        if (filter.getRecurring() != null) {
+            where.append(" AND e.").append(EXP_IS_RECURRING_COL).append(" = ?");
+            args.add(filter.getRecurring() ? "1" : "0");
+        }
+        return where.toString();
+    }
+
+    private static void appendPlaceholders(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+    }
+
+    /**
+     * Fetch one page of expenses matching a filter, using keyset pagination.
+     * The page token records the sort key of the last row returned, so each page is an index
+     * range scan that starts where the previous one stopped; cost does not grow with depth the
+     * way LIMIT/OFFSET does. The filter's own limit is ignored.
+     * @param filter The filter specification, including the sort order
+     * @param pageToken Token from the previous page, or null for the first page
+     * @param pageSize Maximum number of expenses in the page
+     * @return The page, with a next page token if more rows follow
+     */
+    public ExpensePage queryExpensePage(ExpenseFilter filter, String pageToken, int pageSize) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        SortKey[] sortKeys = sortKeys(filter.getSortOrder());
+
+        List<String> args = new ArrayList<>();
+        StringBuilder query = expensePageQuery(filter, args);
+
+        String[] after = parsePageToken(pageToken, filter.getSortOrder(), sortKeys.length);
+        if (after != null) {
+            query.append(" AND ").append(keysetPredicate(sortKeys, after, args));
+        }
+        query.append(" ORDER BY ").append(filterOrderBy(filter.getSortOrder()));
+        // One extra row tells whether another page follows
+        query.append(" LIMIT ").append(pageSize + 1);
+
+        Cursor cursor = db.rawQuery(query.toString(), args.toArray(new String[0]));
+        List<Expense> expenses = new ExpenseRowMapper(cursor).mapAll();
 
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        ZonedDateTime zoneDt = ZonedDateTime.now();
-        String currentDate = dtf.format(zoneDt);
+        String nextPageToken = null;
+        if (expenses.size() > pageSize) {
+            expenses = new ArrayList<>(expenses.subList(0, pageSize));
+            nextPageToken = pageToken(filter.getSortOrder(), sortKeys, expenses.get(pageSize - 1));
+        }
+        return new ExpensePage(expenses, nextPageToken);
+    }
 
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
+    /**
+     * Re-read every page loaded so far: the rows matching a filter from the start of the first
+     * page through the sort key in a page token, inclusive. Rows inserted or deleted inside that
+     * range since it was loaded are reflected, but the range does not grow, so a list can swap in
+     * the result and keep its scroll position.
+     * @param pageToken The next page token of the last page loaded, or null if the last page was
+     *                  reached, which re-reads every matching row
+     * @return The rows, carrying pageToken on as the next page token
+     */
+    public ExpensePage queryExpensesThrough(ExpenseFilter filter, @Nullable String pageToken) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        SortKey[] sortKeys = sortKeys(filter.getSortOrder());
 
-        values.put(EXP_USER_ID_COL, userId);
-        values.put(EXP_CAT_ID_COL, categoryId);
-        values.put(EXP_AMOUNT_COL, amount);
-        values.put(EXP_DESC_COL, description);
-        values.put(EXP_DATE_COL, date);
-        values.put(EXP_PAYMENT_METHOD_COL, paymentMethod);
-        values.put(EXP_IS_RECURRING_COL, isRecurring ? 1 : 0);
+        List<String> args = new ArrayList<>();
+        StringBuilder query = expensePageQuery(filter, args);
 
-        if (recurringExpenseId != null) {
-            values.put(EXP_RECURRING_ID_COL, recurringExpenseId);
+        String[] through = parsePageToken(pageToken, filter.getSortOrder(), sortKeys.length);
+        if (through != null) {
+            query.append(" AND NOT ").append(keysetPredicate(sortKeys, through, args));
         }
+        query.append(" ORDER BY ").append(filterOrderBy(filter.getSortOrder()));
 
-        values.put(EXP_CREATED_AT, currentDate);
-        values.put(EXP_UPDATED_AT, currentDate);
+        Cursor cursor = db.rawQuery(query.toString(), args.toArray(new String[0]));
+        return new ExpensePage(new ExpenseRowMapper(cursor).mapAll(), pageToken);
+    }
 
-        long id = db.insert(TABLE_EXPENSE, null, values);
-        db.close();
-        return id;
+    // Expense rows with their category name and color, restricted to the filter
+    private StringBuilder expensePageQuery(ExpenseFilter filter, List<String> args) {
+        StringBuilder query = new StringBuilder("SELECT " + RowMapper.select("e", ExpenseRowMapper.COLUMNS) +
+                ", c." + CAT_NAME_COL + " AS category_name, c." + CAT_COLOR_COL + " AS category_color FROM " +
+                TABLE_EXPENSE + " e LEFT JOIN " + TABLE_CATEGORY + " c ON c." + CAT_ID_COL + " = e." + EXP_CAT_ID_COL);
+        return query.append(" WHERE ").append(buildFilterSelection(filter, args));
     }
 
+    /**
+     * Sum the amounts of every expense matching a filter, in cents.
+     * Paged screens use this for their total instead of adding up the rows they have loaded.
+     */
     @SuppressLint("Range")
-    public List<Expense> getExpensesByUser(int userId) {
-        List<Expense> expenseList = new ArrayList<>();
+    public long getExpenseTotal(ExpenseFilter filter) {
         SQLiteDatabase db = this.getReadableDatabase();
 
-        String selection = EXP_USER_ID_COL + " = ?";
-        String[] selectionArgs = {String.valueOf(userId)};
+        List<String> args = new ArrayList<>();
+        String query = "SELECT SUM(e." + EXP_AMOUNT_COL + ") as total FROM " + TABLE_EXPENSE + " e" +
+                " WHERE " + buildFilterSelection(filter, args);
 
-        Cursor cursor = db.query(TABLE_EXPENSE, null, selection,
-                selectionArgs, null, null, EXP_DATE_COL + " DESC");
+        Cursor cursor = db.rawQuery(query, args.toArray(new String[0]));
+        long total = 0;
+        if (cursor.moveToFirst()) {
+            total = cursor.getLong(cursor.getColumnIndex("total"));
+        }
+        cursor.close();
+        return total;
+    }
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+    /**
+     * Fingerprint of everything a report over the filtered expenses shows: the expense rows, the
+     * user's budgets and the category names. Expenses are represented by the user's
+     * expense_versions counter, which triggers bump on every insert, update and delete of any of
+     * the user's expenses, so an edit of any column changes the fingerprint even when sums or
+     * timestamps would not. It also changes for writes outside the filtered range, which only
+     * costs a regenerated report. Budgets and categories are small and read in full.
+     * Equal fingerprints therefore mean a report generated earlier is still up to date.
+     * @return The fingerprint, starting with the expense count and the number of distinct
+     *         categories, separated by ':'
+     */
+    public String getReportFingerprint(ExpenseFilter filter) {
+        SQLiteDatabase db = this.getReadableDatabase();
 
-        if (cursor.moveToFirst()) {
-            do {
-                Expense expense = new Expense();
-                expense.setId(cursor.getInt(cursor.getColumnIndex(EXP_ID_COL)));
-                expense.setUserId(cursor.getInt(cursor.getColumnIndex(EXP_USER_ID_COL)));
-                expense.setCategoryId(cursor.getInt(cursor.getColumnIndex(EXP_CAT_ID_COL)));
-                expense.setAmount(cursor.getDouble(cursor.getColumnIndex(EXP_AMOUNT_COL)));
-                expense.setDescription(cursor.getString(cursor.getColumnIndex(EXP_DESC_COL)));
-
-                try {
-                    String dateStr = cursor.getString(cursor.getColumnIndex(EXP_DATE_COL));
-                    expense.setDate(dateFormat.parse(dateStr));
-                } catch (ParseException e) {
-                    expense.setDate(new Date()); // Default to current date if parsing fails
-                }
+        List<String> args = new ArrayList<>();
+        String expenses = "SELECT COUNT(*) || ':' || COUNT(DISTINCT e." + EXP_CAT_ID_COL + ")"
+                + " FROM " + TABLE_EXPENSE + " e WHERE " + buildFilterSelection(filter, args);
+        String version = "SELECT " + EV_VERSION_COL + " FROM " + TABLE_EXPENSE_VERSIONS
+                + " WHERE " + EV_USER_ID_COL + " = ?";
+        args.add(String.valueOf(filter.getUserId()));
+        String budgets = "SELECT GROUP_CONCAT(" + BUD_ID_COL + " || '=' || " + BUD_CAT_ID_COL + " || ',' || "
+                + BUD_AMOUNT_COL + ", ';') FROM " + TABLE_BUDGET + " WHERE " + BUD_USER_ID_COL + " = ?";
+        args.add(String.valueOf(filter.getUserId()));
+        String categories = "SELECT GROUP_CONCAT(" + CAT_ID_COL + " || '=' || " + CAT_NAME_COL + ", ';') FROM "
+                + TABLE_CATEGORY;
+
+        return DatabaseUtils.stringForQuery(db, "SELECT (" + expenses + ") || ':' || COALESCE((" + version
+                + "), 0) || '/' || COALESCE((" + budgets + "), '') || '/' || COALESCE((" + categories + "), '')",
+                args.toArray(new String[0]));
+    }
 
-                expense.setPaymentMethod(cursor.getString(cursor.getColumnIndex(EXP_PAYMENT_METHOD_COL)));
-                expense.setRecurring(cursor.getInt(cursor.getColumnIndex(EXP_IS_RECURRING_COL)) == 1);
+    /**
+     * Count every expense matching a filter
+     */
+    public int getExpenseCount(ExpenseFilter filter) {
+        SQLiteDatabase db = this.getReadableDatabase();
 
-                expenseList.add(expense);
-            } while (cursor.moveToNext());
-        }
+        List<String> args = new ArrayList<>();
+        String query = "SELECT COUNT(*) FROM " + TABLE_EXPENSE + " e WHERE " + buildFilterSelection(filter, args);
 
+        Cursor cursor = db.rawQuery(query, args.toArray(new String[0]));
+        int count = cursor.moveToFirst() ? cursor.getInt(0) : 0;
         cursor.close();
-        db.close();
-        return expenseList;
+        return count;
     }
 
-    @SuppressLint("Range")
-    public List<Expense> getExpensesByMonth(int userId, String yearMonth) {
-        List<Expense> expenseList = new ArrayList<>();
+    /**
+     * Sum the expenses matching a filter per category.
+     * @return Category name to total in cents, in category id order
+     */
+    public Map<String, Long> getExpenseTotalsByCategory(ExpenseFilter filter) {
         SQLiteDatabase db = this.getReadableDatabase();
 
-        String selection = EXP_USER_ID_COL + " = ? AND " + EXP_DATE_COL + " LIKE ?";
-        String[] selectionArgs = {String.valueOf(userId), yearMonth + "%"};
+        List<String> args = new ArrayList<>();
+        String query = "SELECT c." + CAT_NAME_COL + ", SUM(e." + EXP_AMOUNT_COL + ") FROM " + TABLE_EXPENSE + " e" +
+                " LEFT JOIN " + TABLE_CATEGORY + " c ON c." + CAT_ID_COL + " = e." + EXP_CAT_ID_COL +
+                " WHERE " + buildFilterSelection(filter, args) +
+                " GROUP BY e." + EXP_CAT_ID_COL +
+                " ORDER BY e." + EXP_CAT_ID_COL;
+
+        Map<String, Long> totals = new LinkedHashMap<>();
+        Cursor cursor = db.rawQuery(query, args.toArray(new String[0]));
+        while (cursor.moveToNext()) {
+            String name = cursor.isNull(0) ? "Unknown" : cursor.getString(0);
+            totals.merge(name, cursor.getLong(1), Long::sum);
+        }
+        cursor.close();
+        return totals;
+    }
 
-        Cursor cursor = db.query(TABLE_EXPENSE, null, selection,
-                selectionArgs, null, null, EXP_DATE_COL + " DESC");
+    // One column of an expense ordering; every ordering ends in the id so it is total
+    private static final class SortKey {
+        final String column;
+        final boolean descending;
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+        SortKey(String column, boolean descending) {
+            this.column = column;
+            this.descending = descending;
+        }
+    }
 
-        if (cursor.moveToFirst()) {
-            do {
-                Expense expense = new Expense();
-                expense.setId(cursor.getInt(cursor.getColumnIndex(EXP_ID_COL)));
-                expense.setUserId(cursor.getInt(cursor.getColumnIndex(EXP_USER_ID_COL)));
-                expense.setCategoryId(cursor.getInt(cursor.getColumnIndex(EXP_CAT_ID_COL)));
-                expense.setAmount(cursor.getDouble(cursor.getColumnIndex(EXP_AMOUNT_COL)));
-                expense.setDescription(cursor.getString(cursor.getColumnIndex(EXP_DESC_COL)));
-
-                try {
-                    String dateStr = cursor.getString(cursor.getColumnIndex(EXP_DATE_COL));
-                    expense.setDate(dateFormat.parse(dateStr));
-                } catch (ParseException e) {
-                    expense.setDate(new Date()); // Default to current date if parsing fails
-                }
+    private static SortKey[] sortKeys(ExpenseFilter.SortOrder sortOrder) {
+        switch (sortOrder) {
+            case DATE_OLDEST:
+                return new SortKey[]{new SortKey(EXP_DATE_COL, false), new SortKey(EXP_ID_COL, false)};
+            case AMOUNT_HIGHEST:
+                return new SortKey[]{new SortKey(EXP_AMOUNT_COL, true), new SortKey(EXP_DATE_COL, true),
+                        new SortKey(EXP_ID_COL, true)};
+            case AMOUNT_LOWEST:
+                return new SortKey[]{new SortKey(EXP_AMOUNT_COL, false), new SortKey(EXP_DATE_COL, true),
+                        new SortKey(EXP_ID_COL, true)};
+            case DATE_NEWEST:
+            default:
+                return new SortKey[]{new SortKey(EXP_DATE_COL, true), new SortKey(EXP_ID_COL, true)};
+        }
+    }
 
-                expense.setPaymentMethod(cursor.getString(cursor.getColumnIndex(EXP_PAYMENT_METHOD_COL)));
-                expense.setRecurring(cursor.getInt(cursor.getColumnIndex(EXP_IS_RECURRING_COL)) == 1);
+    private static String filterOrderBy(ExpenseFilter.SortOrder sortOrder) {
+        StringBuilder orderBy = new StringBuilder();
+        for (SortKey key : sortKeys(sortOrder)) {
+            if (orderBy.length() > 0) {
+                orderBy.append(", ");
+            }
+            orderBy.append("e.").append(key.column).append(key.descending ? " DESC" : " ASC");
+        }
+        return orderBy.toString();
+    }
 
-                expenseList.add(expense);
-            } while (cursor.moveToNext());
+    // Rows strictly after the given sort key values:
+    // (k1 > v1) OR (k1 = v1 AND k2 > v2) OR ..., with < for descending keys
+    private static String keysetPredicate(SortKey[] keys, String[] values, List<String> args) {
+        StringBuilder predicate = new StringBuilder("(");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                predicate.append(" OR ");
+            }
+            predicate.append("(");
+            for (int j = 0; j < i; j++) {
+                predicate.append("e.").append(keys[j].column).append(" = ? AND ");
+                args.add(values[j]);
+            }
+            predicate.append("e.").append(keys[i].column).append(keys[i].descending ? " < ?" : " > ?");
+            args.add(values[i]);
+            predicate.append(")");
         }
+        return predicate.append(")").toString();
+    }
 
-        cursor.close();
-        db.close();
-        return expenseList;
+    // Page token: the sort order name followed by the last row's sort key values
+    private static String pageToken(ExpenseFilter.SortOrder sortOrder, SortKey[] keys, Expense last) {
+        StringBuilder token = new StringBuilder(sortOrder.name());
+        for (SortKey key : keys) {
+            token.append('|');
+            if (EXP_DATE_COL.equals(key.column)) {
+                token.append(last.getDate().toEpochDay());
+            } else if (EXP_AMOUNT_COL.equals(key.column)) {
+                token.append(last.getAmountCents());
+            } else {
+                token.append(last.getId());
+            }
+        }
+        return token.toString();
+    }
+
+    private static String[] parsePageToken(String pageToken, ExpenseFilter.SortOrder sortOrder, int keyCount) {
+        if (pageToken == null) {
+            return null;
+        }
+        String[] parts = pageToken.split("\\|", -1);
+        if (parts.length != keyCount + 1 || !parts[0].equals(sortOrder.name())) {
+            // Token from a different ordering, start again from the first page
+            Log.w(TAG, "Ignoring page token for another sort order: " + pageToken);
+            return null;
+        }
+        String[] values = new String[keyCount];
+        System.arraycopy(parts, 1, values, 0, keyCount);
+        return values;
     }
 
     // CRUD operations for Budget
     @RequiresApi(api = Build.VERSION_CODES.O)
-    public long insertBudget(int userId, int categoryId, double amount, String period,
-                             String startDate, String endDate) {
+    public long insertBudget(int userId, int categoryId, long amountCents, String period,
+                             LocalDate startDate, LocalDate endDate) {
 
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
         ZonedDateTime zoneDt = ZonedDateTime.now();
@@ -456,221 +1898,233 @@ public class ExpenseDb extends SQLiteOpenHelper {
 
         values.put(BUD_USER_ID_COL, userId);
         values.put(BUD_CAT_ID_COL, categoryId);
-        values.put(BUD_AMOUNT_COL, amount);
+        values.put(BUD_AMOUNT_COL, amountCents);
         values.put(BUD_PERIOD_COL, period);
-        values.put(BUD_START_DATE_COL, startDate);
+        values.put(BUD_START_DATE_COL, startDate.toEpochDay());
 
-        if (endDate != null && !endDate.isEmpty()) {
-            values.put(BUD_END_DATE_COL, endDate);
+        if (endDate != null) {
+            values.put(BUD_END_DATE_COL, endDate.toEpochDay());
         }
 
         values.put(BUD_CREATED_AT, currentDate);
         values.put(BUD_UPDATED_AT, currentDate);
 
         long id = db.insert(TABLE_BUDGET, null, values);
-        db.close();
+        if (id != -1) {
+            notifyChanged(DataChange.of(DataChange.Table.BUDGETS, userId, null, categoryId));
+        }
         return id;
     }
 
-    @SuppressLint("Range")
     public List<Budget> getBudgetsByUser(int userId) {
-        List<Budget> budgetList = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
 
         String selection = BUD_USER_ID_COL + " = ?";
         String[] selectionArgs = {String.valueOf(userId)};
 
-        Cursor cursor = db.query(TABLE_BUDGET, null, selection,
+        Cursor cursor = db.query(TABLE_BUDGET, BudgetRowMapper.COLUMNS, selection,
                 selectionArgs, null, null, BUD_START_DATE_COL + " DESC");
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+        return new BudgetRowMapper(cursor).mapAll();
+    }
 
-        if (cursor.moveToFirst()) {
-            do {
-                Budget budget = new Budget();
-                budget.setId(cursor.getInt(cursor.getColumnIndex(BUD_ID_COL)));
-                budget.setUserId(cursor.getInt(cursor.getColumnIndex(BUD_USER_ID_COL)));
-                budget.setCategoryId(cursor.getInt(cursor.getColumnIndex(BUD_CAT_ID_COL)));
-                budget.setAmount(cursor.getDouble(cursor.getColumnIndex(BUD_AMOUNT_COL)));
-                budget.setPeriod(cursor.getString(cursor.getColumnIndex(BUD_PERIOD_COL)));
-
-                try {
-                    String startDateStr = cursor.getString(cursor.getColumnIndex(BUD_START_DATE_COL));
-                    budget.setStartDate(dateFormat.parse(startDateStr));
-
-                    String endDateStr = cursor.getString(cursor.getColumnIndex(BUD_END_DATE_COL));
-                    if (endDateStr != null) {
-                        budget.setEndDate(dateFormat.parse(endDateStr));
-                    }
-                } catch (ParseException e) {
-                    budget.setStartDate(new Date()); // Default to current date if parsing fails
-                }
+    /**
+     * Get the budgets of every user in one query, ordered by user and then like getBudgetsByUser
+     */
+    public List<Budget> getAllBudgets() {
+        SQLiteDatabase db = this.getReadableDatabase();
 
-                budgetList.add(budget);
-            } while (cursor.moveToNext());
-        }
+        Cursor cursor = db.query(TABLE_BUDGET, BudgetRowMapper.COLUMNS, null, null, null, null,
+                BUD_USER_ID_COL + " ASC, " + BUD_START_DATE_COL + " DESC");
 
-        cursor.close();
-        db.close();
-        return budgetList;
+        return new BudgetRowMapper(cursor).mapAll();
+    }
+
+    /**
+     * Get every budget of a user together with its category name, colour and the amount
+     * spent in that category during the given month, in a single query.
+     * @param userId User ID
+     * @param month Month to total the spending of
+     * @return Budgets with categoryName, categoryColor and spent filled in
+     */
+    public List<Budget> getBudgetStatusByMonth(int userId, YearMonth month) {
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        // Spending comes from the monthly rollup, at most one row per budget
+        String query = "SELECT " + RowMapper.select("b", BudgetRowMapper.COLUMNS) +
+                ", c." + CAT_NAME_COL + " AS category_name, c." + CAT_COLOR_COL +
+                " AS category_color, COALESCE(t." + MT_TOTAL_COL + ", 0) AS spent" +
+                " FROM " + TABLE_BUDGET + " b" +
+                " LEFT JOIN " + TABLE_CATEGORY + " c ON c." + CAT_ID_COL + " = b." + BUD_CAT_ID_COL +
+                " LEFT JOIN " + TABLE_MONTHLY_TOTALS + " t ON t." + MT_USER_ID_COL + " = b." + BUD_USER_ID_COL +
+                " AND t." + MT_CAT_ID_COL + " = b." + BUD_CAT_ID_COL +
+                " AND t." + MT_YEAR_MONTH_COL + " = ?" +
+                " WHERE b." + BUD_USER_ID_COL + " = ?" +
+                " ORDER BY b." + BUD_START_DATE_COL + " DESC";
+
+        Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(monthKey(month)), String.valueOf(userId)});
+
+        return new BudgetRowMapper(cursor).mapAll();
     }
 
     // CRUD operations for RecurringExpense
     @RequiresApi(api = Build.VERSION_CODES.O)
-    public long insertRecurringExpense(int userId, int categoryId, double amount, String description,
-                                       String frequency, String startDate, String endDate) {
+    public long insertRecurringExpense(int userId, int categoryId, long amountCents, String description,
+                                       String frequency, LocalDate startDate, LocalDate endDate) {
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = recurringExpenseValues(userId, categoryId, amountCents, description,
+                frequency, startDate, endDate);
+
+        long id = db.insert(TABLE_RECURRING, null, values);
+        if (id != -1) {
+            notifyChanged(DataChange.of(DataChange.Table.RECURRING_EXPENSES, userId, null, categoryId));
+        }
+        return id;
+    }
+
+    /**
+     * Insert a recurring expense and its first charge, dated on the start date, if that charge
+     * fits the budgets. Checks and both inserts run in one immediate transaction, as in
+     * insertExpenseWithinBudget.
+     * @param allowWithoutBudget Insert even if the category has no budget; the total budget still applies
+     * @return INSERTED with the recurring expense's row id, or why nothing was inserted
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    public ExpenseInsertResult insertRecurringExpenseWithinBudget(int userId, int categoryId, long amountCents,
+                                                                  String description, String frequency,
+                                                                  LocalDate startDate, LocalDate endDate,
+                                                                  boolean allowWithoutBudget) {
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        String currentDate = dtf.format(ZonedDateTime.now());
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement insert = compiledStatement(SQL_INSERT_EXPENSE);
+        DataChange change = DataChange.of(DataChange.Table.RECURRING_EXPENSES, userId, null, categoryId)
+                .merge(DataChange.of(DataChange.Table.EXPENSES, userId, YearMonth.from(startDate), categoryId));
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        delta.add(userId, categoryId, YearMonth.from(startDate), amountCents);
+        List<BudgetAlert> alerts = Collections.emptyList();
+        ExpenseInsertResult result;
+        BudgetTracker.Delta committed = null;
+        synchronized (insert) {
+            db.beginTransactionNonExclusive();
+            budgetTracker.beginWrite();
+            try {
+                result = checkBudgets(db, userId, categoryId, amountCents, YearMonth.from(startDate), allowWithoutBudget);
+                if (result == null) {
+                    long id = db.insertOrThrow(TABLE_RECURRING, null, recurringExpenseValues(userId, categoryId,
+                            amountCents, description, frequency, startDate, endDate));
+                    bindExpenseInsert(insert, userId, categoryId, amountCents, description + " (Recurring)",
+                            startDate, "Automatic", true, (int) id, currentDate);
+                    insert.executeInsert();
+                    result = ExpenseInsertResult.inserted(id);
+                    alerts = evaluateBudgetAlerts(db, change, delta);
+                    db.setTransactionSuccessful();
+                    committed = delta;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error inserting recurring expense within budget: " + e.getMessage());
+                result = ExpenseInsertResult.failed();
+            } finally {
+                endExpenseWrite(db, committed);
+            }
+        }
+
+        if (result.isInserted()) {
+            notifyChanged(change);
+            deliverBudgetAlerts(alerts);
+        }
+        return result;
+    }
 
+    // Helper method to build a recurring_expenses row
+    private static ContentValues recurringExpenseValues(int userId, int categoryId, long amountCents, String description,
+                                                        String frequency, LocalDate startDate, LocalDate endDate) {
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
         ZonedDateTime zoneDt = ZonedDateTime.now();
         String currentDate = dtf.format(zoneDt);
 
-        SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
 
         values.put(REC_USER_ID_COL, userId);
         values.put(REC_CAT_ID_COL, categoryId);
-        values.put(REC_AMOUNT_COL, amount);
+        values.put(REC_AMOUNT_COL, amountCents);
         values.put(REC_DESC_COL, description);
         values.put(REC_FREQUENCY_COL, frequency);
-        values.put(REC_START_DATE_COL, startDate);
+        values.put(REC_START_DATE_COL, startDate.toEpochDay());
 
-        if (endDate != null && !endDate.isEmpty()) {
-            values.put(REC_END_DATE_COL, endDate);
+        if (endDate != null) {
+            values.put(REC_END_DATE_COL, endDate.toEpochDay());
         }
 
         // Calculate next charge date based on frequency and start date
-        values.put(REC_NEXT_CHARGE_COL, startDate); // Simplified for now
+        values.put(REC_NEXT_CHARGE_COL, startDate.toEpochDay()); // Simplified for now
 
         values.put(REC_CREATED_AT, currentDate);
         values.put(REC_UPDATED_AT, currentDate);
-
-        long id = db.insert(TABLE_RECURRING, null, values);
-        db.close();
-        return id;
+        return values;
     }
 
-    @SuppressLint("Range")
     public List<RecurringExpense> getRecurringExpensesByUser(int userId) {
-        List<RecurringExpense> recurringList = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
 
         String selection = REC_USER_ID_COL + " = ?";
         String[] selectionArgs = {String.valueOf(userId)};
 
-        Cursor cursor = db.query(TABLE_RECURRING, null, selection,
+        Cursor cursor = db.query(TABLE_RECURRING, RecurringExpenseRowMapper.COLUMNS, selection,
                 selectionArgs, null, null, REC_NEXT_CHARGE_COL + " ASC");
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-
-        if (cursor.moveToFirst()) {
-            do {
-                RecurringExpense recurring = new RecurringExpense();
-                recurring.setId(cursor.getInt(cursor.getColumnIndex(REC_ID_COL)));
-                recurring.setUserId(cursor.getInt(cursor.getColumnIndex(REC_USER_ID_COL)));
-                recurring.setCategoryId(cursor.getInt(cursor.getColumnIndex(REC_CAT_ID_COL)));
-                recurring.setAmount(cursor.getDouble(cursor.getColumnIndex(REC_AMOUNT_COL)));
-                recurring.setDescription(cursor.getString(cursor.getColumnIndex(REC_DESC_COL)));
-                recurring.setFrequency(cursor.getString(cursor.getColumnIndex(REC_FREQUENCY_COL)));
-
-                try {
-                    String startDateStr = cursor.getString(cursor.getColumnIndex(REC_START_DATE_COL));
-                    recurring.setStartDate(dateFormat.parse(startDateStr));
-
-                    String endDateStr = cursor.getString(cursor.getColumnIndex(REC_END_DATE_COL));
-                    if (endDateStr != null) {
-                        recurring.setEndDate(dateFormat.parse(endDateStr));
-                    }
-
-                    String lastChargedStr = cursor.getString(cursor.getColumnIndex(REC_LAST_CHARGED_COL));
-                    if (lastChargedStr != null) {
-                        recurring.setLastCharged(dateFormat.parse(lastChargedStr));
-                    }
-
-                    String nextChargeStr = cursor.getString(cursor.getColumnIndex(REC_NEXT_CHARGE_COL));
-                    if (nextChargeStr != null) {
-                        recurring.setNextCharge(dateFormat.parse(nextChargeStr));
-                    }
-                } catch (ParseException e) {
-                    recurring.setStartDate(new Date()); // Default to current date if parsing fails
-                }
-
-                recurringList.add(recurring);
-            } while (cursor.moveToNext());
-        }
-
-        cursor.close();
-        db.close();
-        return recurringList;
-    }
-
-    // Monthly summary methods
-    @SuppressLint("Range")
-    public double getTotalExpensesByMonth(int userId, String yearMonth) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        double total = 0;
-
-        String query = "SELECT SUM(" + EXP_AMOUNT_COL + ") as total FROM " + TABLE_EXPENSE +
-                " WHERE " + EXP_USER_ID_COL + " = ? AND " + EXP_DATE_COL + " LIKE ?";
-        String[] selectionArgs = {String.valueOf(userId), yearMonth + "%"};
-
-        Cursor cursor = db.rawQuery(query, selectionArgs);
-
-        if (cursor.moveToFirst()) {
-            total = cursor.getDouble(cursor.getColumnIndex("total"));
-        }
-
-        cursor.close();
-        db.close();
-        return total;
+        return new RecurringExpenseRowMapper(cursor).mapAll();
     }
 
-    @SuppressLint("Range")
-    public double getTotalExpensesByCategoryAndMonth(int userId, int categoryId, String yearMonth) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        double total = 0;
-
-        try {
-            // If we want all categories (categoryId = -1), don't filter by category
-            String query;
-            String[] selectionArgs;
-
-            if (categoryId == -1) {
-                // Sum all expenses for the month regardless of category
-                query = "SELECT SUM(" + EXP_AMOUNT_COL + ") as total FROM " + TABLE_EXPENSE +
-                        " WHERE " + EXP_USER_ID_COL + " = ? AND " + EXP_DATE_COL + " LIKE ?";
-                selectionArgs = new String[]{String.valueOf(userId), yearMonth + "%"};
-            } else {
-                // Sum expenses for specific category and month
-                query = "SELECT SUM(" + EXP_AMOUNT_COL + ") as total FROM " + TABLE_EXPENSE +
-                        " WHERE " + EXP_USER_ID_COL + " = ? AND " + EXP_CAT_ID_COL + " = ? AND " +
-                        EXP_DATE_COL + " LIKE ?";
-                selectionArgs = new String[]{String.valueOf(userId), String.valueOf(categoryId), yearMonth + "%"};
+    // Monthly summary methods, all amounts in cents
+    public long getTotalExpensesByMonth(int userId, YearMonth month) {
+        return cache.get(TABLE_EXPENSE, userId, "month|" + monthKey(month), () -> {
+            // Summed from the monthly rollup: one row per category instead of one per expense
+            SQLiteStatement statement = compiledStatement(SQL_TOTAL_BY_MONTH);
+            synchronized (statement) {
+                statement.bindLong(1, userId);
+                statement.bindLong(2, monthKey(month));
+                return statement.simpleQueryForLong();
             }
+        });
+    }
 
-            Cursor cursor = db.rawQuery(query, selectionArgs);
+    public long getTotalExpensesByCategoryAndMonth(int userId, int categoryId, YearMonth month) {
+        // If we want all categories (categoryId = -1), don't filter by category
+        if (categoryId == -1) {
+            return getTotalExpensesByMonth(userId, month);
+        }
 
-            if (cursor.moveToFirst() && !cursor.isNull(cursor.getColumnIndex("total"))) {
-                total = cursor.getDouble(cursor.getColumnIndex("total"));
+        return cache.get(TABLE_EXPENSE, userId, "month|" + monthKey(month) + "|category|" + categoryId, () -> {
+            long total = 0;
+
+            try {
+                // Single primary key lookup in the monthly rollup
+                SQLiteStatement statement = compiledStatement(SQL_TOTAL_BY_CATEGORY_AND_MONTH);
+                synchronized (statement) {
+                    statement.bindLong(1, userId);
+                    statement.bindLong(2, categoryId);
+                    statement.bindLong(3, monthKey(month));
+                    total = statement.simpleQueryForLong();
+                }
+                Log.d("ExpenseDb", "Total expenses for user " + userId + " in month " + month +
+                        " and category " + categoryId + ": " + total);
+            } catch (Exception e) {
+                Log.e("ExpenseDb", "Error getting expenses", e);
             }
 
-            cursor.close();
-            Log.d("ExpenseDb", "Total expenses for user " + userId + " in month " + yearMonth +
-                    " and category " + categoryId + ": " + total);
-        } catch (Exception e) {
-            Log.e("ExpenseDb", "Error getting expenses", e);
-        } finally {
-            db.close();
-        }
-
-        return total;
+            return total;
+        });
     }
 
     // Budget status methods
     @SuppressLint("Range")
-    public double getBudgetRemainingForCategory(int userId, int categoryId, String yearMonth) {
+    public long getBudgetRemainingForCategory(int userId, int categoryId, YearMonth month) {
         SQLiteDatabase db = this.getReadableDatabase();
-        double budgetAmount = 0;
-        double expenseTotal = 0;
+        long budgetAmount = 0;
+        long expenseTotal = 0;
 
         // Get the budget amount for this category
         String budgetQuery = "SELECT " + BUD_AMOUNT_COL + " FROM " + TABLE_BUDGET +
@@ -678,41 +2132,67 @@ public class ExpenseDb extends SQLiteOpenHelper {
                 " AND " + BUD_START_DATE_COL + " <= ? " +
                 " AND (" + BUD_END_DATE_COL + " IS NULL OR " + BUD_END_DATE_COL + " >= ?)";
 
-        String currentMonth = yearMonth + "-01";
-        String[] budgetArgs = {String.valueOf(userId), String.valueOf(categoryId), currentMonth, currentMonth};
+        String firstDay = String.valueOf(month.atDay(1).toEpochDay());
+        String[] budgetArgs = {String.valueOf(userId), String.valueOf(categoryId), firstDay, firstDay};
 
         Cursor budgetCursor = db.rawQuery(budgetQuery, budgetArgs);
 
         if (budgetCursor.moveToFirst()) {
-            budgetAmount = budgetCursor.getDouble(budgetCursor.getColumnIndex(BUD_AMOUNT_COL));
+            budgetAmount = budgetCursor.getLong(budgetCursor.getColumnIndex(BUD_AMOUNT_COL));
         }
 
         budgetCursor.close();
 
         // Get the expense total for this category in this month
-        expenseTotal = getTotalExpensesByCategoryAndMonth(userId, categoryId, yearMonth);
+        expenseTotal = getTotalExpensesByCategoryAndMonth(userId, categoryId, month);
 
-        db.close();
         return budgetAmount - expenseTotal;
     }
 
     // Update and delete methods for all entities
-    public int updateExpense(int id, int categoryId, double amount, String description,
-                             String date, String paymentMethod) {
+    public int updateExpense(int id, int categoryId, long amountCents, String description,
+                             LocalDate date, String paymentMethod) {
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        String currentDate = dtf.format(ZonedDateTime.now());
+
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
 
         values.put(EXP_CAT_ID_COL, categoryId);
-        values.put(EXP_AMOUNT_COL, amount);
+        values.put(EXP_AMOUNT_COL, amountCents);
         values.put(EXP_DESC_COL, description);
-        values.put(EXP_DATE_COL, date);
+        values.put(EXP_DATE_COL, date.toEpochDay());
         values.put(EXP_PAYMENT_METHOD_COL, paymentMethod);
+        values.put(EXP_UPDATED_AT, currentDate);
 
         String whereClause = EXP_ID_COL + " = ?";
         String[] whereArgs = {String.valueOf(id)};
 
-        int rowsAffected = db.update(TABLE_EXPENSE, values, whereClause, whereArgs);
-        db.close();
+        DataChange change = null;
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        List<BudgetAlert> alerts = Collections.emptyList();
+        int rowsAffected;
+        BudgetTracker.Delta committed = null;
+        db.beginTransactionNonExclusive();
+        budgetTracker.beginWrite();
+        try {
+            // The row's old month and category are affected as well as the new ones
+            DataChange before = expenseRowChange(db, id, delta, -1);
+            rowsAffected = db.update(TABLE_EXPENSE, values, whereClause, whereArgs);
+            if (rowsAffected > 0) {
+                change = merge(before, expenseRowChange(db, id, delta, 1));
+                alerts = evaluateBudgetAlerts(db, change, delta);
+            }
+            db.setTransactionSuccessful();
+            committed = delta;
+        } finally {
+            endExpenseWrite(db, committed);
+        }
+
+        if (change != null) {
+            notifyChanged(change);
+            deliverBudgetAlerts(alerts);
+        }
         return rowsAffected;
     }
 
@@ -725,51 +2205,253 @@ public class ExpenseDb extends SQLiteOpenHelper {
     public int deleteExpense(int expenseId) {
         SQLiteDatabase db = this.getWritableDatabase();
         int result = 0;
+        DataChange change = null;
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        List<BudgetAlert> alerts = Collections.emptyList();
+        BudgetTracker.Delta committed = null;
 
+        db.beginTransactionNonExclusive();
+        budgetTracker.beginWrite();
         try {
             String whereClause = EXP_ID_COL + " = ?";
             String[] whereArgs = {String.valueOf(expenseId)};
 
-            // Log before deletion to debug
-            Cursor cursor = db.query(TABLE_EXPENSE, new String[]{EXP_CAT_ID_COL},
-                    whereClause, whereArgs, null, null, null);
-            if (cursor.moveToFirst()) {
-                @SuppressLint("Range") int categoryId = cursor.getInt(cursor.getColumnIndex(EXP_CAT_ID_COL));
-                Log.d(TAG, "Deleting expense " + expenseId + " with category " + categoryId);
-            }
-            cursor.close();
+            // Read the row first so the change event can say what it affected
+            change = expenseRowChange(db, expenseId, delta, -1);
+            Log.d(TAG, "Deleting expense " + expenseId + ": " + change);
 
             // Perform the deletion
             result = db.delete(TABLE_EXPENSE, whereClause, whereArgs);
             Log.d(TAG, "Expense deletion result: " + result + " rows affected");
+            if (result > 0) {
+                alerts = evaluateBudgetAlerts(db, change, delta);
+            }
+            db.setTransactionSuccessful();
+            committed = delta;
         } catch (Exception e) {
             Log.e(TAG, "Error deleting expense: " + e.getMessage(), e);
+            result = 0;
         } finally {
-            db.close();
+            endExpenseWrite(db, committed);
         }
 
+        if (result > 0) {
+            notifyChanged(change);
+            deliverBudgetAlerts(alerts);
+        }
         return result;
     }
 
-    public int updateBudget(int id, int categoryId, double amount, String period,
-                            String startDate, String endDate) {
+    /**
+     * Insert several expenses in one transaction, reusing a single compiled statement.
+     * A row that fails is skipped without rolling back the others.
+     * @param expenses Expenses to insert; the id field is ignored
+     * @return The new row id for each expense, in input order, or -1 where the insert failed
+     */
+    public long[] insertExpenses(List<Expense> expenses) {
+        long[] results = new long[expenses.size()];
+        if (expenses.isEmpty()) {
+            return results;
+        }
+
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        String currentDate = dtf.format(ZonedDateTime.now());
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement insert = compiledStatement(SQL_INSERT_EXPENSE);
+        DataChange change = null;
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        List<BudgetAlert> alerts = Collections.emptyList();
+        BudgetTracker.Delta committed = null;
+        synchronized (insert) {
+            db.beginTransaction();
+            budgetTracker.beginWrite();
+            try {
+                for (int i = 0; i < expenses.size(); i++) {
+                    Expense expense = expenses.get(i);
+                    try {
+                        bindExpenseInsert(insert, expense.getUserId(), expense.getCategoryId(),
+                                expense.getAmountCents(), expense.getDescription(), expense.getDate(),
+                                expense.getPaymentMethod(), expense.isRecurring(), expense.getRecurringExpenseId(),
+                                currentDate);
+                        results[i] = insert.executeInsert();
+                        change = merge(change, DataChange.of(DataChange.Table.EXPENSES, expense.getUserId(),
+                                YearMonth.from(expense.getDate()), expense.getCategoryId()));
+                        delta.add(expense.getUserId(), expense.getCategoryId(), YearMonth.from(expense.getDate()),
+                                expense.getAmountCents());
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error inserting expense " + i + " of batch: " + e.getMessage());
+                        results[i] = -1;
+                    }
+                }
+                alerts = evaluateBudgetAlerts(db, change, delta);
+                db.setTransactionSuccessful();
+                committed = delta;
+                Log.d(TAG, "Inserted batch of " + expenses.size() + " expenses");
+            } finally {
+                endExpenseWrite(db, committed);
+            }
+        }
+
+        // One event for the whole batch
+        if (change != null) {
+            notifyChanged(change);
+            deliverBudgetAlerts(alerts);
+        }
+
+        return results;
+    }
+
+    /**
+     * Update several expenses in one transaction, reusing a single compiled statement.
+     * Each expense is matched on its id; category, amount, description, date and payment
+     * method are written, as in updateExpense. Setting the same category on every item
+     * gives a bulk re-categorize.
+     * @param expenses Expenses carrying the new values
+     * @return Rows affected for each expense, in input order (0 if not found or failed)
+     */
+    public int[] updateExpenses(List<Expense> expenses) {
+        int[] results = new int[expenses.size()];
+        if (expenses.isEmpty()) {
+            return results;
+        }
+
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        String currentDate = dtf.format(ZonedDateTime.now());
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement update = compiledStatement(SQL_UPDATE_EXPENSE);
+        DataChange change = null;
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        List<BudgetAlert> alerts = Collections.emptyList();
+        BudgetTracker.Delta committed = null;
+        synchronized (update) {
+            db.beginTransaction();
+            budgetTracker.beginWrite();
+            try {
+                for (int i = 0; i < expenses.size(); i++) {
+                    Expense expense = expenses.get(i);
+                    try {
+                        // Kept apart until the row is known to be updated
+                        BudgetTracker.Delta rowDelta = new BudgetTracker.Delta();
+                        DataChange before = expenseRowChange(db, expense.getId(), rowDelta, -1);
+                        update.clearBindings();
+                        update.bindLong(1, expense.getCategoryId());
+                        update.bindLong(2, expense.getAmountCents());
+                        bindNullableString(update, 3, expense.getDescription());
+                        update.bindLong(4, expense.getDate().toEpochDay());
+                        bindNullableString(update, 5, expense.getPaymentMethod());
+                        update.bindString(6, currentDate);
+                        update.bindLong(7, expense.getId());
+                        results[i] = update.executeUpdateDelete();
+                        if (results[i] > 0) {
+                            change = merge(change, merge(before, expenseRowChange(db, expense.getId(), rowDelta, 1)));
+                            delta.addAll(rowDelta);
+                        }
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error updating expense " + expense.getId() + " in batch: " + e.getMessage());
+                        results[i] = 0;
+                    }
+                }
+                alerts = evaluateBudgetAlerts(db, change, delta);
+                db.setTransactionSuccessful();
+                committed = delta;
+                Log.d(TAG, "Updated batch of " + expenses.size() + " expenses");
+            } finally {
+                endExpenseWrite(db, committed);
+            }
+        }
+        if (change != null) {
+            notifyChanged(change);
+            deliverBudgetAlerts(alerts);
+        }
+
+        return results;
+    }
+
+    /**
+     * Delete several expenses in one transaction, reusing a single compiled statement.
+     * @param expenseIds IDs of the expenses to delete
+     * @return Rows affected for each id, in input order (0 if not found or failed)
+     */
+    public int[] deleteExpenses(int[] expenseIds) {
+        int[] results = new int[expenseIds.length];
+        if (expenseIds.length == 0) {
+            return results;
+        }
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement delete = compiledStatement(SQL_DELETE_EXPENSE);
+        DataChange change = null;
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        List<BudgetAlert> alerts = Collections.emptyList();
+        BudgetTracker.Delta committed = null;
+        synchronized (delete) {
+            db.beginTransaction();
+            budgetTracker.beginWrite();
+            try {
+                for (int i = 0; i < expenseIds.length; i++) {
+                    try {
+                        BudgetTracker.Delta rowDelta = new BudgetTracker.Delta();
+                        DataChange row = expenseRowChange(db, expenseIds[i], rowDelta, -1);
+                        delete.bindLong(1, expenseIds[i]);
+                        results[i] = delete.executeUpdateDelete();
+                        if (results[i] > 0) {
+                            change = merge(change, row);
+                            delta.addAll(rowDelta);
+                        }
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error deleting expense " + expenseIds[i] + " in batch: " + e.getMessage());
+                        results[i] = 0;
+                    }
+                }
+                alerts = evaluateBudgetAlerts(db, change, delta);
+                db.setTransactionSuccessful();
+                committed = delta;
+                Log.d(TAG, "Deleted batch of " + expenseIds.length + " expenses");
+            } finally {
+                endExpenseWrite(db, committed);
+            }
+        }
+        if (change != null) {
+            notifyChanged(change);
+            deliverBudgetAlerts(alerts);
+        }
+
+        return results;
+    }
+
+    // Helper method to bind a nullable text column of a compiled statement
+    private static void bindNullableString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    public int updateBudget(int id, int categoryId, long amountCents, String period,
+                            LocalDate startDate, LocalDate endDate) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
 
         values.put(BUD_CAT_ID_COL, categoryId);
-        values.put(BUD_AMOUNT_COL, amount);
+        values.put(BUD_AMOUNT_COL, amountCents);
         values.put(BUD_PERIOD_COL, period);
-        values.put(BUD_START_DATE_COL, startDate);
+        values.put(BUD_START_DATE_COL, startDate.toEpochDay());
 
-        if (endDate != null && !endDate.isEmpty()) {
-            values.put(BUD_END_DATE_COL, endDate);
+        if (endDate != null) {
+            values.put(BUD_END_DATE_COL, endDate.toEpochDay());
         }
 
         String whereClause = BUD_ID_COL + " = ?";
         String[] whereArgs = {String.valueOf(id)};
 
         int rowsAffected = db.update(TABLE_BUDGET, values, whereClause, whereArgs);
-        db.close();
+        if (rowsAffected > 0) {
+            // Owner and previous category are not known from the id alone
+            notifyChanged(DataChange.of(DataChange.Table.BUDGETS, null, null, null));
+        }
         return rowsAffected;
     }
 
@@ -796,8 +2478,6 @@ public class ExpenseDb extends SQLiteOpenHelper {
             cursor.close();
         } catch (Exception e) {
             Log.e(TAG, "Error getting category ID for budget: " + e.getMessage());
-        } finally {
-            readDb.close();
         }
 
         // If we couldn't find the category ID, return false
@@ -821,8 +2501,10 @@ public class ExpenseDb extends SQLiteOpenHelper {
             rowsAffected = writeDb.delete(TABLE_BUDGET, whereClause, whereArgs);
         } catch (Exception e) {
             Log.e(TAG, "Error deleting budget: " + e.getMessage());
-        } finally {
-            writeDb.close();
+        }
+
+        if (rowsAffected > 0) {
+            notifyChanged(DataChange.of(DataChange.Table.BUDGETS, null, null, categoryId));
         }
 
         return rowsAffected > 0;
@@ -835,15 +2517,15 @@ public class ExpenseDb extends SQLiteOpenHelper {
         String[] whereArgs = {String.valueOf(id)};
 
         int rowsAffected = db.delete(TABLE_RECURRING, whereClause, whereArgs);
-        db.close();
+        if (rowsAffected > 0) {
+            notifyChanged(DataChange.of(DataChange.Table.RECURRING_EXPENSES, null, null, null));
+        }
         return rowsAffected > 0;
     }
 
     // Total Budget methods
     @RequiresApi(api = Build.VERSION_CODES.O)
-    public long insertOrUpdateTotalBudget(int userId, double amount, String period, String startDate, String endDate) {
-        ensureTablesExist(); // Make sure the table exists first
-
+    public long insertOrUpdateTotalBudget(int userId, long amountCents, String period, LocalDate startDate, LocalDate endDate) {
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
         ZonedDateTime zoneDt = ZonedDateTime.now();
         String currentDate = dtf.format(zoneDt);
@@ -865,10 +2547,10 @@ public class ExpenseDb extends SQLiteOpenHelper {
                 cursor.close();
 
                 ContentValues values = new ContentValues();
-                values.put(TOT_AMOUNT_COL, amount);
-                values.put(TOT_START_DATE_COL, startDate);
-                if (endDate != null && !endDate.isEmpty()) {
-                    values.put(TOT_END_DATE_COL, endDate);
+                values.put(TOT_AMOUNT_COL, amountCents);
+                values.put(TOT_START_DATE_COL, startDate.toEpochDay());
+                if (endDate != null) {
+                    values.put(TOT_END_DATE_COL, endDate.toEpochDay());
                 }
                 values.put(TOT_UPDATED_AT, currentDate);
 
@@ -882,11 +2564,11 @@ public class ExpenseDb extends SQLiteOpenHelper {
 
                 ContentValues values = new ContentValues();
                 values.put(TOT_USER_ID_COL, userId);
-                values.put(TOT_AMOUNT_COL, amount);
+                values.put(TOT_AMOUNT_COL, amountCents);
                 values.put(TOT_PERIOD_COL, period);
-                values.put(TOT_START_DATE_COL, startDate);
-                if (endDate != null && !endDate.isEmpty()) {
-                    values.put(TOT_END_DATE_COL, endDate);
+                values.put(TOT_START_DATE_COL, startDate.toEpochDay());
+                if (endDate != null) {
+                    values.put(TOT_END_DATE_COL, endDate.toEpochDay());
                 }
                 values.put(TOT_CREATED_AT, currentDate);
                 values.put(TOT_UPDATED_AT, currentDate);
@@ -895,76 +2577,54 @@ public class ExpenseDb extends SQLiteOpenHelper {
             }
         } catch (Exception e) {
             Log.e(TAG, "Error inserting/updating total budget: " + e.getMessage());
-        } finally {
-            db.close();
         }
 
+        if (result > 0) {
+            notifyChanged(DataChange.of(DataChange.Table.TOTAL_BUDGET, userId, null, null));
+        }
         return result;
     }
 
+    public long getTotalBudget(int userId, String period) {
+        return cache.get(TABLE_TOTAL_BUDGET, userId, period, () -> loadTotalBudget(userId, period));
+    }
+
     @SuppressLint("Range")
-    public double getTotalBudget(int userId, String period) {
+    private long loadTotalBudget(int userId, String period) {
         SQLiteDatabase db = this.getReadableDatabase();
-        double totalBudget = 0;
+        long totalBudget = 0;
 
         try {
-            // Check if the table exists first
-            Cursor tableCheck = db.rawQuery(
-                    "SELECT name FROM sqlite_master WHERE type='table' AND name='total_budget'",
-                    null
-            );
-            boolean tableExists = tableCheck.moveToFirst();
-            tableCheck.close();
-
-            if (tableExists) {
-                String query = "SELECT " + TOT_AMOUNT_COL + " FROM " + TABLE_TOTAL_BUDGET +
-                        " WHERE " + TOT_USER_ID_COL + " = ? AND " +
-                        TOT_PERIOD_COL + " = ? " +
-                        "ORDER BY " + TOT_ID_COL + " DESC LIMIT 1";
-
-                Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(userId), period});
+            String query = "SELECT " + TOT_AMOUNT_COL + " FROM " + TABLE_TOTAL_BUDGET +
+                    " WHERE " + TOT_USER_ID_COL + " = ? AND " +
+                    TOT_PERIOD_COL + " = ? " +
+                    "ORDER BY " + TOT_ID_COL + " DESC LIMIT 1";
 
-                if (cursor.moveToFirst()) {
-                    totalBudget = cursor.getDouble(cursor.getColumnIndex(TOT_AMOUNT_COL));
-                }
+            Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(userId), period});
 
-                cursor.close();
+            if (cursor.moveToFirst()) {
+                totalBudget = cursor.getLong(cursor.getColumnIndex(TOT_AMOUNT_COL));
             }
+
+            cursor.close();
         } catch (Exception e) {
             Log.e("ExpenseDb", "Error getting total budget: " + e.getMessage());
-        } finally {
-            db.close();
         }
 
         return totalBudget;
     }
 
     // Method to check if category budget is within limits of total budget
-    public boolean validateCategoryBudget(int userId, double newBudgetAmount) {
+    public boolean validateCategoryBudget(int userId, long newBudgetAmount) {
         SQLiteDatabase db = this.getReadableDatabase();
         boolean isValid = true;
 
         try {
-            // Check if total_budget table exists
-            Cursor tableCheck = db.rawQuery(
-                    "SELECT name FROM sqlite_master WHERE type='table' AND name='total_budget'",
-                    null
-            );
-            boolean tableExists = tableCheck.moveToFirst();
-            tableCheck.close();
-
-            if (!tableExists) {
-                // If table doesn't exist, allow any budget (no constraint)
-                db.close();
-                return true;
-            }
-
             // Get total budget
-            double totalBudget = getTotalBudget(userId, "monthly");
+            long totalBudget = getTotalBudget(userId, "monthly");
 
             // If no total budget is set, allow any category budget
             if (totalBudget <= 0) {
-                db.close();
                 return true;
             }
 
@@ -974,9 +2634,9 @@ public class ExpenseDb extends SQLiteOpenHelper {
 
             Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(userId)});
 
-            double currentTotalCategoryBudgets = 0;
+            long currentTotalCategoryBudgets = 0;
             if (cursor.moveToFirst()) {
-                @SuppressLint("Range") double sum = cursor.getDouble(cursor.getColumnIndex("total"));
+                @SuppressLint("Range") long sum = cursor.getLong(cursor.getColumnIndex("total"));
                 currentTotalCategoryBudgets = sum;
             }
 
@@ -987,39 +2647,21 @@ public class ExpenseDb extends SQLiteOpenHelper {
         } catch (Exception e) {
             Log.e("ExpenseDb", "Error validating category budget: " + e.getMessage());
             isValid = true; // Allow budget if there's an error checking
-        } finally {
-            db.close();
         }
 
         return isValid;
     }
 
     // Method to check category balance before adding expense
-    public boolean checkCategoryBudgetBalance(int userId, int categoryId, double expenseAmount) {
+    public boolean checkCategoryBudgetBalance(int userId, int categoryId, long expenseAmount) {
         if (categoryId == -1) return true; // Special case for "All Categories"
 
         SQLiteDatabase db = this.getReadableDatabase();
         boolean hasBalance = true;
 
         try {
-            // Check if total_budget table exists
-            Cursor tableCheck = db.rawQuery(
-                    "SELECT name FROM sqlite_master WHERE type='table' AND name='total_budget'",
-                    null
-            );
-            boolean tableExists = tableCheck.moveToFirst();
-            tableCheck.close();
-
-            if (!tableExists) {
-                // If budget features aren't enabled yet, allow all expenses
-                return true;
-            }
-
-            // Rest of the method remains the same...
-            // Get current month in format YYYY-MM
-            Calendar cal = Calendar.getInstance();
-            String currentMonth = String.format(Locale.getDefault(), "%d-%02d",
-                    cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
+            // Get current month
+            YearMonth currentMonth = YearMonth.now();
 
             // Get category budget amount
             String budgetQuery = "SELECT " + BUD_AMOUNT_COL + " FROM " + TABLE_BUDGET +
@@ -1029,37 +2671,33 @@ public class ExpenseDb extends SQLiteOpenHelper {
             Cursor budgetCursor = db.rawQuery(budgetQuery,
                     new String[]{String.valueOf(userId), String.valueOf(categoryId)});
 
-            double budgetAmount = 0;
+            long budgetAmount = 0;
             if (budgetCursor.moveToFirst()) {
-                @SuppressLint("Range") double amount = budgetCursor.getDouble(budgetCursor.getColumnIndex(BUD_AMOUNT_COL));
+                @SuppressLint("Range") long amount = budgetCursor.getLong(budgetCursor.getColumnIndex(BUD_AMOUNT_COL));
                 budgetAmount = amount;
             }
             budgetCursor.close();
 
             // Get current spending for this category in this month
-            double spent = getTotalExpensesByCategoryAndMonth(userId, categoryId, currentMonth);
+            long spent = getTotalExpensesByCategoryAndMonth(userId, categoryId, currentMonth);
 
             // Check if adding this expense would exceed the category budget
             hasBalance = (spent + expenseAmount) <= budgetAmount;
         } catch (Exception e) {
             Log.e("ExpenseDb", "Error checking category budget balance: " + e.getMessage());
             hasBalance = true; // Allow expense if error checking
-        } finally {
-            db.close();
         }
 
         return hasBalance;
     }
 
-    // Helper method to get remaining budget amount for a category
-    public double getRemainingCategoryBudget(int userId, int categoryId) {
+    // Helper method to get remaining budget amount for a category, in cents
+    public long getRemainingCategoryBudget(int userId, int categoryId) {
         // Get current month
-        Calendar cal = Calendar.getInstance();
-        String currentMonth = String.format(Locale.getDefault(), "%d-%02d",
-                cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
+        YearMonth currentMonth = YearMonth.now();
 
         // Get category budget
-        double budget = 0;
+        long budget = 0;
         SQLiteDatabase db = this.getReadableDatabase();
 
         try {
@@ -1070,68 +2708,36 @@ public class ExpenseDb extends SQLiteOpenHelper {
             Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(userId), String.valueOf(categoryId)});
 
             if (cursor.moveToFirst()) {
-                @SuppressLint("Range") double amount = cursor.getDouble(cursor.getColumnIndex(BUD_AMOUNT_COL));
+                @SuppressLint("Range") long amount = cursor.getLong(cursor.getColumnIndex(BUD_AMOUNT_COL));
                 budget = amount;
             }
             cursor.close();
 
             // Get expenses for this category
-            double spent = getTotalExpensesByCategoryAndMonth(userId, categoryId, currentMonth);
+            long spent = getTotalExpensesByCategoryAndMonth(userId, categoryId, currentMonth);
 
             return budget - spent;
         } catch (Exception e) {
             Log.e(TAG, "Error getting remaining category budget: " + e.getMessage());
             return 0; // Default to 0 in case of error
-        } finally {
-            db.close();
         }
     }
 
-    // Method to get remaining total budget
-    public double getRemainingTotalBudget(int userId) {
-        // Current implementation that could crash:
-        // double totalBudget = getTotalBudget(userId, "monthly");
-        // double totalSpent = getTotalExpensesByMonth(userId, currentMonth);
-        // return totalBudget - totalSpent;
-
-        // Revised implementation with safety check:
-        double totalBudget = 0;
-        SQLiteDatabase db = this.getReadableDatabase();
-
+    // Method to get remaining total budget, in cents
+    public long getRemainingTotalBudget(int userId) {
+        // The migrations guarantee total_budget exists once the helper is open
         try {
-            // Check if table exists first
-            Cursor tableCheck = db.rawQuery(
-                    "SELECT name FROM sqlite_master WHERE type='table' AND name='total_budget'",
-                    null
-            );
-            boolean tableExists = tableCheck.moveToFirst();
-            tableCheck.close();
-
-            if (tableExists) {
-                // Only try to get total budget if table exists
-                totalBudget = getTotalBudget(userId, "monthly");
-            }
-
-            // Get current month
-            Calendar cal = Calendar.getInstance();
-            String currentMonth = String.format(Locale.getDefault(), "%d-%02d",
-                    cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
-
-            // Get total expenses for this month
-            double totalSpent = getTotalExpensesByMonth(userId, currentMonth);
-
-            db.close();
-            return totalBudget - totalSpent;
+            // Total budget and this month's spending, both from the budget tracker
+            return getBudgetUsage(userId).getRemainingTotalCents();
         } catch (Exception e) {
             Log.e("ExpenseDb", "Error calculating remaining budget: " + e.getMessage());
-            db.close();
             return 0; // Return 0 as fallback
         }
     }
 
     // Method for updating an existing budget with a specific ID
     @RequiresApi(api = Build.VERSION_CODES.O)
-    public long updateOrInsertBudget(int userId, int categoryId, double amount, String period, String startDate, String endDate) {
+    public long updateOrInsertBudget(int userId, int categoryId, long amountCents, String period, LocalDate startDate, LocalDate endDate) {
         SQLiteDatabase db = this.getWritableDatabase();
 
         try {
@@ -1154,10 +2760,10 @@ public class ExpenseDb extends SQLiteOpenHelper {
                 cursor.close();
 
                 ContentValues values = new ContentValues();
-                values.put(BUD_AMOUNT_COL, amount);
-                values.put(BUD_START_DATE_COL, startDate);
-                if (endDate != null && !endDate.isEmpty()) {
-                    values.put(BUD_END_DATE_COL, endDate);
+                values.put(BUD_AMOUNT_COL, amountCents);
+                values.put(BUD_START_DATE_COL, startDate.toEpochDay());
+                if (endDate != null) {
+                    values.put(BUD_END_DATE_COL, endDate.toEpochDay());
                 }
                 values.put(BUD_UPDATED_AT, currentDate);
 
@@ -1172,11 +2778,11 @@ public class ExpenseDb extends SQLiteOpenHelper {
                 ContentValues values = new ContentValues();
                 values.put(BUD_USER_ID_COL, userId);
                 values.put(BUD_CAT_ID_COL, categoryId);
-                values.put(BUD_AMOUNT_COL, amount);
+                values.put(BUD_AMOUNT_COL, amountCents);
                 values.put(BUD_PERIOD_COL, period);
-                values.put(BUD_START_DATE_COL, startDate);
-                if (endDate != null && !endDate.isEmpty()) {
-                    values.put(BUD_END_DATE_COL, endDate);
+                values.put(BUD_START_DATE_COL, startDate.toEpochDay());
+                if (endDate != null) {
+                    values.put(BUD_END_DATE_COL, endDate.toEpochDay());
                 }
                 values.put(BUD_CREATED_AT, currentDate);
                 values.put(BUD_UPDATED_AT, currentDate);
@@ -1184,20 +2790,26 @@ public class ExpenseDb extends SQLiteOpenHelper {
                 result = db.insert(TABLE_BUDGET, null, values);
             }
 
+            if (result > 0) {
+                notifyChanged(DataChange.of(DataChange.Table.BUDGETS, userId, null, categoryId));
+            }
             return result;
         } catch (Exception e) {
             Log.e(TAG, "Error updating/inserting budget: " + e.getMessage());
             return -1;
-        } finally {
-            db.close();
         }
     }
 
     /**
-     * Check if a category has any associated expenses
-     * @param categoryId The category ID to check
-     * @return true if there are expenses using this category, false otherwise
+     * Check if a user has set a budget for a category, without loading the budgets
+     * @return true if a budget row exists for this user and category
      */
+    public boolean hasCategoryBudget(int userId, int categoryId) {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_BUDGET,
+                BUD_USER_ID_COL + " = ? AND " + BUD_CAT_ID_COL + " = ?",
+                new String[]{String.valueOf(userId), String.valueOf(categoryId)}) > 0;
+    }
+
     /**
      * Check if a category has any associated expenses
      * @param categoryId The category ID to check
@@ -1244,8 +2856,6 @@ public class ExpenseDb extends SQLiteOpenHelper {
                     " regular expenses and " + recurringCount + " recurring expenses.");
         } catch (Exception e) {
             Log.e(TAG, "Error checking if category has expenses: " + e.getMessage(), e);
-        } finally {
-            db.close();
         }
 
         return hasExpenses;
@@ -0,0 +1,132 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Filter specification for ExpenseDb.queryExpenses.
+ * Every criterion is optional except the user; unset criteria are left out of the SQL query.
+ */
+public class ExpenseFilter {
+
+    public enum SortOrder {
+        DATE_NEWEST,
+        DATE_OLDEST,
+        AMOUNT_HIGHEST,
+        AMOUNT_LOWEST
+    }
+
+    private final int userId;
+    private LocalDate startDate; // Inclusive
+    private LocalDate endDate; // Inclusive
+    private final Set<Integer> categoryIds = new LinkedHashSet<>();
+    private Long minAmountCents;
+    private Long maxAmountCents;
+    private final Set<String> paymentMethods = new LinkedHashSet<>();
+    private Boolean recurring;
+    private SortOrder sortOrder = SortOrder.DATE_NEWEST;
+    private int limit; // 0 means no limit
+
+    public ExpenseFilter(int userId) {
+        this.userId = userId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * Restrict to expenses dated between the two days, both inclusive
+     * @param startDate Start date, or null for no lower bound
+     * @param endDate End date, or null for no upper bound
+     */
+    public void setDateRange(LocalDate startDate, LocalDate endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public Set<Integer> getCategoryIds() {
+        return categoryIds;
+    }
+
+    /**
+     * Restrict to a single category. -1 ("All Categories") clears the category filter.
+     */
+    public void setCategoryId(int categoryId) {
+        categoryIds.clear();
+        if (categoryId != -1) {
+            categoryIds.add(categoryId);
+        }
+    }
+
+    public void setCategoryIds(Collection<Integer> ids) {
+        categoryIds.clear();
+        if (ids != null) {
+            categoryIds.addAll(ids);
+        }
+    }
+
+    public Long getMinAmountCents() {
+        return minAmountCents;
+    }
+
+    public Long getMaxAmountCents() {
+        return maxAmountCents;
+    }
+
+    /**
+     * Restrict to amounts between the two values in cents, both inclusive; null leaves that side open
+     */
+    public void setAmountRangeCents(Long minAmountCents, Long maxAmountCents) {
+        this.minAmountCents = minAmountCents;
+        this.maxAmountCents = maxAmountCents;
+    }
+
+    public Set<String> getPaymentMethods() {
+        return paymentMethods;
+    }
+
+    public void setPaymentMethods(Collection<String> methods) {
+        paymentMethods.clear();
+        if (methods != null) {
+            paymentMethods.addAll(methods);
+        }
+    }
+
+    public Boolean getRecurring() {
+        return recurring;
+    }
+
+    /**
+     * @param recurring true for recurring expenses only, false for one-off only, null for both
+     */
+    public void setRecurring(Boolean recurring) {
+        this.recurring = recurring;
+    }
+
+    public SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    public void setSortOrder(SortOrder sortOrder) {
+        this.sortOrder = sortOrder != null ? sortOrder : SortOrder.DATE_NEWEST;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = Math.max(0, limit);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.campusexpensemanagerse06304.database;
+
+/**
+ * Outcome of a budget-checked insert such as ExpenseDb.insertExpenseWithinBudget.
+ */
+public class ExpenseInsertResult {
+
+    public enum Status {
+        INSERTED,
+        NO_CATEGORY_BUDGET, // The category has no budget and the caller did not allow that
+        OVER_CATEGORY_BUDGET,
+        OVER_TOTAL_BUDGET,
+        FAILED
+    }
+
+    private final Status status;
+    private final long id;
+    private final long remainingCents;
+
+    private ExpenseInsertResult(Status status, long id, long remainingCents) {
+        this.status = status;
+        this.id = id;
+        this.remainingCents = remainingCents;
+    }
+
+    static ExpenseInsertResult inserted(long id) {
+        return new ExpenseInsertResult(Status.INSERTED, id, 0);
+    }
+
+    static ExpenseInsertResult rejected(Status status, long remainingCents) {
+        return new ExpenseInsertResult(status, -1, remainingCents);
+    }
+
+    static ExpenseInsertResult failed() {
+        return new ExpenseInsertResult(Status.FAILED, -1, 0);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isInserted() {
+        return status == Status.INSERTED;
+    }
+
+    /**
+     * @return Row id of the inserted expense (or recurring expense), -1 if nothing was inserted
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return For OVER_CATEGORY_BUDGET and OVER_TOTAL_BUDGET, what was left of that budget
+     *         for the month before this expense, in cents
+     */
+    public long getRemainingCents() {
+        return remainingCents;
+    }
+}
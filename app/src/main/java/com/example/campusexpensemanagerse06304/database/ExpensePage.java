@@ -0,0 +1,34 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import com.example.campusexpensemanagerse06304.model.Expense;
+
+import java.util.List;
+
+/**
+ * One page of expenses returned by ExpenseDb.queryExpensePage.
+ */
+public class ExpensePage {
+
+    private final List<Expense> expenses;
+    private final String nextPageToken;
+
+    ExpensePage(List<Expense> expenses, String nextPageToken) {
+        this.expenses = expenses;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<Expense> getExpenses() {
+        return expenses;
+    }
+
+    /**
+     * @return Token to pass to queryExpensePage for the following page, or null on the last page
+     */
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public boolean hasMore() {
+        return nextPageToken != null;
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs ExpenseDb work for screens off the main thread.
+ * Writes go through a single thread so they apply in the order they were made; reads share a
+ * small pool and, thanks to write-ahead logging, are not blocked by a running write. Results are
+ * posted back to the main thread. Every task is tied to a lifecycle, normally a fragment's view
+ * lifecycle: when it is destroyed, pending reads are cancelled and no callback is delivered.
+ * Writes still run so that nothing the user saved is lost.
+ * A read submitted after a write may run before the write commits; screens that need to see the
+ * write reload from the DataChange the write publishes.
+ */
+public final class ExpenseRepository {
+
+    private static final String TAG = "ExpenseRepository";
+    private static final int READ_THREADS = 2;
+
+    public interface Query<T> {
+        T run(ExpenseDb db);
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static ExpenseRepository instance;
+
+    private final ExpenseDb db;
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(threadFactory("db-write"));
+    private final ExecutorService readExecutor = Executors.newFixedThreadPool(READ_THREADS, threadFactory("db-read"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Get the process-wide repository.
+     * @param context Any context, the application context is retained
+     */
+    public static synchronized ExpenseRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new ExpenseRepository(ExpenseDb.getInstance(context));
+        }
+        return instance;
+    }
+
+    private ExpenseRepository(ExpenseDb db) {
+        this.db = db;
+    }
+
+    public DataChangeBus getChangeBus() {
+        return db.getChangeBus();
+    }
+
+    /**
+     * Run a query on the read pool. Must be called on the main thread.
+     * @param owner Lifecycle the result is for; the read is cancelled when it is destroyed
+     * @param callback Receives the result on the main thread, unless the read was cancelled
+     * @return The pending read; cancelling it also suppresses the callback
+     */
+    public <T> Future<T> read(LifecycleOwner owner, Query<T> query, Callback<T> callback) {
+        return submit(readExecutor, owner, query, callback, true);
+    }
+
+    /**
+     * Run a write on the writer thread. Must be called on the main thread.
+     * @param owner Lifecycle the result is for; once it is destroyed the write still runs
+     *              but the callback is dropped
+     * @param callback Receives the result on the main thread, may be null
+     */
+    public <T> Future<T> write(LifecycleOwner owner, Query<T> query, @Nullable Callback<T> callback) {
+        return submit(writeExecutor, owner, query, callback, false);
+    }
+
+    private <T> Future<T> submit(ExecutorService executor, LifecycleOwner owner, Query<T> query,
+                                 @Nullable Callback<T> callback, boolean cancelOnDestroy) {
+        Task<T> task = new Task<>(owner.getLifecycle(), query, callback, cancelOnDestroy);
+        if (task.dropCallback && cancelOnDestroy) {
+            task.cancel(false); // Owner is already gone, nobody wants this result
+        } else {
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1); // Stay behind the UI thread
+            return thread;
+        };
+    }
+
+    private final class Task<T> extends FutureTask<T> implements LifecycleEventObserver {
+        private final Lifecycle lifecycle;
+        private final Callback<T> callback;
+        private final boolean cancelOnDestroy;
+        private boolean dropCallback; // Main thread only
+
+        Task(Lifecycle lifecycle, Query<T> query, @Nullable Callback<T> callback, boolean cancelOnDestroy) {
+            super(() -> query.run(db));
+            this.lifecycle = lifecycle;
+            this.callback = callback;
+            this.cancelOnDestroy = cancelOnDestroy;
+            if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+                dropCallback = true;
+            } else {
+                lifecycle.addObserver(this);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // A read that already finished can still have its delivery pending on the main thread
+            dropCallback = true;
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        protected void done() {
+            mainHandler.post(this::deliver);
+        }
+
+        private void deliver() {
+            lifecycle.removeObserver(this);
+            if (dropCallback || isCancelled()) {
+                return;
+            }
+            T result;
+            try {
+                result = get();
+            } catch (ExecutionException | InterruptedException e) {
+                Log.e(TAG, "Database task failed", e);
+                return;
+            }
+            if (callback != null) {
+                callback.onResult(result);
+            }
+        }
+
+        @Override
+        public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                lifecycle.removeObserver(this);
+                if (cancelOnDestroy) {
+                    cancel(false);
+                } else {
+                    dropCallback = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.database.Cursor;
+
+import com.example.campusexpensemanagerse06304.model.Expense;
+
+/**
+ * Maps expense rows. category_name and category_color are picked up when the query joins them.
+ */
+class ExpenseRowMapper extends RowMapper<Expense> {
+
+    static final String[] COLUMNS = {
+            ExpenseDb.EXP_ID_COL,
+            ExpenseDb.EXP_USER_ID_COL,
+            ExpenseDb.EXP_CAT_ID_COL,
+            ExpenseDb.EXP_AMOUNT_COL,
+            ExpenseDb.EXP_DESC_COL,
+            ExpenseDb.EXP_DATE_COL,
+            ExpenseDb.EXP_PAYMENT_METHOD_COL,
+            ExpenseDb.EXP_IS_RECURRING_COL,
+            ExpenseDb.EXP_RECURRING_ID_COL
+    };
+
+    private final int idIndex;
+    private final int userIdIndex;
+    private final int categoryIdIndex;
+    private final int amountIndex;
+    private final int descriptionIndex;
+    private final int dateIndex;
+    private final int paymentMethodIndex;
+    private final int isRecurringIndex;
+    private final int recurringIdIndex;
+    private final int categoryNameIndex;
+    private final int categoryColorIndex;
+
+    ExpenseRowMapper(Cursor cursor) {
+        super(cursor);
+        idIndex = cursor.getColumnIndexOrThrow(ExpenseDb.EXP_ID_COL);
+        userIdIndex = cursor.getColumnIndexOrThrow(ExpenseDb.EXP_USER_ID_COL);
+        categoryIdIndex = cursor.getColumnIndexOrThrow(ExpenseDb.EXP_CAT_ID_COL);
+        amountIndex = cursor.getColumnIndexOrThrow(ExpenseDb.EXP_AMOUNT_COL);
+        descriptionIndex = cursor.getColumnIndexOrThrow(ExpenseDb.EXP_DESC_COL);
+        dateIndex = cursor.getColumnIndexOrThrow(ExpenseDb.EXP_DATE_COL);
+        paymentMethodIndex = cursor.getColumnIndexOrThrow(ExpenseDb.EXP_PAYMENT_METHOD_COL);
+        isRecurringIndex = cursor.getColumnIndexOrThrow(ExpenseDb.EXP_IS_RECURRING_COL);
+        recurringIdIndex = cursor.getColumnIndexOrThrow(ExpenseDb.EXP_RECURRING_ID_COL);
+        categoryNameIndex = cursor.getColumnIndex("category_name");
+        categoryColorIndex = cursor.getColumnIndex("category_color");
+    }
+
+    @Override
+    Expense mapRow() {
+        Expense expense = new Expense();
+        expense.setId(cursor.getInt(idIndex));
+        expense.setUserId(cursor.getInt(userIdIndex));
+        expense.setCategoryId(cursor.getInt(categoryIdIndex));
+        expense.setAmountCents(cursor.getLong(amountIndex));
+        expense.setDescription(cursor.getString(descriptionIndex));
+        expense.setDate(getDate(dateIndex));
+        expense.setPaymentMethod(cursor.getString(paymentMethodIndex));
+        expense.setRecurring(cursor.getInt(isRecurringIndex) == 1);
+        if (!cursor.isNull(recurringIdIndex)) {
+            expense.setRecurringExpenseId(cursor.getInt(recurringIdIndex));
+        }
+        expense.setCategoryName(getOptionalString(categoryNameIndex));
+        expense.setCategoryColor(getOptionalString(categoryColorIndex));
+        return expense;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * One numbered step of the database schema history.
+ * Migration n upgrades a version n-1 file to version n. The steps run inside the transaction
+ * SQLiteOpenHelper opens for onUpgrade, each in a nested transaction of its own, so a failing
+ * step rolls the whole upgrade back and the file keeps its old version number.
+ */
+final class Migration {
+
+    private static final String TAG = "Migration";
+
+    interface Step {
+        void apply(SQLiteDatabase db);
+    }
+
+    final int version;
+    final String description;
+    private final Step step;
+
+    Migration(int version, String description, Step step) {
+        this.version = version;
+        this.description = description;
+        this.step = step;
+    }
+
+    /**
+     * Apply every migration after oldVersion up to and including newVersion, in order.
+     * @param migrations Steps numbered 2, 3, ... without gaps, ending at newVersion
+     * @throws IllegalStateException if the steps are out of order or do not reach newVersion
+     */
+    static void migrate(SQLiteDatabase db, Migration[] migrations, int oldVersion, int newVersion) {
+        checkOrder(migrations, newVersion);
+        Log.d(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
+
+        for (Migration migration : migrations) {
+            if (migration.version <= oldVersion || migration.version > newVersion) {
+                continue;
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            db.beginTransaction();
+            try {
+                migration.step.apply(db);
+                db.setTransactionSuccessful();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Migration to version " + migration.version + " failed: " + e.getMessage());
+                throw e;
+            } finally {
+                db.endTransaction();
+            }
+            Log.d(TAG, "Migrated to version " + migration.version + " (" + migration.description + ") in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+        }
+    }
+
+    private static void checkOrder(Migration[] migrations, int newVersion) {
+        for (int i = 0; i < migrations.length; i++) {
+            if (migrations[i].version != i + 2) {
+                throw new IllegalStateException("Migration " + migrations[i].version
+                        + " is out of order, expected " + (i + 2));
+            }
+        }
+        int latest = migrations.length + 1;
+        if (latest != newVersion) {
+            throw new IllegalStateException("Migrations end at version " + latest
+                    + " but the database version is " + newVersion);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache for the small reads ExpenseDb serves over and over (categories, total
+ * budget, monthly totals).
+ * Every entry belongs to a table, optionally narrowed to one user. Writes bump a generation
+ * counter for the table or for one user's rows in it, and an entry loaded under an older
+ * generation counts as a miss. Because the generation is read before the load starts, a load
+ * that races with a write is never served after that write.
+ */
+final class QueryCache {
+
+    // Scope for entries that are not tied to a user, such as the category list
+    static final int ALL_USERS = -1;
+
+    interface Loader<T> {
+        T load();
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long generation;
+
+        Entry(Object value, long generation) {
+            this.value = value;
+            this.generation = generation;
+        }
+    }
+
+    private final LruCache<String, Entry> entries;
+    // Write counters, keyed by table and by table + user
+    private final Map<String, Long> generations = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    QueryCache(int maxEntries) {
+        entries = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Get a cached value, loading and caching it on a miss.
+     * @param table Table the value is read from; writes to it invalidate the entry
+     * @param userId Owner of the rows read, or ALL_USERS
+     * @param key Identifies the query and its arguments within the table and user
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String table, int userId, String key, Loader<T> loader) {
+        String cacheKey = table + "|" + userId + "|" + key;
+        long generation = generation(table, userId);
+
+        Entry entry = entries.get(cacheKey);
+        if (entry != null && entry.generation == generation) {
+            hits.incrementAndGet();
+            return (T) entry.value;
+        }
+
+        misses.incrementAndGet();
+        T value = loader.load();
+        entries.put(cacheKey, new Entry(value, generation));
+        return value;
+    }
+
+    /**
+     * Invalidate the entries holding one user's rows of a table. Call after the write commits.
+     */
+    void invalidate(String table, int userId) {
+        bump(table + "|" + userId);
+    }
+
+    /**
+     * Invalidate every entry read from a table, for writes whose owner is not known.
+     */
+    void invalidateTable(String table) {
+        bump(table);
+    }
+
+    void clear() {
+        entries.evictAll();
+    }
+
+    long hitCount() {
+        return hits.get();
+    }
+
+    long missCount() {
+        return misses.get();
+    }
+
+    long evictionCount() {
+        return entries.evictionCount();
+    }
+
+    // Both counters only grow, so their sum changes whenever either one does
+    private synchronized long generation(String table, int userId) {
+        return counter(table) + counter(table + "|" + userId);
+    }
+
+    private synchronized void bump(String scope) {
+        generations.put(scope, counter(scope) + 1);
+    }
+
+    private long counter(String scope) {
+        Long value = generations.get(scope);
+        return value != null ? value : 0;
+    }
+}
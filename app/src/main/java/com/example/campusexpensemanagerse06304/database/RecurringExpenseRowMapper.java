@@ -0,0 +1,65 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.database.Cursor;
+
+import com.example.campusexpensemanagerse06304.model.RecurringExpense;
+
+/**
+ * Maps recurring expense rows.
+ */
+class RecurringExpenseRowMapper extends RowMapper<RecurringExpense> {
+
+    static final String[] COLUMNS = {
+            ExpenseDb.REC_ID_COL,
+            ExpenseDb.REC_USER_ID_COL,
+            ExpenseDb.REC_CAT_ID_COL,
+            ExpenseDb.REC_AMOUNT_COL,
+            ExpenseDb.REC_DESC_COL,
+            ExpenseDb.REC_FREQUENCY_COL,
+            ExpenseDb.REC_START_DATE_COL,
+            ExpenseDb.REC_END_DATE_COL,
+            ExpenseDb.REC_LAST_CHARGED_COL,
+            ExpenseDb.REC_NEXT_CHARGE_COL
+    };
+
+    private final int idIndex;
+    private final int userIdIndex;
+    private final int categoryIdIndex;
+    private final int amountIndex;
+    private final int descriptionIndex;
+    private final int frequencyIndex;
+    private final int startDateIndex;
+    private final int endDateIndex;
+    private final int lastChargedIndex;
+    private final int nextChargeIndex;
+
+    RecurringExpenseRowMapper(Cursor cursor) {
+        super(cursor);
+        idIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_ID_COL);
+        userIdIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_USER_ID_COL);
+        categoryIdIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_CAT_ID_COL);
+        amountIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_AMOUNT_COL);
+        descriptionIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_DESC_COL);
+        frequencyIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_FREQUENCY_COL);
+        startDateIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_START_DATE_COL);
+        endDateIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_END_DATE_COL);
+        lastChargedIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_LAST_CHARGED_COL);
+        nextChargeIndex = cursor.getColumnIndexOrThrow(ExpenseDb.REC_NEXT_CHARGE_COL);
+    }
+
+    @Override
+    RecurringExpense mapRow() {
+        RecurringExpense recurring = new RecurringExpense();
+        recurring.setId(cursor.getInt(idIndex));
+        recurring.setUserId(cursor.getInt(userIdIndex));
+        recurring.setCategoryId(cursor.getInt(categoryIdIndex));
+        recurring.setAmountCents(cursor.getLong(amountIndex));
+        recurring.setDescription(cursor.getString(descriptionIndex));
+        recurring.setFrequency(cursor.getString(frequencyIndex));
+        recurring.setStartDate(getDate(startDateIndex));
+        recurring.setEndDate(getDate(endDateIndex));
+        recurring.setLastCharged(getDate(lastChargedIndex));
+        recurring.setNextCharge(getDate(nextChargeIndex));
+        return recurring;
+    }
+}
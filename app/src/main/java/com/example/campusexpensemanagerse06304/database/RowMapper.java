@@ -0,0 +1,74 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import android.database.Cursor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the rows of one cursor to model objects.
+ * Subclasses resolve their column indexes once in the constructor, so reading a row is
+ * only positional getters; a mapper must not be reused for a different cursor.
+ */
+abstract class RowMapper<T> {
+
+    protected final Cursor cursor;
+
+    RowMapper(Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Map the row the cursor is currently positioned on
+     */
+    abstract T mapRow();
+
+    /**
+     * Map every row of the cursor and close it
+     */
+    List<T> mapAll() {
+        List<T> rows = new ArrayList<>(Math.max(cursor.getCount(), 0));
+        try {
+            while (cursor.moveToNext()) {
+                rows.add(mapRow());
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Read an epoch-day column
+     * @return The date, or null for a NULL column
+     */
+    protected LocalDate getDate(int columnIndex) {
+        if (columnIndex < 0 || cursor.isNull(columnIndex)) {
+            return null;
+        }
+        return LocalDate.ofEpochDay(cursor.getLong(columnIndex));
+    }
+
+    // Optional columns (e.g. joined category names) are only read when the query selected them
+    protected String getOptionalString(int columnIndex) {
+        return columnIndex < 0 ? null : cursor.getString(columnIndex);
+    }
+
+    /**
+     * Build a comma separated column list, optionally qualified with a table alias
+     */
+    static String select(String alias, String[] columns) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            if (alias != null) {
+                builder.append(alias).append('.');
+            }
+            builder.append(columns[i]);
+        }
+        return builder.toString();
+    }
+}
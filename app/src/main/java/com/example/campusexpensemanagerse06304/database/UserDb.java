@@ -5,8 +5,8 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
+import android.util.SparseArray;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
@@ -16,45 +16,27 @@ import com.example.campusexpensemanagerse06304.model.Users;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 
-public class UserDb extends SQLiteOpenHelper {
+/**
+ * Account queries on the user table.
+ * The table is created and migrated by ExpenseDb, which owns the "campus expenses" file;
+ * this class only borrows its shared connection and must never close it.
+ */
+public class UserDb {
 
-    private static final String DB_NAME = "campus expenses";
-    private static final String TABLE_NAME = "user";
-    private static final int DB_VERSION = 2;
+    private static final String TABLE_NAME = ExpenseDb.TABLE_USER;
     //create col for table
-    private static final String ID_COL = "id";
-    private static final String USERNAME_COL = "username";
-    private static final String PASSWORD_COL = "password";
-    private static final String EMAIL_COL = "email";
-    private static final String PHONE_COL = "phone";
-    private static final String ROLE_ID_COL = "role_id";
-    private static final String CREATED_AT = "created_at";
-    private static final String UPDATED_AT = "updated_at";
-    private static final String DELETED_AT = "deleted_at";
-    public UserDb(@Nullable Context context) {
-        super(context, DB_NAME, null, DB_VERSION);
-    }
+    private static final String ID_COL = ExpenseDb.USER_ID_COL;
+    private static final String USERNAME_COL = ExpenseDb.USER_USERNAME_COL;
+    private static final String PASSWORD_COL = ExpenseDb.USER_PASSWORD_COL;
+    private static final String EMAIL_COL = ExpenseDb.USER_EMAIL_COL;
+    private static final String PHONE_COL = ExpenseDb.USER_PHONE_COL;
+    private static final String ROLE_ID_COL = ExpenseDb.USER_ROLE_ID_COL;
+    private static final String CREATED_AT = ExpenseDb.USER_CREATED_AT;
 
-    @Override
-    public void onCreate(SQLiteDatabase db) {
-       //create table
-        String query = "CREATE TABLE " + TABLE_NAME + " ( "
-                        + ID_COL + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                        + USERNAME_COL + " VARCHAR(60) NOT NULL, "
-                        + PASSWORD_COL + " VARCHAR(200) NOT NULL, "
-                        + EMAIL_COL + " VARCHAR(60) NOT NULL, "
-                        + PHONE_COL + " VARCHAR(30), "
-                        + ROLE_ID_COL + " INTEGER, "
-                        + CREATED_AT + " DATETIME, "
-                        + UPDATED_AT + " DATETIME, "
-                        + DELETED_AT + " DATETIME ) ";
-        db.execSQL(query); // thuc thi tao bang
-    }
+    private final ExpenseDb expenseDb;
 
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-        onCreate(db);
+    public UserDb(@Nullable Context context) {
+        expenseDb = ExpenseDb.getInstance(context);
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
@@ -64,7 +46,7 @@ public class UserDb extends SQLiteOpenHelper {
         ZonedDateTime zoneDt = ZonedDateTime.now();
         String currentDate = dtf.format(zoneDt);
 
-        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteDatabase db = expenseDb.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(USERNAME_COL, username);
         values.put(PASSWORD_COL, password);
@@ -73,7 +55,6 @@ public class UserDb extends SQLiteOpenHelper {
         values.put(ROLE_ID_COL, 1);
         values.put(CREATED_AT, currentDate);
         long insert = db.insert(TABLE_NAME, null, values);
-        db.close();
         return insert;
     }
 
@@ -82,7 +63,7 @@ public class UserDb extends SQLiteOpenHelper {
     public Users checkLoginUser(String username, String password){
         Users users = new Users();
         try{
-            SQLiteDatabase db = this.getReadableDatabase();
+            SQLiteDatabase db = expenseDb.getReadableDatabase();
             // SELECT id, username, email, phone, roleId from users where username = ? and password = ?
             String[] cols = { ID_COL, USERNAME_COL, EMAIL_COL, PHONE_COL, ROLE_ID_COL} ;
             String condition = USERNAME_COL + " =? AND " + PASSWORD_COL + " =? ";
@@ -98,7 +79,6 @@ public class UserDb extends SQLiteOpenHelper {
                 users.setRoleId(cursor.getInt(cursor.getColumnIndex(ROLE_ID_COL)));
             }
             cursor.close();
-            db.close();
         } catch (RuntimeException e){
             throw new RuntimeException(e);
         }
@@ -108,7 +88,7 @@ public class UserDb extends SQLiteOpenHelper {
     public boolean checkExistsUsername(String username, String email){
         boolean checking = false;
         try{
-            SQLiteDatabase db = this.getReadableDatabase();
+            SQLiteDatabase db = expenseDb.getReadableDatabase();
             String[] cols = {ID_COL, USERNAME_COL, EMAIL_COL};
             String condition = USERNAME_COL + " =? AND " + EMAIL_COL + " =? ";
             String[] params = {username, email};
@@ -117,7 +97,6 @@ public class UserDb extends SQLiteOpenHelper {
                 checking = true;
             }
             cursor.close();
-            db.close();
         }catch (RuntimeException e){
             throw new RuntimeException(e);
         }return checking;
@@ -125,22 +104,30 @@ public class UserDb extends SQLiteOpenHelper {
     public int changePassword(String newPassword, String account, String email){
         int check = -1;
         try{
-            SQLiteDatabase db = this.getWritableDatabase();
+            SQLiteDatabase db = expenseDb.getWritableDatabase();
             ContentValues values = new ContentValues();
             values.put(PASSWORD_COL, newPassword);
             String condition = USERNAME_COL + " =? AND "+ EMAIL_COL+" =? ";
             String[] params = { account , email };
             check = db.update(TABLE_NAME, values, condition, params);
-            db.close();
         }catch (RuntimeException e){
             throw new RuntimeException(e);
         }
         return check;
     }
-}
-
-
-
-
-
 
+    // Usernames of all accounts by user id, for labelling per-user reports
+    public SparseArray<String> getUsernames() {
+        SQLiteDatabase db = expenseDb.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_NAME, new String[]{ID_COL, USERNAME_COL}, null, null, null, null, null);
+        SparseArray<String> usernames = new SparseArray<>();
+        try {
+            while (cursor.moveToNext()) {
+                usernames.put(cursor.getInt(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return usernames;
+    }
+}
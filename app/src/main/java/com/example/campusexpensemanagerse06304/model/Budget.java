@@ -1,27 +1,25 @@
 package com.example.campusexpensemanagerse06304.model;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.time.LocalDate;
 
 public class Budget {
     private int id;
     private int userId;
     private int categoryId;
-    private double amount;
+    private long amount; // In cents
     private String period; // monthly, weekly, etc.
-    private Date startDate;
-    private Date endDate;
+    private LocalDate startDate;
+    private LocalDate endDate;
     private String categoryName; // For display purposes
     private String categoryColor; // For display purposes
-    private double spent; // For tracking against budget
+    private long spent; // For tracking against budget, in cents
 
     public Budget() {
         // Default constructor
     }
 
-    public Budget(int id, int userId, int categoryId, double amount, String period,
-                  Date startDate, Date endDate) {
+    public Budget(int id, int userId, int categoryId, long amount, String period,
+                  LocalDate startDate, LocalDate endDate) {
         this.id = id;
         this.userId = userId;
         this.categoryId = categoryId;
@@ -56,14 +54,24 @@ public class Budget {
         this.categoryId = categoryId;
     }
 
-    public double getAmount() {
+    /**
+     * @return Amount in cents
+     */
+    public long getAmountCents() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmountCents(long amount) {
         this.amount = amount;
     }
 
+    /**
+     * @return Amount in dollars, for display only
+     */
+    public double getAmount() {
+        return Money.toDollars(amount);
+    }
+
     public String getPeriod() {
         return period;
     }
@@ -72,31 +80,29 @@ public class Budget {
         this.period = period;
     }
 
-    public Date getStartDate() {
+    public LocalDate getStartDate() {
         return startDate;
     }
 
-    public void setStartDate(Date startDate) {
+    public void setStartDate(LocalDate startDate) {
         this.startDate = startDate;
     }
 
     public String getFormattedStartDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        return sdf.format(startDate);
+        return startDate.toString();
     }
 
-    public Date getEndDate() {
+    public LocalDate getEndDate() {
         return endDate;
     }
 
-    public void setEndDate(Date endDate) {
+    public void setEndDate(LocalDate endDate) {
         this.endDate = endDate;
     }
 
     public String getFormattedEndDate() {
         if (endDate == null) return "";
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        return sdf.format(endDate);
+        return endDate.toString();
     }
 
     public String getCategoryName() {
@@ -115,25 +121,39 @@ public class Budget {
         this.categoryColor = categoryColor;
     }
 
-    public double getSpent() {
+    public long getSpentCents() {
         return spent;
     }
 
-    public void setSpent(double spent) {
+    public void setSpentCents(long spent) {
         this.spent = spent;
     }
 
-    public double getRemaining() {
+    public long getRemainingCents() {
         return amount - spent;
     }
 
+    /**
+     * @return Spent amount in dollars, for display only
+     */
+    public double getSpent() {
+        return Money.toDollars(spent);
+    }
+
+    /**
+     * @return Remaining amount in dollars, for display only
+     */
+    public double getRemaining() {
+        return Money.toDollars(amount - spent);
+    }
+
     public double getSpentPercentage() {
         if (amount == 0) return 0;
-        return (spent / amount) * 100;
+        return (spent * 100.0) / amount;
     }
 
     @Override
     public String toString() {
-        return categoryName + " - $" + amount;
+        return categoryName + " - " + Money.format(amount);
     }
 }
\ No newline at end of file
@@ -1,16 +1,14 @@
 package com.example.campusexpensemanagerse06304.model;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.time.LocalDate;
 
 public class Expense {
     private int id;
     private int userId;
     private int categoryId;
-    private double amount;
+    private long amount; // In cents
     private String description;
-    private Date date;
+    private LocalDate date;
     private String paymentMethod;
     private boolean isRecurring;
     private Integer recurringExpenseId;
@@ -21,8 +19,8 @@ public class Expense {
         // Default constructor
     }
 
-    public Expense(int id, int userId, int categoryId, double amount, String description,
-                   Date date, String paymentMethod, boolean isRecurring, Integer recurringExpenseId) {
+    public Expense(int id, int userId, int categoryId, long amount, String description,
+                   LocalDate date, String paymentMethod, boolean isRecurring, Integer recurringExpenseId) {
         this.id = id;
         this.userId = userId;
         this.categoryId = categoryId;
@@ -59,14 +57,24 @@ public class Expense {
         this.categoryId = categoryId;
     }
 
-    public double getAmount() {
+    /**
+     * @return Amount in cents
+     */
+    public long getAmountCents() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmountCents(long amount) {
         this.amount = amount;
     }
 
+    /**
+     * @return Amount in dollars, for display only
+     */
+    public double getAmount() {
+        return Money.toDollars(amount);
+    }
+
     public String getDescription() {
         return description;
     }
@@ -75,17 +83,16 @@ public class Expense {
         this.description = description;
     }
 
-    public Date getDate() {
+    public LocalDate getDate() {
         return date;
     }
 
-    public void setDate(Date date) {
+    public void setDate(LocalDate date) {
         this.date = date;
     }
 
     public String getFormattedDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        return sdf.format(date);
+        return date.toString();
     }
 
     public String getPaymentMethod() {
@@ -130,6 +137,6 @@ public class Expense {
 
     @Override
     public String toString() {
-        return description + " - $" + amount;
+        return description + " - " + Money.format(amount);
     }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.example.campusexpensemanagerse06304.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+
+/**
+ * Conversions between the integer cents stored in the database and the dollar values
+ * shown and typed in the UI. Sums should always be taken over cents.
+ */
+public final class Money {
+
+    private Money() {
+    }
+
+    /**
+     * Parse a user-entered amount such as "12.5" into cents, rounding half up.
+     * @throws NumberFormatException if the text is not a number
+     */
+    public static long parseCents(String text) {
+        try {
+            return new BigDecimal(text.trim()).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * @return The exact amount without a currency sign, e.g. "12.50", for CSV and other exports
+     */
+    public static String toPlainString(long cents) {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+
+    /**
+     * @return The amount formatted as "$12.50"; formatted from the exact decimal, so large
+     * totals are not rounded through a double
+     */
+    public static String format(long cents) {
+        return String.format(Locale.getDefault(), "$%.2f", BigDecimal.valueOf(cents, 2));
+    }
+}
@@ -1,20 +1,18 @@
 package com.example.campusexpensemanagerse06304.model;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.time.LocalDate;
 
 public class RecurringExpense {
     private int id;
     private int userId;
     private int categoryId;
-    private double amount;
+    private long amount; // In cents
     private String description;
     private String frequency; // daily, weekly, monthly, yearly
-    private Date startDate;
-    private Date endDate;
-    private Date lastCharged;
-    private Date nextCharge;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private LocalDate lastCharged;
+    private LocalDate nextCharge;
     private String categoryName; // For display purposes
     private String categoryColor; // For display purposes
 
@@ -22,8 +20,8 @@ public class RecurringExpense {
         // Default constructor
     }
 
-    public RecurringExpense(int id, int userId, int categoryId, double amount, String description,
-                            String frequency, Date startDate, Date endDate) {
+    public RecurringExpense(int id, int userId, int categoryId, long amount, String description,
+                            String frequency, LocalDate startDate, LocalDate endDate) {
         this.id = id;
         this.userId = userId;
         this.categoryId = categoryId;
@@ -59,14 +57,24 @@ public class RecurringExpense {
         this.categoryId = categoryId;
     }
 
-    public double getAmount() {
+    /**
+     * @return Amount in cents
+     */
+    public long getAmountCents() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmountCents(long amount) {
         this.amount = amount;
     }
 
+    /**
+     * @return Amount in dollars, for display only
+     */
+    public double getAmount() {
+        return Money.toDollars(amount);
+    }
+
     public String getDescription() {
         return description;
     }
@@ -83,59 +91,55 @@ public class RecurringExpense {
         this.frequency = frequency;
     }
 
-    public Date getStartDate() {
+    public LocalDate getStartDate() {
         return startDate;
     }
 
-    public void setStartDate(Date startDate) {
+    public void setStartDate(LocalDate startDate) {
         this.startDate = startDate;
     }
 
     public String getFormattedStartDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        return sdf.format(startDate);
+        return startDate.toString();
     }
 
-    public Date getEndDate() {
+    public LocalDate getEndDate() {
         return endDate;
     }
 
-    public void setEndDate(Date endDate) {
+    public void setEndDate(LocalDate endDate) {
         this.endDate = endDate;
     }
 
     public String getFormattedEndDate() {
         if (endDate == null) return "";
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        return sdf.format(endDate);
+        return endDate.toString();
     }
 
-    public Date getLastCharged() {
+    public LocalDate getLastCharged() {
         return lastCharged;
     }
 
-    public void setLastCharged(Date lastCharged) {
+    public void setLastCharged(LocalDate lastCharged) {
         this.lastCharged = lastCharged;
     }
 
     public String getFormattedLastCharged() {
         if (lastCharged == null) return "Never";
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        return sdf.format(lastCharged);
+        return lastCharged.toString();
     }
 
-    public Date getNextCharge() {
+    public LocalDate getNextCharge() {
         return nextCharge;
     }
 
-    public void setNextCharge(Date nextCharge) {
+    public void setNextCharge(LocalDate nextCharge) {
         this.nextCharge = nextCharge;
     }
 
     public String getFormattedNextCharge() {
         if (nextCharge == null) return "";
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        return sdf.format(nextCharge);
+        return nextCharge.toString();
     }
 
     public String getCategoryName() {
@@ -156,6 +160,6 @@ public class RecurringExpense {
 
     @Override
     public String toString() {
-        return description + " - $" + amount + " (" + frequency + ")";
+        return description + " - " + Money.format(amount) + " (" + frequency + ")";
     }
 }
\ No newline at end of file
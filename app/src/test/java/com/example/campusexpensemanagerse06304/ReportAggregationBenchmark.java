@@ -0,0 +1,129 @@
+package com.example.campusexpensemanagerse06304;
+
+import com.example.campusexpensemanagerse06304.model.Expense;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Category and monthly report totals over one million expenses, summed as doubles the way
+ * ReportGenerator did before amounts were cents, and as long cents.
+ * ReportTotals keys its long sums by a SparseLongArray, an Android class the JVM test runtime
+ * only stubs, so the cents path here sums into long arrays indexed the same way (category id,
+ * and year * 12 + month - 1). Timings and the drift of the double totals are printed to
+ * standard output.
+ */
+public class ReportAggregationBenchmark {
+    private static final int EXPENSE_COUNT = 1_000_000;
+    private static final int CATEGORY_COUNT = 9;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2023, 1, 1);
+    private static final int MONTH_COUNT = 24;
+    private static final int WARMUP_RUNS = 3;
+    private static final int RUNS = 5;
+
+    @Test
+    public void aggregateOneMillionExpenses() {
+        List<Expense> expenses = new ArrayList<>(EXPENSE_COUNT);
+        Random random = new Random(42);
+        long[] expectedByCategory = new long[CATEGORY_COUNT + 1];
+        for (int i = 0; i < EXPENSE_COUNT; i++) {
+            Expense expense = new Expense();
+            expense.setId(i + 1);
+            expense.setCategoryId(1 + random.nextInt(CATEGORY_COUNT));
+            expense.setAmountCents(1 + random.nextInt(50_000));
+            expense.setDate(FIRST_DAY.plusDays(random.nextInt(MONTH_COUNT * 30)));
+            expenses.add(expense);
+            expectedByCategory[expense.getCategoryId()] += expense.getAmountCents();
+        }
+
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            sumDoubles(expenses);
+            sumCents(expenses);
+        }
+
+        long doubleNanos = 0;
+        long centsNanos = 0;
+        Map<Integer, Double> doubleTotals = null;
+        long[][] centsTotals = null;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            doubleTotals = sumDoubles(expenses).categoryTotals;
+            doubleNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            centsTotals = sumCents(expenses);
+            centsNanos += System.nanoTime() - start;
+        }
+
+        // Cents are exact; the double totals are off by whatever drift a category collected
+        BigDecimal maxDrift = BigDecimal.ZERO;
+        for (int categoryId = 1; categoryId <= CATEGORY_COUNT; categoryId++) {
+            assertEquals(expectedByCategory[categoryId], centsTotals[0][categoryId]);
+            BigDecimal drift = new BigDecimal(doubleTotals.get(categoryId))
+                    .subtract(BigDecimal.valueOf(expectedByCategory[categoryId], 2)).abs();
+            maxDrift = maxDrift.max(drift);
+        }
+        long monthSum = 0;
+        for (long total : centsTotals[1]) {
+            monthSum += total;
+        }
+        long grandTotal = 0;
+        for (long total : expectedByCategory) {
+            grandTotal += total;
+        }
+        assertEquals(grandTotal, monthSum);
+
+        System.out.println(String.format(Locale.US,
+                "Aggregating %d expenses: doubles %.1f ms, cents %.1f ms; largest double drift $%s",
+                EXPENSE_COUNT, doubleNanos / 1_000_000.0 / RUNS, centsNanos / 1_000_000.0 / RUNS,
+                maxDrift.round(new MathContext(3)).toPlainString()));
+    }
+
+    private static final class DoubleTotals {
+        final Map<Integer, Double> categoryTotals = new HashMap<>();
+        final Map<String, Double> monthlyTotals = new HashMap<>();
+    }
+
+    // calculateCategoryTotals and calculateMonthlyTotals as ReportGenerator had them
+    private static DoubleTotals sumDoubles(List<Expense> expenses) {
+        DoubleTotals totals = new DoubleTotals();
+        DateTimeFormatter monthFormat = DateTimeFormatter.ofPattern("MMM yyyy", Locale.US);
+        for (Expense expense : expenses) {
+            int categoryId = expense.getCategoryId();
+            double currentTotal = totals.categoryTotals.getOrDefault(categoryId, 0.0);
+            totals.categoryTotals.put(categoryId, currentTotal + expense.getAmount());
+
+            String month = monthFormat.format(expense.getDate());
+            double monthTotal = totals.monthlyTotals.getOrDefault(month, 0.0);
+            totals.monthlyTotals.put(month, monthTotal + expense.getAmount());
+        }
+        return totals;
+    }
+
+    // ReportTotals.add: long sums per category and per month index
+    private static long[][] sumCents(List<Expense> expenses) {
+        long[] byCategory = new long[CATEGORY_COUNT + 1];
+        int firstMonth = FIRST_DAY.getYear() * 12 + FIRST_DAY.getMonthValue() - 1;
+        long[] byMonth = new long[MONTH_COUNT + 1];
+        for (Expense expense : expenses) {
+            long amount = expense.getAmountCents();
+            byCategory[expense.getCategoryId()] += amount;
+
+            LocalDate date = expense.getDate();
+            byMonth[date.getYear() * 12 + date.getMonthValue() - 1 - firstMonth] += amount;
+        }
+        return new long[][]{byCategory, byMonth};
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import org.junit.Test;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * When the tracker takes a write's changes and when it accepts a seed
+ */
+public class BudgetTrackerTest {
+    private static final int USER_ID = 1;
+    private static final int FOOD = 2;
+    private static final YearMonth MONTH = YearMonth.of(2024, 5);
+
+    private static BudgetTracker.Usage usage(long foodCents) {
+        Map<Integer, Long> spent = new HashMap<>();
+        if (foodCents != 0) {
+            spent.put(FOOD, foodCents);
+        }
+        return new BudgetTracker.Usage(USER_ID, MONTH, 0, spent, Collections.emptyMap());
+    }
+
+    private static BudgetTracker.Delta delta(long foodCents) {
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        delta.add(USER_ID, FOOD, MONTH, foodCents);
+        return delta;
+    }
+
+    private static BudgetTracker seeded(long foodCents) {
+        BudgetTracker tracker = new BudgetTracker();
+        assertTrue(tracker.install(usage(foodCents), tracker.seedGeneration()));
+        return tracker;
+    }
+
+    @Test
+    public void committedWriteIsApplied() {
+        BudgetTracker tracker = seeded(100);
+        tracker.beginWrite();
+        tracker.endWrite(delta(250));
+        assertEquals(350, tracker.get(USER_ID, MONTH).getSpentCents(FOOD));
+        assertEquals(1, tracker.getUpdateCount());
+    }
+
+    @Test
+    public void rolledBackWriteIsNotApplied() {
+        BudgetTracker tracker = seeded(100);
+        tracker.beginWrite();
+        tracker.endWrite(null);
+        assertEquals(100, tracker.get(USER_ID, MONTH).getSpentCents(FOOD));
+        assertEquals(0, tracker.getUpdateCount());
+    }
+
+    @Test
+    public void writeSeesOwnChangesBeforeCommit() {
+        BudgetTracker tracker = seeded(100);
+        tracker.beginWrite();
+        BudgetTracker.Usage before = tracker.getForWrite(USER_ID, MONTH);
+        assertEquals(130, before.plus(delta(30).changesFor(USER_ID, MONTH)).getSpentCents(FOOD));
+        // Not the tracker's until endWrite
+        assertEquals(100, tracker.get(USER_ID, MONTH).getSpentCents(FOOD));
+        tracker.endWrite(delta(30));
+        assertEquals(130, tracker.get(USER_ID, MONTH).getSpentCents(FOOD));
+    }
+
+    @Test
+    public void overlappingWritesReadFromTheirTransaction() {
+        BudgetTracker tracker = seeded(100);
+        tracker.beginWrite();
+        tracker.beginWrite();
+        assertNull(tracker.getForWrite(USER_ID, MONTH));
+        tracker.endWrite(delta(10));
+        assertNotNull(tracker.getForWrite(USER_ID, MONTH));
+        tracker.endWrite(delta(20));
+        assertEquals(130, tracker.get(USER_ID, MONTH).getSpentCents(FOOD));
+    }
+
+    @Test
+    public void seedDuringWriteIsRejected() {
+        BudgetTracker tracker = new BudgetTracker();
+        tracker.beginWrite();
+        long seed = tracker.seedGeneration();
+        assertEquals(-1, seed);
+        tracker.endWrite(delta(50));
+        assertFalse(tracker.install(usage(0), seed));
+        assertNull(tracker.get(USER_ID, MONTH));
+    }
+
+    @Test
+    public void seedOverlappedByWriteIsRejected() {
+        BudgetTracker tracker = new BudgetTracker();
+        long seed = tracker.seedGeneration();
+        // A write commits while the seed query runs; the query may or may not have seen it
+        tracker.beginWrite();
+        tracker.endWrite(delta(50));
+        assertFalse(tracker.install(usage(0), seed));
+        assertTrue(tracker.install(usage(50), tracker.seedGeneration()));
+        assertEquals(1, tracker.getRebuildCount());
+    }
+
+    @Test
+    public void seedOverlappedByInvalidationIsRejected() {
+        BudgetTracker tracker = new BudgetTracker();
+        long seed = tracker.seedGeneration();
+        tracker.invalidate(Collections.singleton(USER_ID));
+        assertFalse(tracker.install(usage(0), seed));
+    }
+
+    @Test
+    public void verifyReplacesMismatchedUsage() {
+        BudgetTracker tracker = seeded(100);
+        assertTrue(tracker.verify(usage(100), tracker.seedGeneration()).isEmpty());
+        assertEquals(1, tracker.verify(usage(120), tracker.seedGeneration()).size());
+        assertEquals(120, tracker.get(USER_ID, MONTH).getSpentCents(FOOD));
+        assertEquals(1, tracker.getMismatchCount());
+    }
+
+    @Test
+    public void verifyOverlappedByWriteIsSkipped() {
+        BudgetTracker tracker = seeded(100);
+        long seed = tracker.seedGeneration();
+        tracker.beginWrite();
+        tracker.endWrite(delta(20));
+        assertTrue(tracker.verify(usage(100), seed).isEmpty());
+        assertEquals(120, tracker.get(USER_ID, MONTH).getSpentCents(FOOD));
+        assertEquals(0, tracker.getMismatchCount());
+    }
+
+    @Test
+    public void changesOutsideTheTrackedMonthAreIgnored() {
+        BudgetTracker tracker = seeded(100);
+        BudgetTracker.Delta delta = new BudgetTracker.Delta();
+        delta.add(USER_ID, FOOD, MONTH.minusMonths(1), 500);
+        delta.add(USER_ID + 1, FOOD, MONTH, 500);
+        tracker.beginWrite();
+        tracker.endWrite(delta);
+        assertEquals(100, tracker.get(USER_ID, MONTH).getSpentCents(FOOD));
+        assertNull(tracker.get(USER_ID + 1, MONTH));
+    }
+}
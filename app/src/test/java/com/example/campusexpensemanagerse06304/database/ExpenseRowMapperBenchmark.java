@@ -0,0 +1,146 @@
+package com.example.campusexpensemanagerse06304.database;
+
+import com.example.campusexpensemanagerse06304.model.Expense;
+import com.example.campusexpensemanagerse06304.model.Money;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Mapping throughput for 100k expense rows from a FakeCursor.
+ * "before" is the loop ExpenseDb used ahead of the row mappers: a column lookup by name for
+ * every column of every row, REAL dollar amounts and "yyyy-MM-dd" dates parsed with
+ * SimpleDateFormat. "after" is ExpenseRowMapper over cents and epoch-day columns.
+ * Rows per second are printed to standard output.
+ */
+public class ExpenseRowMapperBenchmark {
+    private static final int ROW_COUNT = 100_000;
+    private static final int WARMUP_RUNS = 3;
+    private static final int RUNS = 5;
+
+    private static final String[] COLUMNS = {
+            ExpenseDb.EXP_ID_COL,
+            ExpenseDb.EXP_USER_ID_COL,
+            ExpenseDb.EXP_CAT_ID_COL,
+            ExpenseDb.EXP_AMOUNT_COL,
+            ExpenseDb.EXP_DESC_COL,
+            ExpenseDb.EXP_DATE_COL,
+            ExpenseDb.EXP_PAYMENT_METHOD_COL,
+            ExpenseDb.EXP_IS_RECURRING_COL,
+            ExpenseDb.EXP_RECURRING_ID_COL,
+            "created_at",
+            "updated_at",
+            "category_name",
+            "category_color"
+    };
+
+    @Test
+    public void mapHundredThousandRows() throws ParseException {
+        Object[][] legacyRows = new Object[ROW_COUNT][];
+        Object[][] rows = new Object[ROW_COUNT][];
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            long cents = 100 + (i * 37L) % 50_000;
+            LocalDate date = start.plusDays(i % 730);
+            Long recurringId = i % 10 == 0 ? (long) (i / 10) : null;
+            rows[i] = new Object[]{(long) i + 1, 1L, (long) (1 + i % 9), cents, "Expense " + i,
+                    date.toEpochDay(), "Cash", recurringId == null ? 0L : 1L, recurringId,
+                    "2024-01-01 00:00:00", "2024-01-01 00:00:00", "Food", "#FF5722"};
+            legacyRows[i] = rows[i].clone();
+            legacyRows[i][3] = cents / 100.0;
+            legacyRows[i][5] = date.toString();
+        }
+
+        // Both paths must produce the same expenses before their speed is compared
+        assertSameExpenses(mapBefore(new FakeCursor(COLUMNS, legacyRows)),
+                new ExpenseRowMapper(new FakeCursor(COLUMNS, rows)).mapAll());
+
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            mapBefore(new FakeCursor(COLUMNS, legacyRows));
+            new ExpenseRowMapper(new FakeCursor(COLUMNS, rows)).mapAll();
+        }
+
+        long before = 0;
+        long after = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long startNanos = System.nanoTime();
+            assertEquals(ROW_COUNT, mapBefore(new FakeCursor(COLUMNS, legacyRows)).size());
+            before += System.nanoTime() - startNanos;
+
+            startNanos = System.nanoTime();
+            assertEquals(ROW_COUNT, new ExpenseRowMapper(new FakeCursor(COLUMNS, rows)).mapAll().size());
+            after += System.nanoTime() - startNanos;
+        }
+
+        System.out.println(String.format(Locale.US,
+                "Mapping %d expense rows: before %.0f rows/s, after %.0f rows/s",
+                ROW_COUNT, rowsPerSecond(before), rowsPerSecond(after)));
+    }
+
+    // The per-row mapping loop ExpenseDb used before ExpenseRowMapper
+    private static List<Expense> mapBefore(FakeCursor cursor) throws ParseException {
+        List<Expense> expenses = new ArrayList<>();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+        try {
+            while (cursor.moveToNext()) {
+                Expense expense = new Expense();
+                expense.setId(cursor.getInt(cursor.getColumnIndex(ExpenseDb.EXP_ID_COL)));
+                expense.setUserId(cursor.getInt(cursor.getColumnIndex(ExpenseDb.EXP_USER_ID_COL)));
+                expense.setCategoryId(cursor.getInt(cursor.getColumnIndex(ExpenseDb.EXP_CAT_ID_COL)));
+                expense.setAmountCents(Money.toCents(cursor.getDouble(cursor.getColumnIndex(ExpenseDb.EXP_AMOUNT_COL))));
+                expense.setDescription(cursor.getString(cursor.getColumnIndex(ExpenseDb.EXP_DESC_COL)));
+                String dateStr = cursor.getString(cursor.getColumnIndex(ExpenseDb.EXP_DATE_COL));
+                expense.setDate(dateFormat.parse(dateStr).toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+                expense.setPaymentMethod(cursor.getString(cursor.getColumnIndex(ExpenseDb.EXP_PAYMENT_METHOD_COL)));
+                expense.setRecurring(cursor.getInt(cursor.getColumnIndex(ExpenseDb.EXP_IS_RECURRING_COL)) == 1);
+                if (!cursor.isNull(cursor.getColumnIndex(ExpenseDb.EXP_RECURRING_ID_COL))) {
+                    expense.setRecurringExpenseId(cursor.getInt(cursor.getColumnIndex(ExpenseDb.EXP_RECURRING_ID_COL)));
+                }
+                int categoryNameIndex = cursor.getColumnIndex("category_name");
+                if (categoryNameIndex != -1) {
+                    expense.setCategoryName(cursor.getString(categoryNameIndex));
+                }
+                int categoryColorIndex = cursor.getColumnIndex("category_color");
+                if (categoryColorIndex != -1) {
+                    expense.setCategoryColor(cursor.getString(categoryColorIndex));
+                }
+                expenses.add(expense);
+            }
+        } finally {
+            cursor.close();
+        }
+        return expenses;
+    }
+
+    private static void assertSameExpenses(List<Expense> expected, List<Expense> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Expense e = expected.get(i);
+            Expense a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getUserId(), a.getUserId());
+            assertEquals(e.getCategoryId(), a.getCategoryId());
+            assertEquals(e.getAmountCents(), a.getAmountCents());
+            assertEquals(e.getDescription(), a.getDescription());
+            assertEquals(e.getDate(), a.getDate());
+            assertEquals(e.getPaymentMethod(), a.getPaymentMethod());
+            assertEquals(e.isRecurring(), a.isRecurring());
+            assertEquals(e.getRecurringExpenseId(), a.getRecurringExpenseId());
+            assertEquals(e.getCategoryName(), a.getCategoryName());
+            assertEquals(e.getCategoryColor(), a.getCategoryColor());
+        }
+    }
+
+    private static double rowsPerSecond(long totalNanos) {
+        return ROW_COUNT * (double) RUNS / (totalNanos / 1_000_000_000.0);
+    }
+}
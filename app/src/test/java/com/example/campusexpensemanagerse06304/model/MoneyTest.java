@@ -0,0 +1,105 @@
+package com.example.campusexpensemanagerse06304.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class MoneyTest {
+    private Locale defaultLocale;
+
+    @Before
+    public void setUp() {
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void parseCents_roundsHalfUp() {
+        assertEquals(1250, Money.parseCents("12.5"));
+        assertEquals(1234, Money.parseCents("12.34"));
+        assertEquals(1, Money.parseCents("0.005"));
+        assertEquals(0, Money.parseCents("0.004"));
+        assertEquals(1000, Money.parseCents("9.995"));
+    }
+
+    @Test
+    public void parseCents_negativeRoundsAwayFromZero() {
+        assertEquals(-326, Money.parseCents("-3.255"));
+        assertEquals(-150, Money.parseCents("-1.5"));
+    }
+
+    @Test
+    public void parseCents_acceptsWhitespaceAndExponent() {
+        assertEquals(700, Money.parseCents(" 7 "));
+        assertEquals(10000, Money.parseCents("1e2"));
+    }
+
+    @Test
+    public void parseCents_largestAmount() {
+        assertEquals(Long.MAX_VALUE, Money.parseCents("92233720368547758.07"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseCents_outOfRange() {
+        Money.parseCents("92233720368547758.08");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseCents_notANumber() {
+        Money.parseCents("abc");
+    }
+
+    @Test
+    public void toPlainString_alwaysTwoDecimals() {
+        assertEquals("0.00", Money.toPlainString(0));
+        assertEquals("0.05", Money.toPlainString(5));
+        assertEquals("12.50", Money.toPlainString(1250));
+        assertEquals("-0.05", Money.toPlainString(-5));
+        assertEquals("92233720368547758.07", Money.toPlainString(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void format_addsCurrencySign() {
+        assertEquals("$12.50", Money.format(1250));
+        assertEquals("$0.00", Money.format(0));
+        assertEquals("$-1.50", Money.format(-150));
+    }
+
+    @Test
+    public void format_largeAmountsAreExact() {
+        assertEquals("$92233720368547758.07", Money.format(Long.MAX_VALUE));
+        assertEquals("$-92233720368547758.08", Money.format(Long.MIN_VALUE));
+        assertEquals("$90071992547409.93", Money.format(9007199254740993L));
+    }
+
+    @Test
+    public void centsTotalsDoNotDrift() {
+        double dollars = 0;
+        long cents = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            dollars += 0.10;
+            cents += Money.parseCents("0.10");
+        }
+        assertNotEquals(100_000.0, dollars, 0.0);
+        assertEquals(10_000_000, cents);
+        assertEquals("100000.00", Money.toPlainString(cents));
+        assertEquals("$100000.00", Money.format(cents));
+    }
+
+    @Test
+    public void toCents_roundsDoubleInput() {
+        assertEquals(1234, Money.toCents(12.34));
+        assertEquals(10, Money.toCents(0.1));
+        assertEquals(-150, Money.toCents(-1.5));
+        assertEquals(12.34, Money.toDollars(1234), 0.0);
+    }
+}